@@ -10,8 +10,4 @@ object MLKitBridge {
 	@CheckReturnValue
 	@JvmStatic
 	fun generate(messages: List<MessageInfo>): Single<List<String>> = Single.just(listOf())
-	
-	@CheckReturnValue
-	@JvmStatic
-	fun generateFromDatabase(conversationID: Long): Single<List<String>> = Single.just(listOf())
 }
\ No newline at end of file
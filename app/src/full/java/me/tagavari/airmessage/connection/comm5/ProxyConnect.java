@@ -15,9 +15,6 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.auth.GetTokenResult;
 import com.google.firebase.messaging.FirebaseMessaging;
-import io.reactivex.rxjava3.core.Scheduler;
-import io.reactivex.rxjava3.core.Single;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.BuildConfig;
 import me.tagavari.airmessage.connection.DataProxy;
 import me.tagavari.airmessage.connection.encryption.EncryptionAES;
@@ -28,8 +25,11 @@ import me.tagavari.airmessage.util.ConnectionParams;
 
 import org.java_websocket.WebSocket;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.exceptions.InvalidDataException;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
 import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.handshake.ServerHandshake;
@@ -42,10 +42,15 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -55,6 +60,7 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 import me.tagavari.airmessage.BuildConfig;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.connection.DataProxy;
 import me.tagavari.airmessage.connection.encryption.EncryptionAES;
 import me.tagavari.airmessage.connection.encryption.EncryptionManager;
@@ -65,6 +71,9 @@ import me.tagavari.airmessage.util.ConnectionParams;
 
 /**
  * Handles connecting via WebSocket to AirMessage's Connect servers
+ *
+ * Packets are encrypted and decrypted on a small pool of worker threads, and passed through {@link OrderedTaskQueue}s
+ * so that they are still sent and received in order. Outgoing frames are built in a reused buffer.
  */
 class ProxyConnect extends DataProxy<EncryptedPacket> {
 	//Creating the constants
@@ -73,12 +82,20 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 	private static final URI connectHostname = URI.create(BuildConfig.CONNECT_ENDPOINT);
 	private static final long handshakeTimeout = 8 * 1000;
 	
+	private static final int cryptoThreadCount = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	private static final long threadKeepAliveSeconds = 30;
+	private static final int maxPooledFrameBytes = 1024 * 1024; //1 MB, larger frames get their own buffer
+	
 	//Creating the state values
 	private boolean isRunning = false;
 	private final Handler handler = new Handler(Looper.getMainLooper());
 	private final Runnable handshakeExpiryRunnable = () -> stop(ConnectionErrorCode.internet);
 	private WSClient client;
-	private Scheduler encryptionScheduler;
+	private ThreadPoolExecutor cryptoExecutor;
+	private OrderedTaskQueue<OutgoingPacket> sendQueue;
+	private OrderedTaskQueue<EncryptedPacket> receiveQueue;
+	@Nullable private ByteBuffer frameBuffer; //Only used while delivering from the send queue
+	private final Set<EncryptedPacket> pendingPackets = Collections.newSetFromMap(new ConcurrentHashMap<>()); //Packets that have been accepted, but not yet sent or dropped
 	@Nullable private EncryptionManager encryptionManager;
 	
 	@Override
@@ -178,9 +195,14 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 				.appendQueryParameter("fcm_token", fcmToken)
 				.build();
 			
+			//Compressing messages when possible, unless they are encrypted and won't compress
+			Draft draft;
+			if(encryptionManager == null) draft = new Draft_6455(Collections.singletonList(new PerMessageDeflateExtension()));
+			else draft = new Draft_6455();
+			
 			//Starting the connection
 			try {
-				client = new WSClient(new URI(uri.toString()), headers);
+				client = new WSClient(new URI(uri.toString()), draft, headers);
 				client.connect();
 			} catch(URISyntaxException exception) {
 				exception.printStackTrace();
@@ -189,8 +211,11 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 			}
 		});
 		
-		//Initializing the scheduler
-		encryptionScheduler = Schedulers.from(Executors.newSingleThreadExecutor(), true);
+		//Initializing the crypto workers
+		cryptoExecutor = new ThreadPoolExecutor(cryptoThreadCount, cryptoThreadCount, threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		cryptoExecutor.allowCoreThreadTimeOut(true);
+		sendQueue = new OrderedTaskQueue<>(cryptoExecutor, this::sendFrame);
+		receiveQueue = new OrderedTaskQueue<>(cryptoExecutor, this::notifyMessage);
 		
 		//Updating the running state
 		isRunning = true;
@@ -214,9 +239,13 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 		//Calling the listener
 		notifyClose(code);
 		
-		//Cleaning up the scheduler
-		encryptionScheduler.shutdown();
-		encryptionScheduler = null;
+		//Cleaning up the crypto workers
+		sendQueue.close();
+		receiveQueue.close();
+		cryptoExecutor.shutdown();
+		
+		//Failing any packets that will no longer be sent
+		for(EncryptedPacket packet : pendingPackets) failPacket(packet);
 		
 		//Updating the running state
 		isRunning = false;
@@ -239,35 +268,96 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 		boolean packetWantsEncryption = packet.getEncrypt();
 		boolean isEncrypted = packetWantsEncryption && serverSupportsEncryption;
 		
-		Single.fromCallable(() -> {
-			if(isEncrypted) {
-				return encryptionManager.encrypt(packetData);
-			} else {
-				return packetData;
+		byte encryptionValue;
+		if(isEncrypted) encryptionValue = -100; //The content is encrypted
+		else if(serverSupportsEncryption) encryptionValue = -101; //We support encryption, but this packet should not be encrypted
+		else encryptionValue = -102; //We don't support encryption
+		
+		pendingPackets.add(packet);
+		boolean isQueued = sendQueue.submit(() -> {
+			byte[] content;
+			try {
+				if(packet.isPrepared()) {
+					//The data was already encrypted ahead of time
+					content = packetData;
+					ConnectionMetrics.getInstance().recordPacketSent(content.length, packet.getEncryptTime());
+				} else if(isEncrypted) {
+					long encryptStart = ConnectionMetrics.now();
+					content = encryptionManager.encrypt(packetData);
+					ConnectionMetrics.getInstance().recordPacketSent(content.length, ConnectionMetrics.now() - encryptStart);
+				} else {
+					content = packetData;
+					ConnectionMetrics.getInstance().recordPacketSent(content.length, 0);
+				}
+			} catch(GeneralSecurityException | RuntimeException exception) {
+				failPacket(packet);
+				throw exception;
 			}
-		})
-			.subscribeOn(encryptionScheduler)
-			.doOnSuccess((content) -> {
-				//Constructing and sending the message
-				ByteBuffer byteBuffer = ByteBuffer.allocate(1 + (Integer.SIZE / Byte.SIZE) + content.length);
-				byteBuffer.putInt(NHT.nhtClientProxy);
-				
-				if(isEncrypted) byteBuffer.put((byte) -100); //The content is encrypted
-				else if(serverSupportsEncryption) byteBuffer.put((byte) -101); //We support encryption, but this packet should not be encrypted
-				else byteBuffer.put((byte) -102); //We don't support encryption
-				
-				byteBuffer.put(content);
-				
-				//Sending the data
-				client.send(byteBuffer.array());
-			})
-			.doOnError(Throwable::printStackTrace)
-			.onErrorComplete()
-			.subscribe();
+			
+			return new OutgoingPacket(packet, encryptionValue, content);
+		});
+		
+		if(!isQueued) {
+			pendingPackets.remove(packet);
+			return false;
+		}
 		
 		return true;
 	}
 	
+	/**
+	 * Notifies a packet that it has been dropped, if it hasn't already been sent or dropped
+	 */
+	private void failPacket(EncryptedPacket packet) {
+		if(pendingPackets.remove(packet)) packet.notifyFailed();
+	}
+	
+	/**
+	 * Frames and sends a packet, called in order from the send queue
+	 */
+	private void sendFrame(OutgoingPacket outgoingPacket) {
+		//Ignoring packets that have already been dropped
+		if(!pendingPackets.remove(outgoingPacket.packet)) return;
+		
+		//Reusing the frame buffer if the packet fits
+		int frameLength = (Integer.SIZE / Byte.SIZE) + 1 + outgoingPacket.content.length;
+		ByteBuffer byteBuffer;
+		if(frameLength > maxPooledFrameBytes) {
+			byteBuffer = ByteBuffer.allocate(frameLength);
+		} else {
+			if(frameBuffer == null || frameBuffer.capacity() < frameLength) frameBuffer = ByteBuffer.allocate(frameLength);
+			byteBuffer = frameBuffer;
+			byteBuffer.clear();
+		}
+		
+		//Constructing the message
+		byteBuffer.putInt(NHT.nhtClientProxy);
+		byteBuffer.put(outgoingPacket.encryptionValue);
+		byteBuffer.put(outgoingPacket.content);
+		byteBuffer.flip();
+		
+		//Sending the data, which is copied into the client's own frame before send() returns
+		try {
+			client.send(byteBuffer);
+		} catch(WebsocketNotConnectedException exception) {
+			exception.printStackTrace();
+			outgoingPacket.packet.notifyFailed();
+			return;
+		}
+		outgoingPacket.packet.notifySent();
+	}
+	
+	@Override
+	public EncryptedPacket prepare(EncryptedPacket packet) throws GeneralSecurityException {
+		//Only encrypting packets that would be encrypted when sent
+		EncryptionManager encryptionManager = this.encryptionManager;
+		if(!packet.getEncrypt() || packet.isPrepared() || !isServerRequestsEncryption() || encryptionManager == null) return packet;
+		
+		long encryptStart = ConnectionMetrics.now();
+		byte[] encryptedData = encryptionManager.encrypt(packet.getData());
+		return EncryptedPacket.prepared(encryptedData, ConnectionMetrics.now() - encryptStart);
+	}
+	
 	@Override
 	public boolean isUsingFallback() {
 		//AirMessage Connect doesn't use fallback methods
@@ -303,8 +393,8 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 	protected class WSClient extends WebSocketClient {
 		private boolean silentClose = false;
 		
-		WSClient(URI serverUri, Map<String, String> httpHeaders) {
-			super(serverUri, httpHeaders);
+		WSClient(URI serverUri, Draft draft, Map<String, String> httpHeaders) {
+			super(serverUri, draft, httpHeaders);
 			
 			setConnectionLostTimeout(0);
 		}
@@ -363,21 +453,36 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 							Log.w(TAG, "Received unknown encryption value:" + encryptionValue);
 							return;
 						}
-						byte[] data = new byte[bytes.remaining()];
-						bytes.get(data);
-						
-						//Decrypting the data
-						if(isEncrypted && encryptionManager != null) {
-							data = encryptionManager.decrypt(data);
-						}
 						
-						//Handling the message
-						ProxyConnect.this.notifyMessage(new EncryptedPacket(data, isSecure));
+						//Decrypting the data off of the read thread, and handling the message once it is in order
+						//The client gives each message its own buffer, so it can be read after this method returns
+						EncryptionManager encryptionManager = ProxyConnect.this.encryptionManager;
+						receiveQueue.submit(() -> {
+							byte[] data = new byte[bytes.remaining()];
+							bytes.get(data);
+							
+							int packetLength = data.length;
+							long decryptTime = 0;
+							if(isEncrypted && encryptionManager != null) {
+								long decryptStart = ConnectionMetrics.now();
+								try {
+									data = encryptionManager.decrypt(data);
+								} catch(GeneralSecurityException exception) {
+									exception.printStackTrace();
+									CrashlyticsBridge.recordException(exception);
+									return null;
+								}
+								decryptTime = ConnectionMetrics.now() - decryptStart;
+							}
+							ConnectionMetrics.getInstance().recordPacketReceived(packetLength, decryptTime);
+							
+							return new EncryptedPacket(data, isSecure);
+						});
 						
 						break;
 					}
 				}
-			} catch(BufferUnderflowException | GeneralSecurityException exception) {
+			} catch(BufferUnderflowException exception) {
 				exception.printStackTrace();
 				CrashlyticsBridge.recordException(exception);
 			}
@@ -429,6 +534,21 @@ class ProxyConnect extends DataProxy<EncryptedPacket> {
 		}
 	}
 	
+	/**
+	 * A packet that is ready to be framed and sent
+	 */
+	private static class OutgoingPacket {
+		final EncryptedPacket packet;
+		final byte encryptionValue;
+		final byte[] content;
+		
+		OutgoingPacket(EncryptedPacket packet, byte encryptionValue, byte[] content) {
+			this.packet = packet;
+			this.encryptionValue = encryptionValue;
+			this.content = content;
+		}
+	}
+	
 	@ConnectionErrorCode
 	private static int webSocketToLocalCode(int code) {
 		switch(code) {
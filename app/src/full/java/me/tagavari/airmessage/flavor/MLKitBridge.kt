@@ -4,12 +4,9 @@ import android.view.textclassifier.ConversationActions
 import com.google.mlkit.nl.smartreply.SmartReply
 import com.google.mlkit.nl.smartreply.SmartReplySuggestionResult
 import com.google.mlkit.nl.smartreply.TextMessage
-import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.annotations.CheckReturnValue
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.core.SingleEmitter
-import io.reactivex.rxjava3.schedulers.Schedulers
-import me.tagavari.airmessage.data.DatabaseManager
 import me.tagavari.airmessage.messaging.MessageInfo
 
 object MLKitBridge {
@@ -58,12 +55,4 @@ object MLKitBridge {
 	fun generate(messages: List<MessageInfo>): Single<List<String>> {
 		return generateResponsesMLKit(messagesToMLKitMessageList(messages))
 	}
-	
-	@CheckReturnValue
-	@JvmStatic
-	fun generateFromDatabase(conversationID: Long): Single<List<String>> {
-		return Single.fromCallable { DatabaseManager.getInstance().loadConversationForMLKit(conversationID) }
-				.subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread())
-				.flatMap { messages -> generateResponsesMLKit(messages) }
-	}
 }
\ No newline at end of file
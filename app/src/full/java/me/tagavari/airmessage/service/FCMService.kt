@@ -6,6 +6,7 @@ import android.util.Log
 import com.google.firebase.messaging.FirebaseMessagingService
 import com.google.firebase.messaging.RemoteMessage
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
+import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Single
 import me.tagavari.airmessage.activity.Messaging
 import me.tagavari.airmessage.common.Blocks
@@ -23,6 +24,7 @@ import me.tagavari.airmessage.redux.ReduxEventMessaging
 import java.io.IOException
 import java.security.GeneralSecurityException
 import java.util.*
+import java.util.concurrent.TimeUnit
 
 class FCMService : FirebaseMessagingService() {
 	override fun onMessageReceived(remoteMessage: RemoteMessage) {
@@ -79,11 +81,7 @@ class FCMService : FirebaseMessagingService() {
 				val isEncrypted = airUnpacker.unpackBoolean()
 				if(isEncrypted) {
 					try {
-						val password = SharedPreferencesManager.getDirectConnectionPassword(this)
-							?: throw GeneralSecurityException("No password available")
-						
-						val encryptionAES = EncryptionAES(password)
-						encryptionAES.decrypt(airUnpacker.unpackPayload())
+						decryptPayload(airUnpacker.unpackPayload())
 					} catch(exception: GeneralSecurityException) {
 						exception.printStackTrace()
 						
@@ -115,11 +113,7 @@ class FCMService : FirebaseMessagingService() {
 				val isEncrypted = airUnpacker.unpackBoolean()
 				if(isEncrypted) {
 					try {
-						val password = SharedPreferencesManager.getDirectConnectionPassword(this)
-							?: throw GeneralSecurityException("No password available")
-						
-						val encryptionAES = EncryptionAES(password)
-						encryptionAES.decrypt(airUnpacker.unpackPayload())
+						decryptPayload(airUnpacker.unpackPayload())
 					} catch(exception: GeneralSecurityException) {
 						exception.printStackTrace()
 						
@@ -178,14 +172,20 @@ class FCMService : FirebaseMessagingService() {
 			return
 		}
 		
-		//Load the foreground conversations (needs to be done on the main thread)
-		Single.fromCallable { Messaging.getForegroundConversations() }
-			.subscribeOn(AndroidSchedulers.mainThread())
-			.flatMap { foregroundConversations: List<Long> ->
-				MessageUpdateTask.create(this, foregroundConversations, conversationItems!!, false)
-			}
-			.observeOn(AndroidSchedulers.mainThread())
-			.doOnSuccess { response: MessageUpdateTask.Response ->
+		/*
+		 * Handling the payload before returning, since the process may be stopped as soon as this service finishes.
+		 * The database work runs on the database thread, and the results are emitted on the main thread, where notifications are queued.
+		 * Once everything has been emitted, we wait for the queued notifications to be posted.
+		 */
+		try {
+			//Load the foreground conversations (needs to be done on the main thread)
+			val foregroundConversations = Single.fromCallable { Messaging.getForegroundConversations() }
+				.subscribeOn(AndroidSchedulers.mainThread())
+				.blockingGet()
+			
+			//Write messages to disk
+			val response = MessageUpdateTask.write(this, foregroundConversations, conversationItems!!, false).blockingGet()
+			Completable.fromAction {
 				//Emit any generated events
 				for(event in response.events) {
 					ReduxEmitterNetwork.messageUpdateSubject.onNext(event)
@@ -200,11 +200,15 @@ class FCMService : FirebaseMessagingService() {
 						startConnectionService(remoteMessage)
 					}
 				}
-			}.subscribe()
+			}.subscribeOn(AndroidSchedulers.mainThread()).blockingAwait()
+		} catch(exception: RuntimeException) {
+			Log.w(TAG, "Failed to handle FCM messages", exception)
+		}
 		
 		//Write modifiers to disk
-		ModifierUpdateTask.create(this, modifiers!!)
-			.doOnSuccess { result: ModifierUpdateTask.Response ->
+		try {
+			val result = ModifierUpdateTask.write(this, modifiers!!).blockingGet()
+			Completable.fromAction {
 				//Push emitter updates
 				for((messageID, messageState, dateRead) in result.activityStatusUpdates) {
 					ReduxEmitterNetwork.messageUpdateSubject.onNext(
@@ -220,7 +224,19 @@ class FCMService : FirebaseMessagingService() {
 				for((first, second) in result.tapbackRemovals) ReduxEmitterNetwork.messageUpdateSubject.onNext(
 					ReduxEventMessaging.TapbackUpdate(first, second, false)
 				)
-			}.subscribe()
+			}.subscribeOn(AndroidSchedulers.mainThread()).blockingAwait()
+		} catch(exception: RuntimeException) {
+			Log.w(TAG, "Failed to handle FCM modifiers", exception)
+		}
+		
+		//Wait for notifications to be posted, giving up before the service's time runs out
+		try {
+			NotificationHelper.awaitPendingNotifications()
+				.timeout(notificationPostTimeout, TimeUnit.MILLISECONDS)
+				.blockingAwait()
+		} catch(exception: RuntimeException) {
+			Log.w(TAG, "Timed out waiting for FCM notifications to post", exception)
+		}
 	}
 	
 	/**
@@ -254,6 +270,34 @@ class FCMService : FirebaseMessagingService() {
 		ReduxEmitterNetwork.faceTimeIncomingCallerSubject.onNext(Optional.ofNullable(caller))
 	}
 	
+	/**
+	 * Decrypts a push payload with the direct connection password
+	 *
+	 * The password is read from secure storage once and kept for the lifetime of the process.
+	 * If a payload can't be decrypted with the kept password, the password is read again in case it has changed.
+	 */
+	@Throws(GeneralSecurityException::class, IOException::class)
+	private fun decryptPayload(data: ByteArray): ByteArray {
+		//Trying the cached password first
+		val cached = cachedEncryption
+		if(cached != null) {
+			try {
+				return cached.decrypt(data)
+			} catch(exception: GeneralSecurityException) {
+				//The password may have changed since it was cached
+				cachedEncryption = null
+			}
+		}
+		
+		//Reading the password from secure storage
+		val password = SharedPreferencesManager.getDirectConnectionPassword(this)
+			?: throw GeneralSecurityException("No password available")
+		val encryption = cached?.takeIf { it.password == password } ?: EncryptionAES(password)
+		val result = encryption.decrypt(data)
+		cachedEncryption = encryption
+		return result
+	}
+	
 	override fun onDeletedMessages() = Unit
 	override fun onNewToken(token: String) {
 		//Update Connect servers with the new token
@@ -273,5 +317,11 @@ class FCMService : FirebaseMessagingService() {
 	
 	companion object {
 		private val TAG = FCMService::class.java.simpleName
+		
+		//How long to wait for notifications to be posted, within the time that FCM gives this service
+		private const val notificationPostTimeout = 5 * 1000L //5 seconds
+		
+		//The encryption used for the last push, kept so that later pushes don't need to read the password again
+		@Volatile private var cachedEncryption: EncryptionAES? = null
 	}
 }
\ No newline at end of file
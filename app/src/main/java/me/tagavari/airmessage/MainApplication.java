@@ -21,6 +21,7 @@ import androidx.work.WorkManager;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.ref.WeakReference;
@@ -30,6 +31,10 @@ import me.tagavari.airmessage.activity.CrashReport;
 import me.tagavari.airmessage.activity.Preferences;
 import me.tagavari.airmessage.data.DatabaseManager;
 import me.tagavari.airmessage.data.SharedPreferencesManager;
+import me.tagavari.airmessage.data.LinkPreviewCache;
+import me.tagavari.airmessage.data.ShortcutIconCache;
+import me.tagavari.airmessage.data.VideoTranscodeCache;
+import me.tagavari.airmessage.data.SmartReplyCache;
 import me.tagavari.airmessage.data.UserCacheHelper;
 import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 import me.tagavari.airmessage.flavor.MapsBridge;
@@ -44,13 +49,14 @@ import me.tagavari.airmessage.worker.SystemMessageCleanupWorker;
 public class MainApplication extends Application {
 	//Creating the reference values
 	public static final String localBCContactUpdate = "LocalMSG-Main-ContactUpdate";
+	private static final int linkPreviewImageMaxSize = 128 * 1024; //128 kB
 	
 	private final ContentObserver contentObserver = new ContentObserver(null) {
 		@Override
 		public void onChange(boolean selfChange) {
 			super.onChange(selfChange);
 			new Handler(getMainLooper()).post(() -> {
-				userCacheHelper.clearCache();
+				userCacheHelper.invalidate();
 				LocalBroadcastManager.getInstance(MainApplication.this).sendBroadcast(new Intent(localBCContactUpdate));
 			});
 		}
@@ -63,6 +69,10 @@ public class MainApplication extends Application {
 	
 	//Creating the cache helpers
 	private UserCacheHelper userCacheHelper;
+	private LinkPreviewCache linkPreviewCache;
+	private ShortcutIconCache shortcutIconCache;
+	private VideoTranscodeCache videoTranscodeCache;
+	private SmartReplyCache smartReplyCache;
 	
 	//Creating the references
 	private static WeakReference<MainApplication> instanceReference = null;
@@ -108,7 +118,11 @@ public class MainApplication extends Application {
 		}
 		
 		//Creating the cache helpers
-		userCacheHelper = new UserCacheHelper();
+		userCacheHelper = new UserCacheHelper(this, new File(getCacheDir(), "user_cache"));
+		linkPreviewCache = new LinkPreviewCache(this, new File(getCacheDir(), "link_preview"), linkPreviewImageMaxSize);
+		shortcutIconCache = new ShortcutIconCache(new File(getCacheDir(), "shortcut_icon"));
+		videoTranscodeCache = new VideoTranscodeCache(new File(getCacheDir(), "video_transcode"));
+		smartReplyCache = new SmartReplyCache();
 		
 		//Creating the database manager
 		DatabaseManager.createInstance(this);
@@ -179,6 +193,22 @@ public class MainApplication extends Application {
 		return userCacheHelper;
 	}
 	
+	public LinkPreviewCache getLinkPreviewCache() {
+		return linkPreviewCache;
+	}
+	
+	public ShortcutIconCache getShortcutIconCache() {
+		return shortcutIconCache;
+	}
+	
+	public VideoTranscodeCache getVideoTranscodeCache() {
+		return videoTranscodeCache;
+	}
+	
+	public SmartReplyCache getSmartReplyCache() {
+		return smartReplyCache;
+	}
+	
 	public void registerContactsListener() {
 		getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, contentObserver);
 	}
@@ -195,6 +225,10 @@ public class MainApplication extends Application {
 		if(level >= TRIM_MEMORY_BACKGROUND) {
 			//Clearing the caches
 			userCacheHelper.clearCache();
+			linkPreviewCache.clearMemoryCache();
+			shortcutIconCache.clearMemoryCache();
+			smartReplyCache.clearCache();
+			NotificationHelper.clearCaches();
 		}
 	}
 }
\ No newline at end of file
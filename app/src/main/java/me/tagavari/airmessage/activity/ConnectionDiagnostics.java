@@ -0,0 +1,104 @@
+package me.tagavari.airmessage.activity;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.Nullable;
+
+import me.tagavari.airmessage.R;
+import me.tagavari.airmessage.composite.AppCompatCompositeActivity;
+import me.tagavari.airmessage.compositeplugin.PluginQNavigation;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
+
+public class ConnectionDiagnostics extends AppCompatCompositeActivity {
+	//Creating the constants
+	private static final long refreshIntervalMillis = 1000; //1 second
+	
+	//Creating the view values
+	private TextView labelMetrics;
+	
+	//Creating the refresh values
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Runnable refreshRunnable = new Runnable() {
+		@Override
+		public void run() {
+			updateMetrics();
+			handler.postDelayed(this, refreshIntervalMillis);
+		}
+	};
+	
+	public ConnectionDiagnostics() {
+		addPlugin(new PluginQNavigation());
+	}
+	
+	@Override
+	protected void onCreate(@Nullable Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		
+		setContentView(R.layout.activity_connectiondiagnostics);
+		
+		//Enabling up navigation
+		setSupportActionBar(findViewById(R.id.toolbar));
+		getSupportActionBar().setTitle(R.string.screen_connectiondiagnostics);
+		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+		
+		//Getting the views
+		labelMetrics = findViewById(R.id.label_metrics);
+		PluginQNavigation.setViewForInsets(findViewById(R.id.root), findViewById(R.id.scrollview));
+	}
+	
+	@Override
+	protected void onResume() {
+		super.onResume();
+		
+		//Refreshing the metrics while the screen is visible
+		handler.post(refreshRunnable);
+	}
+	
+	@Override
+	protected void onPause() {
+		super.onPause();
+		
+		handler.removeCallbacks(refreshRunnable);
+	}
+	
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.menu_connectiondiagnostics, menu);
+		return true;
+	}
+	
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if(item.getItemId() == android.R.id.home) {
+			//Finishing the activity
+			finish();
+			return true;
+		} else if(item.getItemId() == R.id.action_copy) {
+			//Copying the current snapshot to the clipboard
+			ClipboardManager clipboardManager = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+			clipboardManager.setPrimaryClip(ClipData.newPlainText("Connection metrics", ConnectionMetrics.getInstance().getSnapshot()));
+			Toast.makeText(this, R.string.message_textcopied, Toast.LENGTH_SHORT).show();
+			return true;
+		} else if(item.getItemId() == R.id.action_reset) {
+			//Clearing the recorded metrics
+			ConnectionMetrics.getInstance().reset();
+			updateMetrics();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	private void updateMetrics() {
+		labelMetrics.setText(ConnectionMetrics.getInstance().getSnapshot());
+	}
+}
\ No newline at end of file
@@ -68,6 +68,8 @@ import me.tagavari.airmessage.messaging.viewbinder.VBConversation;
 import me.tagavari.airmessage.messaging.viewholder.VHConversationDetailed;
 import me.tagavari.airmessage.redux.*;
 import me.tagavari.airmessage.task.ConversationActionTask;
+import me.tagavari.airmessage.util.ConversationListDiffer;
+import me.tagavari.airmessage.util.ConversationListStore;
 import me.tagavari.airmessage.util.DisposableViewHolder;
 import me.tagavari.airmessage.util.ReplaceInsertResult;
 import me.tagavari.airmessage.util.ServerUpdateData;
@@ -75,10 +77,9 @@ import me.tagavari.airmessage.util.TransferredConversation;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.function.ObjIntConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class Conversations extends AppCompatCompositeActivity {
@@ -92,12 +93,13 @@ public class Conversations extends AppCompatCompositeActivity {
 	
 	private static final int activityResultPlayServices = 0;
 	
-	private static final int conversationPayloadPreview = 0;
-	private static final int conversationPayloadTitle = 1;
-	private static final int conversationPayloadMember = 2;
-	private static final int conversationPayloadMuted = 3;
-	private static final int conversationPayloadUnread = 4;
-	private static final int conversationPayloadSelection = 5;
+	//Payloads are flags, so changes to a conversation can be combined
+	private static final int conversationPayloadPreview = 1;
+	private static final int conversationPayloadTitle = 1 << 1;
+	private static final int conversationPayloadMember = 1 << 2;
+	private static final int conversationPayloadMuted = 1 << 3;
+	private static final int conversationPayloadUnread = 1 << 4;
+	private static final int conversationPayloadSelection = 1 << 5;
 	
 	private static final long timeUpdateHandlerDelay = 60 * 1000; //1 minute
 	
@@ -171,7 +173,7 @@ public class Conversations extends AppCompatCompositeActivity {
 		@Override
 		public void run() {
 			if(viewModel.stateLD.getValue() == ActivityViewModel.stateReady && conversationRecyclerAdapter != null) {
-				conversationRecyclerAdapter.notifyItemRangeChanged(0, viewModel.conversationList.size(), conversationPayloadPreview);
+				conversationRecyclerAdapter.notifyItemRangeChanged(0, conversationRecyclerAdapter.getItemCount(), conversationPayloadPreview);
 			}
 			
 			//Running again
@@ -438,6 +440,7 @@ public class Conversations extends AppCompatCompositeActivity {
 	protected void onDestroy() {
 		super.onDestroy();
 		
+		if(conversationRecyclerAdapter != null) conversationRecyclerAdapter.cancelUpdates();
 		if(viewMainList != null) viewMainList.setAdapter(null);
 		if(viewSearchList != null) viewSearchList.setAdapter(null);
 	}
@@ -499,7 +502,7 @@ public class Conversations extends AppCompatCompositeActivity {
 				
 				//Updating the display
 				if(viewModel.stateLD.getValue() == ActivityViewModel.stateReady) {
-					conversationRecyclerAdapter.notifyDataSetChanged();
+					conversationRecyclerAdapter.notifyItemRangeChanged(0, conversationRecyclerAdapter.getItemCount(), conversationPayloadTitle | conversationPayloadMember);
 				}
 				
 				//Starting the update listener
@@ -667,6 +670,7 @@ public class Conversations extends AppCompatCompositeActivity {
 		
 		if(state == ActivityViewModel.stateReady) {
 			//Setting the list adapters
+			if(conversationRecyclerAdapter != null) conversationRecyclerAdapter.cancelUpdates();
 			viewMainList.setAdapter(conversationRecyclerAdapter = new ConversationRecyclerAdapter(viewModel.conversationList));
 			viewSearchList.setAdapter(searchRecyclerAdapter = new SearchRecyclerAdapter(viewModel.conversationList));
 			
@@ -816,10 +820,9 @@ public class Conversations extends AppCompatCompositeActivity {
 			
 			//Adding the imported conversations
 			for(ConversationInfo conversationInfo : ((ReduxEventTextImport.Complete) event).getConversations()) {
-				int insertIndex = ConversationHelper.findInsertionIndex(conversationInfo, viewModel.conversationList);
-				viewModel.conversationList.add(insertIndex, conversationInfo);
-				conversationRecyclerAdapter.notifyItemInserted(insertIndex);
+				viewModel.conversationList.insertSorted(conversationInfo);
 			}
+			conversationRecyclerAdapter.updateList();
 		} else {
 			//Updating the state
 			viewModel.setStateTextImport(true);
@@ -879,26 +882,26 @@ public class Conversations extends AppCompatCompositeActivity {
 		} else if(event instanceof ReduxEventMessaging.ConversationUnread) {
 			ReduxEventMessaging.ConversationUnread unreadEvent = (ReduxEventMessaging.ConversationUnread) event;
 			
-			getConversationFromAction(unreadEvent, (conversation, i) -> {
+			getConversationFromAction(unreadEvent, conversation -> {
 				conversation.setUnreadMessageCount(unreadEvent.getUnreadCount());
-				conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadUnread);
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadUnread);
 			});
 			
 			updateMarkAllRead();
 		} else if(event instanceof ReduxEventMessaging.ConversationMember) {
 			ReduxEventMessaging.ConversationMember memberEvent = (ReduxEventMessaging.ConversationMember) event;
 			
-			getConversationFromAction(memberEvent, (conversation, i) -> {
+			getConversationFromAction(memberEvent, conversation -> {
 				if(memberEvent.isJoin()) conversation.getMembers().add(memberEvent.getMember().clone());
 				else conversation.getMembers().removeIf(member -> member.getAddress().equals(memberEvent.getMember().getAddress()));
-				conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadMember);
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadMember);
 			});
 		} else if(event instanceof ReduxEventMessaging.ConversationMute) {
 			ReduxEventMessaging.ConversationMute muteEvent = (ReduxEventMessaging.ConversationMute) event;
 			
-			getConversationFromAction(muteEvent, (conversation, i) -> {
+			getConversationFromAction(muteEvent, conversation -> {
 				conversation.setMuted(muteEvent.isMuted());
-				conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadMuted);
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadMuted);
 			});
 		} else if(event instanceof ReduxEventMessaging.ConversationArchive) {
 			ReduxEventMessaging.ConversationArchive archiveEvent = (ReduxEventMessaging.ConversationArchive) event;
@@ -915,14 +918,12 @@ public class Conversations extends AppCompatCompositeActivity {
 				conversationInfo.setArchived(archiveEvent.isArchived());
 				
 				//Adding the conversation
-				int index = ConversationHelper.findInsertionIndex(conversationInfo, viewModel.conversationList);
-				viewModel.conversationList.add(index, conversationInfo);
-				conversationRecyclerAdapter.notifyItemInserted(index);
+				viewModel.conversationList.insertSorted(conversationInfo);
+				conversationRecyclerAdapter.updateList();
 			} else { //This conversation is to be removed from the list
-				getConversationFromAction(archiveEvent, (conversation, i) -> {
-							viewModel.conversationList.remove(i);
-							conversationRecyclerAdapter.notifyItemRemoved(i);
-						});
+				if(viewModel.conversationList.removeByLocalID(archiveEvent.getConversationInfo().getLocalID()) != null) {
+					conversationRecyclerAdapter.updateList();
+				}
 				
 				//Showing the blank state view if there are no more conversations
 				if(viewModel.conversationList.isEmpty()) {
@@ -933,10 +934,9 @@ public class Conversations extends AppCompatCompositeActivity {
 			ReduxEventMessaging.ConversationDelete deleteEvent = (ReduxEventMessaging.ConversationDelete) event;
 			
 			//Removing the conversation
-			getConversationFromAction(deleteEvent, (conversation, i) -> {
-				viewModel.conversationList.remove(i);
-				conversationRecyclerAdapter.notifyItemRemoved(i);
-			});
+			if(viewModel.conversationList.removeByLocalID(deleteEvent.getConversationInfo().getLocalID()) != null) {
+				conversationRecyclerAdapter.updateList();
+			}
 			
 			//Showing the blank state view if there are no more conversations
 			if(viewModel.conversationList.isEmpty()) {
@@ -946,13 +946,8 @@ public class Conversations extends AppCompatCompositeActivity {
 			ReduxEventMessaging.ConversationServiceHandlerDelete deleteEvent = (ReduxEventMessaging.ConversationServiceHandlerDelete) event;
 			
 			//Removing any matching conversations
-			for(ListIterator<ConversationInfo> iterator = viewModel.conversationList.listIterator(); iterator.hasNext();) {
-				int i = iterator.nextIndex();
-				ConversationInfo conversationInfo = iterator.next();
-				if(conversationInfo.getServiceHandler() != deleteEvent.getServiceHandler()) continue;
-				
-				iterator.remove();
-				conversationRecyclerAdapter.notifyItemRemoved(i);
+			if(viewModel.conversationList.removeIf(conversationInfo -> conversationInfo.getServiceHandler() == deleteEvent.getServiceHandler())) {
+				conversationRecyclerAdapter.updateList();
 			}
 			
 			//Showing the blank state view if there are no more conversations
@@ -962,64 +957,46 @@ public class Conversations extends AppCompatCompositeActivity {
 		} else if(event instanceof ReduxEventMessaging.ConversationTitle) {
 			ReduxEventMessaging.ConversationTitle titleEvent = (ReduxEventMessaging.ConversationTitle) event;
 			
-			getConversationFromAction(titleEvent, (conversation, i) -> {
-						conversation.setTitle(titleEvent.getTitle());
-						conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadTitle);
-					});
+			getConversationFromAction(titleEvent, conversation -> {
+				conversation.setTitle(titleEvent.getTitle());
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadTitle);
+			});
 		} else if(event instanceof ReduxEventMessaging.ConversationDraftMessageUpdate) {
 			ReduxEventMessaging.ConversationDraftMessageUpdate draftMessageEvent = (ReduxEventMessaging.ConversationDraftMessageUpdate) event;
 			
-			getConversationFromAction(draftMessageEvent, (conversation, i) -> {
+			getConversationFromAction(draftMessageEvent, conversation -> {
 				//Updating the conversation
 				conversation.setDraftMessage(draftMessageEvent.getDraftMessage());
 				conversation.setDraftUpdateTime(draftMessageEvent.getUpdateTime());
-				conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadPreview);
 				
 				//Re-sorting the conversation
-				int conversationIndex = viewModel.conversationList.indexOf(conversation);
-				int insertionIndex = ConversationHelper.findReinsertionIndex(conversation, viewModel.conversationList);
-				if(conversationIndex != insertionIndex) {
-					viewModel.conversationList.remove(conversation);
-					viewModel.conversationList.add(insertionIndex, conversation);
-					conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
-				}
+				viewModel.conversationList.reposition(conversation.getLocalID());
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadPreview);
 			});
 		} else if(event instanceof ReduxEventMessaging.ConversationDraftFileUpdate) {
 			ReduxEventMessaging.ConversationDraftFileUpdate draftFileEvent = (ReduxEventMessaging.ConversationDraftFileUpdate) event;
 			
-			getConversationFromAction(draftFileEvent, (conversation, i) -> {
+			getConversationFromAction(draftFileEvent, conversation -> {
 				//Updating the conversation
 				if(draftFileEvent.isAddition()) conversation.getDraftFiles().add(draftFileEvent.getDraft());
 				else conversation.getDraftFiles().removeIf(draft -> draft.getLocalID() == draftFileEvent.getDraft().getLocalID());
 				conversation.setDraftUpdateTime(draftFileEvent.getUpdateTime());
-				conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadPreview);
 				
 				//Re-sorting the conversation
-				int conversationIndex = viewModel.conversationList.indexOf(conversation);
-				int insertionIndex = ConversationHelper.findReinsertionIndex(conversation, viewModel.conversationList);
-				if(conversationIndex != insertionIndex) {
-					viewModel.conversationList.remove(conversation);
-					viewModel.conversationList.add(insertionIndex, conversation);
-					conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
-				}
+				viewModel.conversationList.reposition(conversation.getLocalID());
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadPreview);
 			});
 		} else if(event instanceof ReduxEventMessaging.ConversationDraftFileClear) {
 			ReduxEventMessaging.ConversationDraftFileClear draftClearEvent = (ReduxEventMessaging.ConversationDraftFileClear) event;
 			
-			getConversationFromAction(draftClearEvent, (conversation, i) -> {
+			getConversationFromAction(draftClearEvent, conversation -> {
 				//Updating the conversation
 				conversation.getDraftFiles().clear();
 				conversation.setDraftUpdateTime(System.currentTimeMillis());
-				conversationRecyclerAdapter.notifyItemChanged(i, conversationPayloadPreview);
 				
 				//Re-sorting the conversation
-				int conversationIndex = viewModel.conversationList.indexOf(conversation);
-				int insertionIndex = ConversationHelper.findReinsertionIndex(conversation, viewModel.conversationList);
-				if(conversationIndex != insertionIndex) {
-					viewModel.conversationList.remove(conversation);
-					viewModel.conversationList.add(insertionIndex, conversation);
-					conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
-				}
+				viewModel.conversationList.reposition(conversation.getLocalID());
+				conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadPreview);
 			});
 		}
 		
@@ -1033,11 +1010,9 @@ public class Conversations extends AppCompatCompositeActivity {
 	/**
 	 * Runs the provided consumer if the conversation of the provided action is present
 	 */
-	private void getConversationFromAction(ReduxEventMessaging.ReduxConversationAction action, ObjIntConsumer<ConversationInfo> consumer) {
-		IntStream.range(0, viewModel.conversationList.size())
-				.filter(i -> viewModel.conversationList.get(i).getLocalID() == action.getConversationInfo().getLocalID())
-				.findAny()
-				.ifPresent(i -> consumer.accept(viewModel.conversationList.get(i), i));
+	private void getConversationFromAction(ReduxEventMessaging.ReduxConversationAction action, Consumer<ConversationInfo> consumer) {
+		ConversationInfo conversationInfo = viewModel.conversationList.getByLocalID(action.getConversationInfo().getLocalID());
+		if(conversationInfo != null) consumer.accept(conversationInfo);
 	}
 	
 	/**
@@ -1056,16 +1031,10 @@ public class Conversations extends AppCompatCompositeActivity {
 			conversation.setMessagePreview(conversationPreview);
 			
 			//Re-sorting the conversation
-			int conversationIndex = viewModel.conversationList.indexOf(conversation);
-			int insertionIndex = ConversationHelper.findReinsertionIndex(conversation, viewModel.conversationList);
-			if(conversationIndex != insertionIndex) {
-				viewModel.conversationList.remove(conversation);
-				viewModel.conversationList.add(insertionIndex, conversation);
-				conversationRecyclerAdapter.notifyItemMoved(conversationIndex, insertionIndex);
-			}
+			viewModel.conversationList.reposition(conversation.getLocalID());
 			
 			//Updating the conversation preview
-			conversationRecyclerAdapter.notifyItemChanged(insertionIndex, conversationPayloadPreview);
+			conversationRecyclerAdapter.updateConversation(conversation, conversationPayloadPreview);
 		}
 	}
 	
@@ -1073,11 +1042,9 @@ public class Conversations extends AppCompatCompositeActivity {
 	 * Updates the message list in response to a message update
 	 */
 	private void updateMessageListMessageUpdate(ReduxEventMessaging.Message event) {
-		List<ConversationInfo> conversationList = viewModel.conversationList;
-		
 		for(Pair<ConversationInfo, List<ReplaceInsertResult>> entry : event.getConversationItems()) {
-			//Finding the existing conversation index
-			ConversationInfo conversationInfo = conversationList.stream().filter(conversation -> entry.getFirst().getLocalID() == conversation.getLocalID()).findAny().orElse(null);
+			//Finding the existing conversation
+			ConversationInfo conversationInfo = viewModel.conversationList.getByLocalID(entry.getFirst().getLocalID());
 			if(conversationInfo == null) continue;
 			
 			//Updating the conversation's preview
@@ -1089,7 +1056,7 @@ public class Conversations extends AppCompatCompositeActivity {
 	 * Updates the message list in response to a conversation update
 	 */
 	private void updateMessageListConversationUpdate(ReduxEventMessaging.ConversationUpdate event) {
-		List<ConversationInfo> conversationList = viewModel.conversationList;
+		ConversationListStore conversationList = viewModel.conversationList;
 		
 		//Copying the list of new conversations
 		Map<ConversationInfo, Collection<ConversationItem>> newConversations = new HashMap<>(event.getNewConversations());
@@ -1097,9 +1064,7 @@ public class Conversations extends AppCompatCompositeActivity {
 		//Handling transferred conversations
 		for(TransferredConversation transferredConversation : event.getTransferredConversations()) {
 			//Finding the existing conversation
-			ConversationInfo conversationInfo = conversationList.stream()
-					.filter((conversation) -> conversation.getLocalID() == transferredConversation.getClientConversation().getLocalID())
-					.findAny().orElse(null);
+			ConversationInfo conversationInfo = conversationList.getByLocalID(transferredConversation.getClientConversation().getLocalID());
 			
 			//Converting the merge result to just the target items
 			List<ConversationItem> conversationItems = transferredConversation.getServerConversationItems().stream().map(ReplaceInsertResult::getTargetItem).collect(Collectors.toList());
@@ -1129,13 +1094,10 @@ public class Conversations extends AppCompatCompositeActivity {
 			if(conversationPreview != null) conversationInfo.setMessagePreview(conversationPreview);
 			conversationInfo.setUnreadMessageCount(entry.getValue().size());
 			
-			//Finding the index to insert the conversation
-			int insertionIndex = ConversationHelper.findInsertionIndex(conversationInfo, conversationList);
-			
 			//Inserting the conversation
-			conversationList.add(insertionIndex, conversationInfo);
-			conversationRecyclerAdapter.notifyItemInserted(insertionIndex);
+			conversationList.insertSorted(conversationInfo);
 		}
+		if(!newConversations.isEmpty()) conversationRecyclerAdapter.updateList();
 	}
 	
 	void startActionMode() {
@@ -1319,7 +1281,7 @@ public class Conversations extends AppCompatCompositeActivity {
 		final boolean isViewArchived;
 		
 		//Data
-		List<ConversationInfo> conversationList;
+		ConversationListStore conversationList;
 		
 		//State
 		final MutableLiveData<Integer> stateLD = new MutableLiveData<>(stateIdle);
@@ -1370,7 +1332,14 @@ public class Conversations extends AppCompatCompositeActivity {
 					.observeOn(AndroidSchedulers.mainThread())
 					.subscribe((conversations) -> {
 						//Setting the conversation list
-						conversationList = conversations;
+						conversationList = new ConversationListStore(conversations);
+						
+						//Looking up all members' contact info at once, rather than as each conversation is bound
+						List<String> memberAddresses = new ArrayList<>();
+						for(ConversationInfo conversation : conversations) {
+							for(MemberInfo member : conversation.getMembers()) memberAddresses.add(member.getAddress());
+						}
+						compositeDisposable.add(MainApplication.getInstance().getUserCacheHelper().prefetchUserInfo(getApplication(), memberAddresses).subscribe());
 						
 						//Setting the state
 						stateLD.setValue(stateReady);
@@ -1431,14 +1400,37 @@ public class Conversations extends AppCompatCompositeActivity {
 	
 	private class ConversationRecyclerAdapter extends RecyclerView.Adapter<VHConversationDetailed> {
 		//Creating the list values
-		private final List<ConversationInfo> items;
+		private final ConversationListDiffer differ;
 		
-		ConversationRecyclerAdapter(List<ConversationInfo> items) {
-			//Setting the items
-			this.items = items;
-			
+		ConversationRecyclerAdapter(ConversationListStore items) {
 			//Enabling stable IDs
 			setHasStableIds(true);
+			
+			//Tracking the items
+			differ = new ConversationListDiffer(this, items);
+		}
+		
+		/**
+		 * Schedules an update after conversations have been added, removed, or re-sorted
+		 */
+		void updateList() {
+			differ.notifyListChanged();
+		}
+		
+		/**
+		 * Schedules an update after a conversation has changed
+		 * @param conversation The conversation that changed
+		 * @param payload The payload flags describing the change
+		 */
+		void updateConversation(ConversationInfo conversation, int payload) {
+			differ.notifyItemChanged(conversation.getLocalID(), payload);
+		}
+		
+		/**
+		 * Cancels any scheduled updates
+		 */
+		void cancelUpdates() {
+			differ.cancel();
 		}
 		
 		@Override
@@ -1461,7 +1453,7 @@ public class Conversations extends AppCompatCompositeActivity {
 		@Override
 		public void onBindViewHolder(@NonNull VHConversationDetailed holder, int position) {
 			//Getting the conversation info
-			ConversationInfo conversationInfo = items.get(position);
+			ConversationInfo conversationInfo = differ.getCurrentList().get(position);
 			
 			//Binding the title and icon
 			holder.getCompositeDisposable().addAll(
@@ -1517,30 +1509,30 @@ public class Conversations extends AppCompatCompositeActivity {
 				onBindViewHolder(holder, position);
 			} else {
 				//Getting the conversation info
-				ConversationInfo conversationInfo = items.get(position);
+				ConversationInfo conversationInfo = differ.getCurrentList().get(position);
 				
-				for(Object payload : payloads) {
-					switch((int) payload) {
-						case conversationPayloadPreview:
-							VBConversation.bindPreview(Conversations.this, holder.getLabelMessage(), holder.getLabelStatus(), conversationInfo.getDynamicPreview());
-							holder.getFlagDraft().setVisibility(conversationInfo.getDraftMessage() != null || !conversationInfo.getDraftFiles().isEmpty() ? View.VISIBLE : View.GONE);
-							break;
-						case conversationPayloadTitle:
-							holder.getCompositeDisposable().add(VBConversation.bindTitle(Conversations.this, holder.getConversationTitle(), conversationInfo).subscribe());
-							break;
-						case conversationPayloadMember:
-							holder.getCompositeDisposable().add(VBConversation.bindUsers(Conversations.this, holder.getIconGroup(), conversationInfo).subscribe());
-							break;
-						case conversationPayloadMuted:
-							holder.getFlagMuted().setVisibility(conversationInfo.isMuted() ? View.VISIBLE : View.GONE);
-							break;
-						case conversationPayloadUnread:
-							VBConversation.bindUnreadStatus(Conversations.this, holder.getConversationTitle(), holder.getLabelMessage(), holder.getLabelUnread(), conversationInfo.getUnreadMessageCount());
-							break;
-						case conversationPayloadSelection:
-							VBConversation.bindSelectionIndicator(holder.itemView, holder.getIconGroup(), holder.getSelectionIndicator(), holder.getSelectionHighlight(), viewModel.actionModeSelections.contains(conversationInfo.getLocalID()), true);
-							break;
-					}
+				//Combining the payloads
+				int payloadFlags = 0;
+				for(Object payload : payloads) payloadFlags |= (int) payload;
+				
+				if((payloadFlags & conversationPayloadPreview) != 0) {
+					VBConversation.bindPreview(Conversations.this, holder.getLabelMessage(), holder.getLabelStatus(), conversationInfo.getDynamicPreview());
+					holder.getFlagDraft().setVisibility(conversationInfo.getDraftMessage() != null || !conversationInfo.getDraftFiles().isEmpty() ? View.VISIBLE : View.GONE);
+				}
+				if((payloadFlags & conversationPayloadTitle) != 0) {
+					holder.getCompositeDisposable().add(VBConversation.bindTitle(Conversations.this, holder.getConversationTitle(), conversationInfo).subscribe());
+				}
+				if((payloadFlags & conversationPayloadMember) != 0) {
+					holder.getCompositeDisposable().add(VBConversation.bindUsers(Conversations.this, holder.getIconGroup(), conversationInfo).subscribe());
+				}
+				if((payloadFlags & conversationPayloadMuted) != 0) {
+					holder.getFlagMuted().setVisibility(conversationInfo.isMuted() ? View.VISIBLE : View.GONE);
+				}
+				if((payloadFlags & conversationPayloadUnread) != 0) {
+					VBConversation.bindUnreadStatus(Conversations.this, holder.getConversationTitle(), holder.getLabelMessage(), holder.getLabelUnread(), conversationInfo.getUnreadMessageCount());
+				}
+				if((payloadFlags & conversationPayloadSelection) != 0) {
+					VBConversation.bindSelectionIndicator(holder.itemView, holder.getIconGroup(), holder.getSelectionIndicator(), holder.getSelectionHighlight(), viewModel.actionModeSelections.contains(conversationInfo.getLocalID()), true);
 				}
 			}
 		}
@@ -1565,12 +1557,12 @@ public class Conversations extends AppCompatCompositeActivity {
 		
 		@Override
 		public int getItemCount() {
-			return items.size();
+			return differ.getCurrentList().size();
 		}
 		
 		@Override
 		public long getItemId(int position) {
-			return items.get(position).getLocalID();
+			return differ.getCurrentList().get(position).getLocalID();
 		}
 	}
 	
@@ -1834,9 +1826,9 @@ public class Conversations extends AppCompatCompositeActivity {
 			
 			//Updating the list
 			for(long selectedItemID : selectedItems) {
-				ConversationInfo selectedItem = viewModel.conversationList.stream().filter(item -> item.getLocalID() == selectedItemID).findAny().orElse(null);
+				ConversationInfo selectedItem = viewModel.conversationList.getByLocalID(selectedItemID);
 				if(selectedItem != null) {
-					conversationRecyclerAdapter.notifyItemChanged(viewModel.conversationList.indexOf(selectedItem), conversationPayloadSelection);
+					conversationRecyclerAdapter.updateConversation(selectedItem, conversationPayloadSelection);
 				}
 			}
 			
@@ -1859,10 +1851,9 @@ public class Conversations extends AppCompatCompositeActivity {
 		@Override
 		public boolean onActionItemClicked(ActionMode actionMode, MenuItem menuItem) {
 			//Collecting the selected conversations
-			Stream<ConversationInfo> selectionStream = viewModel.actionModeSelections.stream().map(conversationID ->
-					viewModel.conversationList.stream().filter(conversation -> conversation.getLocalID() == conversationID).findAny())
-					.filter(Optional::isPresent)
-					.map(Optional::get);
+			Stream<ConversationInfo> selectionStream = viewModel.actionModeSelections.stream()
+					.map(viewModel.conversationList::getByLocalID)
+					.filter(Objects::nonNull);
 			
 			//Mute conversations
 			if(menuItem.getItemId() == R.id.action_mute) {
@@ -1961,7 +1952,7 @@ public class Conversations extends AppCompatCompositeActivity {
 			else viewModel.actionModeSelections.remove(item.getLocalID());
 			
 			//Updating the view
-			conversationRecyclerAdapter.notifyItemChanged(viewModel.conversationList.indexOf(item), conversationPayloadSelection);
+			conversationRecyclerAdapter.updateConversation(item, conversationPayloadSelection);
 			
 			//Updating the selected conversations
 			int value = newSelectionState ? 1 : -1;
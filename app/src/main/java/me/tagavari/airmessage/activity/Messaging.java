@@ -95,12 +95,15 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.LinearSmoothScroller;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.engine.GlideException;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
@@ -113,14 +116,10 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.progressindicator.CircularProgressIndicator;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -190,12 +189,11 @@ import me.tagavari.airmessage.helper.ContactHelper;
 import me.tagavari.airmessage.helper.ConversationBuildHelper;
 import me.tagavari.airmessage.helper.ConversationColorHelper;
 import me.tagavari.airmessage.helper.ConversationHelper;
-import me.tagavari.airmessage.helper.DataCompressionHelper;
-import me.tagavari.airmessage.helper.DataStreamHelper;
 import me.tagavari.airmessage.helper.ErrorDetailsHelper;
 import me.tagavari.airmessage.helper.ErrorLanguageHelper;
 import me.tagavari.airmessage.helper.ExternalStorageHelper;
 import me.tagavari.airmessage.helper.FileHelper;
+import me.tagavari.airmessage.helper.ImageStorageHelper;
 import me.tagavari.airmessage.helper.IntentHelper;
 import me.tagavari.airmessage.helper.LanguageHelper;
 import me.tagavari.airmessage.helper.MMSSMSHelper;
@@ -257,6 +255,7 @@ import me.tagavari.airmessage.task.MessageActionTask;
 import me.tagavari.airmessage.task.RichPreviewTask;
 import me.tagavari.airmessage.util.AnimatingInsetsCallback;
 import me.tagavari.airmessage.util.AudioPlaybackManager;
+import me.tagavari.airmessage.util.ConversationItemStore;
 import me.tagavari.airmessage.util.CustomTabsLinkTransformationMethod;
 import me.tagavari.airmessage.util.DisposableViewHolder;
 import me.tagavari.airmessage.util.ReplaceInsertResult;
@@ -291,8 +290,6 @@ public class Messaging extends AppCompatCompositeActivity {
 	private static final long confettiDuration = 1000;
 	//private static final float disabledAlpha = 0.38F
 	
-	private static final int previewImageMaxSize = 128 * 1024; //128 kB
-	
 	private static final String keyFragmentAttachments = "fragmentAttachments";
 	
 	//Creating the static values
@@ -336,6 +333,29 @@ public class Messaging extends AppCompatCompositeActivity {
 	
 	private MessageListRecyclerAdapter messageListAdapter;
 	
+	//Forwards changes to the conversation item list to the message list adapter
+	private final ListUpdateCallback messageListUpdateCallback = new ListUpdateCallback() {
+		@Override
+		public void onInserted(int position, int count) {
+			messageListAdapter.notifyItemRangeInserted(messageListAdapter.mapRecyclerIndex(position), count);
+		}
+		
+		@Override
+		public void onRemoved(int position, int count) {
+			messageListAdapter.notifyItemRangeRemoved(messageListAdapter.mapRecyclerIndex(position), count);
+		}
+		
+		@Override
+		public void onMoved(int fromPosition, int toPosition) {
+			messageListAdapter.notifyItemMoved(messageListAdapter.mapRecyclerIndex(fromPosition), messageListAdapter.mapRecyclerIndex(toPosition));
+		}
+		
+		@Override
+		public void onChanged(int position, int count, @Nullable Object payload) {
+			messageListAdapter.notifyItemRangeChanged(messageListAdapter.mapRecyclerIndex(position), count, payload);
+		}
+	};
+	
 	//Creating the fragment values
 	private FragmentMessagingAttachments fragmentAttachments;
 	
@@ -718,6 +738,7 @@ public class Messaging extends AppCompatCompositeActivity {
 		pluginRXD.activity().add(viewModel.subjectQueueListAdd.subscribe(this::updateQueueAdded));
 		pluginRXD.activity().add(viewModel.subjectQueueListRemove.subscribe(this::updateQueueRemoved));
 		pluginRXD.activity().add(viewModel.subjectQueueListUpdate.subscribe(this::updateQueueUpdated));
+		pluginRXD.activity().add(viewModel.subjectQueueListProgress.subscribe(this::updateQueueProgress));
 		
 		messageInputField.setOnTouchListener((View view, MotionEvent event) -> {
 			closeAttachmentsPanel(true);
@@ -946,65 +967,51 @@ public class Messaging extends AppCompatCompositeActivity {
 			});
 		} else if(event instanceof ReduxEventMessaging.MessageState) {
 			ReduxEventMessaging.MessageState eventState = (ReduxEventMessaging.MessageState) event;
-			IntStream.range(0, viewModel.conversationItemList.size())
-					.filter(i -> viewModel.conversationItemList.get(i).getLocalID() == eventState.getMessageID())
-					.findAny()
-					.ifPresent(i -> {
-						//Updating the message
-						MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(i);
-						messageInfo.setMessageState(eventState.getStateCode());
-						messageInfo.setDateRead(eventState.getDateRead());
-						
-						//Trying to set conversation targets
-						MessageTargetUpdate update = null;
-						if(messageInfo.getMessageState() == MessageState.delivered) {
-							update = viewModel.tryApplyDeliveredTarget(messageInfo);
-						} else if(messageInfo.getMessageState() == MessageState.read) {
-							update = viewModel.tryApplyReadTarget(messageInfo);
-						}
-						
-						//Updating the adapter
-						messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(i), MessageListPayload.state);
-						if(update != null) {
-							messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(update.getNewMessage())), MessageListPayload.status);
-							for(MessageInfo changedMessage : update.getOldMessages()) {
-								messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(changedMessage)), MessageListPayload.status);
-							}
-						}
-					});
+			int messageIndex = viewModel.conversationItemList.indexOfLocalID(eventState.getMessageID());
+			if(messageIndex == -1) return;
+			
+			//Updating the message
+			MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(messageIndex);
+			messageInfo.setMessageState(eventState.getStateCode());
+			messageInfo.setDateRead(eventState.getDateRead());
+			
+			//Trying to set conversation targets
+			MessageTargetUpdate update = null;
+			if(messageInfo.getMessageState() == MessageState.delivered) {
+				update = viewModel.tryApplyDeliveredTarget(messageInfo);
+			} else if(messageInfo.getMessageState() == MessageState.read) {
+				update = viewModel.tryApplyReadTarget(messageInfo);
+			}
+			
+			//Updating the adapter
+			messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(messageIndex), MessageListPayload.state);
+			if(update != null) {
+				messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(update.getNewMessage())), MessageListPayload.status);
+				for(MessageInfo changedMessage : update.getOldMessages()) {
+					messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(changedMessage)), MessageListPayload.status);
+				}
+			}
 		} else if(event instanceof ReduxEventMessaging.MessageError) {
 			ReduxEventMessaging.MessageError eventError = (ReduxEventMessaging.MessageError) event;
-			IntStream.range(0, viewModel.conversationItemList.size())
-					.filter(i -> viewModel.conversationItemList.get(i).getLocalID() == eventError.getMessageInfo().getLocalID())
-					.findAny()
-					.ifPresent(i -> {
-						//Updating the message
-						MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(i);
-						messageInfo.setErrorCode(eventError.getErrorCode());
-						messageInfo.setErrorDetailsAvailable(eventError.getErrorDetails() != null);
-						messageInfo.setErrorDetails(eventError.getErrorDetails());
-						
-						//Updating the adapter
-						messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(i), MessageListPayload.state);
-					});
+			int messageIndex = viewModel.conversationItemList.indexOfLocalID(eventError.getMessageInfo().getLocalID());
+			if(messageIndex == -1) return;
+			
+			//Updating the message
+			MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(messageIndex);
+			messageInfo.setErrorCode(eventError.getErrorCode());
+			messageInfo.setErrorDetailsAvailable(eventError.getErrorDetails() != null);
+			messageInfo.setErrorDetails(eventError.getErrorDetails());
+			
+			//Updating the adapter
+			messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(messageIndex), MessageListPayload.state);
 		} else if(event instanceof ReduxEventMessaging.MessageDelete) {
-			IntStream.range(0, viewModel.conversationItemList.size())
-					.filter(i -> viewModel.conversationItemList.get(i).getLocalID() == ((ReduxEventMessaging.MessageDelete) event).getMessageInfo().getLocalID())
-					.findAny()
-					.ifPresent(i -> {
-						//Removing the message
-						viewModel.conversationItemList.remove(i);
-						
-						//Updating the adapter
-						messageListAdapter.notifyItemRemoved(messageListAdapter.mapRecyclerIndex(i));
-					});
+			//Removing the message and updating the adapter
+			viewModel.conversationItemList.removeByLocalID(((ReduxEventMessaging.MessageDelete) event).getMessageInfo().getLocalID(), messageListUpdateCallback);
 		} else if(event instanceof ReduxEventMessaging.AttachmentFile) {
 			ReduxEventMessaging.AttachmentFile attachmentEvent = (ReduxEventMessaging.AttachmentFile) event;
 			
 			//Finding the message
-			int messageIndex = IntStream.range(0, viewModel.conversationItemList.size())
-					.filter(i -> viewModel.conversationItemList.get(i).getLocalID() == attachmentEvent.getMessageID())
-					.findAny().orElse(-1);
+			int messageIndex = viewModel.conversationItemList.indexOfLocalID(attachmentEvent.getMessageID());
 			if(messageIndex == -1) return;
 			MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(messageIndex);
 			
@@ -1026,9 +1033,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			ReduxEventMessaging.TapbackUpdate tapbackEvent = (ReduxEventMessaging.TapbackUpdate) event;
 			
 			//Finding the message
-			int messageIndex = IntStream.range(0, viewModel.conversationItemList.size())
-					.filter(i -> viewModel.conversationItemList.get(i).getLocalID() == tapbackEvent.getMetadata().getMessageID())
-					.findAny().orElse(-1);
+			int messageIndex = viewModel.conversationItemList.indexOfLocalID(tapbackEvent.getMetadata().getMessageID());
 			if(messageIndex == -1) return;
 			MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(messageIndex);
 			
@@ -1055,9 +1060,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			ReduxEventMessaging.StickerAdd stickerEvent = (ReduxEventMessaging.StickerAdd) event;
 			
 			//Finding the message
-			int messageIndex = IntStream.range(0, viewModel.conversationItemList.size())
-					.filter(i -> viewModel.conversationItemList.get(i).getLocalID() == stickerEvent.getMetadata().getMessageID())
-					.findAny().orElse(-1);
+			int messageIndex = viewModel.conversationItemList.indexOfLocalID(stickerEvent.getMetadata().getMessageID());
 			if(messageIndex == -1) return;
 			MessageInfo messageInfo = (MessageInfo) viewModel.conversationItemList.get(messageIndex);
 			
@@ -1137,22 +1140,14 @@ public class Messaging extends AppCompatCompositeActivity {
 		
 		boolean wasScrolledToBottom = messageListAdapter.isScrolledToBottom();
 		
+		//Coalescing adjacent changes into range updates
+		BatchingListUpdateCallback updateCallback = new BatchingListUpdateCallback(messageListUpdateCallback);
+		
 		for(ReplaceInsertResult result : replaceInsertResults) {
 			//Adding new items
 			for(ConversationItem newItem : result.getNewItems()) {
-				int insertIndex = 0;
-				for(ListIterator<ConversationItem> listIterator = viewModel.conversationItemList.listIterator(viewModel.conversationItemList.size()); listIterator.hasPrevious();) {
-					int i = listIterator.previousIndex();
-					ConversationItem item = listIterator.previous();
-					if(ConversationHelper.conversationItemComparator.compare(newItem, item) > 0) {
-						insertIndex = i + 1;
-						break;
-					}
-				}
-				
-				viewModel.conversationItemList.add(insertIndex, newItem);
-				messageListAdapter.notifyItemInserted(messageListAdapter.mapRecyclerIndex(insertIndex));
-				if(insertIndex > 0 && viewModel.conversationItemList.get(insertIndex - 1).getItemType() == ConversationItemType.message) messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(insertIndex - 1), MessageListPayload.flow);
+				int insertIndex = viewModel.conversationItemList.insertSorted(newItem, ConversationHelper.conversationItemComparator, updateCallback);
+				if(insertIndex > 0 && viewModel.conversationItemList.get(insertIndex - 1).getItemType() == ConversationItemType.message) updateCallback.onChanged(insertIndex - 1, 1, MessageListPayload.flow);
 			}
 			
 			messageTargetCandidates.addAll(result.getNewItems().stream().filter(item -> item.getItemType() == ConversationItemType.message).map(item -> (MessageInfo) item).collect(Collectors.toList()));
@@ -1175,7 +1170,7 @@ public class Messaging extends AppCompatCompositeActivity {
 					localItem.getAttachments().clear();
 					localItem.getAttachments().addAll(updatedItem.getAttachments());
 					
-					messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(localItem)), MessageListPayload.attachmentRebuild);
+					updateCallback.onChanged(viewModel.conversationItemList.indexOf(localItem), 1, MessageListPayload.attachmentRebuild);
 				}
 				
 				localItem.setDate(updatedItem.getDate());
@@ -1184,7 +1179,7 @@ public class Messaging extends AppCompatCompositeActivity {
 				localItem.setMessageState(updatedItem.getMessageState());
 				localItem.setErrorDetailsAvailable(updatedItem.isErrorDetailsAvailable());
 				localItem.setDateRead(updatedItem.getDateRead());
-				messageListAdapter.notifyItemChanged(messageListAdapter.mapRecyclerIndex(viewModel.conversationItemList.indexOf(localItem)), MessageListPayload.state);
+				updateCallback.onChanged(viewModel.conversationItemList.indexOf(localItem), 1, MessageListPayload.state);
 			}
 			
 			//Adding new ghost items
@@ -1192,6 +1187,7 @@ public class Messaging extends AppCompatCompositeActivity {
 					conversationItem instanceof MessageInfo && ((MessageInfo) conversationItem).getMessageState() == MessageState.ghost)
 					.map(conversationItem -> (MessageInfo) conversationItem).collect(Collectors.toList()));
 		}
+		updateCallback.dispatchLastEvent();
 		
 		Collections.sort(messageTargetCandidates, (message1, message2) -> -Long.compare(message1.getDate(), message2.getDate())); //Sort newest to oldest
 		
@@ -1447,6 +1443,15 @@ public class Messaging extends AppCompatCompositeActivity {
 		listAttachmentQueue.getAdapter().notifyItemChanged(pair.getFirst(), AttachmentsQueueRecyclerAdapter.payloadUpdateState);
 	}
 	
+	/**
+	 * Updates the view when a queue file's preparation progress changes
+	 * @param pair The index and the updated item
+	 */
+	private void updateQueueProgress(Pair<Integer, FileQueued> pair) {
+		//Updating the adapter
+		listAttachmentQueue.getAdapter().notifyItemChanged(pair.getFirst(), AttachmentsQueueRecyclerAdapter.payloadUpdateProgress);
+	}
+	
 	/**
 	 * Updates the view when all queued files are removed
 	 * @param files The queued files that have been removed
@@ -3150,22 +3155,10 @@ public class Messaging extends AppCompatCompositeActivity {
 						//Fetching the data
 						String finalTargetURL = targetURL;
 						viewHolder.getCompositeDisposable().add(
-								viewModel.taskLinkPreview(component.getLocalID(), targetURL)
+								MainApplication.getInstance().getLinkPreviewCache().getPreview(targetURL)
 										.observeOn(Schedulers.single())
-										.map(metadata -> {
-											//Downloading the preview image
-											byte[] imageBytes = null;
-											if(metadata.getImageURL() != null) {
-												try(BufferedInputStream in = new BufferedInputStream(new URL(metadata.getImageURL()).openStream());
-													ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-													DataStreamHelper.copyStream(in, out);
-													imageBytes = out.toByteArray();
-													if(imageBytes.length > previewImageMaxSize) imageBytes = DataCompressionHelper.compressBitmap(imageBytes, "image/webp", previewImageMaxSize);
-												} catch(IOException exception) {
-													exception.printStackTrace();
-													//Not returning, as the preview should simply be displayed without an image if the image failed to download
-												}
-											}
+										.map(linkPreview -> {
+											RichPreviewTask.Metadata metadata = linkPreview.getMetadata();
 											
 											//Creating the message preview
 											String caption;
@@ -3181,8 +3174,14 @@ public class Messaging extends AppCompatCompositeActivity {
 												}
 											}
 											
+											//Generating the thumbnail of the image, which the cache has already stored
+											ImageStorageHelper.StoredImage storedImage = linkPreview.getImage();
+											if(storedImage != null) ImageStorageHelper.createPreviewThumbnail(getApplicationContext(), storedImage.getHash());
+											
 											//Creating the message preview
-											MessagePreviewInfo messagePreview = new MessagePreviewInfo(MessagePreviewType.link, component.getLocalID(), imageBytes, finalTargetURL, metadata.getTitle(), metadata.getDescription(), caption);
+											MessagePreviewInfo messagePreview = new MessagePreviewInfo(MessagePreviewType.link, component.getLocalID(),
+													storedImage == null ? null : storedImage.getHash(), storedImage == null ? 0 : storedImage.getWidth(), storedImage == null ? 0 : storedImage.getHeight(),
+													finalTargetURL, metadata.getTitle(), metadata.getDescription(), caption);
 											
 											//Writing the metadata to disk
 											DatabaseManager.getInstance().setMessagePreviewData(component.getLocalID(), messagePreview);
@@ -3601,12 +3600,19 @@ public class Messaging extends AppCompatCompositeActivity {
 			componentViewHolder.messagePreviewViewHolder = viewHolder;
 			
 			//Loading the image (or disabling it if there is none)
-			byte[] data = preview.getData();
-			if(data == null) {
+			String imageHash = preview.getImageHash();
+			if(imageHash == null) {
 				viewHolder.getImageHeader().setVisibility(View.GONE);
 			} else {
 				viewHolder.getImageHeader().setVisibility(View.VISIBLE);
-				if(!isDestroyed()) Glide.with(Messaging.this).load(data).into(viewHolder.getImageHeader());
+				
+				//Loading the thumbnail, falling back to the full image if the thumbnail is missing
+				if(!isDestroyed()) {
+					RequestManager requestManager = Glide.with(Messaging.this);
+					requestManager.load(ImageStorageHelper.getPreviewThumbnailFile(Messaging.this, imageHash))
+							.error(requestManager.load(ImageStorageHelper.getPreviewImageFile(Messaging.this, imageHash)))
+							.into(viewHolder.getImageHeader());
+				}
 			}
 			
 			//Setting the title
@@ -4329,6 +4335,7 @@ public class Messaging extends AppCompatCompositeActivity {
 	private class AttachmentsQueueRecyclerAdapter extends RecyclerView.Adapter<VHAttachmentQueued> {
 		//Creating the reference values
 		static final int payloadUpdateState = 1;
+		static final int payloadUpdateProgress = 2;
 		
 		//Creating the list value
 		private final List<FileQueued> itemList;
@@ -4378,7 +4385,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			}
 			
 			container.addView(contentView);
-			return new VHAttachmentQueued(layout, layout.findViewById(R.id.button_remove), container, content);
+			return new VHAttachmentQueued(layout, layout.findViewById(R.id.button_remove), container, layout.findViewById(R.id.progress_prepare), content);
 		}
 		
 		@Override
@@ -4440,6 +4447,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			
 			//Setting the view state
 			holder.setAppearanceState(!fileInfo.getFile().isA(), false);
+			holder.setProgress(fileInfo.getFile().isA() ? fileInfo.getPrepareProgress() : -1);
 		}
 		
 		@Override
@@ -4460,6 +4468,7 @@ public class Messaging extends AppCompatCompositeActivity {
 						
 						//Setting the view state
 						holder.setAppearanceState(!fileInfo.getFile().isA(), false);
+						holder.setProgress(fileInfo.getFile().isA() ? fileInfo.getPrepareProgress() : -1);
 						
 						//Refreshing metadata if the item is an audio file
 						if(getItemViewType(position) == AttachmentType.audio && fileInfo.getFile().isB()) {
@@ -4473,6 +4482,13 @@ public class Messaging extends AppCompatCompositeActivity {
 							);
 						}
 						
+						break;
+					}
+					case payloadUpdateProgress: {
+						//Updating the progress
+						FileQueued fileInfo = itemList.get(position);
+						holder.setProgress(fileInfo.getFile().isA() ? fileInfo.getPrepareProgress() : -1);
+						
 						break;
 					}
 				}
@@ -4556,6 +4572,7 @@ public class Messaging extends AppCompatCompositeActivity {
 		final PublishSubject<Pair<Integer, FileQueued>> subjectQueueListAdd = PublishSubject.create(); //When a queued file is added
 		final PublishSubject<Pair<Integer, FileQueued>> subjectQueueListRemove = PublishSubject.create(); //When a queued file is removed
 		final PublishSubject<Pair<Integer, FileQueued>> subjectQueueListUpdate = PublishSubject.create(); //When a queued file is prepared
+		final PublishSubject<Pair<Integer, FileQueued>> subjectQueueListProgress = PublishSubject.create(); //When a queued file's preparation progresses
 		
 		boolean isAttachmentsPanelOpen = false;
 		
@@ -4573,7 +4590,7 @@ public class Messaging extends AppCompatCompositeActivity {
 		private String[] conversationParticipantsTarget; //Used for fetching conversation
 		private final long conversationIDTarget; //Used for fetching conversation
 		ConversationInfo conversationInfo; //The actual loaded conversation
-		List<ConversationItem> conversationItemList; //The conversation's messages
+		ConversationItemStore conversationItemList; //The conversation's messages
 		List<MessageInfo> conversationGhostList; //The conversation's ghost messages
 		DatabaseManager.ConversationLazyLoader conversationLazyLoader; //The lazy loader utility for conversation items
 		//The latest read message and latest delivered message
@@ -4619,17 +4636,19 @@ public class Messaging extends AppCompatCompositeActivity {
 				}
 			});
 		}
-		final TaskManagerLong<RichPreviewTask.Metadata> taskManagerLinkPreview = new TaskManagerLong<>();
-		Single<RichPreviewTask.Metadata> taskLinkPreview(long id, String url) {
-			return taskManagerLinkPreview.run(id, () -> RichPreviewTask.fetchMetadata(url));
-		}
 		final TaskManagerLong<MessagePreviewInfo> taskManagerMessagePreview = new TaskManagerLong<>();
 		Single<MessagePreviewInfo> taskMessagePreview(long id) {
 			return taskManagerMessagePreview.run(id, () -> Single.fromCallable(() -> {
 				MessagePreviewInfo messagePreview = DatabaseManager.getInstance().loadMessagePreview(id);
 				if(messagePreview != null) return messagePreview;
 				else throw new RuntimeException("No preview with ID " + id + " found");
-			}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread()));
+			}).subscribeOn(Schedulers.single())
+					.observeOn(Schedulers.io())
+					.doOnSuccess(messagePreview -> {
+						//Generating the thumbnail if it is missing, such as for previews from before thumbnails were stored
+						if(messagePreview.getImageHash() != null) ImageStorageHelper.createPreviewThumbnail(getApplication(), messagePreview.getImageHash());
+					})
+					.observeOn(AndroidSchedulers.mainThread()));
 		}
 		final TaskManager<FileDisplayMetadata> taskManagerMetadata = new TaskManager<>();
 		
@@ -4787,7 +4806,7 @@ public class Messaging extends AppCompatCompositeActivity {
 						}
 						
 						//Creating the lists
-						conversationItemList = result;
+						conversationItemList = new ConversationItemStore(result);
 						conversationGhostList = conversationItemList.stream().filter(conversationItem ->
 								conversationItem instanceof MessageInfo && ((MessageInfo) conversationItem).getMessageState() == MessageState.ghost)
 								.map(conversationItem -> (MessageInfo) conversationItem).collect(Collectors.toList());
@@ -5013,7 +5032,7 @@ public class Messaging extends AppCompatCompositeActivity {
 			
 			//Requesting smart reply
 			compositeDisposable.add(
-					conversationActionsDisposable = SmartReplyHelper.generateResponses(getApplication(), messageHistory)
+					conversationActionsDisposable = MainApplication.getInstance().getSmartReplyCache().getSuggestions(getApplication(), conversationInfo.getLocalID(), messageHistory)
 							.subscribe(responses -> {
 								if(responses.isEmpty()) conversationActionsLD.setValue(null);
 								else conversationActionsLD.setValue(responses);
@@ -5069,7 +5088,13 @@ public class Messaging extends AppCompatCompositeActivity {
 			
 			//Preparing the attachment
 			fileQueued.setPrepareDisposable(
-					DraftActionTask.prepareLinkedToDraft(getApplication(), file, conversationInfo.getLocalID(), getFileCompressionTarget(), file.getFile().isA(), updateTime)
+					DraftActionTask.prepareLinkedToDraft(getApplication(), file, conversationInfo.getLocalID(), getFileCompressionTarget(), file.getFile().isA(), updateTime, progress -> {
+						//Updating the file's progress
+						int currentIndex = queueList.indexOf(fileQueued);
+						if(currentIndex == -1) return;
+						fileQueued.setPrepareProgress((float) progress);
+						subjectQueueListProgress.onNext(new Pair<>(currentIndex, fileQueued));
+					})
 							.flatMapMaybe(draft -> {
 								//Checking if this file is to be deleted
 								if(fileQueued.shouldRemove()) {
@@ -5244,6 +5269,7 @@ public class Messaging extends AppCompatCompositeActivity {
 	private static class FileQueued {
 		private Union<FileLinked, FileDraft> file;
 		private Disposable disposablePrepare;
+		private float prepareProgress = -1;
 		private boolean shouldRemove = false;
 		@AttachmentType private final int attachmentType;
 		private final int referenceID;
@@ -5315,6 +5341,20 @@ public class Messaging extends AppCompatCompositeActivity {
 			disposablePrepare = disposable;
 		}
 		
+		/**
+		 * Gets the progress of preparing this file from 0 to 1, or -1 if unknown
+		 */
+		public float getPrepareProgress() {
+			return prepareProgress;
+		}
+		
+		/**
+		 * Sets the progress of preparing this file
+		 */
+		public void setPrepareProgress(float prepareProgress) {
+			this.prepareProgress = prepareProgress;
+		}
+		
 		/**
 		 * Replaces the linked file with a draft file
 		 */
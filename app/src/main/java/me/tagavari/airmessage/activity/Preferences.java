@@ -1097,6 +1097,10 @@ public class Preferences extends AppCompatCompositeActivity implements Preferenc
 		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_features_messagesounds_key), true);
 	}
 	
+	public static boolean getPreferenceUploadSmallFilesFirst(Context context) {
+		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_features_uploadsmallfirst_key), false);
+	}
+	
 	public static boolean getPreferenceAutoDownloadAttachments(Context context) {
 		return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(context.getResources().getString(R.string.preference_storage_autodownload_key), true);
 	}
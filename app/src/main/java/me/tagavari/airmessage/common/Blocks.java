@@ -160,10 +160,10 @@ public class Blocks {
 		public final String fileGuid;
 		public final String sender;
 		public final long date;
-		public final byte[] data;
+		public final byte[] compressedData; //The deflate-compressed sticker image
 		public final String type;
 		
-		public StickerModifierInfo(String message, int messageIndex, String fileGuid, String sender, long date, byte[] data, String type) {
+		public StickerModifierInfo(String message, int messageIndex, String fileGuid, String sender, long date, byte[] compressedData, String type) {
 			//Calling the super constructor
 			super(message);
 			
@@ -172,7 +172,7 @@ public class Blocks {
 			this.fileGuid = fileGuid;
 			this.sender = sender;
 			this.date = date;
-			this.data = data;
+			this.compressedData = compressedData;
 			this.type = type;
 		}
 	}
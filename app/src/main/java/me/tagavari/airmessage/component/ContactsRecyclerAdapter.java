@@ -25,7 +25,6 @@ import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
-import io.reactivex.rxjava3.disposables.Disposable;
 import me.tagavari.airmessage.R;
 import me.tagavari.airmessage.activity.NewMessage;
 import me.tagavari.airmessage.constants.ColorConstants;
@@ -34,6 +33,7 @@ import me.tagavari.airmessage.helper.ContactHelper;
 import me.tagavari.airmessage.task.ContactsTask;
 import me.tagavari.airmessage.util.AddressInfo;
 import me.tagavari.airmessage.util.ContactInfo;
+import me.tagavari.airmessage.util.ContactSearchIndex;
 
 public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     //Creating the type constants
@@ -47,9 +47,7 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
     //Creating the list values
     private final List<ContactInfo> originalItems;
     private final List<ContactInfo> filteredItems = new ArrayList<>();
-
-    //Creating the task values
-    private Disposable searchDisposable;
+    private final ContactSearchIndex searchIndex;
 
     //Creating the other values
 		/* private final boolean serviceSelectorHeaderEnabled;
@@ -70,6 +68,7 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
         this.context = context;
         originalItems = items;
         filteredItems.addAll(items);
+        searchIndex = new ContactSearchIndex(items);
         this.selectionCallback = selectionCallback;
     }
 
@@ -85,6 +84,9 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
      * Notifies the addition of the item at the specified index
      */
     public void onItemAdded(int additionIndex) {
+        //Indexing the item
+        if(additionIndex == searchIndex.size()) searchIndex.add(originalItems.get(additionIndex));
+
         //If we're currently searching, ignore the item for now
         if(lastFilterText.isEmpty()) {
             filteredItems.add(originalItems.get(additionIndex));
@@ -96,6 +98,9 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
      * Notifies the update of the item at the specified index
      */
     public void onItemUpdated(int updateIndex) {
+        //Indexing any new addresses
+        searchIndex.update(updateIndex);
+
         if(lastFilterText.isEmpty()) {
             //Updating the item in the standard list view
             notifyItemChanged(mapSourceListIndex(updateIndex));
@@ -124,9 +129,6 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
         //Cleaning the filter
         filter = filter.trim();
 
-        //Cancelling the current task
-        if(searchDisposable != null && !searchDisposable.isDisposed()) searchDisposable.dispose();
-
         boolean filterEmpty = filter.isEmpty();
 
         //Checking if the filter is empty
@@ -146,12 +148,8 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
 
             //Filtering and updating
             filteredItems.clear();
+            filteredItems.addAll(ContactsTask.searchContacts(searchIndex, filter, filterPhoneOnly));
             notifyDataSetChanged();
-            searchDisposable = ContactsTask.searchContacts(originalItems, filter, filterPhoneOnly).subscribe(item -> {
-                int insertionIndex = filteredItems.size();
-                filteredItems.add(item);
-                notifyItemInserted(mapSourceListIndex(insertionIndex));
-            });
         }
     }
 
@@ -332,12 +330,6 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<RecyclerView.V
         return TYPE_ITEM;
     }
 
-    @Override
-    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
-        //Cancelling the background task
-        if(searchDisposable != null && !searchDisposable.isDisposed()) searchDisposable.dispose();
-    }
-
     private int getHeaderCount() {
         int offset = 0;
         if(directAddHeaderVisible) offset++;
@@ -280,7 +280,11 @@ public abstract class CommunicationsManager<Packet> {
 	 * Calls the provided callback function with the listener on the main thread
 	 */
 	public void runListener(Consumer<CommunicationsManagerListener> callback) {
-		handler.post(() -> callback.accept(getListener()));
+		//Carrying over the message being processed, so time spent waiting for and running on the main thread can be attributed to it
+		ConnectionMetrics metrics = ConnectionMetrics.getInstance();
+		int messageType = metrics.getCurrentMessageType();
+		long queueTime = ConnectionMetrics.now();
+		handler.post(() -> metrics.runForMessage(messageType, queueTime, () -> callback.accept(getListener())));
 	}
 	
 	/**
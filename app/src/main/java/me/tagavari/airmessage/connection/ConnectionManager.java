@@ -6,6 +6,11 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.SystemClock;
@@ -28,7 +33,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -37,10 +41,10 @@ import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.CompletableTransformer;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableTransformer;
-import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleTransformer;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.CompletableSubject;
 import io.reactivex.rxjava3.subjects.PublishSubject;
@@ -49,6 +53,7 @@ import kotlin.Pair;
 import kotlin.Unit;
 import me.tagavari.airmessage.MainApplication;
 import me.tagavari.airmessage.activity.Messaging;
+import me.tagavari.airmessage.activity.Preferences;
 import me.tagavari.airmessage.common.Blocks;
 import me.tagavari.airmessage.connection.comm5.ClientComm5;
 import me.tagavari.airmessage.connection.exception.AMRemoteUpdateException;
@@ -103,10 +108,11 @@ public class ConnectionManager {
 	private static final List<CommunicationsManagerFactory> communicationsPriorityList = Collections.singletonList(ClientComm5::new);
 	
 	private static final long pingExpiryTime = 40 * 1000; //40 seconds
-	private static final long keepAliveMillis = 20 * 60 * 1000; //30 * 60 * 1000; //20 minutes
 	private static final long keepAliveWindowMillis = 5 * 60 * 1000; //5 minutes
-	private static final long[] immediateReconnectDelayMillis = {1000, 2 * 1000}; //1 second, 2 seconds
-	private static final long backgroundReconnectFrequencyMillis = 10 * 60 * 1000; //10 minutes
+	
+	private static final String networkTypeWifi = "wifi";
+	private static final String networkTypeCellular = "cellular";
+	private static final String networkTypeOther = "other";
 	
 	private static final long requestTimeoutSeconds = 24;
 	
@@ -114,7 +120,7 @@ public class ConnectionManager {
 	private static final String intentActionBackgroundReconnect = "me.tagavari.airmessage.connection.ConnectionManager-BackgroundReconnect";
 	
 	//Schedulers
-	private final Scheduler uploadScheduler = Schedulers.from(Executors.newSingleThreadExecutor(), true);
+	private final UploadScheduler uploadScheduler = new UploadScheduler();
 	
 	//Handler
 	private final Handler handler = new Handler(Looper.getMainLooper());
@@ -122,12 +128,23 @@ public class ConnectionManager {
 	//Random
 	private final Random random = new Random();
 	
+	//Timing
+	private final ConnectionTimingPolicy timingPolicy = new ConnectionTimingPolicy(random);
+	private long lastPacketTime = -1; //The time the last packet was received, in elapsed realtime
+	private long pingIdleMillis = -1; //How long the connection was idle for when the pending ping was sent, or -1 if there is no pending ping
+	private long lastNetworkChangeTime = -1; //The time the default network last changed, in elapsed realtime
+	
 	//Receivers
 	private final BroadcastReceiver pingBroadcastReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(Context context, Intent intent) {
-			if(isConnected()) testConnection();
-			else pingExpiryRunnable.run();
+			if(isConnected()) {
+				//Recording how long the connection was idle for, so we can learn from the response
+				if(lastPacketTime != -1) pingIdleMillis = SystemClock.elapsedRealtime() - lastPacketTime;
+				testConnection();
+			} else {
+				pingExpiryRunnable.run();
+			}
 		}
 	};
 	private final BroadcastReceiver backgroundReconnectBroadcastReceiver = new BroadcastReceiver() {
@@ -144,7 +161,29 @@ public class ConnectionManager {
 	//Connection values
 	private CommunicationsManager<?> communicationsManager = null;
 	private final Runnable immediateReconnectRunnable = () -> connectFromList(getContext(), 0);
-	private int immediateReconnectIndex = 0;
+	
+	//Network values
+	@Nullable private Network currentNetwork = null;
+	@NonNull private String currentNetworkType = networkTypeOther;
+	private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+		@Override
+		public void onAvailable(@NonNull Network network) {
+			handler.post(() -> handleNetworkAvailable(network));
+		}
+		
+		@Override
+		public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities networkCapabilities) {
+			String networkType = getNetworkType(networkCapabilities);
+			handler.post(() -> {
+				if(network.equals(currentNetwork)) currentNetworkType = networkType;
+			});
+		}
+		
+		@Override
+		public void onLost(@NonNull Network network) {
+			handler.post(() -> handleNetworkLost(network));
+		}
+	};
 	
 	//Connection state values
 	/*
@@ -190,6 +229,14 @@ public class ConnectionManager {
 		reconnectPendingIntent = PendingIntent.getBroadcast(context, 0, new Intent(intentActionBackgroundReconnect), PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 		context.registerReceiver(backgroundReconnectBroadcastReceiver, new IntentFilter(intentActionBackgroundReconnect));
 		
+		//Listening for network changes
+		ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+			connectivityManager.registerDefaultNetworkCallback(networkCallback);
+		} else {
+			connectivityManager.registerNetworkCallback(new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(), networkCallback);
+		}
+		
 		//Loading pending conversations from the database
 		Single.fromCallable(() -> DatabaseManager.getInstance().fetchConversationsWithState(context, ConversationState.incompleteServer))
 				.observeOn(Schedulers.single())
@@ -214,6 +261,7 @@ public class ConnectionManager {
 		//Unregistering the receivers
 		context.unregisterReceiver(pingBroadcastReceiver);
 		context.unregisterReceiver(backgroundReconnectBroadcastReceiver);
+		context.getSystemService(ConnectivityManager.class).unregisterNetworkCallback(networkCallback);
 		
 		//Cancelling connection test timers
 		cancelConnectionTest(context);
@@ -246,6 +294,9 @@ public class ConnectionManager {
 			//Updating the state
 			if(connMode != ConnectionMode.user) stopCurrentMode();
 			connMode = ConnectionMode.user;
+			timingPolicy.resetReconnect();
+			lastPacketTime = SystemClock.elapsedRealtime();
+			pingIdleMillis = -1;
 			
 			connState = ConnectionState.connected;
 			emitStateConnected();
@@ -337,6 +388,14 @@ public class ConnectionManager {
 				
 				//Removing any pending calls
 				ReduxEmitterNetwork.getFaceTimeIncomingCallerSubject().onNext(Optional.empty());
+				
+				//Learning from connections that were dropped while idle, ignoring drops caused by network changes
+				if(errorCode == ConnectionErrorCode.connection && lastPacketTime != -1 && lastNetworkChangeTime < lastPacketTime) {
+					long idleMillis = pingIdleMillis != -1 ? pingIdleMillis : SystemClock.elapsedRealtime() - lastPacketTime;
+					timingPolicy.onIdleDisconnect(currentNetworkType, idleMillis);
+				}
+				lastPacketTime = -1;
+				pingIdleMillis = -1;
 			}
 			
 			//Checking if the disconnection is recoverable
@@ -372,9 +431,13 @@ public class ConnectionManager {
 				//Starting background mode
 				if(connMode != ConnectionMode.background) {
 					connMode = ConnectionMode.background;
-					scheduleRepeatingBackgroundReconnect(getContext());
+					scheduleBackgroundReconnect(getContext());
 					emitStateDisconnected(errorCode);
-				} else return; //Don't spam the user with disconnected notifications
+				} else {
+					//Backing off further, without spamming the user with disconnected notifications
+					scheduleBackgroundReconnect(getContext());
+					return;
+				}
 			}
 			
 			emitStateDisconnected(errorCode);
@@ -383,6 +446,13 @@ public class ConnectionManager {
 		@Override
 		public void onPacket() {
 			if(connState == ConnectionState.connected) {
+				//Learning from the ping response
+				if(pingIdleMillis != -1) {
+					timingPolicy.onIdleSurvived(currentNetworkType, pingIdleMillis);
+					pingIdleMillis = -1;
+				}
+				lastPacketTime = SystemClock.elapsedRealtime();
+				
 				//Updating the last connection time
 				SharedPreferencesManager.setLastConnectionTime(getContext(), System.currentTimeMillis());
 				
@@ -402,12 +472,18 @@ public class ConnectionManager {
 			}
 			if(filteredData.isEmpty()) return;
 			
+			int traceMessageType = ConnectionMetrics.getInstance().getCurrentMessageType();
+			long traceStartTime = ConnectionMetrics.now();
+			
 			//Loading the foreground conversations (needs to be done on the main thread)
 			Single.fromCallable(Messaging::getForegroundConversations)
 					.subscribeOn(AndroidSchedulers.mainThread())
 					.flatMap(foregroundConversations -> MessageUpdateTask.create(getContext(), foregroundConversations, filteredData, false))
 					.observeOn(AndroidSchedulers.mainThread())
 					.doOnSuccess(response -> {
+						//Recording the time taken to apply the update
+						ConnectionMetrics.getInstance().recordApply(traceMessageType, traceStartTime);
+						
 						//Emitting any generated events
 						for(ReduxEventMessaging event : response.getEvents()) {
 							ReduxEmitterNetwork.getMessageUpdateSubject().onNext(event);
@@ -670,9 +746,13 @@ public class ConnectionManager {
 				else unavailableConversations.add(conversationInfo);
 			}
 			
+			int traceMessageType = ConnectionMetrics.getInstance().getCurrentMessageType();
+			long traceStartTime = ConnectionMetrics.now();
+			
 			//Creating and running the asynchronous task
 			ChatResponseTask.create(getContext(), availableConversations, unavailableConversations)
 					.doOnSuccess(result -> {
+						ConnectionMetrics.getInstance().recordApply(traceMessageType, traceStartTime);
 						ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.ConversationUpdate(result.getAvailableConversationItems(), result.getTransferredConversations()));
 					}).subscribe();
 		}
@@ -688,8 +768,14 @@ public class ConnectionManager {
 			}
 			if(filteredData.isEmpty()) return;
 			
+			int traceMessageType = ConnectionMetrics.getInstance().getCurrentMessageType();
+			long traceStartTime = ConnectionMetrics.now();
+			
 			//Writing modifiers to disk
 			ModifierUpdateTask.create(getContext(), filteredData).doOnSuccess(result -> {
+				//Recording the time taken to apply the update
+				ConnectionMetrics.getInstance().recordApply(traceMessageType, traceStartTime);
+				
 				//Pushing emitter updates
 				for(ActivityStatusUpdate statusUpdate : result.getActivityStatusUpdates()) {
 					ReduxEmitterNetwork.getMessageUpdateSubject().onNext(new ReduxEventMessaging.MessageState(statusUpdate.getMessageID(), statusUpdate.getMessageState(), statusUpdate.getDateRead()));
@@ -1035,33 +1121,89 @@ public class ConnectionManager {
 		//Checking if we aren't already doing immediate reconnect
 		if(isFirst) {
 			//Initialize state
-			immediateReconnectIndex = 0;
-		} else {
-			//Failing if we are at the end of our attempts
-			if(immediateReconnectIndex + 1 >= immediateReconnectDelayMillis.length) {
-				return false;
-			}
-			
-			//Incrementing the index
-			immediateReconnectIndex++;
+			timingPolicy.resetReconnect();
 		}
 		
+		//Failing if we are at the end of our attempts
+		long delay = timingPolicy.nextImmediateReconnectDelay();
+		if(delay == -1) return false;
+		
 		//Scheduling the immediate reconnection
-		handler.postDelayed(immediateReconnectRunnable, immediateReconnectDelayMillis[immediateReconnectIndex] + random.nextInt(1000));
+		handler.postDelayed(immediateReconnectRunnable, delay);
 		
 		return true;
 	}
 	
 	/**
-	 * Starts the background reconnection clock
+	 * Schedules the next background reconnection, backing off with each attempt
 	 */
-	private void scheduleRepeatingBackgroundReconnect(Context context) {
-		context.getSystemService(AlarmManager.class).setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-				SystemClock.elapsedRealtime() + backgroundReconnectFrequencyMillis / 2,
-				backgroundReconnectFrequencyMillis,
+	private void scheduleBackgroundReconnect(Context context) {
+		context.getSystemService(AlarmManager.class).set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+				SystemClock.elapsedRealtime() + timingPolicy.nextBackgroundReconnectDelay(),
 				reconnectPendingIntent);
 	}
 	
+	/**
+	 * Handles a new default network becoming available
+	 */
+	private void handleNetworkAvailable(@NonNull Network network) {
+		ConnectivityManager connectivityManager = getContext().getSystemService(ConnectivityManager.class);
+		
+		//Before Android N, we're told about every network with internet, so ignoring networks that aren't the default
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.N && !network.equals(connectivityManager.getActiveNetwork())) return;
+		
+		//Ignoring the initial callback, or repeated callbacks for the same network
+		Network previousNetwork = currentNetwork;
+		currentNetwork = network;
+		NetworkCapabilities networkCapabilities = connectivityManager.getNetworkCapabilities(network);
+		if(networkCapabilities != null) currentNetworkType = getNetworkType(networkCapabilities);
+		if(previousNetwork == null || previousNetwork.equals(network)) return;
+		lastNetworkChangeTime = SystemClock.elapsedRealtime();
+		
+		if(connState == ConnectionState.connected) {
+			//The existing connection was likely bound to the old network, so make sure it still works
+			if(pingIdleMillis == -1) testConnection();
+		} else if(connState == ConnectionState.disconnected && (connMode == ConnectionMode.immediate || connMode == ConnectionMode.background) && !disableReconnections) {
+			//Reconnecting right away, rather than waiting for the next scheduled attempt
+			//If this attempt fails, the current mode will schedule the next one from the start of its backoff
+			stopCurrentMode();
+			timingPolicy.resetReconnect();
+			connectFromList(getContext(), 0);
+		}
+	}
+	
+	/**
+	 * Handles the default network being lost
+	 */
+	private void handleNetworkLost(@NonNull Network network) {
+		if(!network.equals(currentNetwork)) return;
+		lastNetworkChangeTime = SystemClock.elapsedRealtime();
+		
+		//Before Android N, a network that was already available may take over as the default without a new callback
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+			Network activeNetwork = getContext().getSystemService(ConnectivityManager.class).getActiveNetwork();
+			if(activeNetwork != null && !activeNetwork.equals(network)) {
+				handleNetworkAvailable(activeNetwork);
+				return;
+			}
+		}
+		
+		if(connState == ConnectionState.connected && pingIdleMillis == -1) {
+			//Checking the connection now instead of waiting for the next keepalive
+			testConnection();
+		}
+	}
+	
+	/**
+	 * Gets the network type to learn keepalive intervals against
+	 */
+	@NonNull
+	private static String getNetworkType(@NonNull NetworkCapabilities networkCapabilities) {
+		if(networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return networkTypeWifi;
+		else if(networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return networkTypeCellular;
+		else return networkTypeOther;
+	}
+	
 	private void stopCurrentMode() {
 		if(connMode == ConnectionMode.immediate) {
 			handler.removeCallbacks(immediateReconnectRunnable);
@@ -1162,10 +1304,7 @@ public class ConnectionManager {
 		handler.removeCallbacks(pingExpiryRunnable);
 		
 		//Resetting the ping timer
-		context.getSystemService(AlarmManager.class).setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-				SystemClock.elapsedRealtime() + keepAliveMillis - keepAliveWindowMillis,
-				keepAliveWindowMillis * 2,
-				pingPendingIntent);
+		schedulePing(context);
 	}
 	
 	/**
@@ -1223,14 +1362,15 @@ public class ConnectionManager {
 		//Adding the request to the list
 		idRequestSubjectMap.put(requestID, new RequestSubject.Publish<>(subject, error, Unit.INSTANCE));
 		
-		//Sending the file (not passing completions to the subject, since we'll want to handle those when we receive a response instead)
-		Observable.concat(communicationsManager.sendFile(requestID, conversation, file), Observable.never())
-				.subscribeOn(uploadScheduler)
+		//Queuing the file to be sent (not passing completions to the subject, since we'll want to handle those when we receive a response instead)
+		Observable<ReduxEventAttachmentUpload> upload = uploadScheduler.schedule(conversation, file.length(), Preferences.getPreferenceUploadSmallFilesFirst(getContext()), communicationsManager.sendFile(requestID, conversation, file));
+		Disposable uploadDisposable = Observable.concat(upload, Observable.<ReduxEventAttachmentUpload>never())
 				.observeOn(AndroidSchedulers.mainThread())
-				.subscribe(subject);
+				.subscribe(subject::onNext, subject::onError);
 		
-		//Adding a timeout
-		return subject.compose(composeTimeoutIDObservable(requestID, error));
+		//Adding a timeout, and cancelling the upload if the request ends before it finishes
+		return subject.compose(composeTimeoutUploadObservable(requestID, error))
+				.doFinally(uploadDisposable::dispose);
 	}
 	
 	/**
@@ -1478,6 +1618,16 @@ public class ConnectionManager {
 				.doOnTerminate(() -> idRequestSubjectMap.remove(requestID));
 	}
 	
+	/**
+	 * Same as {@link #composeTimeoutIDObservable(short, Throwable)}, but doesn't time out while the upload is waiting in the queue
+	 */
+	private ObservableTransformer<ReduxEventAttachmentUpload, ReduxEventAttachmentUpload> composeTimeoutUploadObservable(short requestID, Throwable throwable) {
+		Observable<Long> timeoutIndicator = Observable.timer(requestTimeoutSeconds, TimeUnit.SECONDS);
+		return observable -> observable.timeout(timeoutIndicator, event -> event instanceof ReduxEventAttachmentUpload.Queued ? Observable.never() : timeoutIndicator, Observable.error(throwable))
+				.observeOn(AndroidSchedulers.mainThread())
+				.doOnTerminate(() -> idRequestSubjectMap.remove(requestID));
+	}
+	
 	/**
 	 * Adds a {@link CompletableSubject} to the map, and takes care of timeouts and cleanup
 	 * @param requestID The ID of this request
@@ -1586,9 +1736,12 @@ public class ConnectionManager {
 	 * Schedules the next keepalive ping
 	 */
 	private void schedulePing(Context context) {
+		//Finishing the window at the keepalive deadline, so the ping goes out before the network drops the connection
+		long keepAliveMillis = timingPolicy.getKeepAliveMillis(currentNetworkType);
+		long windowMillis = Math.min(keepAliveWindowMillis, keepAliveMillis / 4);
 		((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP,
-				SystemClock.elapsedRealtime() + keepAliveMillis - keepAliveWindowMillis,
-				keepAliveWindowMillis * 2,
+				SystemClock.elapsedRealtime() + keepAliveMillis - windowMillis,
+				windowMillis,
 				pingPendingIntent);
 	}
 	
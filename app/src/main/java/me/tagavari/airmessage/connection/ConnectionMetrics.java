@@ -0,0 +1,254 @@
+package me.tagavari.airmessage.connection;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timing and throughput information for the connection stack,
+ * from the socket through to the database
+ *
+ * All methods are safe to call from any thread
+ */
+public class ConnectionMetrics {
+	//Creating the constants
+	public static final int messageTypeNone = Integer.MIN_VALUE;
+	
+	//Creating the instance value
+	private static final ConnectionMetrics instance = new ConnectionMetrics();
+	
+	//Creating the transport values
+	private final Counter packetsReceived = new Counter();
+	private final Counter packetsSent = new Counter();
+	private final AtomicLong decryptNanos = new AtomicLong();
+	private final AtomicLong encryptNanos = new AtomicLong();
+	
+	//Creating the message type values
+	private final Map<Integer, MessageTypeMetrics> messageTypeMap = new ConcurrentHashMap<>();
+	
+	//The message type being handled on the current thread, for attributing nested work to its message
+	private final ThreadLocal<Integer> currentMessageType = ThreadLocal.withInitial(() -> messageTypeNone);
+	
+	private volatile long startTime = System.currentTimeMillis();
+	
+	private ConnectionMetrics() {
+	}
+	
+	/**
+	 * Gets the process-wide connection metrics instance
+	 */
+	public static ConnectionMetrics getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Gets a timestamp to measure durations against
+	 */
+	public static long now() {
+		return SystemClock.elapsedRealtimeNanos();
+	}
+	
+	/**
+	 * Records a packet read from the transport
+	 * @param bytes The size of the packet as it was received
+	 * @param decryptTime The time spent decrypting this packet in nanoseconds, or 0 if it was not encrypted
+	 */
+	public void recordPacketReceived(int bytes, long decryptTime) {
+		packetsReceived.add(bytes);
+		decryptNanos.addAndGet(decryptTime);
+	}
+	
+	/**
+	 * Records a packet written to the transport
+	 * @param bytes The size of the packet as it was sent
+	 * @param encryptTime The time spent encrypting this packet in nanoseconds, or 0 if it was not encrypted
+	 */
+	public void recordPacketSent(int bytes, long encryptTime) {
+		packetsSent.add(bytes);
+		encryptNanos.addAndGet(encryptTime);
+	}
+	
+	/**
+	 * Marks the start of the processing of a message on the current thread
+	 * @param messageType The protocol message type
+	 * @param label A human-readable name for the message type
+	 * @param bytes The size of the message
+	 * @return A timestamp to pass to {@link #endMessage(int, long)}
+	 */
+	public long beginMessage(int messageType, @NonNull String label, int bytes) {
+		getMessageTypeMetrics(messageType, label).received.add(bytes);
+		currentMessageType.set(messageType);
+		return now();
+	}
+	
+	/**
+	 * Marks the end of the processing of a message on the current thread
+	 * @param messageType The protocol message type
+	 * @param startTime The timestamp returned from {@link #beginMessage(int, String, int)}
+	 */
+	public void endMessage(int messageType, long startTime) {
+		currentMessageType.set(messageTypeNone);
+		MessageTypeMetrics metrics = messageTypeMap.get(messageType);
+		if(metrics != null) metrics.decodeNanos.addAndGet(now() - startTime);
+	}
+	
+	/**
+	 * Gets the message type currently being handled on this thread, or {@link #messageTypeNone} if none
+	 */
+	public int getCurrentMessageType() {
+		return currentMessageType.get();
+	}
+	
+	/**
+	 * Runs an action on the current thread on behalf of a message, so work done within it can be attributed to the message
+	 * @param messageType The protocol message type
+	 * @param queueTime The timestamp that this action was queued at, to record how long it waited
+	 * @param action The action to run
+	 */
+	public void runForMessage(int messageType, long queueTime, Runnable action) {
+		if(messageType == messageTypeNone) {
+			action.run();
+			return;
+		}
+		
+		MessageTypeMetrics metrics = messageTypeMap.get(messageType);
+		if(metrics != null) metrics.queue.add(now() - queueTime);
+		
+		int previousType = currentMessageType.get();
+		currentMessageType.set(messageType);
+		try {
+			action.run();
+		} finally {
+			currentMessageType.set(previousType);
+		}
+	}
+	
+	/**
+	 * Records time spent applying the results of a message, such as writing it to the database
+	 * @param messageType The protocol message type
+	 * @param startTime The timestamp that the work was started at
+	 */
+	public void recordApply(int messageType, long startTime) {
+		if(messageType == messageTypeNone) return;
+		MessageTypeMetrics metrics = messageTypeMap.get(messageType);
+		if(metrics != null) metrics.apply.add(now() - startTime);
+	}
+	
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset() {
+		packetsReceived.reset();
+		packetsSent.reset();
+		decryptNanos.set(0);
+		encryptNanos.set(0);
+		messageTypeMap.clear();
+		startTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Writes a human-readable summary of all recorded values
+	 * @param writer The writer to print to
+	 */
+	public void dump(PrintWriter writer) {
+		long elapsed = System.currentTimeMillis() - startTime;
+		writer.println(String.format(Locale.ROOT, "Recording for %.1f s", elapsed / 1000F));
+		writer.println();
+		
+		writer.println("Transport");
+		writer.println(String.format(Locale.ROOT, "  in:  %d packets, %s, decrypt %s", packetsReceived.getCount(), formatBytes(packetsReceived.getTotal()), formatNanos(decryptNanos.get())));
+		writer.println(String.format(Locale.ROOT, "  out: %d packets, %s, encrypt %s", packetsSent.getCount(), formatBytes(packetsSent.getTotal()), formatNanos(encryptNanos.get())));
+		writer.println();
+		
+		List<Map.Entry<Integer, MessageTypeMetrics>> entries = new ArrayList<>(messageTypeMap.entrySet());
+		entries.sort(Comparator.comparingInt(Map.Entry::getKey));
+		for(Map.Entry<Integer, MessageTypeMetrics> entry : entries) {
+			MessageTypeMetrics metrics = entry.getValue();
+			writer.println(metrics.label + " (" + entry.getKey() + ")");
+			writer.println(String.format(Locale.ROOT, "  count %d, %s", metrics.received.getCount(), formatBytes(metrics.received.getTotal())));
+			writer.println("  decode " + formatNanos(metrics.decodeNanos.get()) + describeAverage(metrics.decodeNanos.get(), metrics.received.getCount()));
+			if(metrics.queue.getCount() > 0) writer.println("  main thread queue " + formatNanos(metrics.queue.getTotal()) + describeAverage(metrics.queue.getTotal(), metrics.queue.getCount()));
+			if(metrics.apply.getCount() > 0) writer.println("  apply " + formatNanos(metrics.apply.getTotal()) + describeAverage(metrics.apply.getTotal(), metrics.apply.getCount()));
+		}
+	}
+	
+	/**
+	 * Gets a human-readable summary of all recorded values
+	 */
+	@NonNull
+	public String getSnapshot() {
+		StringWriter stringWriter = new StringWriter();
+		try(PrintWriter printWriter = new PrintWriter(stringWriter)) {
+			dump(printWriter);
+		}
+		return stringWriter.toString();
+	}
+	
+	private MessageTypeMetrics getMessageTypeMetrics(int messageType, @Nullable String label) {
+		return messageTypeMap.computeIfAbsent(messageType, key -> new MessageTypeMetrics(label != null ? label : Integer.toString(key)));
+	}
+	
+	private static String describeAverage(long totalNanos, long count) {
+		if(count == 0) return "";
+		return " (avg " + formatNanos(totalNanos / count) + ")";
+	}
+	
+	private static String formatNanos(long nanos) {
+		return String.format(Locale.ROOT, "%.2f ms", nanos / 1_000_000D);
+	}
+	
+	private static String formatBytes(long bytes) {
+		if(bytes < 1024) return bytes + " B";
+		else if(bytes < 1024 * 1024) return String.format(Locale.ROOT, "%.1f kB", bytes / 1024D);
+		else return String.format(Locale.ROOT, "%.1f MB", bytes / (1024D * 1024D));
+	}
+	
+	/**
+	 * Keeps a count of events alongside a running total
+	 */
+	private static class Counter {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		
+		void add(long value) {
+			count.incrementAndGet();
+			total.addAndGet(value);
+		}
+		
+		void reset() {
+			count.set(0);
+			total.set(0);
+		}
+		
+		long getCount() {
+			return count.get();
+		}
+		
+		long getTotal() {
+			return total.get();
+		}
+	}
+	
+	private static class MessageTypeMetrics {
+		final String label;
+		final Counter received = new Counter();
+		final AtomicLong decodeNanos = new AtomicLong();
+		final Counter queue = new Counter();
+		final Counter apply = new Counter();
+		
+		MessageTypeMetrics(String label) {
+			this.label = label;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package me.tagavari.airmessage.connection;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decides how long to wait between keepalive pings and reconnection attempts
+ *
+ * Keepalive intervals are learned per network type: an idle connection that is dropped lowers the interval to just under
+ * the idle time that killed it, and an idle period that survives lets the interval grow back towards the maximum.
+ * Reconnection attempts are spaced with exponential backoff and jitter.
+ */
+class ConnectionTimingPolicy {
+	//Keepalive values
+	private static final long keepAliveMaxMillis = 20 * 60 * 1000; //20 minutes
+	private static final long keepAliveMinMillis = 60 * 1000; //1 minute
+	private static final float keepAliveSafetyFactor = 0.8F; //Ping at 80% of the observed NAT timeout
+	private static final float keepAliveGrowthFactor = 1.25F;
+	
+	//Immediate reconnection values
+	private static final long immediateReconnectBaseMillis = 1000; //1 second
+	private static final int immediateReconnectMaxAttempts = 4; //1, 2, 4, 8 seconds
+	
+	//Background reconnection values
+	private static final long backgroundReconnectBaseMillis = 60 * 1000; //1 minute
+	private static final long backgroundReconnectMaxMillis = 10 * 60 * 1000; //10 minutes
+	
+	private final Random random;
+	
+	//The learned keepalive interval for each network type
+	private final Map<String, Long> keepAliveMap = new HashMap<>();
+	
+	private int immediateReconnectAttempt = 0;
+	private int backgroundReconnectAttempt = 0;
+	
+	ConnectionTimingPolicy(@NonNull Random random) {
+		this.random = random;
+	}
+	
+	/**
+	 * Gets the amount of time a connection can safely stay idle on a network before a keepalive ping should be sent
+	 * @param networkType The type of the current network
+	 */
+	long getKeepAliveMillis(@NonNull String networkType) {
+		Long value = keepAliveMap.get(networkType);
+		return value != null ? value : keepAliveMaxMillis;
+	}
+	
+	/**
+	 * Records that a connection was dropped after being idle, most likely due to a NAT or firewall timeout
+	 * @param networkType The type of the current network
+	 * @param idleMillis How long the connection had been idle for when it was dropped
+	 */
+	void onIdleDisconnect(@NonNull String networkType, long idleMillis) {
+		//Ignoring disconnections that happened too early to be an idle timeout
+		if(idleMillis < keepAliveMinMillis) return;
+		
+		long keepAlive = Math.max(keepAliveMinMillis, (long) (idleMillis * keepAliveSafetyFactor));
+		if(keepAlive < getKeepAliveMillis(networkType)) keepAliveMap.put(networkType, keepAlive);
+	}
+	
+	/**
+	 * Records that a connection was still alive after being idle
+	 * @param networkType The type of the current network
+	 * @param idleMillis How long the connection was idle for
+	 */
+	void onIdleSurvived(@NonNull String networkType, long idleMillis) {
+		long keepAlive = getKeepAliveMillis(networkType);
+		
+		//Only growing the interval once most of the interval has been proven safe (pings are sent within the last quarter)
+		if(idleMillis < keepAlive * 3 / 4) return;
+		
+		keepAlive = Math.min(keepAliveMaxMillis, (long) (keepAlive * keepAliveGrowthFactor));
+		if(keepAlive == keepAliveMaxMillis) keepAliveMap.remove(networkType);
+		else keepAliveMap.put(networkType, keepAlive);
+	}
+	
+	/**
+	 * Gets the delay before the next immediate reconnection attempt
+	 * @return The delay in milliseconds, or -1 if immediate reconnection attempts have been exhausted
+	 */
+	long nextImmediateReconnectDelay() {
+		if(immediateReconnectAttempt >= immediateReconnectMaxAttempts) return -1;
+		return withJitter(immediateReconnectBaseMillis << immediateReconnectAttempt++);
+	}
+	
+	/**
+	 * Gets the delay before the next background reconnection attempt
+	 */
+	long nextBackgroundReconnectDelay() {
+		long delay = Math.min(backgroundReconnectMaxMillis, backgroundReconnectBaseMillis << Math.min(backgroundReconnectAttempt, 16));
+		backgroundReconnectAttempt++;
+		return withJitter(delay);
+	}
+	
+	/**
+	 * Restarts reconnection backoff from the shortest delay, for use after connecting or when the network changes
+	 */
+	void resetReconnect() {
+		immediateReconnectAttempt = 0;
+		backgroundReconnectAttempt = 0;
+	}
+	
+	/**
+	 * Spreads a delay randomly between half and all of its value, so clients don't reconnect in lockstep
+	 */
+	private long withJitter(long delay) {
+		long half = delay / 2;
+		return half + (long) (random.nextDouble() * (delay - half));
+	}
+}
\ No newline at end of file
@@ -5,6 +5,8 @@ import androidx.annotation.Nullable;
 import me.tagavari.airmessage.enums.ConnectionErrorCode;
 import me.tagavari.airmessage.util.ConnectionParams;
 
+import java.security.GeneralSecurityException;
+
 /**
  * Represents a method of transmitting data over the internet
  * Users of this class should not care how this data is transmitted
@@ -32,6 +34,16 @@ public abstract class DataProxy<Packet> {
 	 */
 	public abstract boolean send(Packet packet);
 	
+	/**
+	 * Performs any expensive work needed to send a packet, such as encryption, ahead of time
+	 * Unlike other methods, this may be called from any thread, including from several at once
+	 * @param packet The packet to prepare
+	 * @return The packet to pass to {@link #send(Object)}
+	 */
+	public Packet prepare(Packet packet) throws GeneralSecurityException {
+		return packet;
+	}
+	
 	/**
 	 * Gets whether this proxy is connected using a fallback method
 	 */
@@ -0,0 +1,249 @@
+package me.tagavari.airmessage.connection;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.annotations.CheckReturnValue;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.ObservableEmitter;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import me.tagavari.airmessage.redux.ReduxEventAttachmentUpload;
+import me.tagavari.airmessage.util.ConversationTarget;
+
+/**
+ * Runs attachment uploads concurrently, while keeping the uploads of each conversation in the order they were sent
+ *
+ * Uploads for different conversations run side by side, up to {@link #maxConcurrentUploads} at a time. Large files may only
+ * take up {@link #maxConcurrentLargeUploads} of those slots, so a small file never has to wait for a large file in another conversation.
+ * Within a conversation, uploads run one at a time in order, except that small files may be allowed to overtake a large file
+ * that is still uploading or waiting ahead of them. Uploads that are waiting to start emit {@link ReduxEventAttachmentUpload.Queued}
+ * whenever their position in the queue changes.
+ */
+public class UploadScheduler {
+	//Creating the constants
+	@VisibleForTesting static final int maxConcurrentUploads = 3;
+	@VisibleForTesting static final int maxConcurrentLargeUploads = 2;
+	@VisibleForTesting static final long smallFileMaxBytes = 4 * 1024 * 1024; //4 MB
+	private static final long threadKeepAliveSeconds = 30;
+	
+	private final Scheduler scheduler;
+	private final ThreadPoolExecutor executor;
+	
+	private final Object lock = new Object();
+	private final LinkedList<Task> waitingTasks = new LinkedList<>();
+	private final Map<ConversationTarget, ConversationState> activeConversations = new HashMap<>();
+	private int activeCount = 0;
+	private int activeLargeCount = 0;
+	
+	public UploadScheduler() {
+		executor = new ThreadPoolExecutor(maxConcurrentUploads, maxConcurrentUploads, threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		executor.allowCoreThreadTimeOut(true);
+		scheduler = Schedulers.from(executor, true);
+	}
+	
+	@VisibleForTesting
+	UploadScheduler(Scheduler scheduler) {
+		this.executor = null;
+		this.scheduler = scheduler;
+	}
+	
+	/**
+	 * Queues an upload, which is started once its conversation and the upload budget allow it
+	 * @param conversation The conversation the file is being sent to
+	 * @param fileSize The size of the file, in bytes
+	 * @param allowOvertake Whether this file may be uploaded before earlier files in the same conversation, if it is small
+	 * @param upload The upload to run, which blocks its subscribing thread
+	 * @return An observable for the upload's queue state and progress
+	 */
+	@CheckReturnValue
+	public Observable<ReduxEventAttachmentUpload> schedule(@NonNull ConversationTarget conversation, long fileSize, boolean allowOvertake, @NonNull Observable<ReduxEventAttachmentUpload> upload) {
+		return Observable.create(emitter -> {
+			Task task = new Task(conversation, fileSize, fileSize <= smallFileMaxBytes, allowOvertake, upload, emitter.serialize());
+			emitter.setCancellable(() -> cancel(task));
+			
+			synchronized(lock) {
+				waitingTasks.add(task);
+			}
+			dispatch();
+		});
+	}
+	
+	/**
+	 * Stops the threads used for uploads
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+		if(executor != null) executor.shutdown();
+	}
+	
+	/**
+	 * Starts the waiting tasks that can run now, and updates the queue position of all other waiting tasks
+	 */
+	private void dispatch() {
+		List<Task> startTasks = new ArrayList<>();
+		Map<Task, Integer> queueUpdates = new LinkedHashMap<>();
+		
+		synchronized(lock) {
+			selectTasks(startTasks, queueUpdates);
+		}
+		
+		//Notifying waiting tasks outside of the lock, in case a subscriber cancels in response
+		for(Map.Entry<Task, Integer> entry : queueUpdates.entrySet()) {
+			entry.getKey().emitter.onNext(new ReduxEventAttachmentUpload.Queued(entry.getValue()));
+		}
+		for(Task task : startTasks) start(task);
+	}
+	
+	/**
+	 * Picks the waiting tasks that can start now and marks them as active, and finds the waiting tasks whose position in the queue has changed
+	 * Must be called while holding {@link #lock}
+	 * @param startTasks The list to add tasks that should be started to
+	 * @param queueUpdates The map to add waiting tasks to, with their new queue position
+	 */
+	private void selectTasks(List<Task> startTasks, Map<Task, Integer> queueUpdates) {
+		//Conversations that already have an earlier task waiting
+		Set<ConversationTarget> blockedConversations = new HashSet<>();
+		Set<ConversationTarget> blockedSmallConversations = new HashSet<>();
+		
+		int queuePosition = 0;
+		for(Iterator<Task> iterator = waitingTasks.iterator(); iterator.hasNext();) {
+			Task task = iterator.next();
+			ConversationState conversationState = activeConversations.get(task.conversation);
+			
+			//Checking if the task is next in line for its conversation
+			boolean isEligible;
+			if(!blockedConversations.contains(task.conversation) && conversationState == null) {
+				isEligible = true;
+			} else {
+				//Small files may skip ahead of large files, but not ahead of other small files
+				isEligible = task.isSmall && task.allowOvertake && !blockedSmallConversations.contains(task.conversation) && (conversationState == null || conversationState.activeSmallCount == 0);
+			}
+			
+			//Checking if there is room in the budget
+			boolean hasBudget = activeCount < maxConcurrentUploads && (task.isSmall || activeLargeCount < maxConcurrentLargeUploads);
+			
+			if(isEligible && hasBudget) {
+				iterator.remove();
+				
+				//Marking the task as active
+				if(conversationState == null) {
+					conversationState = new ConversationState();
+					activeConversations.put(task.conversation, conversationState);
+				}
+				if(task.isSmall) conversationState.activeSmallCount++;
+				else conversationState.activeLargeCount++;
+				activeCount++;
+				if(!task.isSmall) activeLargeCount++;
+				
+				startTasks.add(task);
+			} else {
+				//Holding back later tasks in this conversation
+				blockedConversations.add(task.conversation);
+				if(task.isSmall) blockedSmallConversations.add(task.conversation);
+				
+				//Updating the task's position in the queue
+				if(task.queuePosition != queuePosition) {
+					task.queuePosition = queuePosition;
+					queueUpdates.put(task, queuePosition);
+				}
+				queuePosition++;
+			}
+		}
+	}
+	
+	/**
+	 * Subscribes to a task's upload
+	 */
+	private void start(Task task) {
+		task.emitter.onNext(new ReduxEventAttachmentUpload.Progress(0, task.fileSize));
+		
+		Disposable disposable = task.upload
+				.subscribeOn(scheduler)
+				.doFinally(() -> finish(task))
+				.subscribe(task.emitter::onNext, task.emitter::tryOnError, task.emitter::onComplete);
+		
+		boolean isCancelled;
+		synchronized(lock) {
+			task.disposable = disposable;
+			isCancelled = task.isCancelled;
+		}
+		if(isCancelled) disposable.dispose();
+	}
+	
+	/**
+	 * Frees a task's place in the budget once its upload has ended, and starts any tasks that were waiting on it
+	 */
+	private void finish(Task task) {
+		synchronized(lock) {
+			ConversationState conversationState = activeConversations.get(task.conversation);
+			if(task.isSmall) conversationState.activeSmallCount--;
+			else conversationState.activeLargeCount--;
+			if(conversationState.activeSmallCount == 0 && conversationState.activeLargeCount == 0) activeConversations.remove(task.conversation);
+			activeCount--;
+			if(!task.isSmall) activeLargeCount--;
+		}
+		dispatch();
+	}
+	
+	/**
+	 * Removes a task from the queue, or stops its upload if it has already started
+	 */
+	private void cancel(Task task) {
+		boolean wasWaiting;
+		Disposable disposable;
+		synchronized(lock) {
+			task.isCancelled = true;
+			wasWaiting = waitingTasks.remove(task);
+			disposable = task.disposable;
+		}
+		
+		if(wasWaiting) {
+			//Moving up the tasks behind this one
+			dispatch();
+		} else if(disposable != null) {
+			disposable.dispose();
+		}
+	}
+	
+	private static class Task {
+		final ConversationTarget conversation;
+		final long fileSize;
+		final boolean isSmall;
+		final boolean allowOvertake;
+		final Observable<ReduxEventAttachmentUpload> upload;
+		final ObservableEmitter<ReduxEventAttachmentUpload> emitter;
+		
+		int queuePosition = -1;
+		boolean isCancelled = false;
+		Disposable disposable = null;
+		
+		Task(ConversationTarget conversation, long fileSize, boolean isSmall, boolean allowOvertake, Observable<ReduxEventAttachmentUpload> upload, ObservableEmitter<ReduxEventAttachmentUpload> emitter) {
+			this.conversation = conversation;
+			this.fileSize = fileSize;
+			this.isSmall = isSmall;
+			this.allowOvertake = allowOvertake;
+			this.upload = upload;
+			this.emitter = emitter;
+		}
+	}
+	
+	private static class ConversationState {
+		int activeSmallCount = 0;
+		int activeLargeCount = 0;
+	}
+}
\ No newline at end of file
@@ -17,7 +17,6 @@ import me.tagavari.airmessage.data.SharedPreferencesManager;
 import me.tagavari.airmessage.enums.*;
 import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 import me.tagavari.airmessage.helper.LookAheadStreamIterator;
-import me.tagavari.airmessage.helper.StandardCompressionHelper;
 import me.tagavari.airmessage.helper.StringHelper;
 import me.tagavari.airmessage.redux.ReduxEventAttachmentUpload;
 import me.tagavari.airmessage.util.CompoundErrorDetails;
@@ -41,6 +40,7 @@ public class ClientProtocol4 extends ProtocolManager<EncryptedPacket> {
 	private static final String platformID = "android";
 	
 	private static final int attachmentChunkSize = 1024 * 1024; //1 MB
+	private static final int attachmentPackerOverhead = 64 * 1024; //64 kB for packet headers, the file name and recipients
 	
 	//Top-level net header type values
 	private static final int nhtClose = 0;
@@ -583,14 +583,20 @@ public class ClientProtocol4 extends ProtocolManager<EncryptedPacket> {
 					long totalBytesRead = 0;
 					int requestIndex = 0;
 					
+					//Packing into a buffer of this upload's own, since uploads may run concurrently
+					AirPacker uploadPacker = new AirPacker(attachmentChunkSize + attachmentPackerOverhead);
+					
 					for(LookAheadStreamIterator iterator = new LookAheadStreamIterator(attachmentChunkSize, inputStream); iterator.hasNext();) {
+						//Stopping if the upload has been cancelled
+						if(emitter.isDisposed()) return;
+						
 						LookAheadStreamIterator.ForwardsStreamData data = iterator.next();
 						
 						//Adding to the total bytes read
 						totalBytesRead += data.getLength();
 						
 						//Uploading the file part
-						try(AirPacker packer = AirPacker.get()) {
+						try(AirPacker packer = uploadPacker) {
 							//Message type
 							if(conversation instanceof ConversationTarget.AppleLinked) {
 								packer.packInt(nhtSendFileExisting);
@@ -634,12 +640,17 @@ public class ClientProtocol4 extends ProtocolManager<EncryptedPacket> {
 				emitter.onNext(new ReduxEventAttachmentUpload.Complete(checksum));
 				emitter.onComplete();
 			} catch(IOException exception) {
+				//Ignoring failures once the upload has been cancelled, since nothing is listening for them
+				if(emitter.isDisposed()) return;
+				
 				exception.printStackTrace();
-				throw new AMRequestException(MessageSendErrorCode.localIO, exception);
+				emitter.tryOnError(new AMRequestException(MessageSendErrorCode.localIO, exception));
 			} catch(NoSuchAlgorithmException | BufferOverflowException exception) {
+				if(emitter.isDisposed()) return;
+				
 				exception.printStackTrace();
 				CrashlyticsBridge.recordException(exception);
-				throw new AMRequestException(MessageSendErrorCode.localInternal, exception);
+				emitter.tryOnError(new AMRequestException(MessageSendErrorCode.localInternal, exception));
 			}
 		});
 	}
@@ -1058,16 +1069,8 @@ public class ClientProtocol4 extends ProtocolManager<EncryptedPacket> {
 					byte[] data = unpacker.unpackPayload();
 					String fileType = unpacker.unpackString();
 					
-					byte[] decompressedData;
-					try {
-						decompressedData = StandardCompressionHelper.decompressDeflate(data);
-					} catch(IOException exception) {
-						exception.printStackTrace();
-						
-						continue;
-					}
-					
-					list.add(new Blocks.StickerModifierInfo(message, messageIndex, fileGuid, sender, date, decompressedData, fileType));
+					//Keeping the sticker compressed until it is written to disk
+					list.add(new Blocks.StickerModifierInfo(message, messageIndex, fileGuid, sender, date, data, fileType));
 					break;
 				}
 				case nstModifierTapback: {
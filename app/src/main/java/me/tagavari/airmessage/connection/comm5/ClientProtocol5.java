@@ -4,26 +4,20 @@ import android.os.Build;
 
 import androidx.annotation.NonNull;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
-import java.security.DigestInputStream;
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.zip.DeflaterInputStream;
 import java.util.zip.InflaterOutputStream;
 
 import io.reactivex.rxjava3.core.Observable;
 import me.tagavari.airmessage.MainApplication;
 import me.tagavari.airmessage.common.Blocks;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.connection.DataProxy;
 import me.tagavari.airmessage.connection.MassRetrievalParams;
 import me.tagavari.airmessage.connection.encryption.EncryptionAES;
@@ -42,8 +36,6 @@ import me.tagavari.airmessage.enums.MessageSendErrorCode;
 import me.tagavari.airmessage.enums.MessageState;
 import me.tagavari.airmessage.enums.TapbackType;
 import me.tagavari.airmessage.flavor.CrashlyticsBridge;
-import me.tagavari.airmessage.helper.LookAheadStreamIterator;
-import me.tagavari.airmessage.helper.StandardCompressionHelper;
 import me.tagavari.airmessage.helper.StringHelper;
 import me.tagavari.airmessage.redux.ReduxEventAttachmentUpload;
 import me.tagavari.airmessage.util.CompoundErrorDetails;
@@ -154,10 +146,18 @@ public class ClientProtocol5 extends ProtocolManager<EncryptedPacket> {
 	void processData(byte[] data, boolean wasEncrypted) {
 		//Wrapping the data in an unpacker
 		AirUnpacker unpacker = new AirUnpacker(data);
+		int messageType;
 		try {
 			//Reading the message type
-			int messageType = unpacker.unpackInt();
-			
+			messageType = unpacker.unpackInt();
+		} catch(BufferUnderflowException exception) {
+			exception.printStackTrace();
+			return;
+		}
+		
+		ConnectionMetrics metrics = ConnectionMetrics.getInstance();
+		long decodeStart = metrics.beginMessage(messageType, describeMessageType(messageType), data.length);
+		try {
 			//Checking if this data is insecure
 			if(!wasEncrypted) {
 				processDataInsecure(messageType, unpacker);
@@ -167,6 +167,45 @@ public class ClientProtocol5 extends ProtocolManager<EncryptedPacket> {
 			}
 		} catch(BufferUnderflowException | LargeAllocationException | IllegalArgumentException exception) {
 			exception.printStackTrace();
+		} finally {
+			metrics.endMessage(messageType, decodeStart);
+		}
+	}
+	
+	/**
+	 * Gets a human-readable name for a message type, for use in diagnostics
+	 * @param messageType The message header
+	 * @return The name of the message type
+	 */
+	private static String describeMessageType(int messageType) {
+		switch(messageType) {
+			case nhtClose: return "nhtClose";
+			case nhtPing: return "nhtPing";
+			case nhtPong: return "nhtPong";
+			case nhtAuthentication: return "nhtAuthentication";
+			case nhtMessageUpdate: return "nhtMessageUpdate";
+			case nhtTimeRetrieval: return "nhtTimeRetrieval";
+			case nhtIDRetrieval: return "nhtIDRetrieval";
+			case nhtMassRetrieval: return "nhtMassRetrieval";
+			case nhtMassRetrievalFile: return "nhtMassRetrievalFile";
+			case nhtMassRetrievalFinish: return "nhtMassRetrievalFinish";
+			case nhtConversationUpdate: return "nhtConversationUpdate";
+			case nhtModifierUpdate: return "nhtModifierUpdate";
+			case nhtAttachmentReq: return "nhtAttachmentReq";
+			case nhtAttachmentReqConfirm: return "nhtAttachmentReqConfirm";
+			case nhtAttachmentReqFail: return "nhtAttachmentReqFail";
+			case nhtIDUpdate: return "nhtIDUpdate";
+			case nhtSendResult: return "nhtSendResult";
+			case nhtCreateChat: return "nhtCreateChat";
+			case nhtSoftwareUpdateListing: return "nhtSoftwareUpdateListing";
+			case nhtSoftwareUpdateInstall: return "nhtSoftwareUpdateInstall";
+			case nhtSoftwareUpdateError: return "nhtSoftwareUpdateError";
+			case nhtFaceTimeCreateLink: return "nhtFaceTimeCreateLink";
+			case nhtFaceTimeOutgoingInitiate: return "nhtFaceTimeOutgoingInitiate";
+			case nhtFaceTimeOutgoingHandled: return "nhtFaceTimeOutgoingHandled";
+			case nhtFaceTimeIncomingCallerUpdate: return "nhtFaceTimeIncomingCallerUpdate";
+			case nhtFaceTimeIncomingHandle: return "nhtFaceTimeIncomingHandle";
+			default: return "nht" + messageType;
 		}
 	}
 	
@@ -763,68 +802,60 @@ public class ClientProtocol5 extends ProtocolManager<EncryptedPacket> {
 	@Override
 	public Observable<ReduxEventAttachmentUpload> sendFile(short requestID, ConversationTarget conversation, File file) {
 		return Observable.create((emitter) -> {
-			try {
-				MessageDigest messageDigest = MessageDigest.getInstance(hashAlgorithm);
-				try(InputStream inputStream = new DeflaterInputStream(new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), messageDigest))) {
-					long totalLength = inputStream.available();
-					long totalBytesRead = 0;
-					int requestIndex = 0;
+			FileUploadPipeline pipeline = new FileUploadPipeline(dataProxy, hashAlgorithm, attachmentChunkSize, (packer, requestIndex, isLast, data, length) -> {
+				//Message type
+				if(conversation instanceof ConversationTarget.AppleLinked) {
+					packer.packInt(nhtSendFileExisting);
+				} else if(conversation instanceof ConversationTarget.AppleUnlinked) {
+					packer.packInt(nhtSendFileNew);
+				}
+				
+				packer.packShort(requestID); //Request identifier
+				packer.packInt(requestIndex); //Request index
+				packer.packBoolean(isLast); //Is last message
+				
+				packer.packPayload(data, length); //File bytes
+				if(requestIndex == 0) {
+					packer.packString(file.getName()); //File name
 					
-					for(LookAheadStreamIterator iterator = new LookAheadStreamIterator(attachmentChunkSize, inputStream); iterator.hasNext();) {
-						LookAheadStreamIterator.ForwardsStreamData data = iterator.next();
-						
-						//Adding to the total bytes read
-						totalBytesRead += data.getLength();
-						
-						//Uploading the file part
-						try(AirPacker packer = AirPacker.get()) {
-							//Message type
-							if(conversation instanceof ConversationTarget.AppleLinked) {
-								packer.packInt(nhtSendFileExisting);
-							} else if(conversation instanceof ConversationTarget.AppleUnlinked) {
-								packer.packInt(nhtSendFileNew);
-							}
-							
-							packer.packShort(requestID); //Request identifier
-							packer.packInt(requestIndex); //Request index
-							packer.packBoolean(data.isLast()); //Is last message
-							
-							packer.packPayload(data.getData(), data.getLength()); //File bytes
-							if(requestIndex == 0) {
-								packer.packString(file.getName()); //File name
-								
-								if(conversation instanceof ConversationTarget.AppleLinked) {
-									packer.packString(((ConversationTarget.AppleLinked) conversation).getGuid()); //Chat GUID
-								} else if(conversation instanceof ConversationTarget.AppleUnlinked) {
-									ConversationTarget.AppleUnlinked unlinked = ((ConversationTarget.AppleUnlinked) conversation);
-									packer.packArrayHeader(unlinked.getMembers().size()); //Members
-									for(String item : unlinked.getMembers()) packer.packString(item);
-									packer.packString(unlinked.getService()); //Service
-								}
-							}
-							
-							dataProxy.send(new EncryptedPacket(packer.toByteArray(), true));
-						}
-						
-						//Incrementing the index
-						requestIndex++;
-						
-						//Updating the progress
-						emitter.onNext(new ReduxEventAttachmentUpload.Progress(totalBytesRead, totalLength));
+					if(conversation instanceof ConversationTarget.AppleLinked) {
+						packer.packString(((ConversationTarget.AppleLinked) conversation).getGuid()); //Chat GUID
+					} else if(conversation instanceof ConversationTarget.AppleUnlinked) {
+						ConversationTarget.AppleUnlinked unlinked = ((ConversationTarget.AppleUnlinked) conversation);
+						packer.packArrayHeader(unlinked.getMembers().size()); //Members
+						for(String item : unlinked.getMembers()) packer.packString(item);
+						packer.packString(unlinked.getService()); //Service
 					}
 				}
+			});
+			
+			try {
+				//Uploading the file, reporting progress against its original size
+				long totalLength = file.length();
+				byte[] checksum = pipeline.upload(file, emitter::isDisposed, bytesSent -> emitter.onNext(new ReduxEventAttachmentUpload.Progress(bytesSent, totalLength)));
+				if(checksum == null) return;
 				
 				//Finishing
-				byte[] checksum = messageDigest.digest();
 				emitter.onNext(new ReduxEventAttachmentUpload.Complete(checksum));
 				emitter.onComplete();
+			} catch(InterruptedException exception) {
+				//Disposing the upload interrupts its thread, in which case this is a cancellation rather than a failure
+				Thread.currentThread().interrupt();
+				if(emitter.isDisposed()) return;
+				
+				emitter.tryOnError(new AMRequestException(MessageSendErrorCode.localInternal, exception));
 			} catch(IOException exception) {
+				//Ignoring failures once the upload has been cancelled, since nothing is listening for them
+				if(emitter.isDisposed()) return;
+				
 				exception.printStackTrace();
-				throw new AMRequestException(MessageSendErrorCode.localIO, exception);
-			} catch(NoSuchAlgorithmException | BufferOverflowException exception) {
+				emitter.tryOnError(new AMRequestException(MessageSendErrorCode.localIO, exception));
+			} catch(GeneralSecurityException | BufferOverflowException exception) {
+				if(emitter.isDisposed()) return;
+				
 				exception.printStackTrace();
 				CrashlyticsBridge.recordException(exception);
-				throw new AMRequestException(MessageSendErrorCode.localInternal, exception);
+				emitter.tryOnError(new AMRequestException(MessageSendErrorCode.localInternal, exception));
 			}
 		});
 	}
@@ -1316,16 +1347,8 @@ public class ClientProtocol5 extends ProtocolManager<EncryptedPacket> {
 					byte[] data = unpacker.unpackPayload();
 					String fileType = unpacker.unpackString();
 					
-					byte[] decompressedData;
-					try {
-						decompressedData = StandardCompressionHelper.decompressDeflate(data);
-					} catch(IOException exception) {
-						exception.printStackTrace();
-						
-						continue;
-					}
-					
-					list.add(new Blocks.StickerModifierInfo(message, messageIndex, fileGuid, sender, date, decompressedData, fileType));
+					//Keeping the sticker compressed until it is written to disk
+					list.add(new Blocks.StickerModifierInfo(message, messageIndex, fileGuid, sender, date, data, fileType));
 					break;
 				}
 				case nstModifierTapback: {
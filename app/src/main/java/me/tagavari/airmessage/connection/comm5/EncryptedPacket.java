@@ -1,5 +1,7 @@
 package me.tagavari.airmessage.connection.comm5;
 
+import androidx.annotation.Nullable;
+
 /**
  * A packet sent or received from a {@link me.tagavari.airmessage.connection.DataProxy}
  * Has an extra 'encrypt' flag that determines if this packet is encrypted during transit
@@ -7,10 +9,29 @@ package me.tagavari.airmessage.connection.comm5;
 public class EncryptedPacket {
 	private byte[] data;
 	private boolean encrypt;
+	private final boolean prepared;
+	private final long encryptTime;
+	@Nullable private Runnable sentListener;
+	@Nullable private Runnable failedListener;
 	
 	public EncryptedPacket(byte[] data, boolean encrypt) {
+		this(data, encrypt, false, 0);
+	}
+	
+	private EncryptedPacket(byte[] data, boolean encrypt, boolean prepared, long encryptTime) {
 		this.data = data;
 		this.encrypt = encrypt;
+		this.prepared = prepared;
+		this.encryptTime = encryptTime;
+	}
+	
+	/**
+	 * Creates a packet whose data has already been encrypted, and can be sent as-is
+	 * @param encryptedData The encrypted data
+	 * @param encryptTime The time it took to encrypt the data, in nanoseconds
+	 */
+	public static EncryptedPacket prepared(byte[] encryptedData, long encryptTime) {
+		return new EncryptedPacket(encryptedData, true, true, encryptTime);
 	}
 	
 	public byte[] getData() {
@@ -20,4 +41,46 @@ public class EncryptedPacket {
 	public boolean getEncrypt() {
 		return encrypt;
 	}
+	
+	/**
+	 * Gets whether this packet's data has already been encrypted
+	 */
+	public boolean isPrepared() {
+		return prepared;
+	}
+	
+	/**
+	 * Gets the time it took to encrypt this packet's data ahead of time, in nanoseconds
+	 */
+	public long getEncryptTime() {
+		return encryptTime;
+	}
+	
+	/**
+	 * Sets a listener to be called once this packet has been written to the network
+	 */
+	public void setSentListener(@Nullable Runnable sentListener) {
+		this.sentListener = sentListener;
+	}
+	
+	/**
+	 * Notifies this packet's listener that it has been written to the network
+	 */
+	public void notifySent() {
+		if(sentListener != null) sentListener.run();
+	}
+	
+	/**
+	 * Sets a listener to be called if this packet is dropped instead of being written to the network
+	 */
+	public void setFailedListener(@Nullable Runnable failedListener) {
+		this.failedListener = failedListener;
+	}
+	
+	/**
+	 * Notifies this packet's listener that it has been dropped, and will never be written to the network
+	 */
+	public void notifyFailed() {
+		if(failedListener != null) failedListener.run();
+	}
 }
\ No newline at end of file
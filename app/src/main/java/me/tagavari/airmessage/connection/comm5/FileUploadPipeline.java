@@ -0,0 +1,304 @@
+package me.tagavari.airmessage.connection.comm5;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferOverflowException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.zip.Deflater;
+
+import me.tagavari.airmessage.connection.DataProxy;
+
+/**
+ * Uploads a file as a series of deflated attachment packets, with each stage of the work running concurrently
+ *
+ * The file is read and hashed on one thread, deflated on another, and packed and prepared for sending (encrypted) on a pool of workers,
+ * while the calling thread hands finished packets to the data proxy in order. Stages are connected by bounded queues,
+ * and only a few packets may be waiting to be written to the network at once, so a slow connection holds back reading
+ * rather than buffering the whole file in memory.
+ */
+class FileUploadPipeline {
+	//Creating the constants
+	private static final int readBlockSize = 64 * 1024; //64 kB
+	private static final int readQueueCapacity = 16; //16 blocks
+	private static final int packerOverhead = 64 * 1024; //64 kB for packet headers, the file name and recipients
+	private static final int maxInFlightPackets = 2;
+	private static final long pollInterval = 100; //100 ms
+	private static final long sendTimeout = 60 * 1000; //60 seconds
+	private static final int workerCount = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 2));
+	
+	//Marks the end of the file in the read queue
+	private static final RawBlock endBlock = new RawBlock(new byte[0], 0);
+	
+	/**
+	 * Writes an attachment packet around a chunk of file data
+	 */
+	interface ChunkPacker {
+		void pack(AirPacker packer, int requestIndex, boolean isLast, byte[] data, int length) throws BufferOverflowException;
+	}
+	
+	private final DataProxy<EncryptedPacket> dataProxy;
+	private final String hashAlgorithm;
+	private final int chunkSize;
+	private final ChunkPacker chunkPacker;
+	
+	/**
+	 * Creates a new upload pipeline
+	 * @param dataProxy The data proxy to prepare and send packets with
+	 * @param hashAlgorithm The algorithm to hash the file's contents with
+	 * @param chunkSize The maximum size of the deflated data in each packet
+	 * @param chunkPacker A function that writes each packet
+	 */
+	FileUploadPipeline(DataProxy<EncryptedPacket> dataProxy, String hashAlgorithm, int chunkSize, ChunkPacker chunkPacker) {
+		this.dataProxy = dataProxy;
+		this.hashAlgorithm = hashAlgorithm;
+		this.chunkSize = chunkSize;
+		this.chunkPacker = chunkPacker;
+	}
+	
+	/**
+	 * Uploads a file, blocking until every packet has been written
+	 * @param file The file to upload
+	 * @param isCancelled A function that returns whether the upload should be stopped
+	 * @param progressListener A listener for the number of bytes of the original file that have been sent
+	 * @return The hash of the file's contents, or NULL if the upload was cancelled
+	 */
+	byte[] upload(File file, BooleanSupplier isCancelled, LongConsumer progressListener) throws IOException, GeneralSecurityException, InterruptedException {
+		BlockingQueue<RawBlock> readQueue = new ArrayBlockingQueue<>(readQueueCapacity);
+		BlockingQueue<byte[]> freeReadBlocks = new ArrayBlockingQueue<>(readQueueCapacity + 2);
+		BlockingQueue<Future<PreparedPacket>> packetQueue = new ArrayBlockingQueue<>(workerCount + 1);
+		BlockingQueue<byte[]> freeChunks = new ArrayBlockingQueue<>(workerCount + 3);
+		
+		ExecutorService stageExecutor = Executors.newFixedThreadPool(2);
+		ExecutorService workerExecutor = Executors.newFixedThreadPool(workerCount);
+		try {
+			//Reading and hashing the file
+			Future<byte[]> readTask = stageExecutor.submit(() -> {
+				MessageDigest messageDigest = MessageDigest.getInstance(hashAlgorithm);
+				try(InputStream inputStream = new FileInputStream(file)) {
+					while(true) {
+						byte[] buffer = freeReadBlocks.poll();
+						if(buffer == null) buffer = new byte[readBlockSize];
+						
+						int count = inputStream.read(buffer);
+						if(count == -1) break;
+						
+						messageDigest.update(buffer, 0, count);
+						readQueue.put(new RawBlock(buffer, count));
+					}
+				}
+				
+				readQueue.put(endBlock);
+				return messageDigest.digest();
+			});
+			
+			//Deflating the file, and handing off full chunks to be packed
+			Future<?> deflateTask = stageExecutor.submit(() -> {
+				Deflater deflater = new Deflater();
+				try {
+					int requestIndex = 0;
+					byte[] chunk = new byte[chunkSize];
+					int chunkLength = 0;
+					
+					//A full chunk is held back until more data follows it, so that the last chunk can be marked as such
+					Chunk heldChunk = null;
+					
+					while(true) {
+						RawBlock block = readQueue.take();
+						boolean isEnd = block == endBlock;
+						if(isEnd) deflater.finish();
+						else deflater.setInput(block.data, 0, block.length);
+						
+						while(isEnd ? !deflater.finished() : !deflater.needsInput()) {
+							chunkLength += deflater.deflate(chunk, chunkLength, chunkSize - chunkLength);
+							
+							if(chunkLength == chunkSize) {
+								if(heldChunk != null) queueChunk(heldChunk, false, workerExecutor, packetQueue, freeChunks);
+								heldChunk = new Chunk(requestIndex++, chunk, chunkLength, deflater.getBytesRead());
+								
+								chunk = freeChunks.poll();
+								if(chunk == null) chunk = new byte[chunkSize];
+								chunkLength = 0;
+							}
+						}
+						
+						if(isEnd) break;
+						freeReadBlocks.offer(block.data);
+					}
+					
+					//Sending the remaining data as the last chunk
+					if(chunkLength > 0) {
+						if(heldChunk != null) queueChunk(heldChunk, false, workerExecutor, packetQueue, freeChunks);
+						queueChunk(new Chunk(requestIndex, chunk, chunkLength, deflater.getBytesRead()), true, workerExecutor, packetQueue, freeChunks);
+					} else {
+						queueChunk(heldChunk, true, workerExecutor, packetQueue, freeChunks);
+					}
+				} finally {
+					deflater.end();
+				}
+				
+				return null;
+			});
+			
+			//Sending the packets in order
+			ArrayDeque<InFlightPacket> inFlightPackets = new ArrayDeque<>();
+			while(true) {
+				if(isCancelled.getAsBoolean()) return null;
+				
+				Future<PreparedPacket> packetFuture = packetQueue.poll(pollInterval, TimeUnit.MILLISECONDS);
+				if(packetFuture == null) {
+					//Checking for failures in the earlier stages
+					if(readTask.isDone()) getResult(readTask);
+					if(deflateTask.isDone()) getResult(deflateTask);
+					continue;
+				}
+				
+				PreparedPacket preparedPacket = getResult(packetFuture);
+				
+				InFlightPacket inFlightPacket = new InFlightPacket(preparedPacket.rawBytes);
+				preparedPacket.packet.setSentListener(inFlightPacket.sentLatch::countDown);
+				preparedPacket.packet.setFailedListener(inFlightPacket::fail);
+				if(!dataProxy.send(preparedPacket.packet)) throw new IOException("Failed to queue attachment packet");
+				inFlightPackets.add(inFlightPacket);
+				
+				//Waiting for the network to catch up
+				while(inFlightPackets.size() > maxInFlightPackets) {
+					if(!awaitSent(inFlightPackets.remove(), isCancelled, progressListener)) return null;
+				}
+				
+				if(preparedPacket.isLast) break;
+			}
+			
+			//Waiting for the remaining packets to be sent
+			while(!inFlightPackets.isEmpty()) {
+				if(!awaitSent(inFlightPackets.remove(), isCancelled, progressListener)) return null;
+			}
+			
+			return getResult(readTask);
+		} finally {
+			stageExecutor.shutdownNow();
+			workerExecutor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Submits a chunk to be packed and prepared, and queues its result to be sent
+	 */
+	private void queueChunk(Chunk chunk, boolean isLast, ExecutorService workerExecutor, BlockingQueue<Future<PreparedPacket>> packetQueue, BlockingQueue<byte[]> freeChunks) throws InterruptedException {
+		packetQueue.put(workerExecutor.submit(() -> {
+			//Packing the chunk
+			byte[] packetData;
+			AirPacker packer = new AirPacker(chunk.length + packerOverhead);
+			try {
+				chunkPacker.pack(packer, chunk.requestIndex, isLast, chunk.data, chunk.length);
+				packetData = packer.toByteArray();
+			} finally {
+				packer.close();
+				freeChunks.offer(chunk.data);
+			}
+			
+			//Preparing the packet
+			EncryptedPacket packet = dataProxy.prepare(new EncryptedPacket(packetData, true));
+			return new PreparedPacket(packet, chunk.rawBytes, isLast);
+		}));
+	}
+	
+	/**
+	 * Waits for a packet to be written to the network, and reports its progress
+	 * @return TRUE if the packet was sent, or FALSE if the upload was cancelled while waiting
+	 */
+	private static boolean awaitSent(InFlightPacket packet, BooleanSupplier isCancelled, LongConsumer progressListener) throws IOException, InterruptedException {
+		//Waiting in short steps, so that a cancelled upload doesn't wait out the full timeout
+		long waitStart = System.currentTimeMillis();
+		while(!packet.sentLatch.await(pollInterval, TimeUnit.MILLISECONDS)) {
+			if(isCancelled.getAsBoolean()) return false;
+			if(System.currentTimeMillis() - waitStart >= sendTimeout) throw new IOException("Timed out waiting for attachment packet to send");
+		}
+		
+		if(packet.isFailed) throw new IOException("Attachment packet was dropped by the connection");
+		progressListener.accept(packet.rawBytes);
+		return true;
+	}
+	
+	/**
+	 * Gets the result of a finished stage, re-throwing any exception it failed with
+	 */
+	private static <T> T getResult(Future<T> future) throws IOException, GeneralSecurityException, InterruptedException {
+		try {
+			return future.get();
+		} catch(ExecutionException exception) {
+			Throwable cause = exception.getCause();
+			if(cause instanceof IOException) throw (IOException) cause;
+			else if(cause instanceof GeneralSecurityException) throw (GeneralSecurityException) cause;
+			else if(cause instanceof InterruptedException) throw (InterruptedException) cause;
+			else if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			else throw new IllegalStateException(cause);
+		}
+	}
+	
+	private static class RawBlock {
+		final byte[] data;
+		final int length;
+		
+		RawBlock(byte[] data, int length) {
+			this.data = data;
+			this.length = length;
+		}
+	}
+	
+	private static class Chunk {
+		final int requestIndex;
+		final byte[] data;
+		final int length;
+		final long rawBytes; //The number of bytes of the original file deflated up to the end of this chunk
+		
+		Chunk(int requestIndex, byte[] data, int length, long rawBytes) {
+			this.requestIndex = requestIndex;
+			this.data = data;
+			this.length = length;
+			this.rawBytes = rawBytes;
+		}
+	}
+	
+	private static class PreparedPacket {
+		@NonNull final EncryptedPacket packet;
+		final long rawBytes;
+		final boolean isLast;
+		
+		PreparedPacket(@NonNull EncryptedPacket packet, long rawBytes, boolean isLast) {
+			this.packet = packet;
+			this.rawBytes = rawBytes;
+			this.isLast = isLast;
+		}
+	}
+	
+	private static class InFlightPacket {
+		final CountDownLatch sentLatch = new CountDownLatch(1); //Released once the packet has been sent or dropped
+		final long rawBytes;
+		volatile boolean isFailed = false;
+		
+		InFlightPacket(long rawBytes) {
+			this.rawBytes = rawBytes;
+		}
+		
+		void fail() {
+			isFailed = true;
+			sentLatch.countDown();
+		}
+	}
+}
\ No newline at end of file
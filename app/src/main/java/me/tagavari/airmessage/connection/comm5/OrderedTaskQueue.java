@@ -0,0 +1,132 @@
+package me.tagavari.airmessage.connection.comm5;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Runs tasks concurrently on an executor, while delivering their results in the order that the tasks were submitted
+ *
+ * Each task is tagged with a sequence number when it is submitted. Results that finish early are held until every task before
+ * them has been delivered, and are then delivered one at a time from whichever worker thread completed the missing task.
+ * Tasks that fail or return null are skipped, without holding up the tasks after them.
+ * @param <T> The type of result produced by tasks
+ */
+class OrderedTaskQueue<T> {
+	private final Executor executor;
+	private final Consumer<T> resultListener;
+	
+	private final Object lock = new Object();
+	private final Map<Long, Result<T>> completedResults = new HashMap<>();
+	private long nextSubmitSequence = 0;
+	private long nextDeliverSequence = 0;
+	private boolean isDelivering = false;
+	private volatile boolean isClosed = false;
+	
+	/**
+	 * Creates a new ordered task queue
+	 * @param executor The executor to run tasks on
+	 * @param resultListener The listener to deliver results to, never called concurrently
+	 */
+	OrderedTaskQueue(@NonNull Executor executor, @NonNull Consumer<T> resultListener) {
+		this.executor = executor;
+		this.resultListener = resultListener;
+	}
+	
+	/**
+	 * Queues a task to run
+	 * @param task The task to run, which may return null to produce no result
+	 * @return TRUE if the task was queued, or FALSE if the queue is closed or the executor refused it
+	 */
+	boolean submit(@NonNull Callable<T> task) {
+		long sequence;
+		synchronized(lock) {
+			if(isClosed) return false;
+			sequence = nextSubmitSequence++;
+		}
+		
+		try {
+			executor.execute(() -> {
+				T result;
+				try {
+					result = isClosed ? null : task.call();
+				} catch(Exception exception) {
+					exception.printStackTrace();
+					result = null;
+				}
+				complete(sequence, result);
+			});
+		} catch(RejectedExecutionException exception) {
+			//Skipping the task, so that it doesn't hold up later tasks
+			complete(sequence, null);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Stops delivering results, and ignores any further tasks
+	 */
+	void close() {
+		synchronized(lock) {
+			isClosed = true;
+			completedResults.clear();
+		}
+	}
+	
+	/**
+	 * Records a task's result, and delivers all results that are now in order
+	 */
+	private void complete(long sequence, @Nullable T value) {
+		synchronized(lock) {
+			if(isClosed) return;
+			completedResults.put(sequence, new Result<>(value));
+			
+			//Leaving delivery to the thread that is already delivering
+			if(isDelivering) return;
+			isDelivering = true;
+		}
+		
+		while(true) {
+			Result<T> result;
+			synchronized(lock) {
+				result = isClosed ? null : completedResults.remove(nextDeliverSequence);
+				if(result == null) {
+					isDelivering = false;
+					return;
+				}
+				nextDeliverSequence++;
+			}
+			
+			if(result.value != null) {
+				try {
+					resultListener.accept(result.value);
+				} catch(RuntimeException exception) {
+					//Leaving the queue in a usable state if the listener fails
+					synchronized(lock) {
+						isDelivering = false;
+					}
+					throw exception;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Wraps a task's result, so that tasks without a result still take up their place in the sequence
+	 */
+	private static class Result<T> {
+		@Nullable final T value;
+		
+		Result(@Nullable T value) {
+			this.value = value;
+		}
+	}
+}
\ No newline at end of file
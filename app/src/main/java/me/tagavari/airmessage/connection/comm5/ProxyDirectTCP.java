@@ -1,9 +1,12 @@
 package me.tagavari.airmessage.connection.comm5;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
 import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.Nullable;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.connection.DataProxy;
 import me.tagavari.airmessage.connection.encryption.EncryptionAES;
 import me.tagavari.airmessage.connection.encryption.EncryptionManager;
@@ -29,6 +32,7 @@ class ProxyDirectTCP extends DataProxy<EncryptedPacket> {
 	private boolean isRunning = false;
 	private ProxyDirectTCPReader readerThread;
 	private ProxyDirectTCPWriter writerThread;
+	private volatile EncryptionManager encryptionManager;
 	
 	//Creating the listeners
 	private final ProxyDirectTCPReader.Listener readerThreadListener = new ProxyDirectTCPReader.Listener() {
@@ -81,7 +85,6 @@ class ProxyDirectTCP extends DataProxy<EncryptedPacket> {
 		
 		String hostname, hostnameFallback;
 		int port, portFallback;
-		EncryptionManager encryptionManager;
 		
 		//Parsing the address
 		if(RegexConstants.port.matcher(connectionParams.getAddress()).find()) {
@@ -111,8 +114,12 @@ class ProxyDirectTCP extends DataProxy<EncryptedPacket> {
 		//Handling the password
 		encryptionManager = new EncryptionAES(connectionParams.getPassword());
 		
+		//Identifying the current network, so the reader can prefer whichever address worked last time on it
+		Network activeNetwork = context.getSystemService(ConnectivityManager.class).getActiveNetwork();
+		String networkKey = activeNetwork == null ? null : activeNetwork.toString();
+		
 		//Starting the connection thread
-		readerThread = new ProxyDirectTCPReader(readerThreadListener, hostname, port, hostnameFallback, portFallback, encryptionManager);
+		readerThread = new ProxyDirectTCPReader(readerThreadListener, hostname, port, hostnameFallback, portFallback, networkKey, encryptionManager);
 		readerThread.start();
 		
 		//Updating the running state
@@ -151,4 +158,14 @@ class ProxyDirectTCP extends DataProxy<EncryptedPacket> {
 		writerThread.queuePacket(packet);
 		return true;
 	}
+	
+	@Override
+	public EncryptedPacket prepare(EncryptedPacket packet) throws GeneralSecurityException {
+		EncryptionManager encryptionManager = this.encryptionManager;
+		if(!packet.getEncrypt() || packet.isPrepared() || encryptionManager == null) return packet;
+		
+		long encryptStart = ConnectionMetrics.now();
+		byte[] encryptedData = encryptionManager.encrypt(packet.getData());
+		return EncryptedPacket.prepared(encryptedData, ConnectionMetrics.now() - encryptStart);
+	}
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package me.tagavari.airmessage.connection.comm5;
 
 import android.util.Log;
+import androidx.annotation.Nullable;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.connection.encryption.EncryptionManager;
 import me.tagavari.airmessage.enums.ConnectionErrorCode;
 
@@ -28,16 +30,18 @@ class ProxyDirectTCPReader extends Thread {
 	private final int port;
 	private final String hostnameFallback;
 	private final int portFallback;
+	@Nullable private final String networkKey;
 	private final EncryptionManager encryptionManager;
 	
-	private boolean usingFallback;
+	private volatile boolean usingFallback;
 	
-	ProxyDirectTCPReader(Listener listener, String hostname, int port, String hostnameFallback, int portFallback, EncryptionManager encryptionManager) {
+	ProxyDirectTCPReader(Listener listener, String hostname, int port, String hostnameFallback, int portFallback, @Nullable String networkKey, EncryptionManager encryptionManager) {
 		this.listener = listener;
 		this.hostname = hostname;
 		this.port = port;
 		this.hostnameFallback = hostnameFallback;
 		this.portFallback = portFallback;
+		this.networkKey = networkKey;
 		this.encryptionManager = encryptionManager;
 	}
 	
@@ -52,20 +56,15 @@ class ProxyDirectTCPReader extends Thread {
 			if(isInterrupted()) return;
 			
 			if(hostnameFallback != null) {
+				//Racing the primary and fallback servers
+				RacingConnector.Result result;
 				try {
-					//Connecting to the primary server
-					socket = new Socket();
-					socket.connect(new InetSocketAddress(hostname, port), socketTimeout);
-					usingFallback = false;
-				} catch(IOException exception) {
-					//Printing the stack trace
-					exception.printStackTrace();
-					
-					//Connecting to the fallback server
-					socket = new Socket();
-					socket.connect(new InetSocketAddress(hostnameFallback, portFallback), socketTimeout);
-					usingFallback = true;
+					result = RacingConnector.connect(networkKey, hostname, port, hostnameFallback, portFallback, socketTimeout, RacingConnector.defaultStaggerMillis);
+				} catch(InterruptedException exception) {
+					return;
 				}
+				socket = result.socket;
+				usingFallback = result.isFallback;
 			} else {
 				//Connecting to the primary server
 				socket = new Socket();
@@ -138,7 +137,13 @@ class ProxyDirectTCPReader extends Thread {
 				}
 				
 				//Decrypting the content
-				if(isEncrypted) content = encryptionManager.decrypt(content);
+				long decryptTime = 0;
+				if(isEncrypted) {
+					long decryptStart = ConnectionMetrics.now();
+					content = encryptionManager.decrypt(content);
+					decryptTime = ConnectionMetrics.now() - decryptStart;
+				}
+				ConnectionMetrics.getInstance().recordPacketReceived(contentLen, decryptTime);
 				
 				//Processing the data
 				listener.onMessage(content, isEncrypted);
@@ -1,6 +1,7 @@
 package me.tagavari.airmessage.connection.comm5;
 
 import androidx.core.util.Consumer;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.connection.encryption.EncryptionManager;
 import me.tagavari.airmessage.enums.ConnectionErrorCode;
 
@@ -19,6 +20,8 @@ class ProxyDirectTCPWriter extends Thread {
 	private final EncryptionManager encryptionManager;
 	private final DataOutputStream outputStream;
 	
+	private volatile boolean isStopped = false;
+	
 	public ProxyDirectTCPWriter(Consumer<Integer> errorListener, EncryptionManager encryptionManager, DataOutputStream outputStream) {
 		this.errorListener = errorListener;
 		this.encryptionManager = encryptionManager;
@@ -27,44 +30,74 @@ class ProxyDirectTCPWriter extends Thread {
 	
 	@Override
 	public void run() {
-		EncryptedPacket packet;
+		EncryptedPacket packet = null;
 		
 		try {
 			while(!isInterrupted()) {
 				try {
 					packet = uploadQueue.take();
-					sendDataSync(packet.getData(), packet.getEncrypt());
+					sendDataSync(packet);
 					
 					while((packet = uploadQueue.poll()) != null) {
-						sendDataSync(packet.getData(), packet.getEncrypt());
+						sendDataSync(packet);
 					}
 					
 					outputStream.flush();
 				} catch(IOException | GeneralSecurityException exception) {
 					exception.printStackTrace();
 					
+					//Dropping the packet that failed to send
+					if(packet != null) packet.notifyFailed();
+					
 					errorListener.accept(ConnectionErrorCode.connection);
 				}
 			}
 		} catch(InterruptedException exception) {
 			exception.printStackTrace();
+		} finally {
+			//Dropping any packets that will no longer be sent
+			isStopped = true;
+			failQueuedPackets();
 		}
 	}
 	
 	void queuePacket(EncryptedPacket packet) {
 		uploadQueue.add(packet);
+		
+		//Dropping the packet if the writer has already stopped
+		if(isStopped) failQueuedPackets();
 	}
 	
 	/**
-	 * Encrypts data if necessary, and then submits it to the stream
-	 * @param data The data to send
-	 * @param isEncrypted Whether to encrypt this data
+	 * Removes all packets from the queue, and notifies them that they won't be sent
 	 */
-	private synchronized void sendDataSync(byte[] data, boolean isEncrypted) throws IOException, GeneralSecurityException {
-		if(isEncrypted) data = encryptionManager.encrypt(data);
+	private void failQueuedPackets() {
+		EncryptedPacket packet;
+		while((packet = uploadQueue.poll()) != null) packet.notifyFailed();
+	}
+	
+	/**
+	 * Encrypts a packet's data if necessary, and then submits it to the stream
+	 * @param packet The packet to send
+	 */
+	private synchronized void sendDataSync(EncryptedPacket packet) throws IOException, GeneralSecurityException {
+		byte[] data = packet.getData();
+		boolean isEncrypted = packet.getEncrypt();
+		long encryptTime = 0;
+		if(packet.isPrepared()) {
+			//The data was already encrypted ahead of time
+			encryptTime = packet.getEncryptTime();
+		} else if(isEncrypted) {
+			long encryptStart = ConnectionMetrics.now();
+			data = encryptionManager.encrypt(data);
+			encryptTime = ConnectionMetrics.now() - encryptStart;
+		}
+		ConnectionMetrics.getInstance().recordPacketSent(data.length, encryptTime);
 		
 		outputStream.writeInt(data.length);
 		outputStream.writeBoolean(isEncrypted);
 		outputStream.write(data);
+		
+		packet.notifySent();
 	}
 }
\ No newline at end of file
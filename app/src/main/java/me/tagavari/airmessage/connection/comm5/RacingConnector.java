@@ -0,0 +1,158 @@
+package me.tagavari.airmessage.connection.comm5;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to whichever of a primary and fallback address responds first
+ *
+ * The preferred address is tried first, and the other address is tried after a short delay or as soon as the first fails.
+ * The address that wins is remembered for each network, and is preferred the next time a connection is made on that network.
+ */
+class RacingConnector {
+	//Creating the constants
+	static final long defaultStaggerMillis = 300; //300 milliseconds
+	
+	//Whether the fallback address won the last race on each network
+	private static final Map<String, Boolean> preferFallbackMap = new ConcurrentHashMap<>();
+	
+	/**
+	 * Connects to the first address to respond
+	 * @param networkKey A key that identifies the current network, or NULL if unknown
+	 * @param hostname The primary hostname
+	 * @param port The primary port
+	 * @param hostnameFallback The fallback hostname
+	 * @param portFallback The fallback port
+	 * @param timeout The connection timeout for each address, in milliseconds
+	 * @param staggerMillis How long to wait for the preferred address before trying the other
+	 * @return The connected socket
+	 * @throws IOException If neither address could be connected to
+	 * @throws InterruptedException If this thread was interrupted while waiting
+	 */
+	static Result connect(@Nullable String networkKey, String hostname, int port, String hostnameFallback, int portFallback, int timeout, long staggerMillis) throws IOException, InterruptedException {
+		String preferenceKey = networkKey + '|' + hostname + ':' + port + '|' + hostnameFallback + ':' + portFallback;
+		boolean preferFallback = Boolean.TRUE.equals(preferFallbackMap.get(preferenceKey));
+		
+		//Creating the attempts, with the preferred address first
+		BlockingQueue<Attempt> completedQueue = new LinkedBlockingQueue<>();
+		Attempt attemptPrimary = new Attempt(hostname, port, false, timeout, completedQueue);
+		Attempt attemptFallback = new Attempt(hostnameFallback, portFallback, true, timeout, completedQueue);
+		Attempt[] attempts = preferFallback ? new Attempt[]{attemptFallback, attemptPrimary} : new Attempt[]{attemptPrimary, attemptFallback};
+		
+		attempts[0].start();
+		int startedCount = 1;
+		int completedCount = 0;
+		IOException lastException = null;
+		
+		try {
+			while(completedCount < startedCount || startedCount < attempts.length) {
+				//Waiting for an attempt to complete, starting the next attempt if the current one is taking too long
+				Attempt attempt;
+				if(startedCount < attempts.length) {
+					attempt = completedQueue.poll(staggerMillis, TimeUnit.MILLISECONDS);
+					if(attempt == null) {
+						attempts[startedCount++].start();
+						continue;
+					}
+				} else {
+					attempt = completedQueue.take();
+				}
+				completedCount++;
+				
+				//Returning the first successful connection
+				if(attempt.exception == null) {
+					cancelAll(attempts, attempt);
+					if(networkKey != null) preferFallbackMap.put(preferenceKey, attempt.isFallback);
+					return new Result(attempt.socket, attempt.isFallback);
+				}
+				
+				//Starting the next attempt immediately after a failure
+				lastException = attempt.exception;
+				if(startedCount < attempts.length) attempts[startedCount++].start();
+			}
+		} catch(InterruptedException exception) {
+			cancelAll(attempts, null);
+			throw exception;
+		}
+		
+		throw lastException;
+	}
+	
+	/**
+	 * Clears all remembered connection preferences
+	 */
+	static void clearPreferences() {
+		preferFallbackMap.clear();
+	}
+	
+	/**
+	 * Cancels all attempts except for the provided one
+	 */
+	private static void cancelAll(Attempt[] attempts, @Nullable Attempt exclude) {
+		for(Attempt attempt : attempts) {
+			if(attempt != exclude) attempt.cancel();
+		}
+	}
+	
+	static class Result {
+		@NonNull final Socket socket;
+		final boolean isFallback;
+		
+		Result(@NonNull Socket socket, boolean isFallback) {
+			this.socket = socket;
+			this.isFallback = isFallback;
+		}
+	}
+	
+	private static class Attempt extends Thread {
+		private final String hostname;
+		private final int port;
+		private final boolean isFallback;
+		private final int timeout;
+		private final BlockingQueue<Attempt> completedQueue;
+		
+		private final Socket socket = new Socket();
+		@Nullable private volatile IOException exception = null;
+		
+		Attempt(String hostname, int port, boolean isFallback, int timeout, BlockingQueue<Attempt> completedQueue) {
+			super("RacingConnector-" + (isFallback ? "fallback" : "primary"));
+			this.hostname = hostname;
+			this.port = port;
+			this.isFallback = isFallback;
+			this.timeout = timeout;
+			this.completedQueue = completedQueue;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				//Resolving and connecting on this thread, so a slow DNS lookup doesn't hold up the other attempt
+				socket.connect(new InetSocketAddress(hostname, port), timeout);
+			} catch(IOException exception) {
+				this.exception = exception;
+			}
+			
+			completedQueue.add(this);
+		}
+		
+		/**
+		 * Closes this attempt's socket, whether it is connecting or already connected
+		 */
+		void cancel() {
+			try {
+				socket.close();
+			} catch(IOException exception) {
+				exception.printStackTrace();
+			}
+		}
+	}
+}
\ No newline at end of file
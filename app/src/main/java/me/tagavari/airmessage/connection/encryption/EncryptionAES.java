@@ -22,8 +22,8 @@ public class EncryptionAES implements EncryptionManager {
 	private static final int keyIterationCount = 10000;
 	private static final int keyLength = 128; //128 bits
 	
-	//Creating the secure random
-	private SecureRandom random;
+	//Creating the secure random, shared by threads encrypting in parallel
+	private final SecureRandom random = new SecureRandom();
 	
 	//Creating the parameter values
 	private final String password;
@@ -32,20 +32,21 @@ public class EncryptionAES implements EncryptionManager {
 		this.password = password;
 	}
 	
+	/**
+	 * Gets the password that this instance encrypts with
+	 */
+	public String getPassword() {
+		return password;
+	}
+	
 	@Override
 	public byte[] encrypt(byte[] inData) throws GeneralSecurityException {
-		//Initializing the random
-		if(random == null) random = new SecureRandom();
-		
 		//Generating a salt
 		byte[] salt = new byte[saltLen];
 		random.nextBytes(salt);
 		
 		//Creating the key
-		SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(keyFactoryAlgorithm);
-		KeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, keyIterationCount, keyLength);
-		SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
-		SecretKeySpec secretKeySpec = new SecretKeySpec(secretKey.getEncoded(), keyAlgorithm);
+		SecretKeySpec secretKeySpec = deriveKey(salt);
 		
 		//Generating the IV
 		byte[] iv = new byte[ivLen];
@@ -75,10 +76,7 @@ public class EncryptionAES implements EncryptionManager {
 		byte[] data = Arrays.copyOfRange(inData, saltLen + ivLen, inData.length);
 		
 		//Creating the key
-		SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(keyFactoryAlgorithm);
-		KeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, keyIterationCount, keyLength);
-		SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
-		SecretKeySpec secretKeySpec = new SecretKeySpec(secretKey.getEncoded(), keyAlgorithm);
+		SecretKeySpec secretKeySpec = deriveKey(salt);
 		
 		//Creating the IV
 		GCMParameterSpec gcmSpec = new GCMParameterSpec(keyLength, iv);
@@ -90,4 +88,16 @@ public class EncryptionAES implements EncryptionManager {
 		//Deciphering the data
 		return cipher.doFinal(data);
 	}
+	
+	/**
+	 * Derives an encryption key from the password
+	 * @param salt The salt to derive the key with
+	 * @return The derived key
+	 */
+	private SecretKeySpec deriveKey(byte[] salt) throws GeneralSecurityException {
+		SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(keyFactoryAlgorithm);
+		KeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, keyIterationCount, keyLength);
+		SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
+		return new SecretKeySpec(secretKey.getEncoded(), keyAlgorithm);
+	}
 }
\ No newline at end of file
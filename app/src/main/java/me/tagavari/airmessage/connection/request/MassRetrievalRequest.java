@@ -10,6 +10,7 @@ import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import me.tagavari.airmessage.common.Blocks;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.data.DatabaseManager;
 import me.tagavari.airmessage.helper.AttachmentStorageHelper;
 import me.tagavari.airmessage.messaging.ConversationInfo;
@@ -67,8 +68,12 @@ public class MassRetrievalRequest {
 		initialInfoReceived = true;
 		this.totalMessageCount = totalMessageCount;
 		
+		int traceMessageType = ConnectionMetrics.getInstance().getCurrentMessageType();
+		
 		//Writing the data
 		return Single.fromCallable(() -> {
+			long traceStartTime = ConnectionMetrics.now();
+			
 			//Writing the conversations to disk
 			List<ConversationInfo> conversationInfoList = new ArrayList<>();
 			for(Blocks.ConversationInfo structConversation : conversationList) {
@@ -76,6 +81,8 @@ public class MassRetrievalRequest {
 				if(item != null) conversationInfoList.add(item);
 			}
 			this.conversationList = conversationInfoList;
+			
+			ConnectionMetrics.getInstance().recordApply(traceMessageType, traceStartTime);
 			return conversationInfoList;
 		}).subscribeOn(requestScheduler).observeOn(AndroidSchedulers.mainThread());
 	}
@@ -97,7 +104,10 @@ public class MassRetrievalRequest {
 		}
 		expectedResponseIndex++;
 		
+		int traceMessageType = ConnectionMetrics.getInstance().getCurrentMessageType();
+		
 		return Single.fromCallable(() -> {
+			long traceStartTime = ConnectionMetrics.now();
 			List<ConversationItem> addedItemList = new ArrayList<>();
 			
 			//Adding the messages
@@ -115,6 +125,7 @@ public class MassRetrievalRequest {
 				addedItemList.add(conversationItem);
 			}
 			
+			ConnectionMetrics.getInstance().recordApply(traceMessageType, traceStartTime);
 			return addedItemList;
 		}).subscribeOn(requestScheduler).observeOn(AndroidSchedulers.mainThread()).doOnSuccess(addedItems -> {
 			//Updating the total
@@ -1,6 +1,7 @@
 package me.tagavari.airmessage.connection.task;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import androidx.annotation.Nullable;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.CheckReturnValue;
@@ -35,6 +36,16 @@ public class MessageUpdateTask {
 	 */
 	@CheckReturnValue
 	public static Single<Response> create(Context context, Collection<Long> foregroundConversationIDs, Collection<Blocks.ConversationItem> conversationItems, boolean collectAttachments) {
+		return write(context, foregroundConversationIDs, conversationItems, collectAttachments).observeOn(AndroidSchedulers.mainThread());
+	}
+	
+	/**
+	 * Updates the status of messages in the database, delivering the result on the database thread
+	 * This is useful for callers that need to wait for the result, such as push messages that must be handled before their service stops
+	 * @see #create(Context, Collection, Collection, boolean)
+	 */
+	@CheckReturnValue
+	public static Single<Response> write(Context context, Collection<Long> foregroundConversationIDs, Collection<Blocks.ConversationItem> conversationItems, boolean collectAttachments) {
 		return Single.fromCallable(() -> {
 			//Creating the collector lists
 			List<ReduxEventMessaging> events = new ArrayList<>();
@@ -42,77 +53,86 @@ public class MessageUpdateTask {
 			List<ConversationInfo> incompleteServerConversations = new ArrayList<>();
 			List<Pair<MessageInfo, AttachmentInfo>> collectedAttachments = collectAttachments ? new ArrayList<>() : null;
 			
-			//Grouping the messages by conversation and iterating
-			for(Map.Entry<String, List<Blocks.ConversationItem>> entry : conversationItems.stream().collect(Collectors.groupingBy(item -> item.chatGuid)).entrySet()) {
-				//Retrieving / creating the conversation from the database
-				ConversationInfo conversationInfo = DatabaseManager.getInstance().addRetrieveServerCreatedConversationInfo(context, entry.getKey());
-				if(conversationInfo == null) continue;
-				
-				int newIncomingMessageCount = 0;
-				List<ReplaceInsertResult> newItems = conversationInfo.getState() == ConversationState.ready ? new ArrayList<>(entry.getValue().size()) : null;
-				for(Blocks.ConversationItem conversationItem : entry.getValue()) {
-					//Adding the conversation item to the database
-					ReplaceInsertResult replaceInsertResult = DatabaseManager.getInstance().mergeOrWriteConversationItem(context, conversationInfo.getLocalID(), conversationItem, false);
-					if(replaceInsertResult == null) continue;
+			//Writing all items in one transaction, so the database only commits once
+			SQLiteDatabase database = DatabaseManager.getInstance().getWritableDatabase();
+			database.beginTransaction();
+			try {
+				//Grouping the messages by conversation and iterating
+				for(Map.Entry<String, List<Blocks.ConversationItem>> entry : conversationItems.stream().collect(Collectors.groupingBy(item -> item.chatGuid)).entrySet()) {
+					//Retrieving / creating the conversation from the database
+					ConversationInfo conversationInfo = DatabaseManager.getInstance().addRetrieveServerCreatedConversationInfo(context, entry.getKey());
+					if(conversationInfo == null) continue;
 					
-					ConversationItem targetItem = replaceInsertResult.getTargetItem();
-					
-					if(conversationInfo.getState() == ConversationState.ready) {
-						//Adding the conversation item to the complete list
-						newItems.add(replaceInsertResult);
+					int newIncomingMessageCount = 0;
+					List<ReplaceInsertResult> newItems = conversationInfo.getState() == ConversationState.ready ? new ArrayList<>(entry.getValue().size()) : null;
+					for(Blocks.ConversationItem conversationItem : entry.getValue()) {
+						//Adding the conversation item to the database
+						ReplaceInsertResult replaceInsertResult = DatabaseManager.getInstance().mergeOrWriteConversationItem(context, conversationInfo.getLocalID(), conversationItem, false);
+						if(replaceInsertResult == null) continue;
+						
+						ConversationItem targetItem = replaceInsertResult.getTargetItem();
 						
-						//Checking the conversation item's influence
-						if(targetItem.getItemType() == ConversationItemType.member) {
-							//Converting the item to a group action info
-							ChatMemberAction groupActionInfo = (ChatMemberAction) targetItem;
+						if(conversationInfo.getState() == ConversationState.ready) {
+							//Adding the conversation item to the complete list
+							newItems.add(replaceInsertResult);
 							
-							//Adding or removing the member on disk
-							if(groupActionInfo.getOther() != null) {
-								//Creating the member
-								int otherColor = ConversationColorHelper.getNextUserColor(conversationInfo);
-								MemberInfo otherMember = new MemberInfo(groupActionInfo.getOther(), otherColor);
+							//Checking the conversation item's influence
+							if(targetItem.getItemType() == ConversationItemType.member) {
+								//Converting the item to a group action info
+								ChatMemberAction groupActionInfo = (ChatMemberAction) targetItem;
 								
-								if(groupActionInfo.getActionType() == GroupAction.join) {
-									DatabaseManager.getInstance().addConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther(), otherMember.getColor());
-									events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, true));
-								} else if(groupActionInfo.getActionType() == GroupAction.leave) {
-									DatabaseManager.getInstance().removeConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther());
-									events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, false));
+								//Adding or removing the member on disk
+								if(groupActionInfo.getOther() != null) {
+									//Creating the member
+									int otherColor = ConversationColorHelper.getNextUserColor(conversationInfo);
+									MemberInfo otherMember = new MemberInfo(groupActionInfo.getOther(), otherColor);
+									
+									if(groupActionInfo.getActionType() == GroupAction.join) {
+										DatabaseManager.getInstance().addConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther(), otherMember.getColor());
+										events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, true));
+									} else if(groupActionInfo.getActionType() == GroupAction.leave) {
+										DatabaseManager.getInstance().removeConversationMember(conversationInfo.getLocalID(), groupActionInfo.getOther());
+										events.add(new ReduxEventMessaging.ConversationMember(conversationInfo, otherMember, false));
+									}
 								}
+							} else if(targetItem.getItemType() == ConversationItemType.chatRename) {
+								String title = ((ChatRenameAction) targetItem).getTitle();
+								
+								//Writing the new title to the database
+								DatabaseManager.getInstance().updateConversationTitle(conversationInfo.getLocalID(), title);
+								
+								//Adding the event
+								events.add(new ReduxEventMessaging.ConversationTitle(conversationInfo, title));
 							}
-						} else if(targetItem.getItemType() == ConversationItemType.chatRename) {
-							String title = ((ChatRenameAction) targetItem).getTitle();
-							
-							//Writing the new title to the database
-							DatabaseManager.getInstance().updateConversationTitle(conversationInfo.getLocalID(), title);
-							
-							//Adding the event
-							events.add(new ReduxEventMessaging.ConversationTitle(conversationInfo, title));
+						}
+						
+						//Counting the new incoming message count
+						if(targetItem.getItemType() == ConversationItemType.message && !((MessageInfo) targetItem).isOutgoing()) {
+							newIncomingMessageCount++;
+						}
+						
+						if(collectAttachments && targetItem.getItemType() == ConversationItemType.message) {
+							//Adding attachments
+							MessageInfo messageInfo = (MessageInfo) targetItem;
+							collectedAttachments.addAll(messageInfo.getAttachments().stream().map(attachment -> new Pair<>(messageInfo, attachment)).collect(Collectors.toList()));
 						}
 					}
 					
-					//Counting the new incoming message count
-					if(targetItem.getItemType() == ConversationItemType.message && !((MessageInfo) targetItem).isOutgoing()) {
-						newIncomingMessageCount++;
-					}
+					//Updating the conversation values
+					ConversationValueUpdateResult updateResult = ConversationHelper.updateConversationValues(foregroundConversationIDs, conversationInfo, newIncomingMessageCount);
+					events.addAll(updateResult.getEvents(conversationInfo));
 					
-					if(collectAttachments && targetItem.getItemType() == ConversationItemType.message) {
-						//Adding attachments
-						MessageInfo messageInfo = (MessageInfo) targetItem;
-						collectedAttachments.addAll(messageInfo.getAttachments().stream().map(attachment -> new Pair<>(messageInfo, attachment)).collect(Collectors.toList()));
+					//Adding the results
+					if(conversationInfo.getState() == ConversationState.ready) {
+						updatedCompleteConversations.add(new Pair<>(conversationInfo, newItems));
+					} else {
+						incompleteServerConversations.add(conversationInfo);
 					}
 				}
 				
-				//Updating the conversation values
-				ConversationValueUpdateResult updateResult = ConversationHelper.updateConversationValues(foregroundConversationIDs, conversationInfo, newIncomingMessageCount);
-				events.addAll(updateResult.getEvents(conversationInfo));
-				
-				//Adding the results
-				if(conversationInfo.getState() == ConversationState.ready) {
-					updatedCompleteConversations.add(new Pair<>(conversationInfo, newItems));
-				} else {
-					incompleteServerConversations.add(conversationInfo);
-				}
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
 			}
 			
 			//Adding the message update event
@@ -120,7 +140,7 @@ public class MessageUpdateTask {
 			
 			//Finishing
 			return new Response(events, incompleteServerConversations, collectedAttachments);
-		}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+		}).subscribeOn(Schedulers.single());
 	}
 	
 	public static class Response {
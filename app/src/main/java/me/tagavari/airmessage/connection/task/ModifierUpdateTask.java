@@ -1,6 +1,7 @@
 package me.tagavari.airmessage.connection.task;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.CheckReturnValue;
 import io.reactivex.rxjava3.core.Single;
@@ -9,7 +10,6 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.common.Blocks;
 import me.tagavari.airmessage.data.DatabaseManager;
-import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 import me.tagavari.airmessage.messaging.StickerInfo;
 import me.tagavari.airmessage.messaging.TapbackInfo;
 import me.tagavari.airmessage.util.ActivityStatusUpdate;
@@ -17,73 +17,108 @@ import me.tagavari.airmessage.util.ModifierMetadata;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ModifierUpdateTask {
 	/**
 	 * Asynchronously processes a modifier update
+	 *
+	 * All referenced messages are looked up with a single query, and all changes are written in a single transaction.
+	 * If a message's state is updated more than once in the same batch, only its final state is written and reported.
 	 * @param context The context to use
 	 * @param structModifiers A list of modifiers to process
 	 * @return A completable representing this task
 	 */
 	@CheckReturnValue
 	public static Single<Response> create(Context context, Collection<Blocks.ModifierInfo> structModifiers) {
-		return Single.create((SingleEmitter<Response> emitter) -> {
+		return write(context, structModifiers).observeOn(AndroidSchedulers.mainThread());
+	}
+	
+	/**
+	 * Processes a modifier update, delivering the result on the database thread
+	 * @see #create(Context, Collection)
+	 */
+	@CheckReturnValue
+	public static Single<Response> write(Context context, Collection<Blocks.ModifierInfo> structModifiers) {
+		return Single.create((SingleEmitter<Pair<Response, List<Blocks.StickerModifierInfo>>> emitter) -> {
 			//Creating the result lists
-			
-			List<ActivityStatusUpdate> activityStatusUpdates = new ArrayList<>();
-			List<Pair<StickerInfo, ModifierMetadata>> stickerModifiers = new ArrayList<>();
+			Map<Long, ActivityStatusUpdate> activityStatusUpdates = new LinkedHashMap<>();
+			List<Pair<StickerInfo, ModifierMetadata>> stickerEntries = new ArrayList<>();
+			List<Blocks.StickerModifierInfo> stickerInfos = new ArrayList<>();
 			List<Pair<TapbackInfo, ModifierMetadata>> tapbackModifiers = new ArrayList<>();
 			List<Pair<TapbackInfo, ModifierMetadata>> tapbackRemovals = new ArrayList<>();
 			
-			//Iterating over the modifiers
-			for(Blocks.ModifierInfo modifierInfo : structModifiers) {
-				//Checking if the modifier is an activity status modifier
-				if(modifierInfo instanceof Blocks.ActivityStatusModifierInfo) {
-					//Casting to the activity status modifier
-					Blocks.ActivityStatusModifierInfo activityStatusModifierInfo = (Blocks.ActivityStatusModifierInfo) modifierInfo;
-					
+			//Finding all referenced messages at once
+			Set<String> messageGUIDs = new HashSet<>();
+			for(Blocks.ModifierInfo modifierInfo : structModifiers) messageGUIDs.add(modifierInfo.message);
+			Map<String, Long> messageIDs = DatabaseManager.getInstance().messageGUIDsToLocalIDs(messageGUIDs);
+			
+			//Applying all modifiers in one transaction
+			SQLiteDatabase database = DatabaseManager.getInstance().getWritableDatabase();
+			database.beginTransaction();
+			try {
+				//Iterating over the modifiers
+				for(Blocks.ModifierInfo modifierInfo : structModifiers) {
 					//Finding the message in the database
-					long messageID = DatabaseManager.getInstance().messageGUIDToLocalID(activityStatusModifierInfo.message);
-					if(messageID == -1) continue;
-					
-					//Updating the modifier in the database
-					DatabaseManager.getInstance().updateMessageState(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead);
+					Long messageID = messageIDs.get(modifierInfo.message);
+					if(messageID == null) continue;
 					
-					activityStatusUpdates.add(new ActivityStatusUpdate(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead));
-				}
-				//Otherwise checking if the modifier is a sticker update
-				else if(modifierInfo instanceof Blocks.StickerModifierInfo) {
-					//Updating the modifier in the database
-					Blocks.StickerModifierInfo stickerInfo = (Blocks.StickerModifierInfo) modifierInfo;
-					try {
-						Pair<StickerInfo, ModifierMetadata> pair = DatabaseManager.getInstance().addMessageSticker(context, stickerInfo);
-						if(pair != null) stickerModifiers.add(pair);
-					} catch(OutOfMemoryError exception) {
-						exception.printStackTrace();
-						CrashlyticsBridge.recordException(exception);
+					//Checking if the modifier is an activity status modifier
+					if(modifierInfo instanceof Blocks.ActivityStatusModifierInfo) {
+						//Casting to the activity status modifier
+						Blocks.ActivityStatusModifierInfo activityStatusModifierInfo = (Blocks.ActivityStatusModifierInfo) modifierInfo;
+						
+						//Recording the update, replacing any earlier update to the same message in this batch
+						activityStatusUpdates.remove(messageID);
+						activityStatusUpdates.put(messageID, new ActivityStatusUpdate(messageID, activityStatusModifierInfo.state, activityStatusModifierInfo.dateRead));
 					}
-				}
-				//Otherwise checking if the modifier is a tapback update
-				else if(modifierInfo instanceof Blocks.TapbackModifierInfo) {
-					//Getting the tapback modifier
-					Blocks.TapbackModifierInfo tapbackModifierInfo = (Blocks.TapbackModifierInfo) modifierInfo;
-					
-					//Updating the modifier in the database
-					if(tapbackModifierInfo.isAddition) {
-						Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().addMessageTapback(tapbackModifierInfo);
-						if(result != null) tapbackModifiers.add(result);
+					//Otherwise checking if the modifier is a sticker update
+					else if(modifierInfo instanceof Blocks.StickerModifierInfo) {
+						//Adding the sticker to the database, leaving its file to be written after the transaction
+						Blocks.StickerModifierInfo stickerInfo = (Blocks.StickerModifierInfo) modifierInfo;
+						Pair<StickerInfo, ModifierMetadata> pair = DatabaseManager.getInstance().addMessageStickerEntry(context, messageID, stickerInfo);
+						if(pair != null) {
+							stickerEntries.add(pair);
+							stickerInfos.add(stickerInfo);
+						}
 					}
-					//Deleting the modifier from the database
-					else {
-						Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().removeMessageTapback(tapbackModifierInfo);
-						if(result != null) tapbackRemovals.add(result);
+					//Otherwise checking if the modifier is a tapback update
+					else if(modifierInfo instanceof Blocks.TapbackModifierInfo) {
+						//Getting the tapback modifier
+						Blocks.TapbackModifierInfo tapbackModifierInfo = (Blocks.TapbackModifierInfo) modifierInfo;
+						
+						//Updating the modifier in the database
+						if(tapbackModifierInfo.isAddition) {
+							Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().addMessageTapback(messageID, tapbackModifierInfo);
+							if(result != null) tapbackModifiers.add(result);
+						}
+						//Deleting the modifier from the database
+						else {
+							Pair<TapbackInfo, ModifierMetadata> result = DatabaseManager.getInstance().removeMessageTapback(messageID, tapbackModifierInfo);
+							if(result != null) tapbackRemovals.add(result);
+						}
 					}
 				}
+				
+				//Writing the final state of each updated message
+				DatabaseManager.getInstance().updateMessageStates(activityStatusUpdates.values());
+				
+				database.setTransactionSuccessful();
+			} finally {
+				database.endTransaction();
 			}
 			
-			emitter.onSuccess(new Response(activityStatusUpdates, stickerModifiers, tapbackModifiers, tapbackRemovals));
-		}).subscribeOn(Schedulers.single()).observeOn(AndroidSchedulers.mainThread());
+			emitter.onSuccess(new Pair<>(new Response(new ArrayList<>(activityStatusUpdates.values()), stickerEntries, tapbackModifiers, tapbackRemovals), stickerInfos));
+		}).subscribeOn(Schedulers.single()).flatMap(result -> {
+			//Decompressing the stickers to disk, without holding up the database thread
+			Response response = result.getFirst();
+			return DatabaseManager.getInstance().writeStickerFilesAsync(context, response.getStickerModifiers(), result.getSecond())
+					.map(stickerModifiers -> new Response(response.getActivityStatusUpdates(), stickerModifiers, response.getTapbackModifiers(), response.getTapbackRemovals()));
+		});
 	}
 	
 	public static class Response {
@@ -7,11 +7,15 @@ import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 import android.util.Base64;
 import android.util.LongSparseArray;
 import android.webkit.MimeTypeMap;
 import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.annotations.CheckReturnValue;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Pair;
 import me.tagavari.airmessage.MainApplication;
 import me.tagavari.airmessage.activity.Messaging;
@@ -21,6 +25,7 @@ import me.tagavari.airmessage.enums.*;
 import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 import me.tagavari.airmessage.helper.*;
 import me.tagavari.airmessage.messaging.*;
+import me.tagavari.airmessage.util.ActivityStatusUpdate;
 import me.tagavari.airmessage.util.ModifierMetadata;
 import me.tagavari.airmessage.util.ReplaceInsertResult;
 
@@ -35,7 +40,9 @@ import java.util.zip.Inflater;
 public class DatabaseManager extends SQLiteOpenHelper {
 	//If you change the database schema, you must increment the database version
 	private static final String DATABASE_NAME = "messages.db";
-	private static final int DATABASE_VERSION = 15;
+	private static final int DATABASE_VERSION = 16;
+	private static final int sqliteMaxParameters = 999; //The lowest limit on query parameters across supported SQLite versions
+	private static final long previewImageMinUnusedAge = 60 * 60 * 1000; //1 hour
 	
 	//Creating the fetch statements
 	/* private static final String SQL_FETCH_CONVERSATIONS = "SELECT * FROM (" +
@@ -153,7 +160,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	private static final String SQL_CREATE_TABLE_MESSAGEPREVIEW = "CREATE TABLE " + Contract.MessagePreviewEntry.TABLE_NAME + " (" +
 			Contract.MessagePreviewEntry._ID + " INTEGER PRIMARY KEY UNIQUE," +
 			Contract.MessagePreviewEntry.COLUMN_NAME_TYPE + " INTEGER NOT NULL, " +
-			Contract.MessagePreviewEntry.COLUMN_NAME_DATA + " BLOB, " +
+			Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHASH + " TEXT, " +
+			Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEWIDTH + " INTEGER, " +
+			Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHEIGHT + " INTEGER, " +
 			Contract.MessagePreviewEntry.COLUMN_NAME_TARGET + " TEXT, " +
 			Contract.MessagePreviewEntry.COLUMN_NAME_TITLE + " TEXT, " +
 			Contract.MessagePreviewEntry.COLUMN_NAME_SUBTITLE + " TEXT, " +
@@ -183,8 +192,12 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	//Creating the database instance variable
 	private static DatabaseManager instance = null;
 	
+	//The application context, used for moving data out of the database during upgrades
+	private final Context applicationContext;
+	
 	private DatabaseManager(Context context) {
 		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		applicationContext = context.getApplicationContext();
 	}
 	
 	@Override
@@ -555,6 +568,55 @@ public class DatabaseManager extends SQLiteOpenHelper {
 						"sort INTEGER, " +
 						"should_auto_download INTEGER NOT NULL DEFAULT 0" +
 						");", false);
+			case 15:
+				//Moving preview images out of the database and into files
+				//Thumbnails are left to be generated when each preview is first displayed, so that upgrading stays quick
+				database.execSQL("ALTER TABLE message_preview ADD image_hash TEXT;");
+				database.execSQL("ALTER TABLE message_preview ADD image_width INTEGER;");
+				database.execSQL("ALTER TABLE message_preview ADD image_height INTEGER;");
+				
+				{
+					//Finding the previews that have images
+					List<Long> previewIDList = new ArrayList<>();
+					try(Cursor cursor = database.query("message_preview", new String[]{BaseColumns._ID}, "data IS NOT NULL", null, null, null, null)) {
+						while(cursor.moveToNext()) previewIDList.add(cursor.getLong(0));
+					}
+					
+					//Reading the images one at a time, so that only one large image has to fit in the cursor window
+					for(long previewID : previewIDList) {
+						byte[] data;
+						try(Cursor cursor = database.query("message_preview", new String[]{"data"}, BaseColumns._ID + " = ?", new String[]{Long.toString(previewID)}, null, null, null, "1")) {
+							if(!cursor.moveToFirst()) continue;
+							data = cursor.getBlob(0);
+						} catch(SQLiteException exception) {
+							//The image is too large to read, so the preview is left without one
+							exception.printStackTrace();
+							continue;
+						}
+						
+						ImageStorageHelper.StoredImage storedImage = ImageStorageHelper.storePreviewImage(applicationContext, data, false);
+						if(storedImage == null) continue;
+						
+						ContentValues contentValues = new ContentValues();
+						contentValues.put("image_hash", storedImage.getHash());
+						contentValues.put("image_width", storedImage.getWidth());
+						contentValues.put("image_height", storedImage.getHeight());
+						database.update("message_preview", contentValues, BaseColumns._ID + " = ?", new String[]{Long.toString(previewID)});
+					}
+				}
+				
+				//Rebuilding the preview table to drop the "data" column
+				rebuildTable(database, "message_preview", "CREATE TABLE message_preview (" +
+						BaseColumns._ID + " INTEGER PRIMARY KEY UNIQUE," +
+						"type INTEGER NOT NULL, " +
+						"image_hash TEXT, " +
+						"image_width INTEGER, " +
+						"image_height INTEGER, " +
+						"target TEXT, " +
+						"title TEXT, " +
+						"subtitle TEXT, " +
+						"caption TEXT " +
+						");", false);
 		}
 	}
 	
@@ -651,7 +713,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		static class MessagePreviewEntry implements BaseColumns {
 			static final String TABLE_NAME = "message_preview";
 			static final String COLUMN_NAME_TYPE = "type";
-			static final String COLUMN_NAME_DATA = "data";
+			static final String COLUMN_NAME_IMAGEHASH = "image_hash";
+			static final String COLUMN_NAME_IMAGEWIDTH = "image_width";
+			static final String COLUMN_NAME_IMAGEHEIGHT = "image_height";
 			static final String COLUMN_NAME_TARGET = "target";
 			static final String COLUMN_NAME_TITLE = "title";
 			static final String COLUMN_NAME_SUBTITLE = "subtitle";
@@ -1271,7 +1335,11 @@ public class DatabaseManager extends SQLiteOpenHelper {
 				int stickerComponentIndex = stickerCursor.getInt(sIdentifierMessageIndex);
 				String stickerSender = stickerCursor.getString(sIdentifierSender);
 				long stickerDate = stickerCursor.getLong(sIdentifierDate);
-				File stickerFile = AttachmentStorageHelper.getAbsolutePath(context, stickerCursor.getString(sIdentifierPath));
+				String stickerPath = stickerCursor.getString(sIdentifierPath);
+				
+				//Skipping stickers without a file
+				if(stickerPath == null) continue;
+				File stickerFile = AttachmentStorageHelper.getAbsolutePath(context, stickerPath);
 				
 				if(stickerComponentIndex >= messageInfo.getComponentCount()) continue;
 				messageInfo.getComponentAt(stickerComponentIndex).getStickers().add(new StickerInfo(stickerID, stickerGUID, stickerSender, stickerDate, stickerFile));
@@ -1358,7 +1426,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		MessagePreviewInfo preview = new MessagePreviewInfo(
 				previewCursor.getInt(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_TYPE)),
 				previewID,
-				previewCursor.getBlob(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_DATA)),
+				previewCursor.getString(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHASH)),
+				previewCursor.getInt(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEWIDTH)),
+				previewCursor.getInt(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHEIGHT)),
 				previewCursor.getString(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_TARGET)),
 				previewCursor.getString(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_TITLE)),
 				previewCursor.getString(previewCursor.getColumnIndexOrThrow(Contract.MessagePreviewEntry.COLUMN_NAME_SUBTITLE)),
@@ -1371,10 +1441,10 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	}
 	
 	/**
-	 * Returns the last 10 items of a conversation for quick reply or notification history
+	 * Returns the last 10 text messages of a conversation for quick reply or notification history
 	 * @param context The context to use
 	 * @param conversationID The conversation to load form
-	 * @return The last 10 message items of the conversation
+	 * @return The last 10 text messages of the conversation
 	 */
 	public List<MessageInfo> loadConversationHistoryBit(Context context, long conversationID) {
 		//Getting the database
@@ -1384,7 +1454,10 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		List<MessageInfo> messageList = new ArrayList<>();
 		
 		//Querying the database
-		Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, null, Contract.MessageEntry.COLUMN_NAME_CHAT + " = ?", new String[]{Long.toString(conversationID)}, null, null, messageSortOrderDesc, Integer.toString(SmartReplyHelper.smartReplyHistoryLength));
+		//Selecting the latest text messages, the same as the in-app reply bar, so that both share smart reply suggestions
+		Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, null,
+				Contract.MessageEntry.COLUMN_NAME_CHAT + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_ITEMTYPE + " = ? AND " + Contract.MessageEntry.COLUMN_NAME_MESSAGETEXT + " IS NOT NULL",
+				new String[]{Long.toString(conversationID), Integer.toString(ConversationItemType.message)}, null, null, messageSortOrderDesc, Integer.toString(SmartReplyHelper.smartReplyHistoryLength));
 		//Cursor cursor = database.rawQuery(SQL_FETCH_CONVERSATION_MESSAGES, new String[]{Long.toString(conversationInfo.getLocalID())});
 		
 		//Getting the indices
@@ -2963,6 +3036,31 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		}
 	}
 	
+	/**
+	 * Gets the local IDs of multiple messages from their GUIDs
+	 * @param messageGUIDs The GUIDs of the messages
+	 * @return A map of message GUIDs to local IDs, which doesn't contain messages that weren't found
+	 */
+	public Map<String, Long> messageGUIDsToLocalIDs(Collection<String> messageGUIDs) {
+		Map<String, Long> resultMap = new HashMap<>(messageGUIDs.size());
+		
+		//Querying in chunks, to stay under SQLite's limit on query parameters
+		List<String> guidList = new ArrayList<>(messageGUIDs);
+		for(int chunkStart = 0; chunkStart < guidList.size(); chunkStart += sqliteMaxParameters) {
+			List<String> chunk = guidList.subList(chunkStart, Math.min(chunkStart + sqliteMaxParameters, guidList.size()));
+			String placeholders = Collections.nCopies(chunk.size(), "?").stream().collect(Collectors.joining(","));
+			
+			try(Cursor cursor = getReadableDatabase().query(Contract.MessageEntry.TABLE_NAME, new String[]{Contract.MessageEntry._ID, Contract.MessageEntry.COLUMN_NAME_GUID},
+					Contract.MessageEntry.COLUMN_NAME_GUID + " IN (" + placeholders + ")", chunk.toArray(new String[0]), null, null, null)) {
+				int indexID = cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID);
+				int indexGUID = cursor.getColumnIndexOrThrow(Contract.MessageEntry.COLUMN_NAME_GUID);
+				while(cursor.moveToNext()) resultMap.put(cursor.getString(indexGUID), cursor.getLong(indexID));
+			}
+		}
+		
+		return resultMap;
+	}
+	
 	public void setUnreadMessageCount(long conversationID, int count) {
 		//Creating the content values
 		ContentValues contentValues = new ContentValues();
@@ -3012,6 +3110,21 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @return A pair of sticker's complete object and its positioning metadata
 	 */
 	public Pair<StickerInfo, ModifierMetadata> addMessageSticker(Context context, long messageID, Blocks.StickerModifierInfo sticker) {
+		Pair<StickerInfo, ModifierMetadata> entry = addMessageStickerEntry(context, messageID, sticker);
+		if(entry == null) return null;
+		
+		List<Pair<StickerInfo, ModifierMetadata>> result = writeStickerFiles(context, Collections.singletonList(entry), Collections.singletonList(sticker));
+		return result.isEmpty() ? null : result.get(0);
+	}
+	
+	/**
+	 * Adds a sticker's entry to the database, recording the path of its file without writing it
+	 * Call {@link #writeStickerFiles(Context, List, List)} afterwards to write the sticker to disk
+	 * @param messageID The ID of the message to add the sticker to
+	 * @param sticker The sticker message to write
+	 * @return A pair of sticker's complete object and its positioning metadata
+	 */
+	public Pair<StickerInfo, ModifierMetadata> addMessageStickerEntry(Context context, long messageID, Blocks.StickerModifierInfo sticker) {
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
@@ -3023,34 +3136,116 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		contentValues.put(Contract.StickerEntry.COLUMN_NAME_SENDER, sticker.sender);
 		contentValues.put(Contract.StickerEntry.COLUMN_NAME_DATE, sticker.date);
 		
-		//Inserting the entry
+		//Inserting the entry along with its file path, so that the entry is never left without one
 		long stickerID;
+		File targetFile = null;
+		database.beginTransaction();
 		try {
-			stickerID = database.insert(Contract.StickerEntry.TABLE_NAME, null, contentValues);
-		} catch(SQLiteConstraintException exception) {
-			exception.printStackTrace();
-			return null;
+			try {
+				stickerID = database.insert(Contract.StickerEntry.TABLE_NAME, null, contentValues);
+			} catch(SQLiteConstraintException exception) {
+				exception.printStackTrace();
+				stickerID = -1;
+			}
+			
+			if(stickerID != -1) {
+				//Picking the sticker's file
+				String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(sticker.type);
+				targetFile = AttachmentStorageHelper.prepareContentFile(context, AttachmentStorageHelper.dirNameSticker, stickerID + (extension != null ? '.' + extension : ""));
+				
+				//Recording the file path
+				ContentValues pathValues = new ContentValues();
+				pathValues.put(Contract.StickerEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, targetFile));
+				database.update(Contract.StickerEntry.TABLE_NAME, pathValues, Contract.StickerEntry._ID + " = ?", new String[]{Long.toString(stickerID)});
+			}
+			
+			//Committing even if the entry wasn't added, so that an enclosing transaction isn't rolled back
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
 		}
 		
-		//Saving the sticker data to disk
-		String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(sticker.type);
-		File targetFile = AttachmentStorageHelper.prepareContentFile(context, AttachmentStorageHelper.dirNameSticker, stickerID + (extension != null ? '.' + extension : ""));
+		if(stickerID == -1) return null;
 		
-		try(FileOutputStream outputStream = new FileOutputStream(targetFile, false)) {
-			outputStream.write(sticker.data);
-		} catch(IOException exception) {
-			exception.printStackTrace();
-			AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, targetFile);
-			return null;
+		//Returning the sticker
+		return new Pair<>(new StickerInfo(stickerID, sticker.fileGuid, sticker.sender, sticker.date, targetFile), new ModifierMetadata(messageID, sticker.messageIndex));
+	}
+	
+	/**
+	 * Decompresses stickers to disk in parallel, blocking until they are written
+	 * Stickers that fail to write are removed from the database
+	 * @param context The context to use
+	 * @param entries The sticker entries, from {@link #addMessageStickerEntry(Context, long, Blocks.StickerModifierInfo)}
+	 * @param stickers The sticker messages matching each entry
+	 * @return The entries of the stickers that were written successfully
+	 */
+	public List<Pair<StickerInfo, ModifierMetadata>> writeStickerFiles(Context context, List<Pair<StickerInfo, ModifierMetadata>> entries, List<Blocks.StickerModifierInfo> stickers) {
+		if(entries.isEmpty()) return Collections.emptyList();
+		
+		//Writing the sticker files, treating every sticker as failed if writing throws
+		boolean[] results = new boolean[entries.size()];
+		List<Pair<StickerInfo, ModifierMetadata>> writtenEntries;
+		try {
+			boolean[] writeResults = StickerStorageHelper.writeStickers(getStickerData(stickers), getStickerFiles(entries));
+			System.arraycopy(writeResults, 0, results, 0, results.length);
+		} finally {
+			writtenEntries = removeFailedStickers(entries, results);
 		}
 		
-		//Updating the sticker's file path
-		contentValues = new ContentValues();
-		contentValues.put(Contract.StickerEntry.COLUMN_NAME_FILEPATH, AttachmentStorageHelper.getRelativePath(context, targetFile));
-		database.update(Contract.StickerEntry.TABLE_NAME, contentValues, Contract.StickerEntry._ID + " = ?", new String[]{Long.toString(stickerID)});
+		return writtenEntries;
+	}
+	
+	/**
+	 * Decompresses stickers to disk in parallel, without blocking the calling thread
+	 * Stickers that fail to write are removed from the database on the database thread
+	 * @param context The context to use
+	 * @param entries The sticker entries, from {@link #addMessageStickerEntry(Context, long, Blocks.StickerModifierInfo)}
+	 * @param stickers The sticker messages matching each entry
+	 * @return A single for the entries of the stickers that were written successfully, delivered on the database thread
+	 */
+	@CheckReturnValue
+	public Single<List<Pair<StickerInfo, ModifierMetadata>>> writeStickerFilesAsync(Context context, List<Pair<StickerInfo, ModifierMetadata>> entries, List<Blocks.StickerModifierInfo> stickers) {
+		if(entries.isEmpty()) return Single.just(Collections.emptyList());
 		
-		//Returning the sticker
-		return new Pair<>(new StickerInfo(stickerID, sticker.fileGuid, sticker.sender, sticker.date, targetFile), new ModifierMetadata(messageID, sticker.messageIndex));
+		return StickerStorageHelper.writeStickersAsync(getStickerData(stickers), getStickerFiles(entries))
+				.onErrorReturn(error -> {
+					//Treating every sticker as failed
+					error.printStackTrace();
+					return new boolean[entries.size()];
+				})
+				.observeOn(Schedulers.single())
+				.map(results -> removeFailedStickers(entries, results));
+	}
+	
+	private static List<byte[]> getStickerData(List<Blocks.StickerModifierInfo> stickers) {
+		return stickers.stream().map(sticker -> sticker.compressedData).collect(Collectors.toList());
+	}
+	
+	private static List<File> getStickerFiles(List<Pair<StickerInfo, ModifierMetadata>> entries) {
+		return entries.stream().map(entry -> entry.getFirst().getFile()).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Removes the entries and files of stickers that failed to write
+	 * @param entries The sticker entries
+	 * @param results Whether each sticker was written successfully
+	 * @return The entries of the stickers that were written successfully
+	 */
+	private List<Pair<StickerInfo, ModifierMetadata>> removeFailedStickers(List<Pair<StickerInfo, ModifierMetadata>> entries, boolean[] results) {
+		SQLiteDatabase database = getWritableDatabase();
+		List<Pair<StickerInfo, ModifierMetadata>> writtenEntries = new ArrayList<>(entries.size());
+		for(int i = 0; i < entries.size(); i++) {
+			Pair<StickerInfo, ModifierMetadata> entry = entries.get(i);
+			if(results[i]) {
+				writtenEntries.add(entry);
+			} else {
+				//Removing the sticker
+				database.delete(Contract.StickerEntry.TABLE_NAME, Contract.StickerEntry._ID + " = ?", new String[]{Long.toString(entry.getFirst().getLocalID())});
+				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, entry.getFirst().getFile());
+			}
+		}
+		
+		return writtenEntries;
 	}
 	
 	/**
@@ -3061,8 +3256,19 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @return A list of added stickers with their metadata
 	 */
 	private List<Pair<StickerInfo, ModifierMetadata>> addMessageStickers(Context context, long messageID, List<Blocks.StickerModifierInfo> stickers) {
-		return stickers.stream().map(sticker -> Optional.ofNullable(addMessageSticker(context, messageID, sticker)))
-				.filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+		//Adding the sticker entries
+		List<Pair<StickerInfo, ModifierMetadata>> entries = new ArrayList<>(stickers.size());
+		List<Blocks.StickerModifierInfo> addedStickers = new ArrayList<>(stickers.size());
+		for(Blocks.StickerModifierInfo sticker : stickers) {
+			Pair<StickerInfo, ModifierMetadata> entry = addMessageStickerEntry(context, messageID, sticker);
+			if(entry == null) continue;
+			
+			entries.add(entry);
+			addedStickers.add(sticker);
+		}
+		
+		//Writing the stickers to disk
+		return writeStickerFiles(context, entries, addedStickers);
 	}
 	
 	/**
@@ -3317,6 +3523,16 @@ public class DatabaseManager extends SQLiteOpenHelper {
 	 * @param conversationID The ID of the conversation to delete
 	 */
 	public void deleteConversation(Context context, long conversationID) {
+		deleteConversationData(context, conversationID);
+		deleteUnusedPreviews(context);
+	}
+	
+	/**
+	 * Deletes a conversation and its messages, without cleaning up link previews
+	 * @param context The context to use
+	 * @param conversationID The ID of the conversation to delete
+	 */
+	private void deleteConversationData(Context context, long conversationID) {
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
@@ -3354,13 +3570,44 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			while(cursor.moveToNext()) {
 				long conversationID = cursor.getLong(columnIndexID);
 				deletedConversations[i++] = conversationID;
-				deleteConversation(context, conversationID);
+				deleteConversationData(context, conversationID);
 			}
 		}
 		
+		//Cleaning up link previews once for all conversations
+		deleteUnusedPreviews(context);
+		
 		return deletedConversations;
 	}
 	
+	/**
+	 * Deletes link previews that no message uses, along with any preview images that no preview uses
+	 * @param context The context to use
+	 */
+	public void deleteUnusedPreviews(Context context) {
+		SQLiteDatabase database = getWritableDatabase();
+		
+		Set<String> usedHashes = new HashSet<>();
+		database.beginTransaction();
+		try {
+			//Deleting previews that no message references
+			database.delete(Contract.MessagePreviewEntry.TABLE_NAME, Contract.MessagePreviewEntry._ID + " NOT IN (SELECT " + Contract.MessageEntry.COLUMN_NAME_PREVIEW_ID + " FROM " + Contract.MessageEntry.TABLE_NAME + " WHERE " + Contract.MessageEntry.COLUMN_NAME_PREVIEW_ID + " IS NOT NULL)", null);
+			
+			//Collecting the images that remaining previews use
+			try(Cursor cursor = database.query(true, Contract.MessagePreviewEntry.TABLE_NAME, new String[]{Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHASH},
+					Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHASH + " IS NOT NULL", null, null, null, null, null)) {
+				while(cursor.moveToNext()) usedHashes.add(cursor.getString(0));
+			}
+			
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+		
+		//Deleting unused image files
+		ImageStorageHelper.deleteUnusedPreviewImages(context, usedHashes, previewImageMinUnusedAge);
+	}
+	
 	/**
 	 * Deletes a message from the database, as well as any associated data saved on disk
 	 * @param context The context to use
@@ -3398,7 +3645,9 @@ public class DatabaseManager extends SQLiteOpenHelper {
 			while(cursor.moveToNext()) {
 				String path = cursor.getString(iPath);
 				if(path == null) continue;
-				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, AttachmentStorageHelper.getAbsolutePath(context, path));
+				File stickerFile = AttachmentStorageHelper.getAbsolutePath(context, path);
+				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, stickerFile);
+				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, ImageStorageHelper.getStickerThumbnailFile(stickerFile));
 			}
 		}
 		//Deleting associated sticker entries
@@ -3507,22 +3756,50 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		getWritableDatabase().update(Contract.MessageEntry.TABLE_NAME, contentValues, Contract.MessageEntry._ID + " = ?", new String[]{Long.toString(localID)});
 	}
 	
+	/**
+	 * Updates the state of multiple messages with a single compiled statement
+	 * Callers should wrap this in a transaction along with any related changes
+	 * @param updates The state updates to apply
+	 */
+	public void updateMessageStates(Collection<ActivityStatusUpdate> updates) {
+		if(updates.isEmpty()) return;
+		
+		try(SQLiteStatement statement = getWritableDatabase().compileStatement("UPDATE " + Contract.MessageEntry.TABLE_NAME + " SET " + Contract.MessageEntry.COLUMN_NAME_STATE + " = ?, " + Contract.MessageEntry.COLUMN_NAME_DATEREAD + " = ? WHERE " + Contract.MessageEntry._ID + " = ?")) {
+			for(ActivityStatusUpdate update : updates) {
+				statement.bindLong(1, update.getMessageState());
+				statement.bindLong(2, update.getDateRead());
+				statement.bindLong(3, update.getMessageID());
+				statement.executeUpdateDelete();
+			}
+		}
+	}
+	
 	/**
 	 * Removes a tapback
 	 * @param tapback The tapback block to remove
 	 * @return The removed tapback details, or NULL if unavailable
 	 */
 	public Pair<TapbackInfo, ModifierMetadata> removeMessageTapback(Blocks.TapbackModifierInfo tapback) {
-		//Getting the database
-		SQLiteDatabase database = getWritableDatabase();
-		
 		//Fetching the local ID of the associated message
 		long messageID;
-		try(Cursor cursor = database.query(Contract.MessageEntry.TABLE_NAME, new String[]{Contract.MessageEntry._ID}, Contract.MessageEntry.COLUMN_NAME_GUID + " = ?", new String[]{tapback.message}, null, null, null, "1")) {
+		try(Cursor cursor = getReadableDatabase().query(Contract.MessageEntry.TABLE_NAME, new String[]{Contract.MessageEntry._ID}, Contract.MessageEntry.COLUMN_NAME_GUID + " = ?", new String[]{tapback.message}, null, null, null, "1")) {
 			if(!cursor.moveToNext()) return null;
 			messageID = cursor.getLong(cursor.getColumnIndexOrThrow(Contract.MessageEntry._ID));
 		}
 		
+		return removeMessageTapback(messageID, tapback);
+	}
+	
+	/**
+	 * Removes a tapback
+	 * @param messageID The ID of the message to remove the tapback from
+	 * @param tapback The tapback block to remove
+	 * @return The removed tapback details, or NULL if unavailable
+	 */
+	public Pair<TapbackInfo, ModifierMetadata> removeMessageTapback(long messageID, Blocks.TapbackModifierInfo tapback) {
+		//Getting the database
+		SQLiteDatabase database = getWritableDatabase();
+		
 		//Fetching the local ID of the tapback
 		long tapbackID;
 		try(Cursor cursor = database.query(Contract.TapbackEntry.TABLE_NAME, new String[]{Contract.TapbackEntry._ID},
@@ -3580,13 +3857,33 @@ public class DatabaseManager extends SQLiteOpenHelper {
 		//Getting the database
 		SQLiteDatabase database = getWritableDatabase();
 		
+		//Using a transaction, so that the preview can't be cleaned up between finding it and linking it to the message
+		database.beginTransaction();
+		try {
+			setMessagePreviewDataInTransaction(database, messageID, messagePreview);
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
+		}
+	}
+	
+	private void setMessagePreviewDataInTransaction(SQLiteDatabase database, long messageID, MessagePreviewInfo messagePreview) {
 		ContentValues contentValues = new ContentValues();
 		
+		//Reusing an existing preview for the same link, so that a link shared in several messages is only stored once
+		long previewID = -1;
+		try(Cursor cursor = database.query(Contract.MessagePreviewEntry.TABLE_NAME, new String[]{Contract.MessagePreviewEntry._ID},
+				Contract.MessagePreviewEntry.COLUMN_NAME_TYPE + " = ? AND " + Contract.MessagePreviewEntry.COLUMN_NAME_TARGET + " = ?",
+				new String[]{Integer.toString(messagePreview.getType()), messagePreview.getTarget()}, null, null, null, "1")) {
+			if(cursor.moveToFirst()) previewID = cursor.getLong(0);
+		}
+		
 		//Adding the preview information
-		long previewID;
-		{
+		if(previewID == -1) {
 			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_TYPE, messagePreview.getType());
-			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_DATA, messagePreview.getData());
+			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHASH, messagePreview.getImageHash());
+			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEWIDTH, messagePreview.getImageWidth());
+			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_IMAGEHEIGHT, messagePreview.getImageHeight());
 			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_TARGET, messagePreview.getTarget());
 			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_TITLE, messagePreview.getTitle());
 			contentValues.put(Contract.MessagePreviewEntry.COLUMN_NAME_SUBTITLE, messagePreview.getSubtitle());
@@ -0,0 +1,339 @@
+package me.tagavari.airmessage.data;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.annotations.CheckReturnValue;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import me.tagavari.airmessage.helper.ImageStorageHelper;
+import me.tagavari.airmessage.task.RichPreviewTask;
+
+/**
+ * Caches link previews by URL, in memory and on disk
+ *
+ * URLs are normalized before lookup, so the same link posted in several messages is only fetched once.
+ * Concurrent requests for the same URL share a single fetch.
+ * Preview images are stored once in the preview image directory through {@link ImageStorageHelper}, and entries only refer to them by hash.
+ * An entry whose image has since been cleaned up is fetched again.
+ * Entries on disk expire after {@link #entryTTLMillis}, and the least recently used entries are evicted once the cache grows past {@link #diskMaxBytes}.
+ */
+public class LinkPreviewCache {
+	private static final String TAG = LinkPreviewCache.class.getSimpleName();
+	
+	//Creating the constants
+	private static final long entryTTLMillis = 7 * 24 * 60 * 60 * 1000L; //7 days
+	private static final long diskMaxBytes = 2 * 1024 * 1024; //2 MB, as entries only hold metadata
+	private static final int memoryMaxBytes = 2 * 1024 * 1024; //2 MB
+	private static final int fileVersion = 2;
+	private static final String fileExtension = ".preview";
+	
+	private final Context context;
+	private final File directory;
+	private final int imageMaxBytes;
+	
+	private final LruCache<String, Preview> memoryCache = new LruCache<String, Preview>(memoryMaxBytes) {
+		@Override
+		protected int sizeOf(String key, Preview value) {
+			return value.getApproximateSize();
+		}
+	};
+	private final Map<String, Single<Preview>> pendingRequests = new ConcurrentHashMap<>();
+	
+	/**
+	 * Creates a new link preview cache
+	 * @param context The context to use for storing preview images
+	 * @param directory The directory to store cached previews in
+	 * @param imageMaxBytes The maximum size of a preview's image
+	 */
+	public LinkPreviewCache(@NonNull Context context, @NonNull File directory, int imageMaxBytes) {
+		this.context = context.getApplicationContext();
+		this.directory = directory;
+		this.imageMaxBytes = imageMaxBytes;
+	}
+	
+	/**
+	 * Gets the preview for a URL, from the cache if possible and otherwise by fetching it
+	 * @param url The URL to get the preview of
+	 * @return A single for the preview, delivered on the main thread
+	 */
+	@CheckReturnValue
+	public Single<Preview> getPreview(@NonNull String url) {
+		String key = normalizeURL(url);
+		
+		//Joining any request already in progress for this URL
+		return pendingRequests.computeIfAbsent(key, k -> Single.fromCallable(() -> loadPreview(k, url))
+				.subscribeOn(Schedulers.io())
+				.doOnSuccess(preview -> memoryCache.put(k, preview))
+				.doFinally(() -> pendingRequests.remove(k))
+				.cache())
+				.observeOn(AndroidSchedulers.mainThread());
+	}
+	
+	/**
+	 * Clears all previews held in memory
+	 */
+	public void clearMemoryCache() {
+		memoryCache.evictAll();
+	}
+	
+	/**
+	 * Loads a preview from disk, or fetches and stores it if it isn't available
+	 */
+	private Preview loadPreview(String key, String url) throws IOException {
+		//Checking the memory cache
+		Preview cachedPreview = memoryCache.get(key);
+		if(cachedPreview != null && !cachedPreview.isExpired() && touchImage(cachedPreview)) {
+			return cachedPreview;
+		}
+		
+		File file = new File(directory, hashKey(key) + fileExtension);
+		
+		//Reading the preview from disk
+		if(file.exists()) {
+			try {
+				Preview preview = readPreview(file);
+				if(!preview.isExpired() && touchImage(preview)) {
+					//Marking the file as recently used
+					file.setLastModified(System.currentTimeMillis());
+					return preview;
+				}
+			} catch(IOException exception) {
+				Log.w(TAG, "Failed to read cached preview for " + url, exception);
+			}
+			
+			file.delete();
+		}
+		
+		//Fetching the preview
+		RichPreviewTask.Metadata metadata = RichPreviewTask.fetchMetadataSync(url);
+		ImageStorageHelper.StoredImage image = null;
+		if(!metadata.getImageURL().isEmpty()) {
+			try {
+				//Storing the image as a preview file, leaving its thumbnail to be generated once it is displayed
+				byte[] imageData = RichPreviewTask.fetchImage(metadata.getImageURL(), imageMaxBytes);
+				if(imageData != null) image = ImageStorageHelper.storePreviewImage(context, imageData, false);
+			} catch(IOException exception) {
+				//Not failing, as the preview should simply be displayed without an image if the image failed to download
+				Log.w(TAG, "Failed to download preview image for " + url, exception);
+			}
+		}
+		Preview preview = new Preview(metadata, image, System.currentTimeMillis());
+		
+		//Writing the preview to disk
+		try {
+			writePreview(file, preview);
+			trimDiskCache();
+		} catch(IOException exception) {
+			Log.w(TAG, "Failed to cache preview for " + url, exception);
+			file.delete();
+		}
+		
+		return preview;
+	}
+	
+	/**
+	 * Checks that a preview's image is still stored, and marks it as recently used so that it isn't cleaned up before its preview is saved
+	 * @return Whether the preview can be used as-is
+	 */
+	private boolean touchImage(Preview preview) {
+		ImageStorageHelper.StoredImage image = preview.getImage();
+		if(image == null) return true;
+		
+		File imageFile = ImageStorageHelper.getPreviewImageFile(context, image.getHash());
+		if(!imageFile.exists()) return false;
+		
+		imageFile.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+	
+	/**
+	 * Deletes the least recently used entries until the cache fits under its size limit
+	 */
+	private void trimDiskCache() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(fileExtension));
+		if(files == null) return;
+		
+		long totalSize = 0;
+		for(File file : files) totalSize += file.length();
+		if(totalSize <= diskMaxBytes) return;
+		
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(File file : files) {
+			if(totalSize <= diskMaxBytes) break;
+			long fileSize = file.length();
+			if(file.delete()) totalSize -= fileSize;
+		}
+	}
+	
+	private static Preview readPreview(File file) throws IOException {
+		try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(inputStream.readInt() != fileVersion) throw new IOException("Unsupported cache file version");
+			
+			long fetchTime = inputStream.readLong();
+			RichPreviewTask.Metadata metadata = new RichPreviewTask.Metadata();
+			metadata.setUrl(readString(inputStream));
+			metadata.setImageURL(readString(inputStream));
+			metadata.setTitle(readString(inputStream));
+			metadata.setDescription(readString(inputStream));
+			metadata.setSiteName(readString(inputStream));
+			metadata.setMediaType(readString(inputStream));
+			metadata.setFavicon(readString(inputStream));
+			
+			ImageStorageHelper.StoredImage image = null;
+			if(inputStream.readBoolean()) {
+				image = new ImageStorageHelper.StoredImage(readString(inputStream), inputStream.readInt(), inputStream.readInt());
+			}
+			
+			return new Preview(metadata, image, fetchTime);
+		}
+	}
+	
+	private void writePreview(File file, Preview preview) throws IOException {
+		if(!directory.exists() && !directory.mkdirs()) throw new IOException("Failed to create cache directory " + directory);
+		
+		try(DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			RichPreviewTask.Metadata metadata = preview.getMetadata();
+			outputStream.writeInt(fileVersion);
+			outputStream.writeLong(preview.getFetchTime());
+			writeString(outputStream, metadata.getUrl());
+			writeString(outputStream, metadata.getImageURL());
+			writeString(outputStream, metadata.getTitle());
+			writeString(outputStream, metadata.getDescription());
+			writeString(outputStream, metadata.getSiteName());
+			writeString(outputStream, metadata.getMediaType());
+			writeString(outputStream, metadata.getFavicon());
+			
+			ImageStorageHelper.StoredImage image = preview.getImage();
+			outputStream.writeBoolean(image != null);
+			if(image != null) {
+				writeString(outputStream, image.getHash());
+				outputStream.writeInt(image.getWidth());
+				outputStream.writeInt(image.getHeight());
+			}
+		}
+	}
+	
+	private static String readString(DataInputStream inputStream) throws IOException {
+		byte[] bytes = new byte[inputStream.readInt()];
+		inputStream.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static void writeString(DataOutputStream outputStream, @Nullable String string) throws IOException {
+		byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+		outputStream.writeInt(bytes.length);
+		outputStream.write(bytes);
+	}
+	
+	/**
+	 * Gets a file-safe name for a cache key
+	 */
+	private static String hashKey(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder stringBuilder = new StringBuilder(digest.length * 2);
+			for(byte b : digest) stringBuilder.append(String.format(Locale.ROOT, "%02x", b));
+			return stringBuilder.toString();
+		} catch(NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+	
+	/**
+	 * Normalizes a URL for use as a cache key, so that trivially different forms of the same link share an entry
+	 *
+	 * The scheme and host are lowercased, default ports and fragments are removed, and an empty path is replaced with "/".
+	 * @param url The URL to normalize
+	 * @return The normalized URL, or the original URL if it couldn't be parsed
+	 */
+	@NonNull
+	public static String normalizeURL(@NonNull String url) {
+		try {
+			URI uri = new URI(url.trim());
+			if(uri.getScheme() == null || uri.getRawAuthority() == null) return url;
+			
+			String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+			int port = uri.getPort();
+			if((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) port = -1;
+			
+			StringBuilder stringBuilder = new StringBuilder();
+			stringBuilder.append(scheme).append("://");
+			if(uri.getRawUserInfo() != null) stringBuilder.append(uri.getRawUserInfo()).append('@');
+			stringBuilder.append(uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : uri.getRawAuthority());
+			if(port != -1) stringBuilder.append(':').append(port);
+			stringBuilder.append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+			if(uri.getRawQuery() != null) stringBuilder.append('?').append(uri.getRawQuery());
+			return stringBuilder.toString();
+		} catch(URISyntaxException exception) {
+			return url;
+		}
+	}
+	
+	/**
+	 * A cached link preview
+	 */
+	public static class Preview {
+		@NonNull private final RichPreviewTask.Metadata metadata;
+		@Nullable private final ImageStorageHelper.StoredImage image;
+		private final long fetchTime;
+		
+		Preview(@NonNull RichPreviewTask.Metadata metadata, @Nullable ImageStorageHelper.StoredImage image, long fetchTime) {
+			this.metadata = metadata;
+			this.image = image;
+			this.fetchTime = fetchTime;
+		}
+		
+		@NonNull
+		public RichPreviewTask.Metadata getMetadata() {
+			return metadata;
+		}
+		
+		/**
+		 * Gets the preview's stored image, already downsampled to fit the cache's image size limit
+		 */
+		@Nullable
+		public ImageStorageHelper.StoredImage getImage() {
+			return image;
+		}
+		
+		public long getFetchTime() {
+			return fetchTime;
+		}
+		
+		boolean isExpired() {
+			return System.currentTimeMillis() - fetchTime > entryTTLMillis;
+		}
+		
+		int getApproximateSize() {
+			int size = 64;
+			if(image != null) size += image.getHash().length() * 2;
+			size += metadata.getTitle().length() * 2 + metadata.getDescription().length() * 2;
+			return size;
+		}
+	}
+}
\ No newline at end of file
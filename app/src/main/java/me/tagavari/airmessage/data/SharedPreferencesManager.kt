@@ -40,6 +40,11 @@ object SharedPreferencesManager {
 	private const val sharedPreferencesSecureKeyAddressFallback = "hostname_fallback"
 	private const val sharedPreferencesSecureKeyPassword = "password"
 	
+	//Secure preferences are opened and decrypted once, and kept in memory for the lifetime of the process
+	private val secureLock = Any()
+	@Volatile private var secureSharedPrefs: SharedPreferences? = null
+	@Volatile private var secureValues: Map<String, String?>? = null
+	
 	/**
 	 * Gets the shared preferences instance for installation-related information
 	 */
@@ -56,16 +61,54 @@ object SharedPreferencesManager {
 	
 	/**
 	 * Gets the shared preferences instance for sensitive information
+	 *
+	 * The instance is created on first use, since opening it requires a round trip to the Keystore.
 	 */
 	@Throws(GeneralSecurityException::class, IOException::class)
 	private fun getSecureSharedPrefs(context: Context): SharedPreferences {
-		return EncryptedSharedPreferences.create(
-			sharedPreferencesSecureFile,
-			MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC),
-			context,
-			EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-			EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-		)
+		secureSharedPrefs?.let { return it }
+		
+		synchronized(secureLock) {
+			secureSharedPrefs?.let { return it }
+			
+			return EncryptedSharedPreferences.create(
+				sharedPreferencesSecureFile,
+				MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC),
+				context.applicationContext,
+				EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+				EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+			).also { secureSharedPrefs = it }
+		}
+	}
+	
+	/**
+	 * Reads a value from the secure shared preferences
+	 *
+	 * All values are decrypted on the first read, and later reads are served from memory.
+	 */
+	@Throws(GeneralSecurityException::class, IOException::class)
+	private fun getSecureString(context: Context, key: String): String? {
+		val values = secureValues ?: synchronized(secureLock) {
+			secureValues ?: getSecureSharedPrefs(context).all
+				.mapValues { it.value as? String }
+				.also { secureValues = it }
+		}
+		
+		return values[key]
+	}
+	
+	/**
+	 * Writes values to the secure shared preferences, updating the in-memory copy
+	 */
+	@Throws(GeneralSecurityException::class, IOException::class)
+	private fun putSecureStrings(context: Context, vararg values: Pair<String, String?>) {
+		synchronized(secureLock) {
+			val editor = getSecureSharedPrefs(context).edit()
+			for((key, value) in values) editor.putString(key, value)
+			editor.apply()
+			
+			secureValues?.let { secureValues = it + values }
+		}
 	}
 	
 	/**
@@ -184,6 +227,9 @@ object SharedPreferencesManager {
 		installationEditor.commit()
 		connectivityEditor.commit()
 		secureEditor.commit()
+		
+		//Reloading the in-memory copy of the secure values
+		secureValues = null
 	}
 	
 	/**
@@ -209,7 +255,7 @@ object SharedPreferencesManager {
 	@JvmStatic
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun getDirectConnectionAddress(context: Context): String? {
-		return getSecureSharedPrefs(context).getString(sharedPreferencesSecureKeyAddress, null)
+		return getSecureString(context, sharedPreferencesSecureKeyAddress)
 	}
 	
 	/**
@@ -217,7 +263,7 @@ object SharedPreferencesManager {
 	 */
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun getDirectConnectionFallbackAddress(context: Context): String? {
-		return getSecureSharedPrefs(context).getString(sharedPreferencesSecureKeyAddressFallback, null)
+		return getSecureString(context, sharedPreferencesSecureKeyAddressFallback)
 	}
 	
 	/**
@@ -226,7 +272,7 @@ object SharedPreferencesManager {
 	@JvmStatic
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun getDirectConnectionPassword(context: Context): String? {
-		return getSecureSharedPrefs(context).getString(sharedPreferencesSecureKeyPassword, null)
+		return getSecureString(context, sharedPreferencesSecureKeyPassword)
 	}
 	
 	/**
@@ -235,7 +281,7 @@ object SharedPreferencesManager {
 	@JvmStatic
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun setDirectConnectionPassword(context: Context, password: String?) {
-		getSecureSharedPrefs(context).edit().putString(sharedPreferencesSecureKeyPassword, password).apply()
+		putSecureStrings(context, sharedPreferencesSecureKeyPassword to password)
 	}
 	
 	/**
@@ -244,11 +290,10 @@ object SharedPreferencesManager {
 	@JvmStatic
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun getDirectConnectionDetails(context: Context): DirectConnectionDetails {
-		val prefs = getSecureSharedPrefs(context)
 		return DirectConnectionDetails(
-			StringHelper.nullifyEmptyString(prefs.getString(sharedPreferencesSecureKeyAddress, null)),
-			StringHelper.nullifyEmptyString(prefs.getString(sharedPreferencesSecureKeyAddressFallback, null)),
-			StringHelper.nullifyEmptyString(prefs.getString(sharedPreferencesSecureKeyPassword, null))
+			StringHelper.nullifyEmptyString(getSecureString(context, sharedPreferencesSecureKeyAddress)),
+			StringHelper.nullifyEmptyString(getSecureString(context, sharedPreferencesSecureKeyAddressFallback)),
+			StringHelper.nullifyEmptyString(getSecureString(context, sharedPreferencesSecureKeyPassword))
 		)
 	}
 	
@@ -258,11 +303,11 @@ object SharedPreferencesManager {
 	@JvmStatic
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun setDirectConnectionDetails(context: Context, params: DirectConnectionDetails) {
-		getSecureSharedPrefs(context).edit()
-			.putString(sharedPreferencesSecureKeyAddress, params.address)
-			.putString(sharedPreferencesSecureKeyAddressFallback, params.fallbackAddress)
-			.putString(sharedPreferencesSecureKeyPassword, params.password)
-			.apply()
+		putSecureStrings(context,
+			sharedPreferencesSecureKeyAddress to params.address,
+			sharedPreferencesSecureKeyAddressFallback to params.fallbackAddress,
+			sharedPreferencesSecureKeyPassword to params.password
+		)
 	}
 	
 	/**
@@ -271,11 +316,11 @@ object SharedPreferencesManager {
 	@JvmStatic
 	@Throws(GeneralSecurityException::class, IOException::class)
 	fun setDirectConnectionDetails(context: Context, params: ConnectionParams.Direct) {
-		getSecureSharedPrefs(context).edit()
-			.putString(sharedPreferencesSecureKeyAddress, params.address)
-			.putString(sharedPreferencesSecureKeyAddressFallback, params.fallbackAddress)
-			.putString(sharedPreferencesSecureKeyPassword, params.password)
-			.apply()
+		putSecureStrings(context,
+			sharedPreferencesSecureKeyAddress to params.address,
+			sharedPreferencesSecureKeyAddressFallback to params.fallbackAddress,
+			sharedPreferencesSecureKeyPassword to params.password
+		)
 	}
 	
 	/**
@@ -0,0 +1,193 @@
+package me.tagavari.airmessage.data;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.reactivex.rxjava3.annotations.CheckReturnValue;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import kotlin.Pair;
+import me.tagavari.airmessage.messaging.MemberInfo;
+
+/**
+ * Caches rendered conversation icons, in memory and on disk
+ *
+ * Icons are keyed by everything that affects how they are drawn: the members shown, their contacts and when those contacts were last updated,
+ * their colors and the icon's size. An icon is only rendered again once one of those inputs changes,
+ * and icons that are no longer used are evicted once the cache grows past {@link #diskMaxBytes}.
+ */
+public class ShortcutIconCache {
+	private static final String TAG = ShortcutIconCache.class.getSimpleName();
+	
+	//Creating the constants
+	private static final int renderVersion = 1; //Increment when the icon's appearance changes
+	private static final long diskMaxBytes = 8 * 1024 * 1024; //8 MB
+	private static final int memoryMaxBytes = 4 * 1024 * 1024; //4 MB
+	private static final String fileExtension = ".png";
+	
+	private final File directory;
+	
+	private final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(memoryMaxBytes) {
+		@Override
+		protected int sizeOf(String key, Bitmap value) {
+			return value.getByteCount();
+		}
+	};
+	private final Map<String, Single<Bitmap>> pendingRequests = new ConcurrentHashMap<>();
+	
+	/**
+	 * Creates a new icon cache
+	 * @param directory The directory to store cached icons in
+	 */
+	public ShortcutIconCache(@NonNull File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Creates a cache key for an icon
+	 * @param size The width and height of the icon, in pixels
+	 * @param members The members shown in the icon, paired with their contact info if available
+	 * @return The cache key
+	 */
+	@NonNull
+	public static String createKey(int size, @NonNull List<Pair<MemberInfo, UserCacheHelper.UserInfo>> members) {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append(renderVersion).append('|').append(size);
+		for(Pair<MemberInfo, UserCacheHelper.UserInfo> member : members) {
+			stringBuilder.append('|');
+			UserCacheHelper.UserInfo userInfo = member.getSecond();
+			if(userInfo != null) {
+				stringBuilder.append('c').append(userInfo.getContactID()).append('@').append(userInfo.getLastUpdated());
+			} else {
+				stringBuilder.append('#').append(Integer.toHexString(member.getFirst().getColor()));
+			}
+		}
+		return hashKey(stringBuilder.toString());
+	}
+	
+	/**
+	 * Gets an icon from the cache, or renders and caches it
+	 * @param key The key of the icon, from {@link #createKey(int, List)}
+	 * @param render A function that renders the icon if it isn't cached
+	 * @return A single for the icon, which must not be modified or recycled
+	 */
+	@CheckReturnValue
+	public Single<Bitmap> getIcon(@NonNull String key, @NonNull Supplier<Single<Bitmap>> render) {
+		//Checking the memory cache
+		Bitmap cachedIcon = memoryCache.get(key);
+		if(cachedIcon != null) return Single.just(cachedIcon);
+		
+		//Joining any request already in progress for this icon
+		return pendingRequests.computeIfAbsent(key, k -> Single.fromCallable(() -> Optional.ofNullable(readIcon(k)))
+				.subscribeOn(Schedulers.io())
+				.flatMap(cachedIconFile -> cachedIconFile.isPresent() ? Single.just(cachedIconFile.get()) : render.get()
+						.observeOn(Schedulers.io())
+						.doOnSuccess(bitmap -> writeIcon(k, bitmap)))
+				.doOnSuccess(bitmap -> memoryCache.put(k, bitmap))
+				.doFinally(() -> pendingRequests.remove(k))
+				.cache());
+	}
+	
+	/**
+	 * Clears all icons held in memory
+	 */
+	public void clearMemoryCache() {
+		memoryCache.evictAll();
+	}
+	
+	/**
+	 * Reads an icon from disk
+	 * @return The icon, or NULL if it isn't cached
+	 */
+	@Nullable
+	private Bitmap readIcon(String key) {
+		File file = new File(directory, key + fileExtension);
+		if(!file.exists()) return null;
+		
+		Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+		if(bitmap == null) {
+			file.delete();
+			return null;
+		}
+		
+		//Marking the file as recently used
+		file.setLastModified(System.currentTimeMillis());
+		return bitmap;
+	}
+	
+	/**
+	 * Writes an icon to disk
+	 */
+	private void writeIcon(String key, Bitmap bitmap) {
+		if(!directory.exists() && !directory.mkdirs()) {
+			Log.w(TAG, "Failed to create cache directory " + directory);
+			return;
+		}
+		
+		File file = new File(directory, key + fileExtension);
+		try(OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+			if(!bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream)) throw new IOException("Failed to encode icon");
+		} catch(IOException exception) {
+			Log.w(TAG, "Failed to cache icon", exception);
+			file.delete();
+			return;
+		}
+		
+		trimDiskCache();
+	}
+	
+	/**
+	 * Deletes the least recently used icons until the cache fits under its size limit
+	 */
+	private void trimDiskCache() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(fileExtension));
+		if(files == null) return;
+		
+		long totalSize = 0;
+		for(File file : files) totalSize += file.length();
+		if(totalSize <= diskMaxBytes) return;
+		
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(File file : files) {
+			if(totalSize <= diskMaxBytes) break;
+			long fileSize = file.length();
+			if(file.delete()) totalSize -= fileSize;
+		}
+	}
+	
+	/**
+	 * Gets a file-safe name for a cache key
+	 */
+	private static String hashKey(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder stringBuilder = new StringBuilder(digest.length * 2);
+			for(byte b : digest) stringBuilder.append(String.format(Locale.ROOT, "%02x", b));
+			return stringBuilder.toString();
+		} catch(NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package me.tagavari.airmessage.data
+
+import android.content.Context
+import android.util.LruCache
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
+import io.reactivex.rxjava3.annotations.CheckReturnValue
+import io.reactivex.rxjava3.core.Completable
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.schedulers.Schedulers
+import me.tagavari.airmessage.helper.SmartReplyHelper
+import me.tagavari.airmessage.messaging.AMConversationAction
+import me.tagavari.airmessage.messaging.MessageInfo
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Caches generated smart reply suggestions, so the same messages are never run through inference twice
+ *
+ * Suggestions are keyed by conversation and the IDs of the messages they were generated from,
+ * and are shared between the in-app reply bar and message notifications.
+ * Requests wait for [debounceWindow] before running inference, so that a burst of incoming messages
+ * only generates suggestions for the last one, as long as earlier requests are disposed.
+ */
+class SmartReplyCache {
+	private val cache = LruCache<String, List<AMConversationAction>>(cacheSize)
+	private val pendingRequests = ConcurrentHashMap<String, Single<List<AMConversationAction>>>()
+	
+	/**
+	 * Gets smart reply suggestions for a conversation
+	 * @param context The context to use
+	 * @param conversationID The ID of the conversation
+	 * @param messages The latest messages of the conversation
+	 * @return A single for the suggested conversation actions
+	 */
+	@CheckReturnValue
+	fun getSuggestions(context: Context, conversationID: Long, messages: List<MessageInfo>): Single<List<AMConversationAction>> {
+		//Always selecting the latest text messages, so that every caller builds the same key for the same conversation state
+		val sortedMessages = messages.filter { it.messageText != null }
+			.sortedBy { it.date }
+			.takeLast(SmartReplyHelper.smartReplyHistoryLength)
+		val key = createKey(conversationID, sortedMessages)
+		
+		//Checking the cache
+		cache.get(key)?.let { return Single.just(it) }
+		
+		//Waiting for further messages before joining or starting a request
+		return Completable.timer(debounceWindow, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread())
+			.andThen(Single.defer {
+				cache.get(key)?.let { return@defer Single.just(it) }
+				pendingRequests.computeIfAbsent(key) { generateSuggestions(context, key, sortedMessages) }
+			})
+			.observeOn(AndroidSchedulers.mainThread())
+	}
+	
+	/**
+	 * Gets smart reply suggestions for a conversation, based on its latest messages in the database
+	 * @param context The context to use
+	 * @param conversationID The ID of the conversation
+	 * @return A single for the suggested conversation actions
+	 */
+	@CheckReturnValue
+	fun getSuggestionsFromDatabase(context: Context, conversationID: Long): Single<List<AMConversationAction>> {
+		return Single.fromCallable { DatabaseManager.getInstance().loadConversationHistoryBit(context, conversationID) }
+			.subscribeOn(Schedulers.single())
+			.observeOn(AndroidSchedulers.mainThread())
+			.flatMap { messages -> getSuggestions(context, conversationID, messages) }
+	}
+	
+	/**
+	 * Clears all cached suggestions
+	 */
+	fun clearCache() {
+		cache.evictAll()
+	}
+	
+	private fun generateSuggestions(context: Context, key: String, messages: List<MessageInfo>): Single<List<AMConversationAction>> {
+		return Single.defer { SmartReplyHelper.generateResponses(context, messages) }
+			.subscribeOn(SmartReplyHelper.inferenceScheduler)
+			.doOnSuccess { cache.put(key, it) }
+			.doFinally { pendingRequests.remove(key) }
+			.cache()
+	}
+	
+	companion object {
+		private const val cacheSize = 32 //32 conversations
+		private const val debounceWindow = 300L //300 ms
+		
+		private fun createKey(conversationID: Long, messages: List<MessageInfo>): String {
+			return messages.joinToString(separator = ",", prefix = "$conversationID:") { it.localID.toString() }
+		}
+	}
+}
\ No newline at end of file
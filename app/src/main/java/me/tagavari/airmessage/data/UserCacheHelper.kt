@@ -3,17 +3,36 @@ package me.tagavari.airmessage.data
 import android.content.Context
 import android.net.Uri
 import android.provider.ContactsContract
+import android.util.Log
 import android.util.LruCache
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
+import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Single
-import io.reactivex.rxjava3.core.SingleEmitter
 import io.reactivex.rxjava3.schedulers.Schedulers
+import io.reactivex.rxjava3.subjects.CompletableSubject
 import me.tagavari.airmessage.MainApplication
 import me.tagavari.airmessage.flavor.CrashlyticsBridge
 import me.tagavari.airmessage.helper.AddressHelper.normalizeAddress
+import java.io.*
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
-class UserCacheHelper {
+/**
+ * Caches the contact information of users by their normalized address
+ *
+ * Lookups for several addresses can be batched into a single contacts query with [prefetchUserInfo],
+ * and concurrent requests for the same address share a single query.
+ * Results are persisted to disk so that names are available immediately after a cold start,
+ * and the persisted results are discarded if any contacts have changed since they were written.
+ * @param context The context to use for reading contacts
+ * @param persistFile The file to persist cached results to
+ */
+class UserCacheHelper(context: Context, private val persistFile: File) {
+	private val applicationContext = context.applicationContext
+	
 	//Creating the values
 	private val cache = object : LruCache<String, UserInfo>((Runtime.getRuntime().maxMemory() / 1024 / 8 / 2).toInt()) {
 		override fun sizeOf(key: String, userInfo: UserInfo): Int {
@@ -26,7 +45,24 @@ class UserCacheHelper {
 			return size
 		}
 	}
-	private val failedCache = Collections.synchronizedList(mutableListOf<String>())
+	private val failedCache: MutableSet<String> = ConcurrentHashMap.newKeySet()
+	
+	//Requests that are currently being fetched, by normalized address
+	private val pendingRequests = ConcurrentHashMap<String, Single<Optional<UserInfo>>>()
+	
+	//Incremented whenever the cache is invalidated, so that results fetched before the invalidation are discarded
+	private val cacheGeneration = AtomicInteger()
+	
+	private val isPersistScheduled = AtomicBoolean(false)
+	private val persistLoad = Completable.fromAction { readPersistedCache() }
+		.subscribeOn(Schedulers.io())
+		.onErrorComplete()
+		.cache()
+	
+	init {
+		//Loading persisted results in the background
+		persistLoad.subscribe()
+	}
 	
 	/**
 	 * Asynchronously fetches a user's information
@@ -45,82 +81,302 @@ class UserCacheHelper {
 		
 		//Checking if there is an entry in the cache
 		val cachedUserInfo = cache[normalizedAddress]
-		return if(cachedUserInfo != null) {
-			Single.just(cachedUserInfo)
-		} else if(!failedCache.contains(normalizedAddress)) {
-			Single.create { emitter: SingleEmitter<UserInfo> ->
-				try {
-					val userInfo = fetchUserInfo(context, normalizedAddress)
-					if(userInfo != null) {
-						emitter.onSuccess(userInfo)
-					} else {
-						emitter.tryOnError(RuntimeException("User $address not found"))
-					}
-				} catch(exception: Exception) {
-					CrashlyticsBridge.recordException(exception)
-					emitter.tryOnError(exception)
-				}
+		if(cachedUserInfo != null) return Single.just(cachedUserInfo)
+		if(failedCache.contains(normalizedAddress)) return Single.error(RuntimeException("User $address not found"))
+		
+		return persistLoad.andThen(Single.defer { requestUserInfo(normalizedAddress) })
+			.observeOn(AndroidSchedulers.mainThread())
+			.flatMap { userInfo ->
+				if(userInfo.isPresent) Single.just(userInfo.get())
+				else Single.error(RuntimeException("User $address not found"))
 			}
-				.subscribeOn(Schedulers.io())
+	}
+	
+	/**
+	 * Gets a user's information if it is already cached, without fetching it
+	 * @param address The address of the user
+	 * @return The user's information, or NULL if it isn't cached
+	 */
+	fun getCachedUserInfo(address: String): UserInfo? {
+		return cache[normalizeAddress(address)]
+	}
+	
+	/**
+	 * Fetches the information of all users that aren't already cached with a single set of queries
+	 * Requests made with [getUserInfo] for these users while they are being fetched will wait for this fetch
+	 * @param context The context to use
+	 * @param addresses The addresses of the users to fetch
+	 * @return A completable that completes once all users are cached
+	 */
+	fun prefetchUserInfo(context: Context, addresses: Collection<String>): Completable {
+		//Ignoring if contacts cannot be used
+		if(!MainApplication.canUseContacts(context)) return Completable.complete()
+		
+		return persistLoad.andThen(Completable.defer {
+			//Finding the addresses that need to be fetched
+			val uncachedAddresses = addresses.asSequence()
+				.map { normalizeAddress(it) }
+				.filter { cache[it] == null && !failedCache.contains(it) }
+				.toSet()
+			if(uncachedAddresses.isEmpty()) return@defer Completable.complete()
+			
+			//Starting a batch for these addresses, and waiting for it as well as any requests for these addresses that were already in progress
+			startBatch(uncachedAddresses)
+			Completable.merge(uncachedAddresses.mapNotNull { pendingRequests[it]?.ignoreElement() })
+				.onErrorComplete()
 				.observeOn(AndroidSchedulers.mainThread())
-				.doOnSuccess { userInfo: UserInfo ->
-					//Caching the user info
-					cache.put(normalizedAddress, userInfo)
-				}.doOnError {
-					//Marking the user as failed
-					failedCache.add(normalizedAddress)
+		})
+	}
+	
+	/**
+	 * Gets a single for a user's information, joining a request in progress or starting a new one
+	 */
+	private fun requestUserInfo(normalizedAddress: String): Single<Optional<UserInfo>> {
+		cache[normalizedAddress]?.let { return Single.just(Optional.of(it)) }
+		if(failedCache.contains(normalizedAddress)) return Single.just(Optional.empty())
+		
+		pendingRequests[normalizedAddress]?.let { return it }
+		startBatch(listOf(normalizedAddress))
+		return pendingRequests[normalizedAddress] ?: Single.fromCallable { Optional.ofNullable(cache[normalizedAddress]) }
+	}
+	
+	/**
+	 * Registers a single fetch for all addresses that aren't already being fetched
+	 * The fetch starts once any of its requests are subscribed to
+	 * @param normalizedAddresses The addresses to fetch
+	 */
+	private fun startBatch(normalizedAddresses: Collection<String>) {
+		val generation = cacheGeneration.get()
+		val claimedRequests = mutableMapOf<String, Single<Optional<UserInfo>>>()
+		
+		//Holding back the fetch until all addresses have been claimed, in case another thread joins one of its requests in the meantime
+		val claimCompletion = CompletableSubject.create()
+		val batch: Single<Map<String, UserInfo>> = claimCompletion
+			.andThen(Single.fromCallable { fetchUserInfoBatch(applicationContext, claimedRequests.keys) }.subscribeOn(Schedulers.io()))
+			.doOnSuccess { results ->
+				//Ignoring the results if the cache was invalidated while they were being fetched
+				if(cacheGeneration.get() != generation) return@doOnSuccess
+				
+				//Caching the results
+				for(address in claimedRequests.keys) {
+					val userInfo = results[address]
+					if(userInfo != null) cache.put(address, userInfo)
+					else failedCache.add(address)
 				}
-		} else {
-			Single.error(Throwable("User $address not found"))
+				schedulePersist()
+			}
+			.doOnError { exception -> CrashlyticsBridge.recordException(exception) }
+			.doFinally { claimedRequests.forEach { (address, request) -> pendingRequests.remove(address, request) } }
+			.cache()
+		
+		//Claiming the addresses that aren't already being fetched
+		for(address in normalizedAddresses) {
+			val request = batch.map { results -> Optional.ofNullable(results[address]) }
+			if(pendingRequests.putIfAbsent(address, request) == null) claimedRequests[address] = request
 		}
+		claimCompletion.onComplete()
 	}
 	
 	/**
 	 * Holds a user's name and lookup key
+	 * @param lastUpdated The time the contact was last updated, for detecting changes to its photo
 	 */
-	data class UserInfo(val contactID: Long, val lookupKey: String, val contactName: String?) {
+	data class UserInfo(val contactID: Long, val lookupKey: String, val contactName: String?, val lastUpdated: Long) {
 		val contactLookupUri: Uri
 			get() = Uri.withAppendedPath(ContactsContract.Contacts.CONTENT_LOOKUP_URI, lookupKey)
 	}
 	
 	/**
-	 * Clears all cached data, and forces data to be re-fetched the next time it is requested
+	 * Clears all cached data from memory, and forces data to be re-fetched the next time it is requested
 	 */
 	fun clearCache() {
+		cacheGeneration.incrementAndGet()
 		cache.evictAll()
 		failedCache.clear()
+		pendingRequests.clear()
+	}
+	
+	/**
+	 * Clears all cached data from memory and disk, for use when contacts have changed
+	 */
+	fun invalidate() {
+		clearCache()
+		Completable.fromAction { persistFile.delete() }
+			.subscribeOn(Schedulers.io())
+			.subscribe()
+	}
+	
+	/**
+	 * Schedules the cache to be written to disk, waiting briefly so that several updates are written at once
+	 */
+	private fun schedulePersist() {
+		if(!isPersistScheduled.compareAndSet(false, true)) return
+		
+		Schedulers.io().scheduleDirect({
+			isPersistScheduled.set(false)
+			try {
+				writePersistedCache()
+			} catch(exception: IOException) {
+				Log.w(TAG, "Failed to persist user cache", exception)
+			}
+		}, persistDelayMillis, TimeUnit.MILLISECONDS)
+	}
+	
+	/**
+	 * Reads cached results from disk, if they are still valid
+	 */
+	private fun readPersistedCache() {
+		if(!persistFile.exists() || !MainApplication.canUseContacts(applicationContext)) return
+		val generation = cacheGeneration.get()
+		
+		try {
+			DataInputStream(BufferedInputStream(FileInputStream(persistFile))).use { inputStream ->
+				if(inputStream.readInt() != persistFileVersion) throw IOException("Unsupported cache file version")
+				
+				//Discarding the cache if contacts have changed since it was written
+				val writeTime = inputStream.readLong()
+				if(haveContactsChangedSince(applicationContext, writeTime)) {
+					persistFile.delete()
+					return
+				}
+				
+				val users = mutableMapOf<String, UserInfo>()
+				repeat(inputStream.readInt()) {
+					val address = inputStream.readUTF()
+					val contactID = inputStream.readLong()
+					val lookupKey = inputStream.readUTF()
+					val contactName = if(inputStream.readBoolean()) inputStream.readUTF() else null
+					val lastUpdated = inputStream.readLong()
+					users[address] = UserInfo(contactID, lookupKey, contactName, lastUpdated)
+				}
+				
+				val failedAddresses = mutableListOf<String>()
+				repeat(inputStream.readInt()) { failedAddresses.add(inputStream.readUTF()) }
+				
+				//Adding the results to the cache, without replacing anything that was fetched in the meantime
+				if(cacheGeneration.get() != generation) return
+				for((address, userInfo) in users) {
+					if(cache[address] == null) cache.put(address, userInfo)
+				}
+				failedCache.addAll(failedAddresses)
+			}
+		} catch(exception: IOException) {
+			Log.w(TAG, "Failed to read persisted user cache", exception)
+			persistFile.delete()
+		}
+	}
+	
+	/**
+	 * Writes the current contents of the cache to disk
+	 */
+	@Throws(IOException::class)
+	private fun writePersistedCache() {
+		val users = cache.snapshot()
+		val failedAddresses = failedCache.toList()
+		
+		val tempFile = File(persistFile.path + ".tmp")
+		DataOutputStream(BufferedOutputStream(FileOutputStream(tempFile))).use { outputStream ->
+			outputStream.writeInt(persistFileVersion)
+			outputStream.writeLong(System.currentTimeMillis())
+			
+			outputStream.writeInt(users.size)
+			for((address, userInfo) in users) {
+				outputStream.writeUTF(address)
+				outputStream.writeLong(userInfo.contactID)
+				outputStream.writeUTF(userInfo.lookupKey)
+				outputStream.writeBoolean(userInfo.contactName != null)
+				if(userInfo.contactName != null) outputStream.writeUTF(userInfo.contactName)
+				outputStream.writeLong(userInfo.lastUpdated)
+			}
+			
+			outputStream.writeInt(failedAddresses.size)
+			for(address in failedAddresses) outputStream.writeUTF(address)
+		}
+		
+		if(!tempFile.renameTo(persistFile)) {
+			tempFile.delete()
+			throw IOException("Failed to move user cache to $persistFile")
+		}
 	}
 	
 	companion object {
+		private val TAG = UserCacheHelper::class.java.simpleName
+		
+		private const val persistFileVersion = 2
+		private const val persistDelayMillis = 2 * 1000L //2 seconds
+		
+		//The maximum number of addresses to look up per query, keeping the query's arguments under SQLite's limit of 999
+		private const val batchMaxAddresses = 400
+		
 		/**
 		 * Fetches user information directly from Android's contacts database
 		 * Only to be called from this helper
 		 * @param context The context to use
-		 * @param address The address of the user
-		 * @return A UserInfo object representing this user, or NULL if not found
+		 * @param addresses The normalized addresses of the users
+		 * @return A map of addresses to the users that were found
 		 */
-		private fun fetchUserInfo(context: Context, address: String): UserInfo? {
+		private fun fetchUserInfoBatch(context: Context, addresses: Collection<String>): Map<String, UserInfo> {
 			//Getting the content resolver
 			val contentResolver = context.contentResolver
 			
-			//Querying the database
-			(contentResolver.query(
-				ContactsContract.Data.CONTENT_URI,
-				arrayOf(ContactsContract.Data.CONTACT_ID, ContactsContract.Contacts.LOOKUP_KEY, ContactsContract.Contacts.DISPLAY_NAME),
-				ContactsContract.CommonDataKinds.Email.ADDRESS + " = ? OR " + ContactsContract.CommonDataKinds.Phone.NORMALIZED_NUMBER + " = ?",
-				arrayOf(address, address),
-				null
-			) ?: return null).use { cursor ->
-				//Returning null if there are no results
-				if(!cursor.moveToFirst()) return null
+			val results = mutableMapOf<String, UserInfo>()
+			for(chunk in addresses.chunked(batchMaxAddresses)) {
+				val addressSet = chunk.toHashSet()
+				val placeholders = chunk.joinToString(",") { "?" }
 				
-				//Returning the user info
-				return UserInfo(
-					contactID = cursor.getLong(cursor.getColumnIndexOrThrow(ContactsContract.Data.CONTACT_ID)),
-					lookupKey = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.Contacts.LOOKUP_KEY)),
-					contactName = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.Contacts.DISPLAY_NAME))
-				)
+				//Querying the database
+				(contentResolver.query(
+					ContactsContract.Data.CONTENT_URI,
+					arrayOf(ContactsContract.Data.CONTACT_ID, ContactsContract.Contacts.LOOKUP_KEY, ContactsContract.Contacts.DISPLAY_NAME,
+						ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP, ContactsContract.CommonDataKinds.Email.ADDRESS, ContactsContract.CommonDataKinds.Phone.NORMALIZED_NUMBER),
+					ContactsContract.CommonDataKinds.Email.ADDRESS + " IN ($placeholders) OR " + ContactsContract.CommonDataKinds.Phone.NORMALIZED_NUMBER + " IN ($placeholders)",
+					(chunk + chunk).toTypedArray(),
+					null
+				) ?: continue).use { cursor ->
+					val indexContactID = cursor.getColumnIndexOrThrow(ContactsContract.Data.CONTACT_ID)
+					val indexLookupKey = cursor.getColumnIndexOrThrow(ContactsContract.Contacts.LOOKUP_KEY)
+					val indexDisplayName = cursor.getColumnIndexOrThrow(ContactsContract.Contacts.DISPLAY_NAME)
+					val indexLastUpdated = cursor.getColumnIndexOrThrow(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP)
+					val indexEmail = cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Email.ADDRESS)
+					val indexPhone = cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NORMALIZED_NUMBER)
+					
+					while(cursor.moveToNext()) {
+						//Matching the row back to the address it was found for, keeping the first match for each address
+						val address = cursor.getString(indexEmail)?.takeIf { addressSet.contains(it) }
+							?: cursor.getString(indexPhone)?.takeIf { addressSet.contains(it) }
+							?: continue
+						if(results.containsKey(address)) continue
+						
+						results[address] = UserInfo(
+							contactID = cursor.getLong(indexContactID),
+							lookupKey = cursor.getString(indexLookupKey),
+							contactName = cursor.getString(indexDisplayName),
+							lastUpdated = cursor.getLong(indexLastUpdated)
+						)
+					}
+				}
 			}
+			
+			return results
+		}
+		
+		/**
+		 * Checks if any contacts have been updated or deleted since a certain time
+		 */
+		private fun haveContactsChangedSince(context: Context, time: Long): Boolean {
+			val contentResolver = context.contentResolver
+			
+			(contentResolver.query(ContactsContract.Contacts.CONTENT_URI, arrayOf(ContactsContract.Contacts._ID),
+				ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?", arrayOf(time.toString()), null) ?: return true).use { cursor ->
+				if(cursor.count > 0) return true
+			}
+			
+			(contentResolver.query(ContactsContract.DeletedContacts.CONTENT_URI, arrayOf(ContactsContract.DeletedContacts.CONTACT_ID),
+				ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?", arrayOf(time.toString()), null) ?: return true).use { cursor ->
+				if(cursor.count > 0) return true
+			}
+			
+			return false
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package me.tagavari.airmessage.data;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import me.tagavari.airmessage.helper.DataStreamHelper;
+
+/**
+ * Caches transcoded videos on disk, so that adding the same video again doesn't transcode it again
+ *
+ * Videos are keyed by their source (its URI and modification date) and the size they were compressed to fit,
+ * and the least recently used videos are evicted once the cache grows past {@link #diskMaxBytes}.
+ */
+public class VideoTranscodeCache {
+	private static final String TAG = VideoTranscodeCache.class.getSimpleName();
+	
+	//Creating the constants
+	private static final long diskMaxBytes = 64 * 1024 * 1024; //64 MB
+	private static final String fileExtension = ".mp4";
+	
+	private final File directory;
+	
+	/**
+	 * Creates a new video cache
+	 * @param directory The directory to store cached videos in
+	 */
+	public VideoTranscodeCache(@NonNull File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Creates a cache key for a transcoded video
+	 * @param source A string that uniquely identifies the source video, such as its URI and modification date
+	 * @param maxBytes The target size of the transcode
+	 * @return The cache key
+	 */
+	@NonNull
+	public static String createKey(@NonNull String source, int maxBytes) {
+		return hashKey(source + '|' + maxBytes);
+	}
+	
+	/**
+	 * Copies a cached video to a file
+	 * @param key The key of the video, from {@link #createKey(String, int)}
+	 * @param target The file to copy the video to
+	 * @return Whether the video was cached and has been copied
+	 */
+	public boolean read(@NonNull String key, @NonNull File target) {
+		File file = new File(directory, key + fileExtension);
+		if(!file.exists()) return false;
+		
+		try {
+			copyFile(file, target);
+		} catch(IOException exception) {
+			Log.w(TAG, "Failed to read cached video", exception);
+			target.delete();
+			return false;
+		}
+		
+		//Marking the file as recently used
+		file.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+	
+	/**
+	 * Adds a transcoded video to the cache
+	 * @param key The key of the video, from {@link #createKey(String, int)}
+	 * @param source The transcoded video file, which is copied and left in place
+	 */
+	public synchronized void write(@NonNull String key, @NonNull File source) {
+		if(!directory.exists() && !directory.mkdirs()) {
+			Log.w(TAG, "Failed to create cache directory " + directory);
+			return;
+		}
+		
+		//Copying to a temporary file first, so a partially written video is never read
+		File file = new File(directory, key + fileExtension);
+		File tempFile = new File(directory, key + ".tmp");
+		try {
+			copyFile(source, tempFile);
+			if(!tempFile.renameTo(file)) throw new IOException("Failed to move cached video to " + file);
+		} catch(IOException exception) {
+			Log.w(TAG, "Failed to cache video", exception);
+			tempFile.delete();
+			return;
+		}
+		
+		trimDiskCache();
+	}
+	
+	/**
+	 * Deletes the least recently used videos until the cache fits under its size limit
+	 */
+	private void trimDiskCache() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(fileExtension));
+		if(files == null) return;
+		
+		long totalSize = 0;
+		for(File file : files) totalSize += file.length();
+		if(totalSize <= diskMaxBytes) return;
+		
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(File file : files) {
+			if(totalSize <= diskMaxBytes) break;
+			long fileSize = file.length();
+			if(file.delete()) totalSize -= fileSize;
+		}
+	}
+	
+	/**
+	 * Copies the contents of a file, replacing the target file if it exists
+	 */
+	private static void copyFile(File source, File target) throws IOException {
+		try(InputStream inputStream = new FileInputStream(source); OutputStream outputStream = new FileOutputStream(target)) {
+			DataStreamHelper.copyStream(inputStream, outputStream);
+		}
+	}
+	
+	/**
+	 * Gets a file-safe name for a cache key
+	 */
+	private static String hashKey(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder stringBuilder = new StringBuilder(digest.length * 2);
+			for(byte b : digest) stringBuilder.append(String.format(Locale.ROOT, "%02x", b));
+			return stringBuilder.toString();
+		} catch(NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+}
\ No newline at end of file
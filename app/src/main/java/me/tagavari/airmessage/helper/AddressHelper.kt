@@ -2,9 +2,15 @@ package me.tagavari.airmessage.helper
 
 import android.telephony.PhoneNumberUtils
 import me.tagavari.airmessage.constants.RegexConstants
+import java.util.*
 
 object AddressHelper {
-	private val regexPhoneNumber = Regex("^\\+?[ \\d().-]+$")
+	private const val normalizedCacheSize = 512 //512 entries
+	
+	//Normalized addresses are cached, since phone number formatting is slow and the same few addresses are normalized repeatedly
+	private val normalizedCache: MutableMap<String, String> = Collections.synchronizedMap(object : LinkedHashMap<String, String>(16, 0.75F, true) {
+		override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>): Boolean = size > normalizedCacheSize
+	})
 	
 	/**
 	 * Format an address to be user-friendly
@@ -34,16 +40,21 @@ object AddressHelper {
 	@JvmStatic
 	fun normalizeAddress(address: String): String {
 		//Returning the E-Mail if the address is one (can't be normalized)
-		if(address.contains("@")) return address
+		if(address.indexOf('@') != -1) return address
+		
+		//Checking the cache
+		normalizedCache[address]?.let { return it }
 		
 		//Formatting phone numbers to E164
+		var normalizedAddress = address
 		if(PhoneNumberUtils.isWellFormedSmsAddress(address)) {
 			val formattedNumber = PhoneNumberUtils.formatNumberToE164(address, "US")
-			if(formattedNumber != null) return formattedNumber
+			if(formattedNumber != null) normalizedAddress = formattedNumber
 		}
 		
-		//Returning the address directly (unknown type)
-		return address
+		//Otherwise returning the address directly (unknown type)
+		normalizedCache[address] = normalizedAddress
+		return normalizedAddress
 	}
 	
 	/**
@@ -76,10 +87,33 @@ object AddressHelper {
 	
 	/**
 	 * Gets if the provided address is a valid phone number
+	 *
+	 * A valid phone number has an optional leading '+', followed only by digits, spaces, brackets, dots and dashes,
+	 * with at least 3 digits (or '+') in total
 	 */
 	@JvmStatic
 	fun validatePhoneNumber(address: String): Boolean {
-		return address.replace("[^\\d+]".toRegex(), "").length >= 3 && address.matches(regexPhoneNumber)
+		val length = address.length
+		var index = 0
+		var numberCharCount = 0
+		
+		//Skipping over the leading '+'
+		if(length > 0 && address[0] == '+') {
+			index++
+			numberCharCount++
+		}
+		
+		//At least one character must follow
+		if(index == length) return false
+		
+		while(index < length) {
+			val char = address[index]
+			if(char in '0'..'9') numberCharCount++
+			else if(char != ' ' && char != '(' && char != ')' && char != '.' && char != '-') return false
+			index++
+		}
+		
+		return numberCharCount >= 3
 	}
 	
 	/**
@@ -87,6 +121,20 @@ object AddressHelper {
 	 */
 	@JvmStatic
 	fun stripPhoneNumber(address: String): String {
-		return address.replace("[^\\d]".toRegex(), "")
+		//Finding the first character that needs to be removed, and returning the string as-is if there are none
+		val length = address.length
+		var firstStripIndex = 0
+		while(firstStripIndex < length && address[firstStripIndex] in '0'..'9') firstStripIndex++
+		if(firstStripIndex == length) return address
+		
+		//Copying the remaining digits
+		val stringBuilder = StringBuilder(length - 1)
+		stringBuilder.append(address, 0, firstStripIndex)
+		for(i in firstStripIndex + 1 until length) {
+			val char = address[i]
+			if(char in '0'..'9') stringBuilder.append(char)
+		}
+		
+		return stringBuilder.toString()
 	}
 }
\ No newline at end of file
@@ -11,9 +11,10 @@ object AttachmentStorageHelper {
 	private const val dirLayoutIsolated = 0 //Each file gets its own folder
 	private const val dirLayoutFlat = 1 //All files share the same folder, collision-proof
 	private const val dirLayoutDirect = 2 //All files share the same folder, overwrites allowed
-	private val directories = listOf("attachments", "stickers", "draft", "draftprepare")
+	private val directories = listOf("attachments", "stickers", "previews", "draft", "draftprepare")
 	const val dirNameAttachment = "attachments"
 	const val dirNameSticker = "stickers"
+	const val dirNamePreview = "previews"
 	const val dirNameDraft = "draft"
 	const val dirNameDraftPrepare = "draftprepare"
 	
@@ -105,7 +106,7 @@ object AttachmentStorageHelper {
 	 * @return The layout type of this directory
 	 */
 	private fun getDirectoryLayout(directory: String): Int {
-		return if(directory == dirNameSticker) {
+		return if(directory == dirNameSticker || directory == dirNamePreview) {
 			dirLayoutDirect
 		} else {
 			dirLayoutIsolated
@@ -139,6 +140,15 @@ object AttachmentStorageHelper {
 		return file
 	}
 	
+	/**
+	 * Gets the directory that content files of a type are stored in
+	 * @param context The context to use
+	 * @param directory The ID of the directory
+	 * @return The directory
+	 */
+	@JvmStatic
+	fun getContentDirectory(context: Context, directory: String): File = getSubDirectory(context, directory)
+	
 	private fun getSubDirectory(context: Context, name: String): File {
 		require(validateDirectoryID(name)) { "Unknown directory $name" }
 		val parentDir = if(isDirectoryCache(name)) {
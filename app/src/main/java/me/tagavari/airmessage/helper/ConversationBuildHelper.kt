@@ -14,12 +14,15 @@ import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.MainApplication
 import me.tagavari.airmessage.R
+import me.tagavari.airmessage.data.ShortcutIconCache
 import me.tagavari.airmessage.data.UserCacheHelper
 import me.tagavari.airmessage.helper.BitmapHelper.loadBitmap
 import me.tagavari.airmessage.helper.ContactHelper.getContactImageURI
 import me.tagavari.airmessage.messaging.ConversationInfo
 import me.tagavari.airmessage.messaging.MemberInfo
 import me.tagavari.airmessage.util.Union
+import java.util.*
+import kotlin.math.max
 
 object ConversationBuildHelper {
 	/**
@@ -67,42 +70,64 @@ object ConversationBuildHelper {
 			return Single.just(context.resources.getString(R.string.part_unknown))
 		}
 		
-		//Map each member to their name
-		return Single.concat(members.map { member: MemberInfo ->
+		//Fetch all members at once, then map each member to their name
+		val userCacheHelper = MainApplication.getInstance().userCacheHelper
+		return userCacheHelper.prefetchUserInfo(context, members.map { it.address }).andThen(Single.concat(members.map { member: MemberInfo ->
 			//If the member's name is available, use it, otherwise use their address
-			MainApplication.getInstance().userCacheHelper.getUserInfo(context, member.address)
+			userCacheHelper.getUserInfo(context, member.address)
 					.map {userInfo -> userInfo.contactName ?: member.address}
 					.onErrorReturnItem(member.address)
-		})
+		}))
 				//Create a localized list of members
 				.toList().map { nameList -> LanguageHelper.createLocalizedList(context.resources, nameList) }
 	}
 	
 	/**
 	 * Generates a [Bitmap] shortcut icon from a conversation
+	 * The icon is shared through [me.tagavari.airmessage.data.ShortcutIconCache], and must not be modified or recycled
 	 */
 	@JvmStatic
 	@CheckReturnValue
 	fun generateShortcutIcon(context: Context, conversationInfo: ConversationInfo): Single<Bitmap> {
-		//Rendering and returning the view
-		val memberInfos = conversationInfo.members.toList()
-		return (if(memberInfos.isEmpty()) Single.just(emptyList()) else Observable.fromIterable(memberInfos)
-				//Limit to a maximum of 4 members
-				.take(4)
-				//Map each user to their color or their bitmap
-				.flatMapSingle { member: MemberInfo ->
+		val layerSizeOuter = ResourceHelper.dpToPx(108F)
+		
+		//Limit to a maximum of 4 members
+		val memberInfos = conversationInfo.members.take(4)
+		return Observable.fromIterable(memberInfos)
+				//Get the contact info of each member, in order
+				.concatMapSingle { member: MemberInfo ->
 					MainApplication.getInstance().userCacheHelper.getUserInfo(context, member.address)
-							.flatMap { userInfo ->
-								loadBitmap(context, getContactImageURI(userInfo.contactID), true)
-										.map<Union<Int, Bitmap>> { Union.ofB(it) }
-							}
+							.map { Optional.of(it) }
+							.onErrorReturnItem(Optional.empty())
+							.map { userInfo -> Pair(member, userInfo.orElse(null)) }
+				}
+				.toList(max(memberInfos.size, 1))
+				//Only render the icon if it isn't already cached
+				.flatMap { memberUsers ->
+					MainApplication.getInstance().shortcutIconCache.getIcon(ShortcutIconCache.createKey(layerSizeOuter, memberUsers)) {
+						renderShortcutIcon(context, layerSizeOuter, memberUsers)
+					}
+				}
+	}
+	
+	/**
+	 * Renders a shortcut icon from a list of members
+	 * @param context The context to use
+	 * @param layerSizeOuter The width and height of the icon
+	 * @param memberUsers The members to display, paired with their contact info if available
+	 */
+	@CheckReturnValue
+	private fun renderShortcutIcon(context: Context, layerSizeOuter: Int, memberUsers: List<Pair<MemberInfo, UserCacheHelper.UserInfo?>>): Single<Bitmap> {
+		return Observable.fromIterable(memberUsers)
+				//Map each user to their color or their bitmap
+				.concatMapSingle { (member, userInfo) ->
+					if(userInfo == null) Single.just(Union.ofA<Int, Bitmap>(member.color))
+					else loadBitmap(context, getContactImageURI(userInfo.contactID), true)
+							.map<Union<Int, Bitmap>> { Union.ofB(it) }
 							.onErrorReturnItem(Union.ofA(member.color))
 				}
-				.toList(memberInfos.size))
+				.toList(max(memberUsers.size, 1))
 				.map { contactDataList: List<Union<Int, Bitmap>> ->
-					//Calculating layer sizes
-					val layerSizeOuter = ResourceHelper.dpToPx(108F)
-					
 					//Creating the canvas
 					val output = Bitmap.createBitmap(layerSizeOuter, layerSizeOuter, Bitmap.Config.ARGB_8888)
 					val canvas = Canvas(output)
@@ -1,29 +1,31 @@
 package me.tagavari.airmessage.helper
 
-import android.graphics.Bitmap
 import android.graphics.Bitmap.CompressFormat
-import android.graphics.BitmapFactory
-import android.graphics.Matrix
 import android.os.Build
-import androidx.exifinterface.media.ExifInterface
-import com.otaliastudios.transcoder.Transcoder
-import com.otaliastudios.transcoder.TranscoderListener
-import com.otaliastudios.transcoder.TranscoderOptions
-import com.otaliastudios.transcoder.resize.AtMostResizer
-import com.otaliastudios.transcoder.strategy.DefaultAudioStrategy
-import com.otaliastudios.transcoder.strategy.DefaultVideoStrategy
-import com.otaliastudios.transcoder.strategy.TrackStrategy
+import android.os.CancellationSignal
+import android.os.OperationCanceledException
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.schedulers.Schedulers
+import me.tagavari.airmessage.MainApplication
 import java.io.*
-import java.util.concurrent.ExecutionException
-import kotlin.math.sqrt
+import java.util.concurrent.Executors
+import java.util.function.DoubleConsumer
+import kotlin.math.max
+import kotlin.math.min
 
 /**
  * A set of utilities for compressing standard file types
  */
 object DataCompressionHelper {
-	private const val bitmapQuality = 90 //90%
 	private val compressableTypes = listOf("image/jpeg", "image/webp", "image/png", "video/mp4")
 	
+	/**
+	 * A bounded scheduler for running compression jobs, so that multiple attachments
+	 * can be compressed in parallel without competing for more cores than the device has
+	 */
+	@JvmStatic
+	val compressionScheduler: Scheduler = Schedulers.from(Executors.newFixedThreadPool(max(2, min(4, Runtime.getRuntime().availableProcessors()))), true)
+	
 	/**
 	 * Checks if compressing the specified file type is supported
 	 * @param mimeType The file type
@@ -40,34 +42,26 @@ object DataCompressionHelper {
 	 * @param output The output file to save to
 	 * @param streamToOutput Whether to write directly to the target file as we read, or rename the file on top of the output file once we're done
 	 * This is useful when we're streaming the input file back and want to write back to the same file
+	 * @param cacheKey A key that uniquely identifies the source file, used to reuse previous compression results (or NULL to disable caching)
+	 * @param cancellationSignal A signal to stop compressing, for file types that take long enough to be worth cancelling
+	 * @param progressListener A listener for the progress of the compression from 0 to 1, called on the main thread for file types that report progress
 	 */
 	@JvmStatic
-	@Throws(IllegalArgumentException::class, IOException::class)
-	fun compressFile(fileDescriptor: FileDescriptor, mimeType: String, maxBytes: Int, output: File, streamToOutput: Boolean) {
+	@JvmOverloads
+	@Throws(IllegalArgumentException::class, IOException::class, OperationCanceledException::class)
+	fun compressFile(fileDescriptor: FileDescriptor, mimeType: String, maxBytes: Int, output: File, streamToOutput: Boolean, cacheKey: String? = null, cancellationSignal: CancellationSignal? = null, progressListener: DoubleConsumer? = null) {
 		when(mimeType) {
-			"image/jpeg", "image/webp" -> {
-				val data = compressBitmapLossy(
-						loadCorrectBitmap(fileDescriptor),
-						if(mimeType == "image/jpeg") CompressFormat.JPEG
-						else {
-							if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) CompressFormat.WEBP_LOSSY
-							else CompressFormat.WEBP
-						},
-						maxBytes)
-				BufferedOutputStream(FileOutputStream(output)).use { outputStream -> outputStream.write(data) }
-			}
-			"image/png" -> {
-				val data = compressBitmapLossless(loadCorrectBitmap(fileDescriptor), maxBytes)
-				BufferedOutputStream(FileOutputStream(output)).use { outputStream -> outputStream.write(data) }
+			"image/jpeg", "image/webp", "image/png" -> {
+				val isDecoded = ImageCompressionHelper.compressImageToFile(
+						fileDescriptor,
+						getImageCompressFormat(mimeType),
+						maxBytes,
+						output,
+						cacheKey?.let { ImageCompressionHelper.getCacheKey(it, maxBytes) })
+				if(!isDecoded) throw IOException("Failed to decode image")
 			}
 			"video/mp4" -> {
-				try {
-					compressVideo(fileDescriptor, output, streamToOutput)
-				} catch(exception: InterruptedException) {
-					throw IOException(exception)
-				} catch(exception: ExecutionException) {
-					throw IOException(exception)
-				}
+				VideoCompressionHelper.compressVideo(fileDescriptor, maxBytes, output, streamToOutput, MainApplication.getInstance().videoTranscodeCache, cacheKey, cancellationSignal, progressListener)
 			}
 			else -> throw IllegalArgumentException("Unknown MIME type: $mimeType")
 		}
@@ -84,222 +78,24 @@ object DataCompressionHelper {
 	@Throws(IOException::class)
 	fun compressBitmap(fileBytes: ByteArray, mimeType: String, maxBytes: Int): ByteArray? {
 		return when(mimeType) {
-			"image/jpeg", "image/webp" -> compressBitmapLossy(
-					loadCorrectBitmap(fileBytes),
-					if(mimeType == "image/jpeg") CompressFormat.JPEG
-					else {
-						if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) CompressFormat.WEBP_LOSSY
-						else CompressFormat.WEBP
-					},
-					maxBytes)
-			"image/png" -> compressBitmapLossless(loadCorrectBitmap(fileBytes), maxBytes)
+			"image/jpeg", "image/webp", "image/png" -> ImageCompressionHelper.compressImage(fileBytes, getImageCompressFormat(mimeType), maxBytes)
 			else -> throw IllegalArgumentException("Unknown MIME type: $mimeType")
 		}
 	}
 	
 	/**
-	 * Rotates an image to be upright based on its EXIF data
-	 * @param fileDescriptor The file descriptor to read from
-	 * @return The bitmap in an upright position
-	 */
-	private fun loadCorrectBitmap(fileDescriptor: FileDescriptor): Bitmap? {
-		//Getting the bitmap from the image
-		var bitmap = BitmapFactory.decodeFileDescriptor(fileDescriptor) ?: return null
-		
-		//Reading the image's EXIF data
-		var exif: ExifInterface? = null
-		try {
-			exif = ExifInterface(fileDescriptor)
-		} catch(exception: IOException) {
-			//Printing the stack trace
-			exception.printStackTrace()
-		}
-		
-		//Fixing the bitmap orientation
-		if(exif != null) {
-			bitmap = rotateBitmap(bitmap, exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL))
-		}
-		
-		//Returning the bitmap
-		return bitmap
-	}
-	
-	/**
-	 * Rotates an image to be upright based on its EXIF data
-	 * @param fileBytes The bytes to read from
-	 * @return The bitmap in an upright position
-	 */
-	private fun loadCorrectBitmap(fileBytes: ByteArray): Bitmap? {
-		//Reading the image's EXIF data
-		var exif: ExifInterface? = null
-		try {
-			exif = ExifInterface(ByteArrayInputStream(fileBytes))
-		} catch(exception: IOException) {
-			//Printing the stack trace
-			exception.printStackTrace()
-		}
-		
-		//Getting the bitmap from the image
-		var bitmap = BitmapFactory.decodeByteArray(fileBytes, 0, fileBytes.size) ?: return null
-		
-		//Fixing the bitmap orientation
-		if(exif != null) {
-			bitmap = rotateBitmap(bitmap, exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL))
-		}
-		
-		//Returning the bitmap
-		return bitmap
-	}
-	
-	/**
-	 * Compresses a bitmap in a lossy format
-	 * @param bitmap The bitmap to compress
-	 * @param compressFormat The format to compress the data
-	 * @param maxBytes The upper limit to compress to
-	 */
-	@Throws(IOException::class)
-	private fun compressBitmapLossy(bitmap: Bitmap?, compressFormat: CompressFormat, maxBytes: Int): ByteArray? {
-		if(bitmap == null) return null
-		
-		//Getting the bitmap dimensions
-		val width = bitmap.width
-		val height = bitmap.height
-		ByteArrayOutputStream().use { outputStream ->
-			//Compressing the bitmap with default settings immediately
-			bitmap.compress(compressFormat, bitmapQuality, outputStream)
-			
-			//Counting the amount of bytes without scaling
-			val unscaledBytes = outputStream.size()
-			
-			//Further scaling the image until it fits under the max byte count
-			var attempts = 0
-			var bytes = unscaledBytes
-			while(bytes > maxBytes) {
-				val scale = sqrt(maxBytes.toDouble() / unscaledBytes) * (1 - attempts * 0.1)
-				outputStream.reset()
-				Bitmap.createScaledBitmap(bitmap, (width * scale).toInt(), (height * scale).toInt(), true).compress(compressFormat, bitmapQuality, outputStream)
-				attempts++
-				bytes = outputStream.size()
-			}
-			
-			//Returning the bytes
-			return outputStream.toByteArray()
-		}
-	}
-	
-	/**
-	 * Compresses a bitmap in a lossless format (PNG)
-	 * @param bitmap The bitmap to compress
-	 * @param maxBytes The upper limit to compress to
-	 * @return The bytes of the compressed bitmap
+	 * Gets the format to encode an image type with
+	 * @param mimeType The image type
+	 * @return The bitmap compression format for this type
 	 */
-	@Throws(IOException::class)
-	private fun compressBitmapLossless(bitmap: Bitmap?, maxBytes: Int): ByteArray? {
-		if(bitmap == null) return null
-		
-		//Getting the bitmap dimensions
-		val width = bitmap.width
-		val height = bitmap.height
-		ByteArrayOutputStream().use { outputStream ->
-			//Compressing the bitmap with default settings immediately
-			bitmap.compress(CompressFormat.PNG, 0, outputStream)
-			
-			//Counting the amount of bytes without scaling
-			val unscaledBytes = outputStream.size()
-			
-			//Further scaling the image until it fits under the max byte count
-			var attempts = 0
-			var bytes = unscaledBytes
-			while(bytes > maxBytes) {
-				val scale = sqrt(maxBytes.toDouble() / unscaledBytes) * (1 - attempts * 0.1)
-				outputStream.reset()
-				Bitmap.createScaledBitmap(bitmap, (width * scale).toInt(), (height * scale).toInt(), true).compress(CompressFormat.PNG, 0, outputStream)
-				attempts++
-				bytes = outputStream.size()
-			}
-			
-			//Returning the bytes
-			return outputStream.toByteArray()
-		}
-	}
-	
-	/**
-	 * Rotates a bitmap to the specified EXIF orientation
-	 * @param bitmap The bitmap to rotate
-	 * @param orientation The orientation to rotate to
-	 * @return The rotated bitmap
-	 */
-	private fun rotateBitmap(bitmap: Bitmap, orientation: Int): Bitmap {
-		val matrix = Matrix()
-		when(orientation) {
-			ExifInterface.ORIENTATION_NORMAL -> return bitmap
-			ExifInterface.ORIENTATION_FLIP_HORIZONTAL -> matrix.setScale(-1F, 1F)
-			ExifInterface.ORIENTATION_ROTATE_180 -> matrix.setRotate(180F)
-			ExifInterface.ORIENTATION_FLIP_VERTICAL -> {
-				matrix.setRotate(180F)
-				matrix.postScale(-1F, 1F)
-			}
-			ExifInterface.ORIENTATION_TRANSPOSE -> {
-				matrix.setRotate(90F)
-				matrix.postScale(-1F, 1F)
-			}
-			ExifInterface.ORIENTATION_ROTATE_90 -> matrix.setRotate(90F)
-			ExifInterface.ORIENTATION_TRANSVERSE -> {
-				matrix.setRotate(-90F)
-				matrix.postScale(-1F, 1F)
+	private fun getImageCompressFormat(mimeType: String): CompressFormat {
+		return when(mimeType) {
+			"image/jpeg" -> CompressFormat.JPEG
+			"image/png" -> CompressFormat.PNG
+			else -> {
+				if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) CompressFormat.WEBP_LOSSY
+				else CompressFormat.WEBP
 			}
-			ExifInterface.ORIENTATION_ROTATE_270 -> matrix.setRotate(-90F)
-			else -> return bitmap
-		}
-		
-		val bmRotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
-		bitmap.recycle()
-		return bmRotated
-	}
-	
-	/**
-	 * Compresses a video file
-	 * @param fileDescriptor The file descriptor of the video to compress
-	 * @param outputFile The file to write the output to
-	 * @param streamToOutput Whether to stream to the output file, or rename over it once we're done
-	 */
-	@Throws(InterruptedException::class, ExecutionException::class)
-	fun compressVideo(fileDescriptor: FileDescriptor?, outputFile: File, streamToOutput: Boolean) {
-		val audioStrategy: TrackStrategy = DefaultAudioStrategy.Builder()
-				.channels(1)
-				.bitRate(24000)
-				.build()
-		val videoStrategy: TrackStrategy = DefaultVideoStrategy.Builder()
-				.frameRate(12)
-				.bitRate(240000)
-				.addResizer(AtMostResizer(144, 176))
-				.build()
-		val temporaryFile: File?
-		val transcoder: TranscoderOptions.Builder
-		if(streamToOutput) {
-			//Write directly to the output file
-			temporaryFile = null
-			transcoder = Transcoder.into(outputFile.path)
-		} else {
-			//Write to the temporary file
-			temporaryFile = FileHelper.findFreeFile(outputFile.parentFile!!, "transcoder_temp", false)
-			transcoder = Transcoder.into(temporaryFile.path)
-		}
-		transcoder.addDataSource(fileDescriptor!!)
-				.setAudioTrackStrategy(audioStrategy)
-				.setVideoTrackStrategy(videoStrategy)
-				.setListener(object : TranscoderListener {
-					override fun onTranscodeProgress(progress: Double) {}
-					override fun onTranscodeCompleted(successCode: Int) {}
-					override fun onTranscodeCanceled() {}
-					override fun onTranscodeFailed(exception: Throwable) {}
-				})
-				.transcode().get()
-		
-		//Cleaning up the temporary file
-		if(!streamToOutput) {
-			outputFile.delete()
-			temporaryFile!!.renameTo(outputFile)
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,464 @@
+package me.tagavari.airmessage.helper
+
+import android.content.res.AssetFileDescriptor
+import android.graphics.Bitmap
+import android.graphics.Bitmap.CompressFormat
+import android.graphics.BitmapFactory
+import android.graphics.ImageDecoder
+import android.graphics.Matrix
+import android.os.Build
+import android.os.ParcelFileDescriptor
+import android.system.ErrnoException
+import android.system.Os
+import android.system.OsConstants
+import android.util.LruCache
+import androidx.exifinterface.media.ExifInterface
+import java.io.*
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+/**
+ * Compresses images to fit under a target file size
+ *
+ * Images are decoded at the smallest power-of-two sample size that still leaves enough pixels to fill the target size,
+ * and the final quality and scale are then found with a binary search rather than a fixed series of attempts.
+ *
+ * Images compressed to a file skip the search: they are decoded straight to the target size, the quality and scale are predicted
+ * from a small probe encode, and the result is encoded directly into the file, only falling back to the search if the prediction misses.
+ */
+object ImageCompressionHelper {
+	private const val bitmapQuality = 90 //90%
+	private const val lossyMinQuality = 75 //75%
+	private const val searchMaxAttempts = 7
+	private const val searchScaleTolerance = 0.02
+	
+	//The estimated number of pixels that a single encoded byte can hold, used to pick a decode sample size
+	private const val lossyPixelsPerByte = 8
+	private const val losslessPixelsPerByte = 2
+	
+	private const val probeMaxPixels = 512 * 512L //The size of the image encoded to predict the final quality and scale
+	private const val predictionMargin = 0.9 //Aim 10% under the target size, since the prediction isn't exact
+	private const val streamMaxAttempts = 3
+	
+	private const val cacheMaxBytes = 4 * 1024 * 1024 //4 MB
+	
+	//Compressed results, keyed by source and target size
+	private val resultCache = object : LruCache<String, ByteArray>(cacheMaxBytes) {
+		override fun sizeOf(key: String, value: ByteArray) = value.size
+	}
+	
+	/**
+	 * Creates a cache key for a compression result
+	 * @param source A string that uniquely identifies the source image, such as its URI
+	 * @param maxBytes The target size of the compression
+	 * @return The cache key
+	 */
+	@JvmStatic
+	fun getCacheKey(source: String, maxBytes: Int) = "$source|$maxBytes"
+	
+	/**
+	 * Compresses an image from a file descriptor, and writes it to a file
+	 * @param fileDescriptor The file descriptor to read from
+	 * @param compressFormat The format to encode the output in
+	 * @param maxBytes The upper limit to compress to
+	 * @param outputFile The file to write the compressed image to
+	 * @param cacheKey The key to cache this result under, or NULL to skip caching
+	 * @return Whether the image could be decoded
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun compressImageToFile(fileDescriptor: FileDescriptor, compressFormat: CompressFormat, maxBytes: Int, outputFile: File, cacheKey: String?): Boolean {
+		//Using the cached result if there is one
+		if(cacheKey != null) {
+			resultCache[cacheKey]?.let { data ->
+				FileOutputStream(outputFile).use { it.write(data) }
+				return true
+			}
+		}
+		
+		val bitmap = decodeScaledBitmap(fileDescriptor, getTargetPixels(compressFormat, maxBytes)) ?: return false
+		try {
+			encodeToFile(bitmap, compressFormat, maxBytes, outputFile)
+		} finally {
+			bitmap.recycle()
+		}
+		
+		if(cacheKey != null) resultCache.put(cacheKey, outputFile.readBytes())
+		return true
+	}
+	
+	/**
+	 * Compresses an image from a byte array
+	 * @param fileBytes The bytes of the image to compress
+	 * @param compressFormat The format to encode the output in
+	 * @param maxBytes The upper limit to compress to
+	 * @return The compressed image, or NULL if the image couldn't be decoded
+	 */
+	@JvmStatic
+	@Throws(IOException::class)
+	fun compressImage(fileBytes: ByteArray, compressFormat: CompressFormat, maxBytes: Int): ByteArray? {
+		val bitmap = decodeSampledBitmap(getTargetPixels(compressFormat, maxBytes),
+				{ options -> BitmapFactory.decodeByteArray(fileBytes, 0, fileBytes.size, options) },
+				{ ExifInterface(ByteArrayInputStream(fileBytes)) }) ?: return null
+		
+		try {
+			return encodeToFit(bitmap, compressFormat, maxBytes)
+		} finally {
+			bitmap.recycle()
+		}
+	}
+	
+	/**
+	 * Clears all cached compression results
+	 */
+	@JvmStatic
+	fun clearCache() {
+		resultCache.evictAll()
+	}
+	
+	/**
+	 * Gets the number of pixels worth decoding for a given output size
+	 */
+	private fun getTargetPixels(compressFormat: CompressFormat, maxBytes: Int): Long {
+		val pixelsPerByte = if(compressFormat == CompressFormat.PNG) losslessPixelsPerByte else lossyPixelsPerByte
+		return maxBytes.toLong() * pixelsPerByte
+	}
+	
+	/**
+	 * Calculates the largest power-of-two sample size that keeps at least the target amount of pixels
+	 * @param width The width of the source image
+	 * @param height The height of the source image
+	 * @param targetPixels The minimum amount of pixels to keep
+	 * @return The sample size to decode with
+	 */
+	private fun calculateSampleSize(width: Int, height: Int, targetPixels: Long): Int {
+		var sampleSize = 1
+		while((width / (sampleSize * 2)).toLong() * (height / (sampleSize * 2)) >= targetPixels) {
+			sampleSize *= 2
+		}
+		return sampleSize
+	}
+	
+	/**
+	 * Decodes an image at a reduced sample size, and rotates it to be upright based on its EXIF data
+	 * @param targetPixels The minimum amount of pixels to decode
+	 * @param decode A function that decodes the image with the provided options
+	 * @param readExif A function that reads the image's EXIF data
+	 * @return The bitmap in an upright position, or NULL if the image couldn't be decoded
+	 */
+	private inline fun decodeSampledBitmap(targetPixels: Long, decode: (BitmapFactory.Options) -> Bitmap?, readExif: () -> ExifInterface): Bitmap? {
+		//Reading the image's dimensions
+		val options = BitmapFactory.Options()
+		options.inJustDecodeBounds = true
+		decode(options)
+		if(options.outWidth <= 0 || options.outHeight <= 0) return null
+		
+		//Decoding the bitmap at the sample size
+		options.inJustDecodeBounds = false
+		options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, targetPixels)
+		val bitmap = decode(options) ?: return null
+		
+		//Reading the image's EXIF data
+		val exif = try {
+			readExif()
+		} catch(exception: IOException) {
+			exception.printStackTrace()
+			return bitmap
+		}
+		
+		//Fixing the bitmap orientation
+		return rotateBitmap(bitmap, exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL))
+	}
+	
+	/**
+	 * Decodes an image at close to the target amount of pixels, upright based on its EXIF data
+	 * @param fileDescriptor The file descriptor to read from
+	 * @param targetPixels The amount of pixels to decode
+	 * @return The bitmap in an upright position, or NULL if the image couldn't be decoded
+	 */
+	private fun decodeScaledBitmap(fileDescriptor: FileDescriptor, targetPixels: Long): Bitmap? {
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+			//Letting ImageDecoder scale and rotate the image while it decodes
+			val source = ImageDecoder.createSource {
+				AssetFileDescriptor(ParcelFileDescriptor.dup(fileDescriptor), 0, AssetFileDescriptor.UNKNOWN_LENGTH)
+			}
+			return try {
+				ImageDecoder.decodeBitmap(source) { decoder, info, _ ->
+					val scale = getScaleForPixels(info.size.width, info.size.height, targetPixels)
+					if(scale < 1) {
+						decoder.setTargetSize(max(1, (info.size.width * scale).roundToInt()), max(1, (info.size.height * scale).roundToInt()))
+					}
+					decoder.allocator = ImageDecoder.ALLOCATOR_SOFTWARE
+				}
+			} catch(exception: IOException) {
+				exception.printStackTrace()
+				null
+			}
+		}
+		
+		//Reading the EXIF orientation first, so the image can be rotated in the same pass that scales it
+		val orientation = try {
+			ExifInterface(fileDescriptor).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
+		} catch(exception: IOException) {
+			exception.printStackTrace()
+			ExifInterface.ORIENTATION_NORMAL
+		}
+		
+		//Reading EXIF data moves the descriptor's position, which BitmapFactory reads from
+		try {
+			Os.lseek(fileDescriptor, 0, OsConstants.SEEK_SET)
+		} catch(exception: ErrnoException) {
+			throw IOException(exception)
+		}
+		
+		//Decoding the image at the largest sample size that still covers the target
+		val options = BitmapFactory.Options()
+		options.inJustDecodeBounds = true
+		BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options)
+		if(options.outWidth <= 0 || options.outHeight <= 0) return null
+		options.inJustDecodeBounds = false
+		options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, targetPixels)
+		val sampledBitmap = BitmapFactory.decodeFileDescriptor(fileDescriptor, null, options) ?: return null
+		
+		//Scaling the rest of the way and rotating in a single copy
+		val matrix = getOrientationMatrix(orientation)
+		val scale = getScaleForPixels(sampledBitmap.width, sampledBitmap.height, targetPixels)
+		if(scale < 1) matrix.postScale(scale, scale)
+		if(matrix.isIdentity) return sampledBitmap
+		
+		val bitmap = Bitmap.createBitmap(sampledBitmap, 0, 0, sampledBitmap.width, sampledBitmap.height, matrix, true)
+		if(bitmap != sampledBitmap) sampledBitmap.recycle()
+		return bitmap
+	}
+	
+	/**
+	 * Gets the scale that brings an image down to a target amount of pixels
+	 * @return The scale, which is never more than 1
+	 */
+	private fun getScaleForPixels(width: Int, height: Int, targetPixels: Long): Float {
+		val pixels = width.toLong() * height
+		return if(pixels <= targetPixels) 1F else sqrt(targetPixels.toDouble() / pixels).toFloat()
+	}
+	
+	/**
+	 * Encodes a bitmap directly to a file, predicting the quality and scale that fit under the max byte count
+	 * @param bitmap The bitmap to compress
+	 * @param compressFormat The format to compress the data
+	 * @param maxBytes The upper limit to compress to
+	 * @param outputFile The file to write to
+	 */
+	private fun encodeToFile(bitmap: Bitmap, compressFormat: CompressFormat, maxBytes: Int, outputFile: File) {
+		var (scale, quality) = predictEncoding(bitmap, compressFormat, maxBytes)
+		
+		//Encoding straight to the file, shrinking the image further if the prediction was too large
+		for(attempt in 0 until streamMaxAttempts) {
+			if(bitmap.width * scale < 1 || bitmap.height * scale < 1) break
+			
+			val size = encodeBitmapToFile(bitmap, scale, compressFormat, quality, outputFile)
+			if(size <= maxBytes) return
+			scale *= sqrt(maxBytes.toDouble() / size) * predictionMargin
+		}
+		
+		//Falling back to searching in memory
+		val data = encodeToFit(bitmap, compressFormat, maxBytes)
+		FileOutputStream(outputFile).use { it.write(data) }
+	}
+	
+	/**
+	 * Predicts the quality and scale to encode a bitmap with, based on the size of a smaller probe encode
+	 *
+	 * The probe is scaled down, so it has more detail per pixel than the full image and tends to overestimate the final size.
+	 * @param bitmap The bitmap to compress
+	 * @param compressFormat The format to compress the data
+	 * @param maxBytes The upper limit to compress to
+	 * @return The scale and quality to encode with
+	 */
+	private fun predictEncoding(bitmap: Bitmap, compressFormat: CompressFormat, maxBytes: Int): Pair<Double, Int> {
+		val isLossless = compressFormat == CompressFormat.PNG
+		val startQuality = if(isLossless) 0 else bitmapQuality
+		val pixels = bitmap.width.toLong() * bitmap.height
+		val targetBytes = maxBytes * predictionMargin
+		
+		val probeScale = min(1.0, sqrt(probeMaxPixels.toDouble() / pixels))
+		val probe = if(probeScale < 1) {
+			Bitmap.createScaledBitmap(bitmap, max(1, (bitmap.width * probeScale).toInt()), max(1, (bitmap.height * probeScale).toInt()), true)
+		} else {
+			bitmap
+		}
+		val probePixels = probe.width.toLong() * probe.height
+		
+		try {
+			ByteArrayOutputStream().use { outputStream ->
+				//Checking if the image fits as it is
+				val startBytesPerPixel = encodeBitmap(probe, 1.0, compressFormat, startQuality, outputStream).size.toDouble() / probePixels
+				if(startBytesPerPixel * pixels <= targetBytes) return Pair(1.0, startQuality)
+				
+				//Checking if lowering the quality is enough, and picking a quality between the two probes
+				if(!isLossless) {
+					val minBytesPerPixel = encodeBitmap(probe, 1.0, compressFormat, lossyMinQuality, outputStream).size.toDouble() / probePixels
+					if(minBytesPerPixel * pixels <= targetBytes) {
+						val fraction = (targetBytes / pixels - minBytesPerPixel) / (startBytesPerPixel - minBytesPerPixel)
+						return Pair(1.0, lossyMinQuality + ((startQuality - lossyMinQuality) * fraction).toInt())
+					}
+				}
+				
+				//Scaling the image down at the starting quality
+				return Pair(sqrt(targetBytes / (startBytesPerPixel * pixels)), startQuality)
+			}
+		} finally {
+			if(probe != bitmap) probe.recycle()
+		}
+	}
+	
+	/**
+	 * Encodes a bitmap at a scale directly to a file
+	 * @return The size of the written file
+	 */
+	private fun encodeBitmapToFile(bitmap: Bitmap, scale: Double, compressFormat: CompressFormat, quality: Int, outputFile: File): Long {
+		val scaledBitmap = if(scale < 1.0) {
+			Bitmap.createScaledBitmap(bitmap, max(1, (bitmap.width * scale).toInt()), max(1, (bitmap.height * scale).toInt()), true)
+		} else {
+			bitmap
+		}
+		
+		try {
+			BufferedOutputStream(FileOutputStream(outputFile)).use { outputStream ->
+				if(!scaledBitmap.compress(compressFormat, quality, outputStream)) throw IOException("Failed to encode image")
+			}
+		} finally {
+			if(scaledBitmap != bitmap) scaledBitmap.recycle()
+		}
+		
+		return outputFile.length()
+	}
+	
+	/**
+	 * Encodes a bitmap, searching for the highest quality and scale that fits under the max byte count
+	 * @param bitmap The bitmap to compress
+	 * @param compressFormat The format to compress the data
+	 * @param maxBytes The upper limit to compress to
+	 * @return The bytes of the compressed bitmap
+	 */
+	private fun encodeToFit(bitmap: Bitmap, compressFormat: CompressFormat, maxBytes: Int): ByteArray {
+		val isLossless = compressFormat == CompressFormat.PNG
+		val startQuality = if(isLossless) 0 else bitmapQuality
+		ByteArrayOutputStream().use { outputStream ->
+			//Compressing the bitmap with default settings immediately
+			val unscaledBytes = encodeBitmap(bitmap, 1.0, compressFormat, startQuality, outputStream)
+			if(unscaledBytes.size <= maxBytes) return unscaledBytes
+			
+			//Searching for the highest quality that fits at full scale
+			if(!isLossless) {
+				var qualityFit: ByteArray? = null
+				var qualityLow = lossyMinQuality
+				var qualityHigh = bitmapQuality - 1
+				while(qualityLow <= qualityHigh) {
+					val quality = (qualityLow + qualityHigh) / 2
+					val bytes = encodeBitmap(bitmap, 1.0, compressFormat, quality, outputStream)
+					if(bytes.size <= maxBytes) {
+						qualityFit = bytes
+						qualityLow = quality + 1
+					} else {
+						qualityHigh = quality - 1
+					}
+				}
+				if(qualityFit != null) return qualityFit
+			}
+			
+			//Searching for the largest scale that fits, starting with an estimate based on the size of the unscaled image
+			var scaleFit: ByteArray? = null
+			var scaleLow = 0.0
+			var scaleHigh = 1.0
+			var scale = sqrt(maxBytes.toDouble() / unscaledBytes.size)
+			var attempts = 0
+			while(attempts < searchMaxAttempts && scaleHigh - scaleLow > searchScaleTolerance) {
+				val bytes = encodeBitmap(bitmap, scale, compressFormat, startQuality, outputStream)
+				if(bytes.size <= maxBytes) {
+					scaleFit = bytes
+					scaleLow = scale
+				} else {
+					scaleHigh = scale
+				}
+				scale = (scaleLow + scaleHigh) / 2
+				attempts++
+			}
+			
+			//Continuing to shrink the image if the search didn't find a fit
+			while(scaleFit == null) {
+				scale /= 2
+				if(bitmap.width * scale < 1 || bitmap.height * scale < 1) throw IOException("Couldn't compress image under $maxBytes bytes")
+				
+				val bytes = encodeBitmap(bitmap, scale, compressFormat, startQuality, outputStream)
+				if(bytes.size <= maxBytes) scaleFit = bytes
+			}
+			
+			return scaleFit
+		}
+	}
+	
+	/**
+	 * Encodes a bitmap at a scale
+	 * @param bitmap The bitmap to encode
+	 * @param scale The scale to resize the bitmap to before encoding
+	 * @param compressFormat The format to encode to
+	 * @param quality The quality to encode with
+	 * @param outputStream A reusable stream to encode into
+	 * @return The encoded bytes
+	 */
+	private fun encodeBitmap(bitmap: Bitmap, scale: Double, compressFormat: CompressFormat, quality: Int, outputStream: ByteArrayOutputStream): ByteArray {
+		outputStream.reset()
+		if(scale >= 1.0) {
+			bitmap.compress(compressFormat, quality, outputStream)
+		} else {
+			val scaledBitmap = Bitmap.createScaledBitmap(bitmap, max(1, (bitmap.width * scale).toInt()), max(1, (bitmap.height * scale).toInt()), true)
+			scaledBitmap.compress(compressFormat, quality, outputStream)
+			if(scaledBitmap != bitmap) scaledBitmap.recycle()
+		}
+		return outputStream.toByteArray()
+	}
+	
+	/**
+	 * Rotates a bitmap to the specified EXIF orientation
+	 * @param bitmap The bitmap to rotate
+	 * @param orientation The orientation to rotate to
+	 * @return The rotated bitmap
+	 */
+	private fun rotateBitmap(bitmap: Bitmap, orientation: Int): Bitmap {
+		val matrix = getOrientationMatrix(orientation)
+		if(matrix.isIdentity) return bitmap
+		
+		val bmRotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matrix, true)
+		bitmap.recycle()
+		return bmRotated
+	}
+	
+	/**
+	 * Creates a matrix that rotates an image to the specified EXIF orientation
+	 * @param orientation The orientation to rotate to
+	 * @return The matrix, which is the identity matrix if no rotation is needed
+	 */
+	private fun getOrientationMatrix(orientation: Int): Matrix {
+		val matrix = Matrix()
+		when(orientation) {
+			ExifInterface.ORIENTATION_FLIP_HORIZONTAL -> matrix.setScale(-1F, 1F)
+			ExifInterface.ORIENTATION_ROTATE_180 -> matrix.setRotate(180F)
+			ExifInterface.ORIENTATION_FLIP_VERTICAL -> {
+				matrix.setRotate(180F)
+				matrix.postScale(-1F, 1F)
+			}
+			ExifInterface.ORIENTATION_TRANSPOSE -> {
+				matrix.setRotate(90F)
+				matrix.postScale(-1F, 1F)
+			}
+			ExifInterface.ORIENTATION_ROTATE_90 -> matrix.setRotate(90F)
+			ExifInterface.ORIENTATION_TRANSVERSE -> {
+				matrix.setRotate(-90F)
+				matrix.postScale(-1F, 1F)
+			}
+			ExifInterface.ORIENTATION_ROTATE_270 -> matrix.setRotate(-90F)
+		}
+		return matrix
+	}
+}
\ No newline at end of file
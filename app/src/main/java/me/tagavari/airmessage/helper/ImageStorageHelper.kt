@@ -0,0 +1,230 @@
+package me.tagavari.airmessage.helper
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Bitmap.CompressFormat
+import android.graphics.BitmapFactory
+import android.os.Build
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.*
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**
+ * Stores images as files alongside attachments, with a smaller pre-scaled thumbnail for use in lists
+ *
+ * Preview images are content-addressed by their SHA-256 hash, so the same image is only stored once
+ * no matter how many previews reference it. Only the hash and dimensions need to be kept in the database.
+ */
+object ImageStorageHelper {
+	private const val previewThumbnailMaxSize = 640 //640 pixels
+	private const val stickerThumbnailMaxSize = 512 //512 pixels
+	private const val thumbnailQuality = 85 //85%
+	private const val thumbnailSuffix = "_thumb.webp"
+	private const val tempSuffix = ".tmp"
+	
+	/**
+	 * Writes a preview image to disk if it isn't already stored, and generates its thumbnail
+	 * @param context The context to use
+	 * @param data The encoded image
+	 * @param createThumbnail Whether to generate the thumbnail now, rather than leaving it to [createPreviewThumbnail]
+	 * @return The stored image, or NULL if the image couldn't be decoded or written
+	 */
+	@JvmStatic
+	@JvmOverloads
+	fun storePreviewImage(context: Context, data: ByteArray, createThumbnail: Boolean = true): StoredImage? {
+		//Reading the image's dimensions
+		val options = BitmapFactory.Options()
+		options.inJustDecodeBounds = true
+		BitmapFactory.decodeByteArray(data, 0, data.size, options)
+		if(options.outWidth <= 0 || options.outHeight <= 0) return null
+		
+		val hash = hashData(data)
+		val file = getPreviewImageFile(context, hash)
+		try {
+			//Writing the image, unless an identical one is already stored
+			if(!file.exists()) {
+				val tempFile = File(file.parentFile, hash + tempSuffix)
+				FileOutputStream(tempFile).use { it.write(data) }
+				if(!tempFile.renameTo(file)) {
+					tempFile.delete()
+					throw IOException("Failed to move preview image to $file")
+				}
+			} else {
+				//Marking the image as recently used, so it isn't cleaned up before its preview is saved
+				file.setLastModified(System.currentTimeMillis())
+			}
+			
+			//Generating the thumbnail
+			val thumbnailFile = getPreviewThumbnailFile(context, hash)
+			if(createThumbnail && !thumbnailFile.exists()) createThumbnail(file, thumbnailFile, previewThumbnailMaxSize)
+		} catch(exception: IOException) {
+			exception.printStackTrace()
+			return null
+		}
+		
+		return StoredImage(hash, options.outWidth, options.outHeight)
+	}
+	
+	/**
+	 * Gets the file of a stored preview image
+	 * @param context The context to use
+	 * @param hash The hash of the image
+	 * @return The image file
+	 */
+	@JvmStatic
+	fun getPreviewImageFile(context: Context, hash: String): File {
+		return AttachmentStorageHelper.prepareContentFile(context, AttachmentStorageHelper.dirNamePreview, hash)
+	}
+	
+	/**
+	 * Gets the thumbnail file of a stored preview image
+	 * @param context The context to use
+	 * @param hash The hash of the image
+	 * @return The thumbnail file, which may not exist if the thumbnail couldn't be generated
+	 */
+	@JvmStatic
+	fun getPreviewThumbnailFile(context: Context, hash: String): File {
+		return AttachmentStorageHelper.prepareContentFile(context, AttachmentStorageHelper.dirNamePreview, hash + thumbnailSuffix)
+	}
+	
+	/**
+	 * Generates the thumbnail of a stored preview image, if it doesn't already have one
+	 * @param context The context to use
+	 * @param hash The hash of the image
+	 * @return Whether the thumbnail exists
+	 */
+	@JvmStatic
+	fun createPreviewThumbnail(context: Context, hash: String): Boolean {
+		val thumbnailFile = getPreviewThumbnailFile(context, hash)
+		if(thumbnailFile.exists()) return true
+		
+		val file = getPreviewImageFile(context, hash)
+		if(!file.exists()) return false
+		
+		return try {
+			createThumbnail(file, thumbnailFile, previewThumbnailMaxSize)
+			true
+		} catch(exception: IOException) {
+			exception.printStackTrace()
+			false
+		}
+	}
+	
+	/**
+	 * Deletes stored preview images and thumbnails that no preview uses
+	 * @param context The context to use
+	 * @param usedHashes The hashes of all images that are still used by a preview
+	 * @param minAgeMillis How long an image must have gone unused before it is deleted, so that images whose preview
+	 * hasn't been saved yet are kept
+	 */
+	@JvmStatic
+	fun deleteUnusedPreviewImages(context: Context, usedHashes: Set<String>, minAgeMillis: Long) {
+		val files = AttachmentStorageHelper.getContentDirectory(context, AttachmentStorageHelper.dirNamePreview).listFiles() ?: return
+		val now = System.currentTimeMillis()
+		for(file in files) {
+			val hash = file.name.removeSuffix(thumbnailSuffix).removeSuffix(tempSuffix)
+			if(usedHashes.contains(hash)) continue
+			
+			//Checking the age of the image itself, since its thumbnail may have been generated later
+			val imageFile = File(file.parentFile, hash)
+			val lastModified = if(imageFile.exists()) imageFile.lastModified() else file.lastModified()
+			if(now - lastModified < minAgeMillis) continue
+			
+			file.delete()
+		}
+	}
+	
+	/**
+	 * Generates the thumbnail for a sticker file
+	 * @param stickerFile The sticker file
+	 * @return Whether the thumbnail was created
+	 */
+	@JvmStatic
+	fun createStickerThumbnail(stickerFile: File): Boolean {
+		return try {
+			createThumbnail(stickerFile, getStickerThumbnailFile(stickerFile), stickerThumbnailMaxSize)
+			true
+		} catch(exception: IOException) {
+			exception.printStackTrace()
+			false
+		}
+	}
+	
+	/**
+	 * Gets the thumbnail file of a sticker, which is stored next to the sticker file
+	 * @param stickerFile The sticker file
+	 * @return The thumbnail file, which may not exist if the thumbnail couldn't be generated
+	 */
+	@JvmStatic
+	fun getStickerThumbnailFile(stickerFile: File): File {
+		return File(stickerFile.parentFile, stickerFile.nameWithoutExtension + thumbnailSuffix)
+	}
+	
+	/**
+	 * Decodes an image file at a reduced size, and writes it to a thumbnail file
+	 * @param source The image file to read
+	 * @param target The file to write the thumbnail to
+	 * @param maxSize The maximum width or height of the thumbnail
+	 */
+	@Throws(IOException::class)
+	private fun createThumbnail(source: File, target: File, maxSize: Int) {
+		//Reading the image's dimensions
+		val options = BitmapFactory.Options()
+		options.inJustDecodeBounds = true
+		BitmapFactory.decodeFile(source.path, options)
+		if(options.outWidth <= 0 || options.outHeight <= 0) throw IOException("Failed to decode $source")
+		
+		//Decoding the image at the largest power-of-two sample size that still covers the thumbnail size
+		val largestSide = max(options.outWidth, options.outHeight)
+		var sampleSize = 1
+		while(largestSide / (sampleSize * 2) >= maxSize) sampleSize *= 2
+		options.inJustDecodeBounds = false
+		options.inSampleSize = sampleSize
+		val sampledBitmap = BitmapFactory.decodeFile(source.path, options) ?: throw IOException("Failed to decode $source")
+		
+		//Scaling the image down the rest of the way
+		val scale = maxSize.toFloat() / max(sampledBitmap.width, sampledBitmap.height)
+		val bitmap = if(scale < 1) {
+			Bitmap.createScaledBitmap(sampledBitmap, (sampledBitmap.width * scale).roundToInt().coerceAtLeast(1), (sampledBitmap.height * scale).roundToInt().coerceAtLeast(1), true)
+				.also { sampledBitmap.recycle() }
+		} else {
+			sampledBitmap
+		}
+		
+		//Writing the thumbnail
+		try {
+			@Suppress("DEPRECATION")
+			val compressFormat = if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) CompressFormat.WEBP_LOSSY else CompressFormat.WEBP
+			FileOutputStream(target).use { outputStream ->
+				if(!bitmap.compress(compressFormat, thumbnailQuality, outputStream)) throw IOException("Failed to encode thumbnail for $source")
+			}
+		} catch(exception: IOException) {
+			target.delete()
+			throw exception
+		} finally {
+			bitmap.recycle()
+		}
+	}
+	
+	/**
+	 * Gets the hex-encoded SHA-256 hash of some data
+	 */
+	private fun hashData(data: ByteArray): String {
+		val digest = MessageDigest.getInstance("SHA-256").digest(data)
+		val stringBuilder = StringBuilder(digest.size * 2)
+		for(byte in digest) stringBuilder.append(String.format(Locale.ROOT, "%02x", byte))
+		return stringBuilder.toString()
+	}
+	
+	/**
+	 * An image that has been written to disk
+	 * @param hash The hash of the image's contents, which identifies its file
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 */
+	data class StoredImage(val hash: String, val width: Int, val height: Int)
+}
\ No newline at end of file
@@ -10,12 +10,14 @@ import android.media.AudioManager
 import android.net.Uri
 import android.os.Build
 import android.os.Bundle
+import android.os.Looper
 import android.provider.Settings
 import android.service.notification.StatusBarNotification
 import android.text.SpannableString
 import android.text.SpannableStringBuilder
 import android.text.style.StyleSpan
 import android.util.Log
+import android.util.LruCache
 import androidx.annotation.RequiresApi
 import androidx.core.app.NotificationCompat
 import androidx.core.app.NotificationManagerCompat
@@ -24,8 +26,11 @@ import androidx.core.app.RemoteInput
 import androidx.core.graphics.drawable.IconCompat
 import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
+import io.reactivex.rxjava3.core.Completable
+import io.reactivex.rxjava3.core.Observable
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.schedulers.Schedulers
+import io.reactivex.rxjava3.subjects.BehaviorSubject
 import me.tagavari.airmessage.BuildConfig
 import me.tagavari.airmessage.MainApplication
 import me.tagavari.airmessage.R
@@ -35,7 +40,6 @@ import me.tagavari.airmessage.activity.Messaging
 import me.tagavari.airmessage.activity.Preferences
 import me.tagavari.airmessage.data.DatabaseManager
 import me.tagavari.airmessage.data.UserCacheHelper
-import me.tagavari.airmessage.flavor.MLKitBridge
 import me.tagavari.airmessage.helper.AddressHelper.formatAddress
 import me.tagavari.airmessage.helper.AddressHelper.normalizeAddress
 import me.tagavari.airmessage.helper.BitmapHelper.loadBitmapCircular
@@ -51,6 +55,7 @@ import me.tagavari.airmessage.receiver.MessageNotificationDeleteReceiver
 import me.tagavari.airmessage.service.ConnectionService
 import me.tagavari.airmessage.util.NotificationSummaryMessage
 import java.util.*
+import java.util.concurrent.TimeUnit
 
 object NotificationHelper {
 	private val TAG = NotificationHelper::class.simpleName!!
@@ -80,6 +85,20 @@ object NotificationHelper {
 	private const val pendingIntentOffsetBubble = 1000000
 	private const val pendingIntentOffsetMarkAsRead = 1000000
 	
+	private const val notificationCoalesceWindow = 500L //500 ms
+	private const val senderIconCacheSize = 2 * 1024 * 1024 //2 MB
+	
+	//Conversations with a notification update in progress, only accessed from the main thread
+	private val notificationBatches = mutableMapOf<Long, NotificationBatch>()
+	
+	//The number of queued messages that haven't been posted yet, only updated from the main thread
+	private val unpostedMessageCount = BehaviorSubject.createDefault(0)
+	
+	//Contact icons of recent message senders, keyed by contact ID and last update time
+	private val senderIconCache = object : LruCache<String, Bitmap>(senderIconCacheSize) {
+		override fun sizeOf(key: String, value: Bitmap) = value.byteCount
+	}
+	
 	/**
 	 * Sets up Android Oreo notification channels
 	 */
@@ -191,7 +210,11 @@ object NotificationHelper {
 	}
 	
 	/**
-	 * Uses the parameters to asynchronously fetch required notification information and then sends the notification
+	 * Queues a message to be added to its conversation's notification
+	 *
+	 * Messages are coalesced per conversation: the first message is posted right away, and any messages
+	 * that arrive while it is being posted or within [notificationCoalesceWindow] afterwards are posted together
+	 * in a single update, in the order they were added
 	 * @param context The context to use
 	 * @param conversationInfo The conversation of the message
 	 * @param message The message text to notify the user about
@@ -203,6 +226,59 @@ object NotificationHelper {
 	fun addMessageToNotification(context: Context, conversationInfo: ConversationInfo, message: String, sender: String?, timestamp: Long, sendStyle: String?) {
 		//Changing the message based on the effect
 		val displayMessage = if(SendStyleHelper.appleSendStyleBubbleInvisibleInk == sendStyle) context.resources.getString(R.string.message_messageeffect_invisibleink) else message
+		val pendingMessage = PendingNotificationMessage(displayMessage, sender, timestamp)
+		
+		//Notification batches are only accessed from the main thread
+		if(Looper.myLooper() == Looper.getMainLooper()) {
+			queueNotificationMessage(context, conversationInfo, pendingMessage)
+		} else {
+			AndroidSchedulers.mainThread().scheduleDirect { queueNotificationMessage(context, conversationInfo, pendingMessage) }
+		}
+	}
+	
+	/**
+	 * Adds a message to its conversation's notification batch, and posts the batch if it isn't waiting on a previous update
+	 */
+	private fun queueNotificationMessage(context: Context, conversationInfo: ConversationInfo, message: PendingNotificationMessage) {
+		val batch = notificationBatches.getOrPut(conversationInfo.localID) { NotificationBatch(conversationInfo) }
+		batch.conversationInfo = conversationInfo
+		batch.messages.add(message)
+		unpostedMessageCount.onNext(unpostedMessageCount.value!! + 1)
+		
+		if(!batch.isBusy) postNotificationBatch(context, batch)
+	}
+	
+	/**
+	 * Waits for all messages queued so far to be posted to their notifications
+	 *
+	 * Messages queued from the main thread before subscribing are included, so a caller can
+	 * emit its events on the main thread and then wait here before letting its process be stopped
+	 * @return A completable that completes once no messages are waiting to be posted
+	 */
+	@JvmStatic
+	fun awaitPendingNotifications(): Completable {
+		return unpostedMessageCount
+				.subscribeOn(AndroidSchedulers.mainThread())
+				.filter { it == 0 }
+				.firstOrError()
+				.ignoreElement()
+	}
+	
+	/**
+	 * Asynchronously fetches the required notification information for a batch of messages, and then sends the notification
+	 */
+	private fun postNotificationBatch(context: Context, batch: NotificationBatch) {
+		//Taking the pending messages
+		val conversationInfo = batch.conversationInfo
+		val messages = batch.messages.toList()
+		batch.messages.clear()
+		batch.isBusy = true
+		
+		//The notification only stays silent if every message in the batch is outgoing, so a batch mixing outgoing and incoming messages still alerts
+		val isOutgoing = messages.all { it.sender == null }
+		
+		//The latest message decides the notification's icon and reply suggestions
+		val latestSender = messages.last().sender
 		
 		//Generate the conversation title
 		val singleTitle = buildConversationTitle(context, conversationInfo)
@@ -214,30 +290,24 @@ object NotificationHelper {
 			Single.just(Optional.empty())
 		}
 		
-		//Generate the message sender info
-		val singleMemberInfo: Single<Optional<UserCacheHelper.UserInfo>> = if(conversationInfo.members.isEmpty() || (conversationInfo.isGroupChat && sender == null)) {
-			Single.just(Optional.empty())
+		/*
+		 * If we're in a group chat, use the icon of the sender
+		 * Otherwise, use the icon of the other member in the one-on-one chat
+		 */
+		val memberAddress: String? = if(conversationInfo.members.isEmpty() || (conversationInfo.isGroupChat && latestSender == null)) {
+			null
+		} else if(conversationInfo.isGroupChat) {
+			latestSender
 		} else {
-			/*
-			 * If we're in a group chat, get the icon of the sender
-			 * Otherwise, get the icon of the other member in the one-on-one chat
-			 */
-			val memberAddress: String = if(conversationInfo.isGroupChat) sender!! else conversationInfo.members[0].address
-			MainApplication.getInstance().userCacheHelper.getUserInfo(context, memberAddress)
-					.map { Optional.of(it) }.onErrorReturnItem(Optional.empty()).cache()
+			conversationInfo.members[0].address
 		}
 		
-		//Generate the user icon
-		val singleMemberIcon: Single<Optional<Bitmap>> = singleMemberInfo.flatMap { user: Optional<UserCacheHelper.UserInfo> ->
-			return@flatMap if(!user.isPresent) {
-				Single.just(Optional.empty<Bitmap>())
-			} else {
-				loadBitmapCircular(context, getContactImageURI(user.get().contactID))
-						.map { Optional.of(it) }
-						.doOnError { error -> Log.w(TAG, "Failed to load user icon", error) }
-						.onErrorReturnItem(Optional.empty())
-			}
-		}
+		//Resolving each sender once for the whole batch
+		val senderAddresses = (messages.mapNotNull { it.sender } + listOfNotNull(memberAddress)).distinct()
+		val singleSenders: Single<Map<String, NotificationSender>> = Observable.fromIterable(senderAddresses)
+				.concatMapSingle { address -> resolveNotificationSender(context, address).map { Pair(address, it) } }
+				.toList()
+				.map { it.toMap() }
 		
 		/*
 		 * Skip generating smart replies if the local user is the sender, or the user has disabled the option in preferences
@@ -245,14 +315,22 @@ object NotificationHelper {
 		 * If we're on Android 10 or later, we'll let the system handle generating smart replies.
 		 * The Android system is able to add contextual actions to notifications as well, which isn't accessible through the API.
 		 */
-		val singleSuggestions: Single<List<String>> = if(sender == null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q || !Preferences.getPreferenceReplySuggestions(context)) {
+		val singleSuggestions: Single<List<String>> = if(latestSender == null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q || !Preferences.getPreferenceReplySuggestions(context)) {
 			Single.just(emptyList())
 		} else {
-			MLKitBridge.generateFromDatabase(conversationInfo.localID)
+			MainApplication.getInstance().smartReplyCache.getSuggestionsFromDatabase(context, conversationInfo.localID)
+					.map { actions -> actions.mapNotNull { it.replyString?.toString() } }
 		}
 		
-		Single.zip(singleTitle, singleShortcutIcon, singleMemberInfo, singleMemberIcon, singleSuggestions, ::NotificationFutureData)
-				.subscribe { (resultTitle, resultShortcutIcon, resultMemberInfo, resultMemberIcon, resultSuggestions) ->
+		Single.zip(singleTitle, singleShortcutIcon, singleSenders, singleSuggestions, ::NotificationFutureData)
+				.observeOn(AndroidSchedulers.mainThread())
+				.doFinally {
+					unpostedMessageCount.onNext(unpostedMessageCount.value!! - messages.size)
+					finishNotificationBatch(context, batch)
+				}
+				.subscribe({ (resultTitle, resultShortcutIcon, resultSenders, resultSuggestions) ->
+					val memberSender = memberAddress?.let { resultSenders[it] }
+					
 					//Sending the notification
 					notifyMessageNotificationWithSummary(context,
 							buildMessageNotification(
@@ -260,25 +338,63 @@ object NotificationHelper {
 									buildBaseMessageNotification(
 											context,
 											conversationInfo,
-											sender == null,
-											resultMemberIcon.orElse(null),
+											isOutgoing,
+											memberSender?.icon,
 											resultShortcutIcon.orElse(null),
-											resultMemberInfo.orElse(null),
+											memberSender?.userInfo,
 											resultSuggestions.ifEmpty { null }
 									),
 									conversationInfo,
 									resultTitle,
-									displayMessage,
-									timestamp,
-									sender,
-									resultMemberInfo.orElse(null),
-									resultMemberIcon.map(IconCompat::createWithBitmap).orElse(null)
+									messages,
+									resultSenders
 							),
 							conversationInfo,
 							resultTitle,
-							displayMessage
+							messages.last().text
 					)
+				}, { error -> Log.w(TAG, "Failed to send message notification", error) })
+	}
+	
+	/**
+	 * Waits for the coalescing window to pass after a batch was posted, and then posts any messages that were queued in the meantime
+	 */
+	private fun finishNotificationBatch(context: Context, batch: NotificationBatch) {
+		Completable.timer(notificationCoalesceWindow, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread()).subscribe {
+			if(batch.messages.isEmpty()) {
+				batch.isBusy = false
+				notificationBatches.remove(batch.conversationInfo.localID)
+			} else {
+				postNotificationBatch(context, batch)
+			}
+		}
+	}
+	
+	/**
+	 * Loads the contact info and icon of a message sender, re-using the icon if it was loaded recently
+	 */
+	private fun resolveNotificationSender(context: Context, address: String): Single<NotificationSender> {
+		return MainApplication.getInstance().userCacheHelper.getUserInfo(context, address)
+				.flatMap { userInfo ->
+					//Checking the icon cache
+					val iconKey = "${userInfo.contactID}@${userInfo.lastUpdated}"
+					senderIconCache.get(iconKey)?.let { return@flatMap Single.just(NotificationSender(userInfo, it)) }
+					
+					loadBitmapCircular(context, getContactImageURI(userInfo.contactID))
+							.doOnSuccess { senderIconCache.put(iconKey, it) }
+							.map { NotificationSender(userInfo, it) }
+							.doOnError { error -> Log.w(TAG, "Failed to load user icon", error) }
+							.onErrorReturnItem(NotificationSender(userInfo, null))
 				}
+				.onErrorReturnItem(NotificationSender(null, null))
+	}
+	
+	/**
+	 * Clears cached sender icons from memory
+	 */
+	@JvmStatic
+	fun clearCaches() {
+		senderIconCache.evictAll()
 	}
 	
 	/**
@@ -612,34 +728,36 @@ object NotificationHelper {
 	 * @param baseNotificationBuilder A notification builder to build upon
 	 * @param conversationInfo The conversation this message is from
 	 * @param title The generated title of the conversation
-	 * @param messageText The text to notify the user of
-	 * @param messageTimestamp The time this message was received
-	 * @param senderAddress The address of the sender, or NULL if this message is outgoing
-	 * @param senderInfo Extra information regarding the sender
-	 * @param senderIcon The icon of the sender
+	 * @param messages The messages to add to the notification, in order
+	 * @param senders Information regarding each message sender, keyed by address
 	 * @return A message notification to display to the user
 	 */
-	private fun buildMessageNotification(context: Context, baseNotificationBuilder: NotificationCompat.Builder, conversationInfo: ConversationInfo, title: String, messageText: String, messageTimestamp: Long, senderAddress: String?, senderInfo: UserCacheHelper.UserInfo?, senderIcon: IconCompat?): Notification {
-		//Creating the messaging style
-		val person: Person? = if(senderAddress == null) {
-			//This message is outgoing
-			null
-		} else {
-			if(senderInfo == null) {
-				Person.Builder().apply {
-					setName(formatAddress(senderAddress))
-					setKey(normalizeAddress(senderAddress))
-				}.build()
-			} else {
-				Person.Builder().apply {
-					setName(senderInfo.contactName)
-					setUri(senderInfo.contactLookupUri.toString())
-					setIcon(senderIcon)
-					setKey(normalizeAddress(senderAddress))
-				}.build()
+	private fun buildMessageNotification(context: Context, baseNotificationBuilder: NotificationCompat.Builder, conversationInfo: ConversationInfo, title: String, messages: List<PendingNotificationMessage>, senders: Map<String, NotificationSender>): Notification {
+		//Creating a person for each sender, shared between their messages
+		val persons = mutableMapOf<String, Person>()
+		val styleMessages = messages.map { pendingMessage ->
+			//Outgoing messages don't have a person
+			val person = pendingMessage.sender?.let { senderAddress ->
+				persons.getOrPut(senderAddress) {
+					val senderInfo = senders[senderAddress]?.userInfo
+					if(senderInfo == null) {
+						Person.Builder().apply {
+							setName(formatAddress(senderAddress))
+							setKey(normalizeAddress(senderAddress))
+						}.build()
+					} else {
+						Person.Builder().apply {
+							setName(senderInfo.contactName)
+							setUri(senderInfo.contactLookupUri.toString())
+							setIcon(senders[senderAddress]?.icon?.let(IconCompat::createWithBitmap))
+							setKey(normalizeAddress(senderAddress))
+						}.build()
+					}
+				}
 			}
+			
+			NotificationCompat.MessagingStyle.Message(pendingMessage.text, pendingMessage.timestamp, person)
 		}
-		val message = NotificationCompat.MessagingStyle.Message(messageText, messageTimestamp, person)
 		
 		//Getting the notification manager
 		val notificationManager = context.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
@@ -648,12 +766,9 @@ object NotificationHelper {
 		val existingNotification = getNotification(notificationManager, notificationTagMessage, conversationInfo.localID.toInt())
 		var messagingStyle = existingNotification?.let(NotificationCompat.MessagingStyle::extractMessagingStyleFromNotification)
 		
-		if(messagingStyle != null) {
-			//Adding the new message
-			messagingStyle.addMessage(message)
-		} else {
+		if(messagingStyle == null) {
 			//Creating a new messaging style
-			messagingStyle = NotificationCompat.MessagingStyle(Person.Builder().setName(context.resources.getString(R.string.part_you)).build()).addMessage(message)
+			messagingStyle = NotificationCompat.MessagingStyle(Person.Builder().setName(context.resources.getString(R.string.part_you)).build())
 			
 			//Configuring the messaging style
 			if(conversationInfo.isGroupChat) {
@@ -662,6 +777,9 @@ object NotificationHelper {
 			}
 		}
 		
+		//Adding the new messages
+		for(message in styleMessages) messagingStyle.addMessage(message)
+		
 		//Setting the messaging style to the notification
 		baseNotificationBuilder.setStyle(messagingStyle)
 		
@@ -929,5 +1047,14 @@ object NotificationHelper {
 			.cancel(notificationIDIncomingCall)
 	}
 	
-	data class NotificationFutureData(val title: String, val shortcutIcon: Optional<IconCompat>, val memberInfo: Optional<UserCacheHelper.UserInfo>, val memberIcon: Optional<Bitmap>, val suggestions: List<String>)
+	data class NotificationFutureData(val title: String, val shortcutIcon: Optional<IconCompat>, val senders: Map<String, NotificationSender>, val suggestions: List<String>)
+	
+	data class NotificationSender(val userInfo: UserCacheHelper.UserInfo?, val icon: Bitmap?)
+	
+	private data class PendingNotificationMessage(val text: String, val sender: String?, val timestamp: Long)
+	
+	private class NotificationBatch(var conversationInfo: ConversationInfo) {
+		val messages = mutableListOf<PendingNotificationMessage>()
+		var isBusy = false //Whether an update is being posted, or was posted within the coalescing window
+	}
 }
\ No newline at end of file
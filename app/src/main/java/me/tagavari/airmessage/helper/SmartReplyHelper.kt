@@ -3,6 +3,7 @@ package me.tagavari.airmessage.helper
 import android.app.Person
 import android.content.Context
 import android.os.Build
+import android.os.Process
 import android.view.textclassifier.ConversationAction
 import android.view.textclassifier.ConversationActions
 import android.view.textclassifier.TextClassificationManager
@@ -10,6 +11,7 @@ import android.view.textclassifier.TextClassifier
 import androidx.annotation.RequiresApi
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.annotations.CheckReturnValue
+import io.reactivex.rxjava3.core.Scheduler
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.schedulers.Schedulers
 import me.tagavari.airmessage.flavor.MLKitBridge
@@ -18,10 +20,22 @@ import me.tagavari.airmessage.messaging.MessageInfo
 import java.time.Instant
 import java.time.ZoneId
 import java.time.ZonedDateTime
+import java.util.concurrent.Executors
 
 object SmartReplyHelper {
 	const val smartReplyHistoryLength = 10
 	
+	/**
+	 * A single low-priority thread to run inference on, so that generating suggestions doesn't compete with the UI or other background work
+	 */
+	@JvmStatic
+	val inferenceScheduler: Scheduler = Schedulers.from(Executors.newSingleThreadExecutor { runnable ->
+		Thread({
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+			runnable.run()
+		}, "SmartReply").apply { isDaemon = true }
+	})
+	
 	/**
 	 * Maps a list of [MessageInfo] to [ConversationActions.Message]
 	 */
@@ -91,6 +105,6 @@ object SmartReplyHelper {
 							.setHints(listOf(ConversationActions.Request.HINT_FOR_IN_APP))
 							.build()
 			)
-		}.subscribeOn(Schedulers.computation()).observeOn(AndroidSchedulers.mainThread())
+		}.subscribeOn(inferenceScheduler).observeOn(AndroidSchedulers.mainThread())
 	}
 }
\ No newline at end of file
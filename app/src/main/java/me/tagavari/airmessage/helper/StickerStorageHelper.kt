@@ -0,0 +1,86 @@
+package me.tagavari.airmessage.helper
+
+import io.reactivex.rxjava3.core.Completable
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.schedulers.Schedulers
+import me.tagavari.airmessage.flavor.CrashlyticsBridge
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.zip.InflaterInputStream
+
+/**
+ * Writes received stickers to disk
+ *
+ * Stickers arrive deflate-compressed, and are kept that way until they are written.
+ * Each sticker is inflated straight into its file through a small buffer, so a burst of stickers never needs to hold
+ * their decompressed data in memory, and only a sampled thumbnail is decoded from the written file.
+ */
+object StickerStorageHelper {
+	private const val maxConcurrentWrites = 2
+	
+	/**
+	 * A bounded scheduler for writing stickers, so that a burst of stickers doesn't run too many decodes at once
+	 */
+	private val writeScheduler: Scheduler = Schedulers.from(Executors.newFixedThreadPool(maxConcurrentWrites), true)
+	
+	/**
+	 * Writes stickers to their files and generates their thumbnails
+	 * @param compressedData The deflate-compressed data of each sticker
+	 * @param targetFiles The file to write each sticker to
+	 * @return A single for whether each sticker was written successfully, delivered on a writer thread
+	 */
+	@JvmStatic
+	fun writeStickersAsync(compressedData: List<ByteArray>, targetFiles: List<File>): Single<BooleanArray> {
+		return Single.defer {
+			val results = BooleanArray(targetFiles.size)
+			
+			Observable.range(0, targetFiles.size)
+				.flatMapCompletable { index ->
+					Completable.fromAction { results[index] = writeSticker(compressedData[index], targetFiles[index]) }
+						.subscribeOn(writeScheduler)
+				}
+				.toSingle { results }
+		}
+	}
+	
+	/**
+	 * Writes stickers to their files and generates their thumbnails, blocking until all stickers are written
+	 * @see writeStickersAsync
+	 */
+	@JvmStatic
+	fun writeStickers(compressedData: List<ByteArray>, targetFiles: List<File>): BooleanArray {
+		return writeStickersAsync(compressedData, targetFiles).blockingGet()
+	}
+	
+	/**
+	 * Inflates a sticker into its file and generates its thumbnail
+	 * @return Whether the sticker was written successfully
+	 */
+	private fun writeSticker(compressedData: ByteArray, targetFile: File): Boolean {
+		try {
+			InflaterInputStream(compressedData.inputStream()).use { inputStream ->
+				FileOutputStream(targetFile, false).use { outputStream ->
+					DataStreamHelper.copyStream(inputStream, outputStream)
+				}
+			}
+			
+			//Generating the sticker's thumbnail
+			ImageStorageHelper.createStickerThumbnail(targetFile)
+		} catch(exception: IOException) {
+			exception.printStackTrace()
+			AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, targetFile)
+			return false
+		} catch(exception: OutOfMemoryError) {
+			exception.printStackTrace()
+			CrashlyticsBridge.recordException(exception)
+			AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameSticker, targetFile)
+			return false
+		}
+		
+		return true
+	}
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+package me.tagavari.airmessage.helper
+
+import android.media.MediaMetadataRetriever
+import android.os.CancellationSignal
+import android.os.Handler
+import android.os.Looper
+import android.os.OperationCanceledException
+import com.otaliastudios.transcoder.Transcoder
+import com.otaliastudios.transcoder.TranscoderListener
+import com.otaliastudios.transcoder.resize.AtMostResizer
+import com.otaliastudios.transcoder.strategy.DefaultAudioStrategy
+import com.otaliastudios.transcoder.strategy.DefaultVideoStrategy
+import me.tagavari.airmessage.data.VideoTranscodeCache
+import java.io.File
+import java.io.FileDescriptor
+import java.io.IOException
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.function.DoubleConsumer
+
+/**
+ * Compresses videos to fit under a target file size
+ *
+ * The video's duration is used to work out how many bits per second fit in the target size,
+ * and the largest resolution and frame rate that still look reasonable at that bitrate are picked from a fixed set of quality levels.
+ */
+object VideoCompressionHelper {
+	private const val targetSizeUsage = 0.9 //Leave 10% of the target size for the container and bitrate overshoot
+	
+	private const val audioBitRateLow = 24000 //24 kbps
+	private const val audioBitRateHigh = 96000 //96 kbps
+	private const val audioHighMinTotalBitRate = 768000 //768 kbps, the total bitrate needed before using higher quality audio
+	
+	private const val videoBitRateMin = 32000 //32 kbps
+	private const val videoBitRateMax = 4000000 //4 Mbps
+	private const val videoBitRateUnknownDuration = 240000 //240 kbps, for videos whose duration can't be read
+	
+	//Quality levels from best to worst, with the lowest video bitrate that each one needs
+	private val qualityLevels = listOf(
+		QualityLevel(720, 1280, 30, 2000000),
+		QualityLevel(480, 854, 30, 1000000),
+		QualityLevel(360, 640, 24, 500000),
+		QualityLevel(240, 426, 24, 250000),
+		QualityLevel(144, 176, 12, 0)
+	)
+	
+	/**
+	 * Compresses a video file
+	 * @param fileDescriptor The file descriptor of the video to compress
+	 * @param maxBytes The upper limit to compress to
+	 * @param outputFile The file to write the output to
+	 * @param streamToOutput Whether to stream to the output file, or rename over it once we're done
+	 * @param cache The cache to reuse previous results from, or NULL to disable caching
+	 * @param cacheKey A key that uniquely identifies the source video, or NULL to disable caching
+	 * @param cancellationSignal A signal to stop compressing, or NULL if this compression can't be cancelled
+	 * @param progressListener A listener for the progress of the compression from 0 to 1, called on the main thread
+	 */
+	@JvmStatic
+	@Throws(IOException::class, OperationCanceledException::class)
+	fun compressVideo(fileDescriptor: FileDescriptor, maxBytes: Int, outputFile: File, streamToOutput: Boolean, cache: VideoTranscodeCache?, cacheKey: String?, cancellationSignal: CancellationSignal?, progressListener: DoubleConsumer?) {
+		cancellationSignal?.throwIfCanceled()
+		
+		//Checking the cache
+		val fileCacheKey = if(cache != null && cacheKey != null) VideoTranscodeCache.createKey(cacheKey, maxBytes) else null
+		if(fileCacheKey != null && cache!!.read(fileCacheKey, outputFile)) return
+		
+		//Picking the output quality
+		val settings = getSettings(maxBytes, readDurationMillis(fileDescriptor))
+		val audioStrategy = DefaultAudioStrategy.Builder()
+				.channels(settings.audioChannels)
+				.bitRate(settings.audioBitRate.toLong())
+				.build()
+		val videoStrategy = DefaultVideoStrategy.Builder()
+				.frameRate(settings.qualityLevel.frameRate)
+				.bitRate(settings.videoBitRate.toLong())
+				.addResizer(AtMostResizer(settings.qualityLevel.minorSize, settings.qualityLevel.majorSize))
+				.build()
+		
+		//Writing to a temporary file if we can't write to the output file directly
+		val transcodeFile = if(streamToOutput) outputFile else FileHelper.findFreeFile(outputFile.parentFile!!, "transcoder_temp", false)
+		
+		val future = Transcoder.into(transcodeFile.path)
+				.addDataSource(fileDescriptor)
+				.setAudioTrackStrategy(audioStrategy)
+				.setVideoTrackStrategy(videoStrategy)
+				.setListenerHandler(Handler(Looper.getMainLooper()))
+				.setListener(object : TranscoderListener {
+					private var lastPercent = -1
+					
+					override fun onTranscodeProgress(progress: Double) {
+						//Only passing on changes of at least a percent, to avoid redrawing the progress too often
+						val percent = (progress * 100).toInt()
+						if(percent == lastPercent) return
+						lastPercent = percent
+						
+						progressListener?.accept(progress)
+					}
+					
+					override fun onTranscodeCompleted(successCode: Int) {}
+					override fun onTranscodeCanceled() {}
+					override fun onTranscodeFailed(exception: Throwable) {}
+				})
+				.transcode()
+		
+		//Waiting for the transcode to finish
+		cancellationSignal?.setOnCancelListener { future.cancel(true) }
+		try {
+			future.get()
+		} catch(exception: CancellationException) {
+			transcodeFile.delete()
+			throw OperationCanceledException()
+		} catch(exception: ExecutionException) {
+			transcodeFile.delete()
+			throw IOException(exception)
+		} catch(exception: InterruptedException) {
+			future.cancel(true)
+			transcodeFile.delete()
+			throw IOException(exception)
+		} finally {
+			cancellationSignal?.setOnCancelListener(null)
+		}
+		
+		//Moving the temporary file to the output file
+		if(!streamToOutput) {
+			outputFile.delete()
+			if(!transcodeFile.renameTo(outputFile)) {
+				transcodeFile.delete()
+				throw IOException("Failed to move transcoded video to $outputFile")
+			}
+		}
+		
+		//Saving the result for next time
+		if(fileCacheKey != null) cache!!.write(fileCacheKey, outputFile)
+	}
+	
+	/**
+	 * Picks the output quality of a video so that it fits in a target size
+	 * @param maxBytes The upper limit to compress to
+	 * @param durationMillis The duration of the video, or -1 if unknown
+	 * @return The settings to compress the video with
+	 */
+	private fun getSettings(maxBytes: Int, durationMillis: Long): CompressionSettings {
+		//Using conservative settings if we don't know how long the video is
+		if(durationMillis <= 0) {
+			return CompressionSettings(qualityLevels.last(), videoBitRateUnknownDuration, audioBitRateLow, 1)
+		}
+		
+		//Splitting the available bitrate between audio and video
+		val totalBitRate = (maxBytes.toLong() * 8 * targetSizeUsage / (durationMillis / 1000.0)).toLong()
+		val audioBitRate: Int
+		val audioChannels: Int
+		if(totalBitRate >= audioHighMinTotalBitRate) {
+			audioBitRate = audioBitRateHigh
+			audioChannels = DefaultAudioStrategy.CHANNELS_AS_INPUT
+		} else {
+			audioBitRate = audioBitRateLow
+			audioChannels = 1
+		}
+		val videoBitRate = (totalBitRate - audioBitRate).coerceIn(videoBitRateMin.toLong(), videoBitRateMax.toLong()).toInt()
+		
+		//Picking the best quality level that the video bitrate can support
+		val qualityLevel = qualityLevels.first { videoBitRate >= it.minBitRate }
+		
+		return CompressionSettings(qualityLevel, videoBitRate, audioBitRate, audioChannels)
+	}
+	
+	/**
+	 * Reads the duration of a video
+	 * @return The duration in milliseconds, or -1 if it couldn't be read
+	 */
+	private fun readDurationMillis(fileDescriptor: FileDescriptor): Long {
+		val retriever = MediaMetadataRetriever()
+		return try {
+			retriever.setDataSource(fileDescriptor)
+			retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION)?.toLongOrNull() ?: -1
+		} catch(exception: RuntimeException) {
+			-1
+		} finally {
+			retriever.release()
+		}
+	}
+	
+	/**
+	 * A maximum output resolution and frame rate
+	 * @param minorSize The maximum length of the video's shorter side
+	 * @param majorSize The maximum length of the video's longer side
+	 * @param frameRate The maximum frame rate
+	 * @param minBitRate The lowest video bitrate that this quality level should be used with
+	 */
+	private data class QualityLevel(val minorSize: Int, val majorSize: Int, val frameRate: Int, val minBitRate: Int)
+	
+	private data class CompressionSettings(val qualityLevel: QualityLevel, val videoBitRate: Int, val audioBitRate: Int, val audioChannels: Int)
+}
\ No newline at end of file
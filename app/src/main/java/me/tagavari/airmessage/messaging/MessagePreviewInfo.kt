@@ -4,12 +4,15 @@ import me.tagavari.airmessage.enums.MessagePreviewType
 
 /**
  * Represents a preview card for a message component
+ * The preview's image is stored on disk by [me.tagavari.airmessage.helper.ImageStorageHelper], and referenced here by its hash
  */
 class MessagePreviewInfo(
 	@field:MessagePreviewType @get:MessagePreviewType
 	@param:MessagePreviewType val type: Int,
 	val localID: Long,
-	val data: ByteArray?,
+	val imageHash: String?,
+	val imageWidth: Int,
+	val imageHeight: Int,
 	val target: String,
 	val title: String,
 	val subtitle: String,
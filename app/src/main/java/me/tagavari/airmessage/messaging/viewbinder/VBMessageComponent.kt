@@ -19,6 +19,7 @@ import com.bumptech.glide.request.RequestListener
 import com.bumptech.glide.request.target.Target
 import me.tagavari.airmessage.R
 import me.tagavari.airmessage.helper.CollectionHelper.sortMapByValueDesc
+import me.tagavari.airmessage.helper.ImageStorageHelper
 import me.tagavari.airmessage.helper.LanguageHelper.getTapbackDisplay
 import me.tagavari.airmessage.helper.LanguageHelper.intToFormattedString
 import me.tagavari.airmessage.messaging.StickerInfo
@@ -79,9 +80,11 @@ object VBMessageComponent {
 				adjustViewBounds = true
 			}
 		
-		//Loading the image
-		Glide.with(activity)
-			.load(sticker.file)
+		//Loading the thumbnail, falling back to the original sticker if the thumbnail is missing
+		val requestManager = Glide.with(activity)
+		requestManager
+			.load(ImageStorageHelper.getStickerThumbnailFile(sticker.file))
+			.error(requestManager.load(sticker.file))
 			.listener(object : RequestListener<Drawable?> {
 				override fun onLoadFailed(e: GlideException?, model: Any, target: Target<Drawable?>, isFirstResource: Boolean): Boolean {
 					return false
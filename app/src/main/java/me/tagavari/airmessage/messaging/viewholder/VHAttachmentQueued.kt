@@ -5,6 +5,7 @@ import android.net.Uri
 import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageButton
+import com.google.android.material.progressindicator.CircularProgressIndicator
 import me.tagavari.airmessage.util.DisposableViewHolder
 import me.tagavari.airmessage.util.Union
 import java.io.File
@@ -14,12 +15,14 @@ import java.io.File
  * @param itemView The base item view
  * @param buttonRemove The button to remove this item from the queue
  * @param contentContainer The container for the content of this queued item
+ * @param progressPrepare The indicator for the progress of preparing this item
  * @param content The primary content of this attachment tile
  */
 class VHAttachmentQueued(
 	itemView: View,
 	val buttonRemove: ImageButton,
 	val contentContainer: ViewGroup,
+	val progressPrepare: CircularProgressIndicator,
 	val content: VHAttachmentTileContent
 ) : DisposableViewHolder(itemView) {
 	/**
@@ -56,4 +59,17 @@ class VHAttachmentQueued(
 			contentContainer.alpha = if(isProcessed) 1F else 0.5F
 		}
 	}
+	
+	/**
+	 * Updates the progress of preparing this attachment
+	 * @param progress The progress from 0 to 1, or -1 to hide the progress
+	 */
+	fun setProgress(progress: Float) {
+		if(progress < 0) {
+			progressPrepare.visibility = View.GONE
+		} else {
+			progressPrepare.visibility = View.VISIBLE
+			progressPrepare.setProgressCompat((progress * 100).toInt(), true)
+		}
+	}
 }
\ No newline at end of file
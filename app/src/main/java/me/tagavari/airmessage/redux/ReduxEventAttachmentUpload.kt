@@ -2,6 +2,9 @@ package me.tagavari.airmessage.redux
 
 //An event to represent the status of an attachment upload
 abstract class ReduxEventAttachmentUpload {
+	//While this file is waiting for other uploads to finish, with the number of waiting uploads ahead of it
+	data class Queued(val position: Int) : ReduxEventAttachmentUpload()
+	
 	//While this file is being uploaded
 	data class Progress(val bytesProgress: Long, val bytesTotal: Long) : ReduxEventAttachmentUpload()
 	
@@ -13,6 +13,7 @@ import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.subjects.CompletableSubject;
 import me.tagavari.airmessage.connection.ConnectionManager;
+import me.tagavari.airmessage.connection.ConnectionMetrics;
 import me.tagavari.airmessage.connection.exception.AMRequestException;
 import me.tagavari.airmessage.enums.ConnectionErrorCode;
 import me.tagavari.airmessage.enums.ConnectionState;
@@ -21,7 +22,10 @@ import me.tagavari.airmessage.helper.NotificationHelper;
 import me.tagavari.airmessage.redux.ReduxEmitterNetwork;
 import me.tagavari.airmessage.util.ConversationTarget;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class ConnectionService extends Service {
@@ -183,6 +187,19 @@ public class ConnectionService extends Service {
 		instanceReference = null;
 	}
 	
+	@Override
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+		//Printing connection metrics, accessible through "adb shell dumpsys activity service ConnectionService"
+		writer.println("Connection metrics");
+		ConnectionMetrics.getInstance().dump(writer);
+		
+		//Resetting the metrics if requested
+		if(Arrays.asList(args).contains("--reset")) {
+			ConnectionMetrics.getInstance().reset();
+			writer.println("Metrics reset");
+		}
+	}
+	
 	/**
 	 * Handles responses to a change in connection state
 	 */
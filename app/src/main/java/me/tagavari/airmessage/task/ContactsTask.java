@@ -4,7 +4,6 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.provider.ContactsContract;
-import android.text.TextUtils;
 import androidx.annotation.Nullable;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.CheckReturnValue;
@@ -12,19 +11,15 @@ import io.reactivex.rxjava3.annotations.NonNull;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableEmitter;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import me.tagavari.airmessage.helper.AddressHelper;
 import me.tagavari.airmessage.helper.MMSSMSHelper;
 import me.tagavari.airmessage.helper.StringHelper;
 import me.tagavari.airmessage.util.AddressInfo;
 import me.tagavari.airmessage.util.ContactInfo;
+import me.tagavari.airmessage.util.ContactSearchIndex;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.function.Predicate;
+import java.util.List;
 
 public class ContactsTask {
-	private static final Predicate<AddressInfo> predicateAddressPhoneNumber = address -> AddressHelper.validatePhoneNumber(address.getNormalizedAddress());
-	
 	/**
 	 * Loads the user's contacts from Android's database
 	 */
@@ -108,55 +103,17 @@ public class ContactsTask {
 	}
 	
 	/**
-	 * Filters the contacts collection based on a query and phone number requirement filter
-	 * @param contacts The collection of contacts to filter
+	 * Searches the contacts index based on a query and phone number requirement filter
+	 *
+	 * Lookups go through the index's prefix tables rather than scanning every contact, so this is fast enough to run on the main thread on every keystroke.
+	 * Results are ranked by how well they match; see {@link ContactSearchIndex#search(String, boolean)}.
+	 * @param contacts The index of contacts to search
 	 * @param filterText The text to filter
 	 * @param phoneNumbersOnly Whether to filter out contacts that don't have phone numbers
-	 * @return An observable stream that outputs matching results
+	 * @return The matching contacts, best match first
 	 */
-	@CheckReturnValue
-	public static Observable<ContactInfo> searchContacts(@NonNull Collection<ContactInfo> contacts, @Nullable String filterText, boolean phoneNumbersOnly) {
-		//Creating the filters
-		boolean enableFilter = !TextUtils.isEmpty(filterText);
-		String nameFilter, addressFilter, phoneFilter;
-		if(enableFilter) {
-			nameFilter = filterText.toLowerCase();
-			addressFilter = filterText; //Email addresses can't be formatted
-			phoneFilter = formatPhoneFilter(filterText);
-		} else {
-			nameFilter = addressFilter = phoneFilter = null;
-		}
-		
-		return Observable.fromIterable(contacts)
-				.observeOn(Schedulers.computation())
-				.filter(contact -> {
-					//Filtering out contacts that don't include phone numbers
-					if(phoneNumbersOnly && contact.getAddresses().stream().noneMatch(predicateAddressPhoneNumber)) {
-						return false;
-					}
-					
-					//If there's no filter, accept everything
-					if(!enableFilter) return true;
-					
-					return (contact.getName() != null && contact.getName().toLowerCase().contains(nameFilter)) || //The contact's name matches the filter
-						    new ArrayList<>(contact.getAddresses()).stream().anyMatch(address ->
-									address.getNormalizedAddress().startsWith(addressFilter) || //The contact's email address matches the filter
-											(phoneFilter != null && AddressHelper.validatePhoneNumber(address.getNormalizedAddress()) && AddressHelper.stripPhoneNumber(address.getNormalizedAddress()).startsWith(phoneFilter)) //The contact's phone number matches the filter
-							);
-				}).observeOn(AndroidSchedulers.mainThread());
-	}
-	
-	@Nullable
-	private static String formatPhoneFilter(String filter) {
-		//Remove all non-phone number characters
-		String strippedFilter = AddressHelper.stripPhoneNumber(filter);
-		
-		//If the input is empty, the user didn't enter a phone number, so just return null
-		if(strippedFilter.isEmpty()) return null;
-		
-		//Ensure that the number begins with a 1
-		if(!strippedFilter.startsWith("1")) strippedFilter = "1" + strippedFilter; //All normalized items start with "1"
-		
-		return strippedFilter;
+	@NonNull
+	public static List<ContactInfo> searchContacts(@NonNull ContactSearchIndex contacts, @Nullable String filterText, boolean phoneNumbersOnly) {
+		return contacts.search(filterText, phoneNumbersOnly);
 	}
 }
\ No newline at end of file
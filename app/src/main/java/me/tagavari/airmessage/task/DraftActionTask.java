@@ -2,7 +2,15 @@ package me.tagavari.airmessage.task;
 
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.DocumentsContract;
+import androidx.annotation.Nullable;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleEmitter;
 import io.reactivex.rxjava3.schedulers.Schedulers;
@@ -16,6 +24,7 @@ import me.tagavari.airmessage.messaging.FileDraft;
 import me.tagavari.airmessage.messaging.FileLinked;
 
 import java.io.*;
+import java.util.function.DoubleConsumer;
 
 public class DraftActionTask {
 	/**
@@ -26,9 +35,14 @@ public class DraftActionTask {
 	 * @param compressionTarget The file size limit as required by the conversation (or -1 to disable)
 	 * @param isDraftPrepare Whether this file is in the draft preparation directory, and to delete it once we are finished
 	 * @param updateTime The time this draft file was updated
-	 * @return A single for the completed draft
+	 * @param progressListener A listener for the progress of compressing the file from 0 to 1, called on the main thread, or NULL to ignore progress
+	 * @return A single for the completed draft, which stops compressing and discards the draft if disposed
 	 */
-	public static Single<FileDraft> prepareLinkedToDraft(Context context, FileLinked linkedFile, long conversationID, int compressionTarget, boolean isDraftPrepare, long updateTime) {
+	public static Single<FileDraft> prepareLinkedToDraft(Context context, FileLinked linkedFile, long conversationID, int compressionTarget, boolean isDraftPrepare, long updateTime, @Nullable DoubleConsumer progressListener) {
+		//Compression jobs run on a bounded pool, so many attachments can be prepared at once without starving the device
+		boolean requiresCompression = compressionTarget != -1 && linkedFile.getFileSize() > compressionTarget && DataCompressionHelper.isCompressable(linkedFile.getFileType());
+		Scheduler copyScheduler = requiresCompression ? DataCompressionHelper.getCompressionScheduler() : Schedulers.io();
+		
 		return Single.create((SingleEmitter<FileDraft> emitter) -> {
 			//Finding a target file
 			File targetFile = AttachmentStorageHelper.prepareContentFile(context, AttachmentStorageHelper.dirNameDraft, linkedFile.getFileName());
@@ -44,18 +58,47 @@ public class DraftActionTask {
 			}
 			
 			emitter.onSuccess(draft);
-		}).subscribeOn(Schedulers.single()).observeOn(Schedulers.io()).doOnSuccess(draft -> {
-			//Copying and compressing the file
+		}).subscribeOn(Schedulers.single()).observeOn(copyScheduler).flatMap(draft -> Single.create((SingleEmitter<FileDraft> emitter) -> {
+			//Stopping compression if the draft is removed
+			CancellationSignal cancellationSignal = new CancellationSignal();
+			emitter.setCancellable(cancellationSignal::cancel);
+			
+			//Identifying the source file by its URI and modification date, so repeated compressions of the same file can be reused
+			String cacheKey;
 			if(linkedFile.getFile().isA()) {
-				try(FileInputStream fileInputStream = new FileInputStream(linkedFile.getFile().getA())) {
-					copyCompressStreamToFile(fileInputStream.getFD(), linkedFile.getFileSize(), linkedFile.getFileType(), draft.getFile(), compressionTarget);
-				}
+				cacheKey = null;
+			} else if(linkedFile.getMediaStoreData() != null) {
+				cacheKey = linkedFile.getFile().getB().toString() + "@" + linkedFile.getMediaStoreData().getModificationDate();
 			} else {
-				try(AssetFileDescriptor assetFileDescriptor = context.getContentResolver().openAssetFileDescriptor(linkedFile.getFile().getB(), "r")) {
-					copyCompressStreamToFile(assetFileDescriptor.getFileDescriptor(), linkedFile.getFileSize(), linkedFile.getFileType(), draft.getFile(), compressionTarget);
+				cacheKey = getDocumentCacheKey(context, linkedFile.getFile().getB());
+			}
+			
+			//Copying and compressing the file
+			try {
+				if(linkedFile.getFile().isA()) {
+					try(FileInputStream fileInputStream = new FileInputStream(linkedFile.getFile().getA())) {
+						copyCompressStreamToFile(fileInputStream.getFD(), linkedFile.getFileSize(), linkedFile.getFileType(), draft.getFile(), compressionTarget, cacheKey, cancellationSignal, progressListener);
+					}
+				} else {
+					try(AssetFileDescriptor assetFileDescriptor = context.getContentResolver().openAssetFileDescriptor(linkedFile.getFile().getB(), "r")) {
+						copyCompressStreamToFile(assetFileDescriptor.getFileDescriptor(), linkedFile.getFileSize(), linkedFile.getFileType(), draft.getFile(), compressionTarget, cacheKey, cancellationSignal, progressListener);
+					}
 				}
+			} catch(OperationCanceledException exception) {
+				//The draft was removed, and is cleaned up below
 			}
-		}).doOnTerminate(() -> {
+			
+			//Cleaning up if the draft was removed while it was being prepared
+			if(emitter.isDisposed()) {
+				discardDraft(draft);
+				if(isDraftPrepare && linkedFile.getFile().isA()) {
+					AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameDraftPrepare, linkedFile.getFile().getA());
+				}
+				return;
+			}
+			
+			emitter.onSuccess(draft);
+		})).doOnTerminate(() -> {
 			//Deleting the source file
 			if(isDraftPrepare && linkedFile.getFile().isA()) {
 				AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameDraftPrepare, linkedFile.getFile().getA());
@@ -63,6 +106,32 @@ public class DraftActionTask {
 		}).observeOn(AndroidSchedulers.mainThread());
 	}
 	
+	/**
+	 * Gets a cache key for a content URI that isn't from MediaStore, from its URI and its last modification date
+	 * @param context The context to use
+	 * @param uri The URI of the file
+	 * @return The cache key, or NULL if the file's modification date isn't available
+	 */
+	@Nullable
+	private static String getDocumentCacheKey(Context context, Uri uri) {
+		try(Cursor cursor = context.getContentResolver().query(uri, new String[]{DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null)) {
+			if(cursor == null || !cursor.moveToFirst()) return null;
+			
+			//Some providers ignore the projection, so the column is looked up by name
+			int lastModifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+			if(lastModifiedIndex == -1 || cursor.isNull(lastModifiedIndex)) return null;
+			
+			long lastModified = cursor.getLong(lastModifiedIndex);
+			if(lastModified <= 0) return null;
+			
+			return uri.toString() + "@" + lastModified;
+		} catch(RuntimeException exception) {
+			//Providers that don't support the column may throw
+			exception.printStackTrace();
+			return null;
+		}
+	}
+	
 	/**
 	 * Copies a FileDescriptor (compressing if necessary) to a file
 	 * @param fileDescriptor The file descriptor to copy from
@@ -70,8 +139,11 @@ public class DraftActionTask {
 	 * @param fileType The type of the file
 	 * @param targetFile The file to copy to
 	 * @param compressionTarget The upper file size limit (or -1 if not needed)
+	 * @param cacheKey A key that identifies the source file for caching compression results, or NULL to disable caching
+	 * @param cancellationSignal A signal to stop compressing
+	 * @param progressListener A listener for the progress of compressing the file, or NULL to ignore progress
 	 */
-	private static void copyCompressStreamToFile(FileDescriptor fileDescriptor, long fileSize, String fileType, File targetFile, int compressionTarget) throws AMRequestException {
+	private static void copyCompressStreamToFile(FileDescriptor fileDescriptor, long fileSize, String fileType, File targetFile, int compressionTarget, @Nullable String cacheKey, CancellationSignal cancellationSignal, @Nullable DoubleConsumer progressListener) throws AMRequestException {
 		//Checking if the file must be compressed
 		if(compressionTarget != -1 && fileSize > compressionTarget) {
 			//Checking if compression is not applicable
@@ -81,7 +153,7 @@ public class DraftActionTask {
 			
 			//Compressing the file to the target file
 			try {
-				DataCompressionHelper.compressFile(fileDescriptor, fileType, compressionTarget, targetFile, true);
+				DataCompressionHelper.compressFile(fileDescriptor, fileType, compressionTarget, targetFile, true, cacheKey, cancellationSignal, progressListener);
 			} catch(IOException exception) {
 				throw new AMRequestException(MessageSendErrorCode.localIO, exception);
 			}
@@ -94,4 +166,15 @@ public class DraftActionTask {
 			}
 		}
 	}
+	
+	/**
+	 * Deletes a draft that was removed before it finished preparing
+	 * @param draft The draft to delete
+	 */
+	private static void discardDraft(FileDraft draft) {
+		AttachmentStorageHelper.deleteContentFile(AttachmentStorageHelper.dirNameDraft, draft.getFile());
+		Completable.fromAction(() -> DatabaseManager.getInstance().removeDraftReference(draft.getLocalID(), System.currentTimeMillis()))
+				.subscribeOn(Schedulers.single())
+				.subscribe();
+	}
 }
\ No newline at end of file
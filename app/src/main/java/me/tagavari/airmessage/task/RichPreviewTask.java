@@ -1,6 +1,10 @@
 package me.tagavari.airmessage.task;
 
+import android.graphics.BitmapFactory;
 import android.webkit.URLUtil;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.annotations.CheckReturnValue;
 import io.reactivex.rxjava3.core.Single;
@@ -10,122 +14,313 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import me.tagavari.airmessage.helper.DataCompressionHelper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 //Based on https://github.com/PonnamKarthik/RichLinkPreview (no longer maintained)
 public class RichPreviewTask {
+	private static final int timeoutMillis = 15 * 1000; //15 seconds
+	private static final int headMaxBytes = 256 * 1024; //256 kB
+	private static final int imageDownloadMaxBytes = 8 * 1024 * 1024; //8 MB
+	private static final int imageMaxPixels = 1024 * 1024; //1 megapixel
+	private static final int maxRedirects = 5;
+	
+	//Identifying as a mobile browser, since many sites serve block or consent pages to unknown clients
+	@VisibleForTesting static final String userAgent = "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Mobile Safari/537.36";
+	
+	private static final byte[] headEndTag = {'<', '/', 'h', 'e', 'a', 'd'};
+	private static final Pattern patternCharset = Pattern.compile("charset=\\s*\"?([^\\s;\"]+)", Pattern.CASE_INSENSITIVE);
+	
 	@CheckReturnValue
 	public static Single<Metadata> fetchMetadata(String url) {
 		return Single.create((SingleEmitter<Metadata> emitter) -> {
-			//Creating the metadata
-			Metadata metaData = new Metadata();
-			
 			try {
-				//Connecting to the site
-				Document document = Jsoup.connect(url)
-						.timeout(15 * 1000)
-						.get();
-				
-				//Finding meta elements
-				Elements elements = document.getElementsByTag("meta");
-				
-				//Getting the article title
-				{
-					String title = document.select("meta[property=og:title]").attr("content");
-					if(title == null || title.isEmpty()) title = document.title();
-					metaData.setTitle(title);
-				}
-				
-				//Getting the article description
-				{
-					String description = document.select("meta[name=description]").attr("content");
-					if(description == null || description.isEmpty()) description = document.select("meta[name=Description]").attr("content");
-					if(description == null || description.isEmpty()) description = document.select("meta[property=og:description]").attr("content");
-					metaData.setDescription(description);
-				}
+				emitter.onSuccess(fetchMetadataSync(url));
+			} catch(IOException exception) {
+				//Printing the stack trace
+				exception.printStackTrace();
 				
-				// getMediaType
-				Elements mediaTypes = document.select("meta[name=medium]");
-				String type;
-				if(mediaTypes.size() > 0) {
-					String media = mediaTypes.attr("content");
-					type = media.equals("image") ? "photo" : media;
+				//Emitting the error
+				emitter.onError(exception);
+			}
+		}).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+	}
+	
+	/**
+	 * Fetches a page's metadata on the current thread, reading only as far as the end of the page's head
+	 * @param url The URL of the page
+	 * @return The page's metadata
+	 * @throws IOException If the page couldn't be loaded, or isn't HTML
+	 */
+	@NonNull
+	public static Metadata fetchMetadataSync(String url) throws IOException {
+		//Connecting to the site, resolving relative links against the URL after any redirects
+		Document document = fetchDocumentHead(url);
+		String baseURL = document.location();
+		
+		//Creating the metadata
+		Metadata metaData = new Metadata();
+		
+		//Finding meta elements
+		Elements elements = document.getElementsByTag("meta");
+		
+		//Getting the article title
+		{
+			String title = document.select("meta[property=og:title]").attr("content");
+			if(title == null || title.isEmpty()) title = document.title();
+			metaData.setTitle(title);
+		}
+		
+		//Getting the article description
+		{
+			String description = document.select("meta[name=description]").attr("content");
+			if(description == null || description.isEmpty()) description = document.select("meta[name=Description]").attr("content");
+			if(description == null || description.isEmpty()) description = document.select("meta[property=og:description]").attr("content");
+			metaData.setDescription(description);
+		}
+		
+		// getMediaType
+		Elements mediaTypes = document.select("meta[name=medium]");
+		String type;
+		if(mediaTypes.size() > 0) {
+			String media = mediaTypes.attr("content");
+			type = media.equals("image") ? "photo" : media;
+		} else {
+			type = document.select("meta[property=og:type]").attr("content");
+		}
+		metaData.setMediaType(type);
+		
+		//getImages
+		Elements imageElements = document.select("meta[property=og:image]");
+		if(imageElements.size() > 0) {
+			String image = imageElements.attr("content");
+			if(!image.isEmpty()) {
+				metaData.setImageURL(resolveURL(baseURL, image));
+			}
+		}
+		if(metaData.getImageURL().isEmpty()) {
+			String src = document.select("link[rel=image_src]").attr("href");
+			if(!src.isEmpty()) {
+				metaData.setImageURL(resolveURL(baseURL, src));
+			} else {
+				src = document.select("link[rel=apple-touch-icon]").attr("href");
+				if(!src.isEmpty()) {
+					metaData.setImageURL(resolveURL(baseURL, src));
+					metaData.setFavicon(resolveURL(baseURL, src));
 				} else {
-					type = document.select("meta[property=og:type]").attr("content");
-				}
-				metaData.setMediaType(type);
-				
-				//getImages
-				Elements imageElements = document.select("meta[property=og:image]");
-				if(imageElements.size() > 0) {
-					String image = imageElements.attr("content");
-					if(!image.isEmpty()) {
-						metaData.setImageURL(resolveURL(url, image));
-					}
-				}
-				if(metaData.getImageURL().isEmpty()) {
-					String src = document.select("link[rel=image_src]").attr("href");
+					src = document.select("link[rel=icon]").attr("href");
 					if(!src.isEmpty()) {
-						metaData.setImageURL(resolveURL(url, src));
-					} else {
-						src = document.select("link[rel=apple-touch-icon]").attr("href");
-						if(!src.isEmpty()) {
-							metaData.setImageURL(resolveURL(url, src));
-							metaData.setFavicon(resolveURL(url, src));
-						} else {
-							src = document.select("link[rel=icon]").attr("href");
-							if(!src.isEmpty()) {
-								metaData.setImageURL(resolveURL(url, src));
-								metaData.setFavicon(resolveURL(url, src));
-							}
-						}
+						metaData.setImageURL(resolveURL(baseURL, src));
+						metaData.setFavicon(resolveURL(baseURL, src));
 					}
 				}
+			}
+		}
+		
+		//Getting the favicon
+		{
+			String src = document.select("link[rel=apple-touch-icon]").attr("href");
+			if(src == null || src.isEmpty()) src = document.select("link[rel=icon]").attr("href");
+			if(src == null || src.isEmpty()) metaData.setFavicon(resolveURL(baseURL, src));
+		}
+		
+		//Resolving basic site information
+		for(Element element : elements) {
+			if(!element.hasAttr("property")) continue;
+			
+			String property = element.attr("property").trim();
+			if(property.equals("og:url")) metaData.setUrl(element.attr("content"));
+			else if(property.equals("og:site_name")) metaData.setSiteName(element.attr("content"));
+		}
+		
+		//Checking if an OG url couldn't be found
+		if(metaData.getUrl().isEmpty()) {
+			try {
+				//Attempting to resolve the hostname from the original URL
+				URI uri = new URI(url);
+				metaData.setUrl(uri.getHost());
+			} catch(URISyntaxException exception) {
+				//Printing the stack trace
+				exception.printStackTrace();
 				
-				//Getting the favicon
-				{
-					String src = document.select("link[rel=apple-touch-icon]").attr("href");
-					if(src == null || src.isEmpty()) src = document.select("link[rel=icon]").attr("href");
-					if(src == null || src.isEmpty()) metaData.setFavicon(resolveURL(url, src));
-				}
+				//Falling back to the raw original URL
+				metaData.setUrl(url);
+			}
+		}
+		
+		//Returning the metadata
+		return metaData;
+	}
+	
+	/**
+	 * Downloads a preview image, downsampling and re-encoding it if it is too large
+	 * @param url The URL of the image
+	 * @param maxBytes The maximum size of the returned image
+	 * @return The image's bytes, or NULL if the image couldn't be decoded
+	 * @throws IOException If the image couldn't be downloaded, or is larger than {@link #imageDownloadMaxBytes}
+	 */
+	@Nullable
+	public static byte[] fetchImage(String url, int maxBytes) throws IOException {
+		HttpURLConnection connection = openConnection(url, "image/*");
+		byte[] imageBytes;
+		try {
+			//Refusing oversized images before downloading them
+			if(connection.getContentLength() > imageDownloadMaxBytes) {
+				throw new IOException("Image at " + url + " is too large (" + connection.getContentLength() + " bytes)");
+			}
+			
+			try(InputStream inputStream = connection.getInputStream()) {
+				imageBytes = readLimited(inputStream, imageDownloadMaxBytes);
+			}
+		} finally {
+			connection.disconnect();
+		}
+		
+		//Reading the image's dimensions
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, options);
+		if(options.outWidth <= 0 || options.outHeight <= 0) return null;
+		
+		//Returning the image as-is if it is small enough to display directly
+		if(imageBytes.length <= maxBytes && (long) options.outWidth * options.outHeight <= imageMaxPixels) {
+			return imageBytes;
+		}
+		
+		//Downsampling the image
+		return DataCompressionHelper.compressBitmap(imageBytes, "image/webp", maxBytes);
+	}
+	
+	/**
+	 * Downloads and parses the head of an HTML page, stopping as soon as the head ends
+	 */
+	private static Document fetchDocumentHead(String url) throws IOException {
+		HttpURLConnection connection = openConnection(url, "text/html,application/xhtml+xml");
+		try {
+			//Checking the content type
+			String contentType = connection.getContentType();
+			if(contentType != null && !contentType.toLowerCase(Locale.ROOT).contains("html")) {
+				throw new IOException("Unsupported content type " + contentType + " for " + url);
+			}
+			
+			//Reading the head
+			byte[] headBytes;
+			try(InputStream inputStream = connection.getInputStream()) {
+				headBytes = readHead(inputStream, headMaxBytes);
+			}
+			
+			//Parsing the document, letting Jsoup detect the charset from the page itself if the server didn't specify it
+			return Jsoup.parse(new ByteArrayInputStream(headBytes), parseCharset(contentType), connection.getURL().toString());
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Opens a connection to a URL, following redirects, and checks that the request was successful
+	 * Redirects are followed manually, since HttpURLConnection won't follow redirects between HTTP and HTTPS
+	 */
+	private static HttpURLConnection openConnection(String url, String accept) throws IOException {
+		URL currentURL = new URL(url);
+		for(int redirectCount = 0; ; redirectCount++) {
+			HttpURLConnection connection = (HttpURLConnection) currentURL.openConnection();
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setInstanceFollowRedirects(false);
+			connection.setRequestProperty("User-Agent", userAgent);
+			connection.setRequestProperty("Accept", accept);
+			
+			int responseCode = connection.getResponseCode();
+			if(responseCode >= 200 && responseCode < 300) return connection;
+			String location = connection.getHeaderField("Location");
+			connection.disconnect();
+			
+			//Following the redirect
+			if(responseCode >= 300 && responseCode < 400 && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+				if(location == null) throw new IOException("Redirect from " + currentURL + " has no location");
+				if(redirectCount >= maxRedirects) throw new IOException("Request to " + url + " redirected too many times");
 				
-				//Resolving basic site information
-				for(Element element : elements) {
-					if(!element.hasAttr("property")) continue;
-					
-					String property = element.attr("property").trim();
-					if(property.equals("og:url")) metaData.setUrl(element.attr("content"));
-					else if(property.equals("og:site_name")) metaData.setSiteName(element.attr("content"));
+				currentURL = new URL(currentURL, location);
+				if(!currentURL.getProtocol().equals("http") && !currentURL.getProtocol().equals("https")) {
+					throw new IOException("Request to " + url + " redirected to unsupported URL " + currentURL);
 				}
-				
-				//Checking if an OG url couldn't be found
-				if(metaData.getUrl().isEmpty()) {
-					try {
-						//Attempting to resolve the hostname from the original URL
-						URI uri = new URI(url);
-						metaData.setUrl(uri.getHost());
-					} catch(URISyntaxException exception) {
-						//Printing the stack trace
-						exception.printStackTrace();
-						
-						//Falling back to the raw original URL
-						metaData.setUrl(url);
+				continue;
+			}
+			
+			throw new IOException("Request to " + currentURL + " failed with response code " + responseCode);
+		}
+	}
+	
+	/**
+	 * Reads a stream until the closing head tag or the byte limit is reached
+	 * @param inputStream The stream to read
+	 * @param maxBytes The maximum number of bytes to read
+	 * @return The bytes of the document up to (and excluding) the closing head tag
+	 */
+	static byte[] readHead(InputStream inputStream, int maxBytes) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int matchLength = 0;
+		
+		while(outputStream.size() < maxBytes) {
+			int count = inputStream.read(buffer, 0, Math.min(buffer.length, maxBytes - outputStream.size()));
+			if(count == -1) break;
+			
+			//Scanning for the closing head tag (all charsets we expect to see are ASCII-compatible)
+			for(int i = 0; i < count; i++) {
+				int lowerByte = buffer[i] >= 'A' && buffer[i] <= 'Z' ? buffer[i] + ('a' - 'A') : buffer[i];
+				if(lowerByte == headEndTag[matchLength]) {
+					if(++matchLength == headEndTag.length) {
+						outputStream.write(buffer, 0, i + 1);
+						byte[] bytes = outputStream.toByteArray();
+						return Arrays.copyOf(bytes, bytes.length - headEndTag.length);
 					}
+				} else {
+					matchLength = lowerByte == headEndTag[0] ? 1 : 0;
 				}
-				
-				//Returning the metadata
-				emitter.onSuccess(metaData);
-			} catch(IOException exception) {
-				//Printing the stack trace
-				exception.printStackTrace();
-				
-				//Emitting the error
-				emitter.onError(exception);
 			}
-		}).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+			
+			outputStream.write(buffer, 0, count);
+		}
+		
+		return outputStream.toByteArray();
+	}
+	
+	/**
+	 * Reads a stream fully, failing if it exceeds a byte limit
+	 */
+	private static byte[] readLimited(InputStream inputStream, int maxBytes) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while((count = inputStream.read(buffer)) != -1) {
+			if(outputStream.size() + count > maxBytes) throw new IOException("Download exceeds " + maxBytes + " bytes");
+			outputStream.write(buffer, 0, count);
+		}
+		return outputStream.toByteArray();
+	}
+	
+	/**
+	 * Gets the charset declared in a content type header
+	 * @return The name of the charset, or NULL if none was specified
+	 */
+	@Nullable
+	private static String parseCharset(@Nullable String contentType) {
+		if(contentType == null) return null;
+		Matcher matcher = patternCharset.matcher(contentType);
+		return matcher.find() ? matcher.group(1) : null;
 	}
 	
 	private static String resolveURL(String url, String part) {
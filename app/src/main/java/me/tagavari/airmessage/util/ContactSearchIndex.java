@@ -0,0 +1,194 @@
+package me.tagavari.airmessage.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+import me.tagavari.airmessage.helper.AddressHelper;
+
+/**
+ * A search index over a list of contacts, so that searching doesn't need to re-process every contact on every keystroke
+ *
+ * Contacts are indexed by the words of their name, their normalized addresses, and the digits of their phone numbers from the start and from the end.
+ * The index mirrors a source list: contacts are added in the same order as the source list, and {@link #update(int)} picks up
+ * addresses that were added to a contact after it was indexed.
+ * Must only be used from one thread at a time.
+ */
+public class ContactSearchIndex {
+	//The minimum amount of digits to match against the end of a phone number, to avoid matching almost every number
+	private static final int phoneSuffixMinLength = 4;
+	
+	//Match ranks, from best to worst
+	private static final int rankNameStart = 0;
+	private static final int rankNameWord = 1;
+	private static final int rankAddressStart = 2;
+	private static final int rankPhoneEnd = 3;
+	private static final int rankNameSubstring = 4;
+	private static final int rankNone = Integer.MAX_VALUE;
+	
+	private final List<ContactInfo> contacts = new ArrayList<>();
+	private final List<String> lowercaseNames = new ArrayList<>();
+	private final BitSet phoneNumberContacts = new BitSet();
+	private int[] indexedAddressCounts = new int[16];
+	
+	private final PrefixIndex nameWordIndex = new PrefixIndex();
+	private final PrefixIndex addressIndex = new PrefixIndex();
+	private final PrefixIndex phoneIndex = new PrefixIndex();
+	private final PrefixIndex phoneReversedIndex = new PrefixIndex();
+	
+	public ContactSearchIndex() {
+	}
+	
+	public ContactSearchIndex(@NonNull List<ContactInfo> contacts) {
+		for(ContactInfo contact : contacts) add(contact);
+	}
+	
+	/**
+	 * Adds a contact to the end of the index
+	 */
+	public void add(@NonNull ContactInfo contact) {
+		int position = contacts.size();
+		contacts.add(contact);
+		
+		//Indexing the contact's name, from the start of each word to the end of the name
+		String name = contact.getName() == null ? "" : contact.getName().toLowerCase(Locale.getDefault());
+		lowercaseNames.add(name);
+		for(int wordStart : findWordStarts(name)) {
+			nameWordIndex.add(name.substring(wordStart), position);
+		}
+		
+		if(position == indexedAddressCounts.length) indexedAddressCounts = Arrays.copyOf(indexedAddressCounts, position * 2);
+		indexedAddressCounts[position] = 0;
+		indexAddresses(position);
+	}
+	
+	/**
+	 * Indexes any addresses that were added to a contact since it was indexed
+	 * @param position The position of the contact in the source list
+	 */
+	public void update(int position) {
+		indexAddresses(position);
+	}
+	
+	/**
+	 * Gets the number of contacts in the index
+	 */
+	public int size() {
+		return contacts.size();
+	}
+	
+	/**
+	 * Removes all contacts from the index
+	 */
+	public void clear() {
+		contacts.clear();
+		lowercaseNames.clear();
+		phoneNumberContacts.clear();
+		nameWordIndex.clear();
+		addressIndex.clear();
+		phoneIndex.clear();
+		phoneReversedIndex.clear();
+	}
+	
+	/**
+	 * Finds the contacts that match a query
+	 *
+	 * Contacts whose name starts with the query are listed first, followed by contacts with a word in their name that starts with the query,
+	 * contacts with an address that starts with the query, contacts with a phone number that ends with the query's digits,
+	 * and finally contacts whose name contains the query anywhere. Contacts that match equally keep their order from the source list.
+	 * @param query The text to search for, or NULL to match all contacts
+	 * @param phoneNumbersOnly Whether to only include contacts that have a phone number
+	 * @return The matching contacts
+	 */
+	@NonNull
+	public List<ContactInfo> search(@Nullable String query, boolean phoneNumbersOnly) {
+		//Matching every contact if there is no query
+		if(query == null || query.isEmpty()) {
+			List<ContactInfo> results = new ArrayList<>();
+			for(int i = 0; i < contacts.size(); i++) {
+				if(!phoneNumbersOnly || phoneNumberContacts.get(i)) results.add(contacts.get(i));
+			}
+			return results;
+		}
+		
+		int[] ranks = new int[contacts.size()];
+		Arrays.fill(ranks, rankNone);
+		
+		//Matching names from the start of any word
+		String nameQuery = query.toLowerCase(Locale.getDefault());
+		nameWordIndex.forEachWithPrefix(nameQuery, position -> {
+			int rank = lowercaseNames.get(position).startsWith(nameQuery) ? rankNameStart : rankNameWord;
+			ranks[position] = Math.min(ranks[position], rank);
+		});
+		
+		//Matching addresses
+		addressIndex.forEachWithPrefix(query.toLowerCase(Locale.ROOT), position -> ranks[position] = Math.min(ranks[position], rankAddressStart));
+		
+		//Matching phone numbers
+		String phoneDigits = AddressHelper.stripPhoneNumber(query);
+		if(!phoneDigits.isEmpty()) {
+			//All normalized phone numbers start with "1"
+			String phonePrefix = phoneDigits.startsWith("1") ? phoneDigits : "1" + phoneDigits;
+			phoneIndex.forEachWithPrefix(phonePrefix, position -> ranks[position] = Math.min(ranks[position], rankAddressStart));
+			
+			if(phoneDigits.length() >= phoneSuffixMinLength) {
+				phoneReversedIndex.forEachWithPrefix(new StringBuilder(phoneDigits).reverse().toString(), position -> ranks[position] = Math.min(ranks[position], rankPhoneEnd));
+			}
+		}
+		
+		//Matching anywhere in the name
+		for(int i = 0; i < ranks.length; i++) {
+			if(ranks[i] == rankNone && lowercaseNames.get(i).contains(nameQuery)) ranks[i] = rankNameSubstring;
+		}
+		
+		//Collecting the results, sorted by rank and then by position
+		List<ContactInfo> results = new ArrayList<>();
+		for(int rank = rankNameStart; rank <= rankNameSubstring; rank++) {
+			for(int i = 0; i < ranks.length; i++) {
+				if(ranks[i] != rank) continue;
+				if(phoneNumbersOnly && !phoneNumberContacts.get(i)) continue;
+				results.add(contacts.get(i));
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Indexes the addresses of a contact that haven't been indexed yet
+	 */
+	private void indexAddresses(int position) {
+		List<AddressInfo> addresses = contacts.get(position).getAddresses();
+		for(int i = indexedAddressCounts[position]; i < addresses.size(); i++) {
+			String normalizedAddress = addresses.get(i).getNormalizedAddress();
+			addressIndex.add(normalizedAddress.toLowerCase(Locale.ROOT), position);
+			
+			if(AddressHelper.validatePhoneNumber(normalizedAddress)) {
+				phoneNumberContacts.set(position);
+				
+				String digits = AddressHelper.stripPhoneNumber(normalizedAddress);
+				phoneIndex.add(digits, position);
+				phoneReversedIndex.add(new StringBuilder(digits).reverse().toString(), position);
+			}
+		}
+		indexedAddressCounts[position] = addresses.size();
+	}
+	
+	/**
+	 * Finds the start index of each word in a string
+	 */
+	private static List<Integer> findWordStarts(String string) {
+		List<Integer> wordStarts = new ArrayList<>();
+		boolean inWord = false;
+		for(int i = 0; i < string.length(); i++) {
+			boolean isWordChar = Character.isLetterOrDigit(string.charAt(i));
+			if(isWordChar && !inWord) wordStarts.add(i);
+			inWord = isWordChar;
+		}
+		return wordStarts;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+package me.tagavari.airmessage.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import me.tagavari.airmessage.messaging.ConversationItem;
+
+/**
+ * An ordered list of conversation items that can find an item's position by its local ID in constant time
+ *
+ * Each item's position is stored relative to a moving base, so adding or removing items at either end of the list
+ * (new messages, or older messages loaded in progressively) doesn't require any re-indexing.
+ */
+public class ConversationItemStore extends AbstractList<ConversationItem> implements RandomAccess {
+	private static final int notFound = Integer.MIN_VALUE;
+	
+	private final List<ConversationItem> items;
+	private final LongIntMap slotMap;
+	private int firstSlot = 0; //The slot of the item at position 0
+	
+	public ConversationItemStore() {
+		this(new ArrayList<>());
+	}
+	
+	public ConversationItemStore(@NonNull Collection<? extends ConversationItem> items) {
+		this.items = new ArrayList<>(items);
+		slotMap = new LongIntMap(items.size());
+		reindex();
+	}
+	
+	@Override
+	public ConversationItem get(int index) {
+		return items.get(index);
+	}
+	
+	@Override
+	public int size() {
+		return items.size();
+	}
+	
+	@Override
+	public ConversationItem set(int index, ConversationItem element) {
+		ConversationItem previous = items.set(index, element);
+		if(slotMap.get(previous.getLocalID(), notFound) == firstSlot + index) slotMap.remove(previous.getLocalID());
+		slotMap.put(element.getLocalID(), firstSlot + index);
+		return previous;
+	}
+	
+	@Override
+	public void add(int index, ConversationItem element) {
+		if(index < 0 || index > items.size()) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + items.size());
+		
+		//Shifting whichever side of the list is shorter
+		if(index < items.size() / 2) {
+			for(int i = 0; i < index; i++) slotMap.put(items.get(i).getLocalID(), firstSlot + i - 1);
+			firstSlot--;
+		} else {
+			for(int i = index; i < items.size(); i++) slotMap.put(items.get(i).getLocalID(), firstSlot + i + 1);
+		}
+		
+		items.add(index, element);
+		slotMap.put(element.getLocalID(), firstSlot + index);
+		modCount++;
+	}
+	
+	@Override
+	public boolean addAll(int index, Collection<? extends ConversationItem> collection) {
+		if(index < 0 || index > items.size()) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + items.size());
+		if(collection.isEmpty()) return false;
+		
+		int count = collection.size();
+		items.addAll(index, collection);
+		if(index == 0) {
+			//Prepending the items below the current base
+			firstSlot -= count;
+			for(int i = 0; i < count; i++) slotMap.put(items.get(i).getLocalID(), firstSlot + i);
+		} else if(index + count == items.size()) {
+			//Appending the items
+			for(int i = index; i < items.size(); i++) slotMap.put(items.get(i).getLocalID(), firstSlot + i);
+		} else {
+			reindex();
+		}
+		modCount++;
+		
+		return true;
+	}
+	
+	@Override
+	public ConversationItem remove(int index) {
+		ConversationItem element = items.remove(index);
+		if(slotMap.get(element.getLocalID(), notFound) == firstSlot + index) slotMap.remove(element.getLocalID());
+		
+		//Shifting whichever side of the list is shorter
+		if(index < items.size() / 2) {
+			for(int i = 0; i < index; i++) slotMap.put(items.get(i).getLocalID(), firstSlot + i + 1);
+			firstSlot++;
+		} else {
+			for(int i = index; i < items.size(); i++) slotMap.put(items.get(i).getLocalID(), firstSlot + i);
+		}
+		modCount++;
+		
+		return element;
+	}
+	
+	@Override
+	public void clear() {
+		items.clear();
+		slotMap.clear();
+		firstSlot = 0;
+		modCount++;
+	}
+	
+	@Override
+	public int indexOf(Object object) {
+		if(!(object instanceof ConversationItem)) return -1;
+		
+		int index = indexOfLocalID(((ConversationItem) object).getLocalID());
+		if(index != -1 && items.get(index).equals(object)) return index;
+		return items.indexOf(object);
+	}
+	
+	@Override
+	public boolean contains(Object object) {
+		return indexOf(object) != -1;
+	}
+	
+	/**
+	 * Gets the position of the item with the specified local ID
+	 * @param localID The local ID of the item to find
+	 * @return The position of the item, or -1 if there is no such item
+	 */
+	public int indexOfLocalID(long localID) {
+		int slot = slotMap.get(localID, notFound);
+		if(slot == notFound) return -1;
+		
+		int index = slot - firstSlot;
+		if(index >= 0 && index < items.size() && items.get(index).getLocalID() == localID) return index;
+		
+		//The index is out of date, which should never happen
+		for(int i = 0; i < items.size(); i++) {
+			if(items.get(i).getLocalID() == localID) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Gets the item with the specified local ID
+	 * @param localID The local ID of the item to find
+	 * @return The item, or NULL if there is no such item
+	 */
+	@Nullable
+	public ConversationItem getByLocalID(long localID) {
+		int index = indexOfLocalID(localID);
+		return index == -1 ? null : items.get(index);
+	}
+	
+	/**
+	 * Inserts an item into its sorted position, assuming the list is already sorted
+	 * New items usually belong at the end of the list, so the search starts from there
+	 * @param item The item to insert
+	 * @param comparator The comparator the list is sorted by
+	 * @param callback A callback to notify of the insertion, or NULL
+	 * @return The position the item was inserted at
+	 */
+	public int insertSorted(@NonNull ConversationItem item, @NonNull Comparator<? super ConversationItem> comparator, @Nullable ListUpdateCallback callback) {
+		int index;
+		if(items.isEmpty() || comparator.compare(item, items.get(items.size() - 1)) > 0) {
+			index = items.size();
+		} else {
+			//Finding the first item that the new item doesn't sort after
+			int low = 0;
+			int high = items.size() - 1;
+			while(low < high) {
+				int mid = (low + high) >>> 1;
+				if(comparator.compare(item, items.get(mid)) > 0) low = mid + 1;
+				else high = mid;
+			}
+			index = low;
+		}
+		
+		add(index, item);
+		if(callback != null) callback.onInserted(index, 1);
+		return index;
+	}
+	
+	/**
+	 * Removes the item with the specified local ID
+	 * @param localID The local ID of the item to remove
+	 * @param callback A callback to notify of the removal, or NULL
+	 * @return The removed item, or NULL if there is no such item
+	 */
+	@Nullable
+	public ConversationItem removeByLocalID(long localID, @Nullable ListUpdateCallback callback) {
+		int index = indexOfLocalID(localID);
+		if(index == -1) return null;
+		
+		ConversationItem item = remove(index);
+		if(callback != null) callback.onRemoved(index, 1);
+		return item;
+	}
+	
+	/**
+	 * Rebuilds the index from scratch
+	 */
+	private void reindex() {
+		slotMap.clear();
+		firstSlot = 0;
+		for(int i = 0; i < items.size(); i++) slotMap.put(items.get(i).getLocalID(), i);
+	}
+}
\ No newline at end of file
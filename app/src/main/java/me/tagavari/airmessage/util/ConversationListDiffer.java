@@ -0,0 +1,142 @@
+package me.tagavari.airmessage.util;
+
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.tagavari.airmessage.messaging.ConversationInfo;
+
+/**
+ * Publishes changes from a {@link ConversationListStore} to a RecyclerView adapter
+ *
+ * Changes are collected until the next frame, and then diffed against the adapter's current list on a background thread,
+ * so a burst of updates results in a single set of minimal adapter notifications.
+ * Since conversations are updated in place, changes to a conversation's contents must be reported with {@link #notifyItemChanged(long, int)}.
+ * Must only be used from the main thread.
+ */
+public class ConversationListDiffer {
+	private final ConversationListStore store;
+	private final AsyncListDiffer<ConversationInfo> differ;
+	
+	//Payload flags for each conversation that has changed since the last submission, by local ID
+	private final Map<Long, Integer> pendingChanges = new HashMap<>();
+	//Payload flags for the submission that is currently being diffed
+	private volatile Map<Long, Integer> submittedChanges = Collections.emptyMap();
+	
+	private boolean isFrameScheduled = false;
+	private boolean isDiffing = false;
+	private boolean isDirty = false;
+	
+	private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+		isFrameScheduled = false;
+		submit();
+	};
+	
+	/**
+	 * Creates a new differ, and immediately publishes the store's current contents
+	 * @param adapter The adapter to notify
+	 * @param store The list of conversations to track
+	 */
+	public ConversationListDiffer(@NonNull RecyclerView.Adapter<?> adapter, @NonNull ConversationListStore store) {
+		this.store = store;
+		differ = new AsyncListDiffer<>(new AdapterListUpdateCallback(adapter), new AsyncDifferConfig.Builder<>(itemCallback).build());
+		differ.submitList(new ArrayList<>(store));
+	}
+	
+	/**
+	 * Gets the list of conversations that the adapter is currently displaying
+	 */
+	@NonNull
+	public List<ConversationInfo> getCurrentList() {
+		return differ.getCurrentList();
+	}
+	
+	/**
+	 * Schedules an update for changes to the order or membership of the store
+	 */
+	public void notifyListChanged() {
+		schedule();
+	}
+	
+	/**
+	 * Schedules an update for a change to a conversation's contents
+	 * @param localID The local ID of the conversation that changed
+	 * @param payload The payload flags describing the change, which are combined with any other pending changes for this conversation
+	 */
+	public void notifyItemChanged(long localID, int payload) {
+		pendingChanges.merge(localID, payload, (flags1, flags2) -> flags1 | flags2);
+		schedule();
+	}
+	
+	/**
+	 * Cancels any pending update
+	 */
+	public void cancel() {
+		if(isFrameScheduled) {
+			Choreographer.getInstance().removeFrameCallback(frameCallback);
+			isFrameScheduled = false;
+		}
+		isDirty = false;
+	}
+	
+	private void schedule() {
+		//Waiting for the current diff to finish, so that its changes aren't lost if it is superseded
+		if(isDiffing) {
+			isDirty = true;
+			return;
+		}
+		
+		if(isFrameScheduled) return;
+		Choreographer.getInstance().postFrameCallback(frameCallback);
+		isFrameScheduled = true;
+	}
+	
+	private void submit() {
+		submittedChanges = new HashMap<>(pendingChanges);
+		pendingChanges.clear();
+		isDiffing = true;
+		
+		differ.submitList(new ArrayList<>(store), () -> {
+			isDiffing = false;
+			submittedChanges = Collections.emptyMap();
+			
+			//Submitting any changes that came in while diffing
+			if(isDirty) {
+				isDirty = false;
+				schedule();
+			}
+		});
+	}
+	
+	private final DiffUtil.ItemCallback<ConversationInfo> itemCallback = new DiffUtil.ItemCallback<ConversationInfo>() {
+		@Override
+		public boolean areItemsTheSame(@NonNull ConversationInfo oldItem, @NonNull ConversationInfo newItem) {
+			return oldItem.getLocalID() == newItem.getLocalID();
+		}
+		
+		@Override
+		public boolean areContentsTheSame(@NonNull ConversationInfo oldItem, @NonNull ConversationInfo newItem) {
+			//Both lists share the same instances, so rely on the reported changes rather than comparing values
+			return oldItem == newItem && !submittedChanges.containsKey(newItem.getLocalID());
+		}
+		
+		@Nullable
+		@Override
+		public Object getChangePayload(@NonNull ConversationInfo oldItem, @NonNull ConversationInfo newItem) {
+			if(oldItem != newItem) return null;
+			return submittedChanges.get(newItem.getLocalID());
+		}
+	};
+}
\ No newline at end of file
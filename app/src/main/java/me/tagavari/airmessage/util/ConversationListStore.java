@@ -0,0 +1,181 @@
+package me.tagavari.airmessage.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+import me.tagavari.airmessage.helper.ConversationHelper;
+import me.tagavari.airmessage.messaging.ConversationInfo;
+
+/**
+ * A list of conversations that is kept sorted by {@link ConversationHelper#conversationComparator},
+ * and can find a conversation's position by its local ID in constant time
+ *
+ * Conversations can't be added at arbitrary positions; use {@link #insertSorted(ConversationInfo)} to add a conversation,
+ * and {@link #reposition(long)} after changing a conversation's preview.
+ */
+public class ConversationListStore extends AbstractList<ConversationInfo> implements RandomAccess {
+	private static final int notFound = -1;
+	
+	private final List<ConversationInfo> items;
+	private final LongIntMap indexMap;
+	
+	public ConversationListStore() {
+		this(new ArrayList<>());
+	}
+	
+	public ConversationListStore(@NonNull Collection<? extends ConversationInfo> items) {
+		this.items = new ArrayList<>(items);
+		this.items.sort(ConversationHelper.conversationComparator);
+		indexMap = new LongIntMap(items.size());
+		reindex(0, this.items.size());
+	}
+	
+	@Override
+	public ConversationInfo get(int index) {
+		return items.get(index);
+	}
+	
+	@Override
+	public int size() {
+		return items.size();
+	}
+	
+	@Override
+	public ConversationInfo remove(int index) {
+		ConversationInfo conversation = items.remove(index);
+		indexMap.remove(conversation.getLocalID());
+		reindex(index, items.size());
+		modCount++;
+		
+		return conversation;
+	}
+	
+	@Override
+	public boolean removeIf(@NonNull Predicate<? super ConversationInfo> filter) {
+		if(!items.removeIf(filter)) return false;
+		
+		indexMap.clear();
+		reindex(0, items.size());
+		modCount++;
+		
+		return true;
+	}
+	
+	@Override
+	public void clear() {
+		items.clear();
+		indexMap.clear();
+		modCount++;
+	}
+	
+	@Override
+	public int indexOf(Object object) {
+		if(!(object instanceof ConversationInfo)) return -1;
+		
+		int index = indexOfLocalID(((ConversationInfo) object).getLocalID());
+		if(index != -1 && items.get(index).equals(object)) return index;
+		return items.indexOf(object);
+	}
+	
+	@Override
+	public boolean contains(Object object) {
+		return indexOf(object) != -1;
+	}
+	
+	/**
+	 * Gets the position of the conversation with the specified local ID
+	 * @param localID The local ID of the conversation to find
+	 * @return The position of the conversation, or -1 if there is no such conversation
+	 */
+	public int indexOfLocalID(long localID) {
+		return indexMap.get(localID, notFound);
+	}
+	
+	/**
+	 * Gets the conversation with the specified local ID
+	 * @param localID The local ID of the conversation to find
+	 * @return The conversation, or NULL if there is no such conversation
+	 */
+	@Nullable
+	public ConversationInfo getByLocalID(long localID) {
+		int index = indexOfLocalID(localID);
+		return index == -1 ? null : items.get(index);
+	}
+	
+	/**
+	 * Inserts a conversation into its sorted position, after any conversations that sort equally
+	 * @param conversation The conversation to insert
+	 * @return The position the conversation was inserted at
+	 */
+	public int insertSorted(@NonNull ConversationInfo conversation) {
+		int index = findInsertionIndex(conversation);
+		items.add(index, conversation);
+		reindex(index, items.size());
+		modCount++;
+		
+		return index;
+	}
+	
+	/**
+	 * Moves a conversation to its sorted position, for use after its preview has changed
+	 * @param localID The local ID of the conversation to move
+	 * @return The new position of the conversation, or -1 if there is no such conversation
+	 */
+	public int reposition(long localID) {
+		int index = indexOfLocalID(localID);
+		if(index == -1) return -1;
+		
+		//Finding the new position with the conversation taken out of the list
+		ConversationInfo conversation = items.remove(index);
+		int newIndex = findInsertionIndex(conversation);
+		items.add(newIndex, conversation);
+		if(newIndex == index) return index;
+		
+		//Updating the positions of the conversations in between
+		reindex(Math.min(index, newIndex), Math.max(index, newIndex) + 1);
+		modCount++;
+		
+		return newIndex;
+	}
+	
+	/**
+	 * Removes the conversation with the specified local ID
+	 * @param localID The local ID of the conversation to remove
+	 * @return The removed conversation, or NULL if there is no such conversation
+	 */
+	@Nullable
+	public ConversationInfo removeByLocalID(long localID) {
+		int index = indexOfLocalID(localID);
+		if(index == -1) return null;
+		
+		return remove(index);
+	}
+	
+	/**
+	 * Finds the first position that a conversation sorts before
+	 */
+	private int findInsertionIndex(ConversationInfo conversation) {
+		int low = 0;
+		int high = items.size();
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(ConversationHelper.conversationComparator.compare(conversation, items.get(mid)) >= 0) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+	
+	/**
+	 * Updates the index for the conversations within the specified range
+	 */
+	private void reindex(int fromIndex, int toIndex) {
+		for(int i = fromIndex; i < toIndex; i++) indexMap.put(items.get(i).getLocalID(), i);
+	}
+}
\ No newline at end of file
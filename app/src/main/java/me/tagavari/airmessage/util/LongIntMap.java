@@ -0,0 +1,110 @@
+package me.tagavari.airmessage.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map of primitive longs to ints
+ */
+class LongIntMap {
+	private static final int minCapacity = 16;
+	
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size = 0;
+	
+	LongIntMap(int expectedSize) {
+		allocate(tableSizeFor(Math.max(minCapacity, expectedSize * 2)));
+	}
+	
+	int get(long key, int defaultValue) {
+		int index = find(key);
+		return index == -1 ? defaultValue : values[index];
+	}
+	
+	void put(long key, int value) {
+		if((size + 1) * 2 > keys.length) resize(keys.length * 2);
+		
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while(used[index]) {
+			if(keys[index] == key) {
+				values[index] = value;
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+		
+		used[index] = true;
+		keys[index] = key;
+		values[index] = value;
+		size++;
+	}
+	
+	void remove(long key) {
+		int index = find(key);
+		if(index == -1) return;
+		
+		//Shifting back any following entries that would no longer be reachable
+		int mask = keys.length - 1;
+		int next = index;
+		while(true) {
+			next = (next + 1) & mask;
+			if(!used[next]) break;
+			
+			int home = hash(keys[next]) & mask;
+			boolean inRange = index <= next ? (index < home && home <= next) : (index < home || home <= next);
+			if(!inRange) {
+				keys[index] = keys[next];
+				values[index] = values[next];
+				index = next;
+			}
+		}
+		
+		used[index] = false;
+		size--;
+	}
+	
+	void clear() {
+		if(size == 0) return;
+		Arrays.fill(used, false);
+		size = 0;
+	}
+	
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while(used[index]) {
+			if(keys[index] == key) return index;
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+	
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		
+		allocate(capacity);
+		size = 0;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldUsed[i]) put(oldKeys[i], oldValues[i]);
+		}
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+	}
+	
+	private static int hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+	
+	private static int tableSizeFor(int capacity) {
+		return Integer.highestOneBit(capacity - 1) << 1;
+	}
+}
\ No newline at end of file
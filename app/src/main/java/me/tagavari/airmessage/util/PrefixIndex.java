@@ -0,0 +1,95 @@
+package me.tagavari.airmessage.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A sorted multimap of string keys to ints, that can find all values whose keys start with a prefix
+ *
+ * Keys are kept in a sorted array and searched with a binary search. New entries are buffered at the end of the array,
+ * and are sorted and merged in before the next lookup, so entries can be added one at a time without re-sorting for each one.
+ */
+class PrefixIndex {
+	private static final int minCapacity = 16;
+	
+	private String[] keys = new String[minCapacity];
+	private int[] values = new int[minCapacity];
+	private int size = 0;
+	private int sortedSize = 0; //The number of entries at the start of the arrays that are sorted
+	
+	void add(String key, int value) {
+		if(size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		
+		keys[size] = key;
+		values[size] = value;
+		size++;
+	}
+	
+	void clear() {
+		Arrays.fill(keys, 0, size, null);
+		size = 0;
+		sortedSize = 0;
+	}
+	
+	/**
+	 * Calls the consumer with the value of every entry whose key starts with the prefix, in key order
+	 */
+	void forEachWithPrefix(String prefix, IntConsumer consumer) {
+		ensureSorted();
+		
+		for(int i = lowerBound(prefix); i < size && keys[i].startsWith(prefix); i++) {
+			consumer.accept(values[i]);
+		}
+	}
+	
+	/**
+	 * Finds the position of the first key that doesn't sort before the specified key
+	 */
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(keys[mid].compareTo(key) < 0) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+	
+	/**
+	 * Sorts any buffered entries, and merges them into the sorted entries
+	 */
+	private void ensureSorted() {
+		if(sortedSize == size) return;
+		
+		//Sorting the buffered entries
+		int pendingCount = size - sortedSize;
+		Integer[] pendingOrder = new Integer[pendingCount];
+		for(int i = 0; i < pendingCount; i++) pendingOrder[i] = sortedSize + i;
+		Arrays.sort(pendingOrder, (index1, index2) -> keys[index1].compareTo(keys[index2]));
+		
+		//Merging both runs
+		String[] mergedKeys = new String[keys.length];
+		int[] mergedValues = new int[values.length];
+		int sortedIndex = 0;
+		int pendingIndex = 0;
+		for(int i = 0; i < size; i++) {
+			int source;
+			if(pendingIndex == pendingCount || (sortedIndex < sortedSize && keys[sortedIndex].compareTo(keys[pendingOrder[pendingIndex]]) <= 0)) {
+				source = sortedIndex++;
+			} else {
+				source = pendingOrder[pendingIndex++];
+			}
+			
+			mergedKeys[i] = keys[source];
+			mergedValues[i] = values[source];
+		}
+		
+		keys = mergedKeys;
+		values = mergedValues;
+		sortedSize = size;
+	}
+}
\ No newline at end of file
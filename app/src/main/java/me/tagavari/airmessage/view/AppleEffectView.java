@@ -3,8 +3,8 @@ package me.tagavari.airmessage.view;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.*;
-import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Display;
 import android.view.View;
 import androidx.annotation.Nullable;
 import me.tagavari.airmessage.helper.ColorMathHelper;
@@ -13,8 +13,10 @@ import java.util.Random;
 
 /**
  * Handles Apple's iMessage screen effects
+ *
+ * Effects are advanced by the shared {@link EffectRenderEngine} while they are playing, and draw with objects that are allocated up front.
  */
-public class AppleEffectView extends View {
+public class AppleEffectView extends View implements EffectRenderEngine.FrameClient {
 	//Creating the reference values
 	private static final int[] effectColors = {
 			0xFFFCE18A, //Yellow
@@ -24,29 +26,70 @@ public class AppleEffectView extends View {
 			0xFF42A5F5, //Blue
 			0xFF7986CB //Indigo
 	};
+	private static final float defaultRefreshRate = 60F;
+	
+	//The size of a balloon at a scale of 1
+	private static final float balloonHeadWidth = dpToPx(150 / 2);
+	private static final float balloonHeadHeight = dpToPx(180 / 2);
+	private static final float balloonTieSize = dpToPx(10);
+	private static final float balloonStringLength = dpToPx(50);
 	
 	//Creating the view values
 	private int viewWidth, viewHeight;
+	private float refreshRate = defaultRefreshRate;
+	
+	//Creating the drawing values, which are shared between renderers
+	private final Paint[] balloonHeadPaints = new Paint[effectColors.length];
+	private final Paint balloonStemPaint;
+	private final Path balloonTiePath = new Path();
+	private final RectF renderRect = new RectF();
 	
 	//Creating the other values
+	private final EffectRenderEngine renderEngine;
+	private boolean viewRegistered = false;
 	private EffectRenderer renderer = null;
 	private Runnable finishListener = null;
 	private final Random random = new Random();
 	
 	public AppleEffectView(Context context, @Nullable AttributeSet attrs) {
 		super(context, attrs);
+		
+		//Creating the balloon paints at their base size, to be scaled with the canvas
+		for(int i = 0; i < effectColors.length; i++) {
+			int color = effectColors[i];
+			Paint paint = new Paint();
+			paint.setAntiAlias(true);
+			paint.setStyle(Paint.Style.FILL);
+			paint.setShader(new LinearGradient(0, 0, balloonHeadWidth, balloonHeadHeight + balloonTieSize, ColorMathHelper.multiplyColorLightness(color, 1.2F), color, Shader.TileMode.CLAMP));
+			balloonHeadPaints[i] = paint;
+		}
+		
+		balloonStemPaint = new Paint();
+		balloonStemPaint.setAntiAlias(true);
+		balloonStemPaint.setShader(new LinearGradient(0, balloonHeadHeight + balloonTieSize, 0, balloonStringLength + balloonTieSize, 0xFFB0B0B0, 0xFF979797, Shader.TileMode.CLAMP));
+		
+		//Creating the balloon tie
+		balloonTiePath.moveTo(0, balloonHeadHeight / 2F);
+		balloonTiePath.lineTo(balloonTieSize / 2F, balloonHeadHeight / 2F + balloonTieSize);
+		balloonTiePath.lineTo(-balloonTieSize / 2F, balloonHeadHeight / 2F + balloonTieSize);
+		balloonTiePath.close();
+		
+		renderEngine = EffectRenderEngine.getInstance(context);
+	}
+	
+	@Override
+	public void onFrame(int deltaMillis) {
+		//Advancing the renderer
+		if(renderer != null) renderer.update(deltaMillis);
+		
+		//Drawing the frame
+		invalidate();
 	}
 	
 	@Override
 	protected void onDraw(Canvas canvas) {
-		//Checking if there is a renderer
-		if(renderer != null) {
-			//Drawing the renderer
-			renderer.draw(canvas);
-			
-			//Invalidating the view to draw the next frame
-			invalidate();
-		}
+		//Drawing the renderer
+		if(renderer != null) renderer.draw(canvas);
 	}
 	
 	@Override
@@ -58,6 +101,43 @@ public class AppleEffectView extends View {
 		
 	}
 	
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		
+		//Getting the display's refresh rate
+		Display display = getDisplay();
+		refreshRate = display != null ? display.getRefreshRate() : defaultRefreshRate;
+		
+		updateRegistration();
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		updateRegistration();
+	}
+	
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		updateRegistration();
+	}
+	
+	/**
+	 * Registers this view with the render engine while an effect is playing and the view is on screen, and unregisters it otherwise
+	 */
+	private void updateRegistration() {
+		if(isInEditMode()) return;
+		
+		boolean shouldRun = renderer != null && isAttachedToWindow() && getWindowVisibility() == VISIBLE;
+		if(shouldRun == viewRegistered) return;
+		viewRegistered = shouldRun;
+		
+		if(shouldRun) renderEngine.register(this);
+		else renderEngine.unregister(this);
+	}
+	
 	public void playEcho(View target) {
 		//Getting the target's view as a bitmap
 		target.buildDrawingCache();
@@ -70,21 +150,32 @@ public class AppleEffectView extends View {
 		target.destroyDrawingCache();
 		
 		//Setting the renderer
-		renderer = new EchoRenderer(bitmap);
-		
-		//Invalidating the view
-		invalidate();
+		setRenderer(new EchoRenderer(bitmap));
 	}
 	
 	public void playBalloons() {
 		//Setting the renderer
-		renderer = new BalloonRenderer();
+		setRenderer(new BalloonRenderer());
+	}
+	
+	private void setRenderer(EffectRenderer renderer) {
+		this.renderer = renderer;
+		updateRegistration();
 		
 		//Invalidating the view
 		invalidate();
 	}
 	
 	private abstract class EffectRenderer {
+		/**
+		 * Advances the effect by one frame
+		 * @param deltaMillis The time since the last frame, in milliseconds
+		 */
+		abstract void update(int deltaMillis);
+		
+		/**
+		 * Draws the current frame of the effect
+		 */
 		abstract void draw(Canvas canvas);
 	}
 	
@@ -93,14 +184,26 @@ public class AppleEffectView extends View {
 		private static final int lifetime = 3 * 1000; //3 seconds
 		private static final float dpSquaredToBubbleCountRatio = 100F / 300441F; //100 bubbles on Nexus 5X
 		
+		private static final int bubbleLifetimeBoost = 100;
+		private static final int bubbleLifetimeTotal = 1000;
+		private static final float bubbleScaleTarget = 1.2F;
+		private final float bubbleHorizontalDistance = dpToPx(50);
+		private final float bubbleVerticalDistance = dpToPx(60);
+		
 		//Creating the renderer values
 		private final Bitmap image;
 		private final int imageWidth, imageHeight;
 		
 		//Creating the other values
-		private final long startTime;
-		private int lastTimeLived = 0;
-		private final Bubble[] bubbleList;
+		private int timeLived = 0;
+		private final int bubbleCount;
+		
+		//Creating the bubble values
+		//The positions represent values 0.0 to 1.0, mapped to the view's size
+		private final float[] bubblePosX;
+		private final float[] bubblePosY;
+		private final int[] bubbleStartLifetime;
+		private final int[] bubbleTimeLived;
 		
 		EchoRenderer(Bitmap image) {
 			//Setting the values
@@ -108,21 +211,26 @@ public class AppleEffectView extends View {
 			imageWidth = image.getWidth();
 			imageHeight = image.getHeight();
 			
-			startTime = getTime();
-			
 			//Determining the amount of bubbles
-			int bubbleCount = (int) (pxToDp(viewWidth) * pxToDp(viewHeight) * dpSquaredToBubbleCountRatio);
-			bubbleList = new Bubble[bubbleCount];
-			for(int i = 0; i < bubbleCount; i++) bubbleList[i] = new Bubble();
+			bubbleCount = (int) (pxToDp(viewWidth) * pxToDp(viewHeight) * dpSquaredToBubbleCountRatio * renderEngine.getParticleScale(refreshRate));
+			bubblePosX = new float[bubbleCount];
+			bubblePosY = new float[bubbleCount];
+			bubbleStartLifetime = new int[bubbleCount];
+			bubbleTimeLived = new int[bubbleCount];
+			for(int i = 0; i < bubbleCount; i++) {
+				//Picking a location
+				bubblePosX[i] = random.nextFloat();
+				bubblePosY[i] = random.nextFloat();
+				
+				//Setting the time
+				bubbleTimeLived[i] = bubbleStartLifetime[i] = random.nextInt(bubbleLifetimeBoost + 1);
+			}
 		}
 		
-		private final RectF renderRectOut = new RectF();
 		@Override
-		void draw(Canvas canvas) {
-			//Calculating the time
-			int timeLived = (int) (getTime() - startTime);
-			int timeDiff = timeLived - lastTimeLived;
-			lastTimeLived = timeLived;
+		void update(int deltaMillis) {
+			//Adding to the time
+			timeLived += deltaMillis;
 			
 			//Checking if the time to live is up
 			if(timeLived >= lifetime) {
@@ -131,262 +239,184 @@ public class AppleEffectView extends View {
 				return;
 			}
 			
-			//Iterating over the bubbles
-			for(int i = 0; i < Math.min(lerpInt(0, bubbleList.length, (float) timeLived / (float) (lifetime - Bubble.lifetimeTotal)), bubbleList.length); i++) {
-				//Getting the bubble
-				Bubble bubble = bubbleList[i];
-				
-				//Calculating the frame
-				float progress = bubble.calculateFrame(timeDiff, renderRectOut);
-				
-				//Skipping the remainder of the iteration if the particle isn't running
-				if(progress == 0) continue;
-				
-				//Creating the rectangle
-				canvas.drawBitmap(image, null, renderRectOut, null);
+			//Advancing the bubbles that have been released
+			int releasedCount = getReleasedCount();
+			for(int i = 0; i < releasedCount; i++) {
+				if(bubbleTimeLived[i] < bubbleLifetimeTotal) bubbleTimeLived[i] += deltaMillis;
 			}
 		}
 		
-		private class Bubble {
-			//Creating the reference values
-			private static final int lifetimeBoost = 100;
-			private static final int lifetimeTotal = 1000;
-			private final float horizontalDistance = dpToPx(50);
-			private final float verticalDistance = dpToPx(60);
-			private static final float scaleTarget = 1.2F;
-			
-			//Creating the other values
-			float posX, posY;
-			int startLifetime;
-			int timeLived;
-			
-			Bubble() {
-				generateState();
-			}
-			
-			void generateState() {
-				//Picking a location
-				posX = random.nextFloat();
-				posY = random.nextFloat();
-				
-				//Setting the time
-				timeLived = startLifetime = random.nextInt(lifetimeBoost + 1);
-			}
-			
-			/* private void cycleParticle(int timePassed) {
-				//Adding to the cycle time
-				int newTime = timeLived + timeDiff;
-				if(newTime >= lifetimeTotal) {
-					//Regenerating the state
-					generateState();
-					
-					
-				} else timeLived = newTime;
-			} */
-			
-			float calculateFrame(int timeDiff, RectF rectOut) {
-				//Adding to the time
-				if((timeLived += timeDiff) >= lifetimeTotal) return 0;
+		@Override
+		void draw(Canvas canvas) {
+			//Iterating over the bubbles
+			int releasedCount = getReleasedCount();
+			for(int i = 0; i < releasedCount; i++) {
+				//Skipping bubbles that have finished
+				int bubbleTime = bubbleTimeLived[i];
+				if(bubbleTime >= bubbleLifetimeTotal) continue;
 				
 				//Calculating the progresses
-				float relativeProgress = (float) timeLived / (float) lifetimeTotal; //Progress including the time offset
-				float absoluteProgress = (float) (timeLived - startLifetime) / (float) (lifetimeTotal - startLifetime); //Progress without the time offset
+				int startLifetime = bubbleStartLifetime[i];
+				float relativeProgress = (float) bubbleTime / (float) bubbleLifetimeTotal; //Progress including the time offset
+				float absoluteProgress = (float) (bubbleTime - startLifetime) / (float) (bubbleLifetimeTotal - startLifetime); //Progress without the time offset
+				
+				//Skipping bubbles that haven't started moving
+				if(absoluteProgress == 0) continue;
 				
 				//Calculating the position
-				float posXPx = posX * viewWidth + horizontalDistance * interpolateX(relativeProgress);
-				float posYPx = posY * viewHeight + verticalDistance * interpolateY(relativeProgress);
+				float posXPx = bubblePosX[i] * viewWidth + bubbleHorizontalDistance * interpolateX(relativeProgress);
+				float posYPx = bubblePosY[i] * viewHeight + bubbleVerticalDistance * interpolateY(relativeProgress);
 				
 				//Calculating the view scale
 				float scaleProgress = calcViewScaleProgress(absoluteProgress);
-				float scale = lerpFloat(0, scaleTarget, 1F - (1F - scaleProgress) * (1F - scaleProgress));
-				//float scale = lerpFloat(0, scaleTarget, scaleProgress);
+				float scale = lerpFloat(0, bubbleScaleTarget, 1F - (1F - scaleProgress) * (1F - scaleProgress));
 				
-				rectOut.left = posXPx - imageWidth * scale / 2F;
-				rectOut.right = posXPx + imageWidth * scale / 2F;
-				rectOut.top = posYPx - imageHeight * scale / 2F;
-				rectOut.bottom = posYPx + imageHeight * scale / 2F;
+				renderRect.left = posXPx - imageWidth * scale / 2F;
+				renderRect.right = posXPx + imageWidth * scale / 2F;
+				renderRect.top = posYPx - imageHeight * scale / 2F;
+				renderRect.bottom = posYPx + imageHeight * scale / 2F;
 				
-				//Returning the view's alpha target
-				return absoluteProgress;
-			}
-			
-			/**
-			 * Calculates the X position of the view based on the input
-			 * @param input The progress, ranging from 0.0 to 1.0
-			 * @return The relative X position of the view, ranging from -1.0 to 1.0
-			 */
-			private float interpolateX(float input) {
-				if(input < 0.5F) return (float) Math.sin(Math.PI * -input); //0.0 -> -1.0
-				else {
-					input = (input - 0.5F) * 2F; //Fixing the percentage (0.5-1.0 -> 0.0-1.0)
-					return input * input * 2F - 1F; //-1.0 -> 1.0
-				}
+				//Drawing the bubble
+				canvas.drawBitmap(image, null, renderRect, null);
 			}
-			
-			private float interpolateY(float input) {
-				return -(input * input);
-			}
-			
-			private float calcViewScaleProgress(float progress) {
-				if(progress < 0.25F) return progress * 4;
-				else return 1F - (progress - 0.25F) * (1F / 0.75F);
+		}
+		
+		/**
+		 * Gets the number of bubbles that have been released so far, releasing them gradually over the effect's lifetime
+		 */
+		private int getReleasedCount() {
+			return Math.min(lerpInt(0, bubbleCount, (float) timeLived / (float) (lifetime - bubbleLifetimeTotal)), bubbleCount);
+		}
+		
+		/**
+		 * Calculates the X position of the view based on the input
+		 * @param input The progress, ranging from 0.0 to 1.0
+		 * @return The relative X position of the view, ranging from -1.0 to 1.0
+		 */
+		private float interpolateX(float input) {
+			if(input < 0.5F) return (float) Math.sin(Math.PI * -input); //0.0 -> -1.0
+			else {
+				input = (input - 0.5F) * 2F; //Fixing the percentage (0.5-1.0 -> 0.0-1.0)
+				return input * input * 2F - 1F; //-1.0 -> 1.0
 			}
 		}
+		
+		private float interpolateY(float input) {
+			return -(input * input);
+		}
+		
+		private float calcViewScaleProgress(float progress) {
+			if(progress < 0.25F) return progress * 4;
+			else return 1F - (progress - 0.25F) * (1F / 0.75F);
+		}
 	}
 	
 	private class BalloonRenderer extends EffectRenderer {
 		//Creating the reference values
 		private static final int balloonCountMin = 4;
 		private static final int balloonCountMax = 8;
+		private final float verticalSpeed = dpToPx(0.00006F);
 		
 		//Creating the other values
-		private final Random random = new Random();
-		private int balloonCount ;
-		private final Balloon[] balloonList;
-		private final long startTime;
-		private long lastCheckTime;
+		private int timeLived = 0;
+		private final int balloonCount;
+		private int activeBalloonCount;
+		
+		//Creating the balloon values
+		private final float[] balloonPosX;
+		private final float[] balloonPosY;
+		private final float[] balloonScale;
+		private final int[] balloonColor;
+		private final int[] balloonTimeLived;
+		private final boolean[] balloonActive;
 		
 		BalloonRenderer() {
-			//Recording the start time
-			startTime = lastCheckTime = getTime();
-			
 			//Adding the balloons
-			balloonCount = balloonCountMin + random.nextInt(balloonCountMax - balloonCountMin + 1);
-			balloonList = new Balloon[balloonCount];
-			for(int i = 0; i < balloonCount; i++) balloonList[i] = new Balloon();
-		}
-		
-		@Override
-		void draw(Canvas canvas) {
-			//Calculating the times
-			int timeLived = (int) (getTime() - startTime);
-			long currentTime = getTime();
-			int deltaTime = (int) (currentTime - lastCheckTime);
-			lastCheckTime = currentTime;
-			
-			//Drawing the balloons (releasing them over a 1000-millisecond period)
-			for(int i = 0; i < Math.min(lerpInt(0, balloonList.length, (float) timeLived / 2000), balloonList.length); i++) {
-				balloonList[i].draw(canvas, deltaTime);
-			}
-			
-			//Checking if there are no more balloons
-			if(balloonCount == 0) {
-				//Removing the renderer
-				resetRenderer();
-			}
-		}
-		
-		private class Balloon {
-			//Creating the reference values
-			private final float verticalSpeed = dpToPx(0.00006F);
-			private final float balloonHeadWidth = dpToPx(150 / 2);
-			private final float balloonHeadHeight = dpToPx(180 / 2);
-			private final float balloonTieSize = dpToPx(10);
-			private final float balloonStringLength = dpToPx(50);
-			
-			//Creating the size values
-			private float sVerticalSpeed;
-			private float sBalloonHeadWidth;
-			private float sBalloonHeadHeight;
-			private float sBalloonTieSize;
-			private float sBalloonStringLength;
-			
-			//Creating the paint values
-			private final Paint colorPaint;
-			private final Paint stemPaint;
-			
-			//Creating the state values
-			boolean isActive = true;
-			private final float posX;
-			int timeLived = 0;
-			
-			Balloon() {
+			balloonCount = activeBalloonCount = balloonCountMin + random.nextInt(balloonCountMax - balloonCountMin + 1);
+			balloonPosX = new float[balloonCount];
+			balloonPosY = new float[balloonCount];
+			balloonScale = new float[balloonCount];
+			balloonColor = new int[balloonCount];
+			balloonTimeLived = new int[balloonCount];
+			balloonActive = new boolean[balloonCount];
+			for(int i = 0; i < balloonCount; i++) {
 				//Picking a location
-				posX = random.nextFloat() * viewWidth;
-				
-				//Scaling the values
-				float scale = 0.5F + random.nextFloat(); //0.5 to 1.5
-				sVerticalSpeed = verticalSpeed * scale;
-				sBalloonHeadWidth = balloonHeadWidth * scale;
-				sBalloonHeadHeight = balloonHeadHeight * scale;
-				sBalloonTieSize = balloonTieSize * scale;
-				sBalloonStringLength = balloonStringLength * scale;
+				balloonPosX[i] = random.nextFloat() * viewWidth;
 				
-				//Picking a color
-				int color = effectColors[random.nextInt(effectColors.length)];
+				//Picking a scale and a color
+				balloonScale[i] = 0.5F + random.nextFloat(); //0.5 to 1.5
+				balloonColor[i] = random.nextInt(effectColors.length);
 				
-				//Creating the paints
-				colorPaint = new Paint();
-				colorPaint.setAntiAlias(true);
-				colorPaint.setStyle(Paint.Style.FILL);
-				colorPaint.setShader(new LinearGradient(0, 0, sBalloonHeadWidth, sBalloonHeadHeight + sBalloonTieSize, ColorMathHelper.multiplyColorLightness(color, 1.2F), color, Shader.TileMode.CLAMP));
-				
-				stemPaint = new Paint();
-				stemPaint.setAntiAlias(true);
-				stemPaint.setShader(new LinearGradient(0, sBalloonHeadHeight + sBalloonTieSize, 0, sBalloonStringLength + sBalloonTieSize, 0xFFB0B0B0, 0xFF979797, Shader.TileMode.CLAMP));
+				balloonActive[i] = true;
 			}
+		}
+		
+		@Override
+		void update(int deltaMillis) {
+			timeLived += deltaMillis;
 			
-			void draw(Canvas canvas, int deltaTime) {
-				//Returning if the balloon is not isActive
-				if(!isActive) return;
+			//Advancing the balloons (releasing them over a 2000-millisecond period)
+			int releasedCount = Math.min(lerpInt(0, balloonCount, (float) timeLived / 2000), balloonCount);
+			for(int i = 0; i < releasedCount; i++) {
+				//Skipping inactive balloons
+				if(!balloonActive[i]) continue;
 				
 				//Adding to the time
-				timeLived += deltaTime;
+				int balloonTime = balloonTimeLived[i] += deltaMillis;
 				
 				//Calculating the position
-				float posY = (viewHeight + sBalloonHeadHeight / 2F) - (timeLived * timeLived * sVerticalSpeed);
+				float scale = balloonScale[i];
+				float posY = (viewHeight + balloonHeadHeight * scale / 2F) - (balloonTime * balloonTime * verticalSpeed * scale);
+				balloonPosY[i] = posY;
 				
-				if(posY + sBalloonHeadHeight / 2F + sBalloonTieSize + sBalloonStringLength < 0) {
+				if(posY + (balloonHeadHeight / 2F + balloonTieSize + balloonStringLength) * scale < 0) {
 					//Deactivating the balloon
-					isActive = false;
-					BalloonRenderer.this.balloonCount--;
-					return;
+					balloonActive[i] = false;
+					activeBalloonCount--;
 				}
+			}
+			
+			//Checking if there are no more balloons
+			if(activeBalloonCount == 0) {
+				//Removing the renderer
+				resetRenderer();
+			}
+		}
+		
+		@Override
+		void draw(Canvas canvas) {
+			for(int i = 0; i < balloonCount; i++) {
+				//Skipping balloons that haven't been released yet or have floated away
+				if(!balloonActive[i] || balloonTimeLived[i] == 0) continue;
 				
 				//Positioning the canvas
+				float scale = balloonScale[i];
 				canvas.save();
-				canvas.translate(posX, posY);
+				canvas.translate(balloonPosX[i], balloonPosY[i]);
+				canvas.scale(scale, scale);
 				
 				//Drawing the balloon head
-				canvas.drawOval(-sBalloonHeadWidth / 2F, -sBalloonHeadHeight / 2F, sBalloonHeadWidth / 2F, sBalloonHeadHeight / 2F, colorPaint);
-				{
-					Path path = new Path();
-					path.moveTo(0, sBalloonHeadHeight / 2F);
-					path.lineTo(sBalloonTieSize / 2F, sBalloonHeadHeight / 2F + sBalloonTieSize);
-					path.lineTo(-sBalloonTieSize / 2F, sBalloonHeadHeight / 2F + sBalloonTieSize);
-					path.close();
-					canvas.drawPath(path, colorPaint);
-				}
+				Paint headPaint = balloonHeadPaints[balloonColor[i]];
+				canvas.drawOval(-balloonHeadWidth / 2F, -balloonHeadHeight / 2F, balloonHeadWidth / 2F, balloonHeadHeight / 2F, headPaint);
+				canvas.drawPath(balloonTiePath, headPaint);
 				
 				//Drawing the balloon stem
-				canvas.drawLine(0, sBalloonHeadHeight / 2F + sBalloonTieSize, 0, sBalloonHeadHeight / 2F + sBalloonTieSize + sBalloonStringLength, stemPaint);
+				canvas.drawLine(0, balloonHeadHeight / 2F + balloonTieSize, 0, balloonHeadHeight / 2F + balloonTieSize + balloonStringLength, balloonStemPaint);
 				
 				//Restoring the canvas
 				canvas.restore();
 			}
-			
-			//Calls moveTo() on the path with the provided X and Y positions, taking into account the balloon's rotation
-			/* private void applyPath(Path path, float pointX, float pointY, boolean moveTo) {
-				//float pointXRotated = pointX;
-				//float pointYRotated = pointY;
-				float pointXRotated = (pointX) * (float) Math.cos(rotation) - (pointY) * (float) Math.sin(rotation);
-				float pointYRotated = (pointX) * (float) Math.sin(rotation) + (pointY) * (float) Math.cos(rotation);
-				if(moveTo) path.moveTo(pointXRotated, pointYRotated);
-				else path.lineTo(pointXRotated, pointYRotated);
-			} */
 		}
 	}
 	
 	void resetRenderer() {
 		//Invalidating the renderer
 		renderer = null;
+		updateRegistration();
+		invalidate();
 		if(finishListener != null) finishListener.run();
 	}
 	
-	private static long getTime() {
-		return SystemClock.uptimeMillis();
-	}
-	
 	private static int lerpInt(int start, int end, float progress) {
 		return start + (int) ((end - start) * progress);
 	}
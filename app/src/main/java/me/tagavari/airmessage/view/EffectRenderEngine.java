@@ -0,0 +1,141 @@
+package me.tagavari.airmessage.view;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives the animation of effect views from a single frame callback
+ *
+ * Effect views register while they are on screen and animating, and are called once per display frame to advance their simulation
+ * before invalidating themselves. The frame callback is only posted while a view is registered, so nothing runs while no effects are visible.
+ * The engine also suggests how many particles effects should draw, based on the display's refresh rate and the device's thermal state.
+ * Must only be used from the main thread.
+ */
+class EffectRenderEngine {
+	//The refresh rate that particle counts are tuned for
+	private static final float baseRefreshRate = 60F;
+	//The lowest that particle counts are scaled down to on high refresh rate displays
+	private static final float minRefreshRateScale = 0.5F;
+	
+	private static EffectRenderEngine instance = null;
+	
+	@Nullable private final PowerManager powerManager;
+	@Nullable private PowerManager.OnThermalStatusChangedListener thermalStatusListener = null;
+	private int thermalStatus = 0; //PowerManager.THERMAL_STATUS_NONE
+	
+	private final List<FrameClient> clients = new ArrayList<>();
+	private final List<FrameClient> frameClients = new ArrayList<>();
+	private boolean isFrameScheduled = false;
+	private long lastFrameTimeNanos = -1;
+	
+	private final Choreographer.FrameCallback frameCallback = this::onFrame;
+	
+	private EffectRenderEngine(@NonNull Context context) {
+		powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+	}
+	
+	/**
+	 * Gets the shared render engine
+	 */
+	@NonNull
+	static EffectRenderEngine getInstance(@NonNull Context context) {
+		if(instance == null) instance = new EffectRenderEngine(context.getApplicationContext());
+		return instance;
+	}
+	
+	/**
+	 * Starts calling a client on every frame
+	 */
+	void register(@NonNull FrameClient client) {
+		if(clients.contains(client)) return;
+		clients.add(client);
+		
+		if(!isFrameScheduled) {
+			//Starting a new run of frames, so the first frame doesn't count the time that we were idle
+			lastFrameTimeNanos = -1;
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+			isFrameScheduled = true;
+			
+			startThermalUpdates();
+		}
+	}
+	
+	/**
+	 * Stops calling a client on every frame
+	 */
+	void unregister(@NonNull FrameClient client) {
+		if(!clients.remove(client)) return;
+		
+		if(clients.isEmpty() && isFrameScheduled) {
+			Choreographer.getInstance().removeFrameCallback(frameCallback);
+			isFrameScheduled = false;
+			
+			stopThermalUpdates();
+		}
+	}
+	
+	/**
+	 * Gets the amount to scale particle counts by, so that effects stay within the device's current frame budget
+	 * @param refreshRate The refresh rate of the display the effect is drawn on, in frames per second
+	 * @return The particle scale, from 0.0 to 1.0
+	 */
+	float getParticleScale(float refreshRate) {
+		//Drawing fewer particles when there is less time to draw each frame
+		float scale = 1F;
+		if(refreshRate > baseRefreshRate) scale = Math.max(baseRefreshRate / refreshRate, minRefreshRateScale);
+		
+		//Backing off while the device is hot
+		if(thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) scale *= 0.25F;
+		else if(thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) scale *= 0.5F;
+		else if(thermalStatus >= PowerManager.THERMAL_STATUS_LIGHT) scale *= 0.75F;
+		
+		return scale;
+	}
+	
+	private void onFrame(long frameTimeNanos) {
+		int deltaMillis = lastFrameTimeNanos == -1 ? 0 : (int) ((frameTimeNanos - lastFrameTimeNanos) / 1000000L);
+		lastFrameTimeNanos = frameTimeNanos;
+		
+		//Scheduling the next frame first, so clients can unregister from their callback
+		Choreographer.getInstance().postFrameCallback(frameCallback);
+		
+		//Iterating over a copy of the client list, since clients may unregister while they are called
+		for(int i = 0; i < clients.size(); i++) frameClients.add(clients.get(i));
+		for(int i = 0; i < frameClients.size(); i++) frameClients.get(i).onFrame(deltaMillis);
+		frameClients.clear();
+	}
+	
+	private void startThermalUpdates() {
+		if(powerManager == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+		
+		thermalStatus = powerManager.getCurrentThermalStatus();
+		thermalStatusListener = status -> thermalStatus = status;
+		powerManager.addThermalStatusListener(thermalStatusListener);
+	}
+	
+	private void stopThermalUpdates() {
+		if(powerManager == null || thermalStatusListener == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return;
+		
+		powerManager.removeThermalStatusListener(thermalStatusListener);
+		thermalStatusListener = null;
+	}
+	
+	/**
+	 * A view that draws a frame-by-frame effect
+	 */
+	interface FrameClient {
+		/**
+		 * Advances the effect by one frame
+		 * @param deltaMillis The time since the last frame, in milliseconds
+		 */
+		void onFrame(int deltaMillis);
+	}
+}
\ No newline at end of file
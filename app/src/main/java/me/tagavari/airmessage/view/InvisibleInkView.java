@@ -4,27 +4,30 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.*;
-import android.os.SystemClock;
 import android.util.AttributeSet;
-import android.view.TextureView;
+import android.view.Display;
 import android.view.View;
 import androidx.annotation.Nullable;
 import androidx.core.graphics.ColorUtils;
 import me.tagavari.airmessage.R;
-import me.tagavari.airmessage.flavor.CrashlyticsBridge;
 
 import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
-public class InvisibleInkView extends TextureView implements Runnable {
+/**
+ * Covers content with a field of sparkling particles, until the user reveals it
+ *
+ * Particles are stored as parallel primitive arrays and advanced by the shared {@link EffectRenderEngine} while the view is on screen.
+ * When drawing, particles are grouped by alpha so that each group can be drawn with a single call.
+ */
+public class InvisibleInkView extends View implements EffectRenderEngine.FrameClient {
 	//Creating the reference variables
 	private static final int particleLifetime = 3 * 1000;
 	private static final int pixelsPerParticle = 150;
 	private static final float particleVelocity = 0.01F;
 	private static final float particleRadius = 0.7F;
+	private static final int alphaBatchCount = 16; //The number of alpha levels to group particles into when drawing
+	private static final float defaultRefreshRate = 60F;
 	
 	private static final int timeRevealTransition = 500; //0.5 seconds
 	private static final int timeRevealStay = 9 * 1000; //8 seconds
@@ -35,40 +38,39 @@ public class InvisibleInkView extends TextureView implements Runnable {
 	//Creating the drawing values
 	private final Paint backgroundPaint;
 	private final Paint particlePaint;
-	
-	//Creating the rendering values (values used in the drawing thread)
-	private final Lock viewRadiiLock = new ReentrantLock();
+	private final Path clipPath = new Path();
+	private final RectF clipRect = new RectF();
 	private float[] viewRadii = new float[8];
-	private final AtomicInteger viewWidth = new AtomicInteger();
-	private final AtomicInteger viewHeight = new AtomicInteger();
 	
-	//Creating the threading values
-	private Thread viewThread = null;
-	private boolean surfaceAvailable = false;
-	private volatile boolean viewRequestedRunning = false;
-	private volatile boolean viewRunning = false;
-	private volatile boolean viewUpdateRequested = false;
-	private volatile boolean viewRevealRequested = false;
-	private volatile boolean viewRevealRunning = false;
+	//Creating the state values
+	private final EffectRenderEngine renderEngine;
+	private boolean viewRequestedRunning = false;
+	private boolean viewRegistered = false;
+	private float refreshRate = defaultRefreshRate;
 	
-	private boolean firstLayoutPassCompleted = false;
-	private boolean firstStartRequestCompleted = false;
+	private int revealTime = 0;
+	private int startAlpha = 0xFF;
+	private int targetAlpha = startAlpha;
 	
-	//Creating the other values
+	//Creating the particle values
 	private final Random random = new Random();
-	private int visiblePixelCount;
-	//private boolean[][] visibilityMap;
-	private Particle[] particleList = null;
-	private float particleVelocityPx;
-	private float particleRadiusPx;
-	private long lastTimeCheck = getTime();
+	private final float particleVelocityPx;
+	private int particleCount = 0;
+	private float[] particleX = new float[0];
+	private float[] particleY = new float[0];
+	private float[] particleVelX = new float[0];
+	private float[] particleVelY = new float[0];
+	private int[] particleTime = new int[0];
+	
+	//Creating the particle drawing values
+	private int[] particleBatch = new int[0];
+	private float[] particlePoints = new float[0];
+	private final int[] batchSizes = new int[alphaBatchCount];
+	private final int[] batchOffsets = new int[alphaBatchCount];
 	
 	public InvisibleInkView(Context context, @Nullable AttributeSet attrs) {
 		super(context, attrs);
 		
-		//Configuring the view
-		setOpaque(false);
-		
 		//Getting the attributes
 		TypedArray attributes = context.getTheme().obtainStyledAttributes(attrs, R.styleable.InvisibleInkView, 0, 0);
 		
@@ -80,7 +82,6 @@ public class InvisibleInkView extends TextureView implements Runnable {
 		
 		//Converting the units
 		particleVelocityPx = dpToPx(particleVelocity);
-		particleRadiusPx = dpToPx(particleRadius);
 		
 		//Setting up the paints
 		backgroundPaint = new Paint();
@@ -89,372 +90,256 @@ public class InvisibleInkView extends TextureView implements Runnable {
 		
 		particlePaint = new Paint();
 		particlePaint.setAntiAlias(true);
-		particlePaint.setStyle(Paint.Style.FILL);
+		particlePaint.setColor(Color.WHITE);
+		particlePaint.setStrokeCap(Paint.Cap.ROUND);
+		particlePaint.setStrokeWidth(dpToPx(particleRadius) * 2F);
 		
-		//Setting the surface listener
-		setSurfaceTextureListener(new SurfaceTextureListener() {
-			@Override
-			public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-				//Setting the drawing surface as available
-				surfaceAvailable = true;
-				
-				//Starting the drawing thread
-				if(viewRunning && firstLayoutPassCompleted && viewThread == null) startThread();
-			}
-			
-			@Override
-			public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
-			
-			}
-			
-			@Override
-			public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-				surfaceAvailable = false;
-				onPause();
-				return true;
-			}
-			
-			@Override
-			public void onSurfaceTextureUpdated(SurfaceTexture surface) {
-			
-			}
-		});
+		renderEngine = EffectRenderEngine.getInstance(context);
 	}
 	
 	@Override
-	public void run() {
-		Canvas canvas;
-		float[] drawParticlePositions = new float[2];
-		float drawParticleProgress;
+	public void onFrame(int deltaMillis) {
+		//Matching the particle count to the view's size and the device's current performance budget
+		resizeParticles((int) ((float) (getWidth() * getHeight() / pixelsPerParticle) * renderEngine.getParticleScale(refreshRate)));
 		
-		Path clipPath = new Path();
-		RectF clipRect = new RectF();
+		//Advancing the reveal time
+		if(revealTime > 0) {
+			revealTime = Math.max(revealTime - deltaMillis, 0);
+			if(revealTime > timeRevealTransition + timeRevealStay) targetAlpha = lerpInt(0x00, startAlpha, (revealTime - (timeRevealTransition + timeRevealStay)) / (float) timeRevealTransition); //Fade out stage
+			else if(revealTime > timeRevealTransition) targetAlpha = 0x00; //Stay stage
+			else targetAlpha = lerpInt(0xFF, 0x00, revealTime / (float) timeRevealTransition); //Fade in stage
+		}
 		
-		int revealTime = 0;
-		int startAlpha = 0xFF;
-		int targetAlpha = startAlpha;
+		//Advancing the particles, recycling particles that have reached the end of their life
+		for(int i = 0; i < particleCount; i++) {
+			int newTime = particleTime[i] + deltaMillis;
+			if(newTime >= particleLifetime) generateParticle(i, newTime % particleLifetime);
+			else particleTime[i] = newTime;
+		}
 		
-		try {
-			while(viewRunning) {
-				//Returning if the view isn't valid
-				if(!isAttachedToWindow() || !isAvailable()) return;
-				
-				//Getting the canvas
-				canvas = lockCanvas();
-				try {
-					if(canvas == null) return;
-					
-					//Checking if the view needs to be updated
-					if(viewUpdateRequested) {
-						processTargetView();
-						viewUpdateRequested = false;
-					}
-					
-					//Returning if the view isn't valid
-					if(!isAttachedToWindow() || !isAvailable()) return;
-					
-					//Calculating the time difference
-					long currentTime = getTime();
-					int timeDiff = (int) (currentTime - lastTimeCheck);
-					lastTimeCheck = currentTime;
-					
-					//Advancing the reveal time
-					if(revealTime > 0) {
-						revealTime = Math.max(revealTime - timeDiff, 0);
-						if(revealTime > timeRevealTransition + timeRevealStay) targetAlpha = lerpInt(0x00, startAlpha, (revealTime - (timeRevealTransition + timeRevealStay)) / (float) timeRevealTransition); //Fade out stage
-						else if(revealTime > timeRevealTransition) targetAlpha = 0x00; //Stay stage
-						else targetAlpha = lerpInt(0xFF, 0x00, revealTime / (float) timeRevealTransition); //Fade in stage
-					} else viewRevealRunning = false;
-					
-					//Checking if a reveal had been requested
-					if(viewRevealRequested) {
-						//Setting the reveal time
-						revealTime = timeRevealTransition * 2 + timeRevealStay;
-						startAlpha = targetAlpha;
-						
-						viewRevealRequested = false;
-						viewRevealRunning = true;
-					}
-					
-					//Clearing the canvas
-					if(!viewRunning) return;
-					canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-					
-					//Rounding out the view
-					clipPath.reset();
-					clipRect.set(0, 0, viewWidth.get(), viewHeight.get());
-					
-					viewRadiiLock.lock();
-					try {
-						clipPath.addRoundRect(clipRect, viewRadii, Path.Direction.CW);
-					} finally {
-						viewRadiiLock.unlock();
-					}
-					
-					if(!viewRunning) return;
-					canvas.clipPath(clipPath);
-					
-					//Drawing the background
-					if(!viewRunning) return;
-					if(backgroundColor != Color.TRANSPARENT) {
-						backgroundPaint.setColor(ColorUtils.setAlphaComponent(backgroundColor, targetAlpha));
-						canvas.drawPaint(backgroundPaint);
-					}
-					
-					//Drawing the particles
-					if(particleList == null) continue;
-					for(Particle particle : particleList) {
-						//Getting the particle information
-						drawParticleProgress = particle.calculateFrame(timeDiff, drawParticlePositions);
-						
-						//Configuring the paint
-						particlePaint.setColor(Color.argb(Math.max(calculateAlpha(drawParticleProgress) - (0xFF - targetAlpha), 0), 0xFF, 0xFF, 0xFF));
-						
-						if(!viewRunning) return;
-						canvas.drawCircle(drawParticlePositions[0] * (float) viewWidth.get(), drawParticlePositions[1] * (float) viewHeight.get(), particleRadiusPx, particlePaint);
-					}
-				} finally {
-					//Updating the canvas changes
-					unlockCanvasAndPost(canvas);
-				}
+		//Drawing the frame
+		invalidate();
+	}
+	
+	@Override
+	protected void onDraw(Canvas canvas) {
+		//Rounding out the view
+		canvas.save();
+		canvas.clipPath(clipPath);
+		
+		//Drawing the background
+		if(backgroundColor != Color.TRANSPARENT) {
+			backgroundPaint.setColor(ColorUtils.setAlphaComponent(backgroundColor, targetAlpha));
+			canvas.drawPaint(backgroundPaint);
+		}
+		
+		//Drawing the particles
+		drawParticles(canvas);
+		
+		canvas.restore();
+	}
+	
+	private void drawParticles(Canvas canvas) {
+		if(particleCount == 0) return;
+		
+		float width = getWidth();
+		float height = getHeight();
+		int alphaOffset = 0xFF - targetAlpha;
+		
+		//Sorting the particles into batches by their alpha
+		Arrays.fill(batchSizes, 0);
+		for(int i = 0; i < particleCount; i++) {
+			int alpha = calculateAlpha((float) particleTime[i] / (float) particleLifetime) - alphaOffset;
+			int batch = alpha <= 0 ? -1 : alpha * alphaBatchCount / 0x100;
+			particleBatch[i] = batch;
+			if(batch != -1) batchSizes[batch]++;
+		}
+		
+		//Working out where each batch starts
+		int offset = 0;
+		for(int batch = 0; batch < alphaBatchCount; batch++) {
+			batchOffsets[batch] = offset;
+			offset += batchSizes[batch];
+		}
+		
+		//Filling in the particle positions
+		for(int i = 0; i < particleCount; i++) {
+			int batch = particleBatch[i];
+			if(batch == -1) continue;
+			
+			float progress = (float) particleTime[i] / (float) particleLifetime;
+			int index = batchOffsets[batch]++ * 2;
+			particlePoints[index] = (particleX[i] + particleVelX[i] * particleVelocityPx * progress) * width;
+			particlePoints[index + 1] = (particleY[i] + particleVelY[i] * particleVelocityPx * progress) * height;
+		}
+		
+		//Drawing each batch
+		offset = 0;
+		for(int batch = 0; batch < alphaBatchCount; batch++) {
+			int size = batchSizes[batch];
+			if(size > 0) {
+				particlePaint.setAlpha((batch * 2 + 1) * 0x80 / alphaBatchCount);
+				canvas.drawPoints(particlePoints, offset * 2, size * 2, particlePaint);
 			}
-		} catch(Exception exception) {
-			exception.printStackTrace();
-			CrashlyticsBridge.recordException(exception);
-		} finally {
-			stop();
+			offset += size;
 		}
 	}
 	
 	@Override
 	protected void onAttachedToWindow() {
 		super.onAttachedToWindow();
-		onResume();
+		
+		//Getting the display's refresh rate
+		Display display = getDisplay();
+		refreshRate = display != null ? display.getRefreshRate() : defaultRefreshRate;
+		
+		updateRegistration();
 	}
 	
 	@Override
 	protected void onDetachedFromWindow() {
 		super.onDetachedFromWindow();
-		onPause();
+		updateRegistration();
 	}
 	
 	@Override
 	protected void onVisibilityChanged(View changedView, int visibility) {
 		super.onVisibilityChanged(changedView, visibility);
-		
-		if(visibility == VISIBLE) {
-			if(viewRequestedRunning) start();
-		} else stop();
+		updateRegistration();
 	}
 	
-	private static int calculateAlpha(float progress) {
-		if(progress < 0.1F) return (int) (progress * 10F * 255F);
-		else return 255 - (int) ((progress - 0.1F) * (10F / 9F) * 255F);
+	@Override
+	protected void onWindowVisibilityChanged(int visibility) {
+		super.onWindowVisibilityChanged(visibility);
+		updateRegistration();
 	}
 	
 	@Override
 	protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
 		if(isInEditMode()) return;
 		
-		//Setting the view sizes
-		viewWidth.set(width);
-		viewHeight.set(height);
-		
-		//Calculating the visible pixel count
-		visiblePixelCount = width * height;
-		
-		//Setting the layout pass as completed
-		boolean isFirst = !firstLayoutPassCompleted;
-		firstLayoutPassCompleted = true;
-		
-		//Returning if the isn't running
-		if(!viewRunning) return;
-		
-		//Requesting a view update
-		viewUpdateRequested = true;
-		
-		//Starting the thread if start() was called before this layout pass (and was unable to start because of a lack of layout data)
-		if(isFirst && surfaceAvailable && firstStartRequestCompleted) startThread();
+		updateClipPath();
+		updateRegistration();
 	}
 	
-	void processTargetView() {
-		//Rebuilding the particle list
-		int targetListSize = visiblePixelCount / pixelsPerParticle;
-		if(particleList == null) {
-			//Populating the particle list
-			particleList = new Particle[targetListSize];
-			for(int i = 0; i < targetListSize; i++) particleList[i] = new Particle();
-		} else {
-			int listSize = particleList.length;
-			if(listSize != targetListSize) {
-				//Resizing the array
-				particleList = Arrays.copyOf(particleList, targetListSize);
-				
-				//Filling in the blank values
-				for(int i = listSize; i < targetListSize; i++) particleList[i] = new Particle();
-			}
-		}
+	/**
+	 * Registers this view with the render engine while it is running and on screen, and unregisters it otherwise
+	 */
+	private void updateRegistration() {
+		if(isInEditMode()) return;
+		
+		boolean shouldRun = viewRequestedRunning && isAttachedToWindow() && getWindowVisibility() == VISIBLE && isShown() && getWidth() > 0 && getHeight() > 0;
+		if(shouldRun == viewRegistered) return;
+		viewRegistered = shouldRun;
+		
+		if(shouldRun) renderEngine.register(this);
+		else renderEngine.unregister(this);
 	}
 	
-	public void setState(boolean state) {
-		if(state) start();
-		else stop();
-		viewRequestedRunning = state;
+	private static int calculateAlpha(float progress) {
+		if(progress < 0.1F) return (int) (progress * 10F * 255F);
+		else return 255 - (int) ((progress - 0.1F) * (10F / 9F) * 255F);
 	}
 	
-	private void start() {
-		//Returning if the view is already running
-		if(viewRunning) return;
-		
-		//Setting the view as running
-		viewRunning = true;
+	/**
+	 * Grows or shrinks the particle arrays, creating new particles at random points in their life
+	 */
+	private void resizeParticles(int count) {
+		if(count == particleCount) return;
 		
-		//Requesting a view update
-		viewUpdateRequested = true;
+		//Growing the arrays if needed
+		if(count > particleX.length) {
+			particleX = Arrays.copyOf(particleX, count);
+			particleY = Arrays.copyOf(particleY, count);
+			particleVelX = Arrays.copyOf(particleVelX, count);
+			particleVelY = Arrays.copyOf(particleVelY, count);
+			particleTime = Arrays.copyOf(particleTime, count);
+			particleBatch = new int[count];
+			particlePoints = new float[count * 2];
+		}
 		
-		//Setting the start request as completed
-		firstStartRequestCompleted = true;
+		//Prewarming the new particles
+		for(int i = particleCount; i < count; i++) generateParticle(i, random.nextInt(particleLifetime));
 		
-		//Starting the thread if there has already been a layout pass
-		if(firstLayoutPassCompleted && surfaceAvailable) startThread();
+		particleCount = count;
 	}
 	
-	private void stop() {
-		//Returning if the view isn't running
-		if(!viewRunning) return;
+	/**
+	 * Picks a new random position and direction for a particle
+	 * The coordinates represent values 0.0 to 1.0, mapped to the view's size
+	 * @param index The index of the particle
+	 * @param time The time that the particle has already lived
+	 */
+	private void generateParticle(int index, int time) {
+		//Picking a random location
+		particleX[index] = random.nextFloat();
+		particleY[index] = random.nextFloat();
 		
-		//Setting the view as stopped
-		viewRunning = false;
+		//Picking a new velocity
+		float direction = random.nextFloat() * (float) Math.PI * 2F;
+		particleVelX[index] = (float) Math.cos(direction) - (float) Math.sin(direction);
+		particleVelY[index] = (float) Math.sin(direction) + (float) Math.cos(direction);
 		
-		try {
-			if(viewThread != null) viewThread.join();
-		} catch(InterruptedException exception) {
-			exception.printStackTrace();
-		} finally {
-			viewThread = null;
-		}
+		particleTime[index] = time;
 	}
 	
-	private void startThread() {
-		viewThread = new Thread(this);
-		viewThread.start();
+	public void setState(boolean state) {
+		viewRequestedRunning = state;
+		updateRegistration();
 	}
 	
 	public void onPause() {
-		stop();
+		renderEngine.unregister(this);
+		viewRegistered = false;
 	}
 	
 	public void onResume() {
-		if(viewRequestedRunning) start();
+		updateRegistration();
 	}
 	
 	public boolean reveal() {
-		viewRevealRequested = true;
-		return viewRevealRunning;
+		//Restarting the reveal from the current alpha
+		boolean revealRunning = revealTime > 0;
+		revealTime = timeRevealTransition * 2 + timeRevealStay;
+		startAlpha = targetAlpha;
+		return revealRunning;
 	}
 	
 	public void setRadii(float topLeft, float topRight, float bottomRight, float bottomLeft) {
 		//Setting the radii
-		viewRadiiLock.lock();
-		try {
-			viewRadii = new float[]{topLeft, topLeft,
-					topRight, topRight,
-					bottomRight, bottomRight,
-					bottomLeft, bottomLeft};
-		} finally {
-			viewRadiiLock.unlock();
-		}
+		viewRadii = new float[]{topLeft, topLeft,
+				topRight, topRight,
+				bottomRight, bottomRight,
+				bottomLeft, bottomLeft};
+		updateClipPath();
 	}
 	
 	public void setRadii(float[] radii) {
 		//Setting the radii
-		viewRadiiLock.lock();
-		try {
-			viewRadii = radii;
-		} finally {
-			viewRadiiLock.unlock();
-		}
+		viewRadii = radii;
+		updateClipPath();
 	}
 	
 	public void setBackgroundColor(int color) {
 		//Setting the background color
 		backgroundColor = color;
+		invalidate();
 	}
 	
 	/**
-	 * A class that represents a particle of the invisible ink
-	 * The coordinates represent values 0.0 to 1.0, mapped to the view's size
-	 * The creation date is used for timeLived
+	 * Rebuilds the rounded outline of the view after its size or radii change
 	 */
-	private class Particle {
-		float x, y;
-		float velX, velY;
-		int cycleTime;
-		
-		Particle() {
-			//Prewarming
-			generateState();
-			cycleTime = random.nextInt(particleLifetime);
-		}
-		
-		void generateState() {
-			//Picking a random location
-			x = random.nextFloat();
-			y = random.nextFloat();
-			
-			//Picking a new velocity
-			float direction = random.nextFloat() * (float) Math.PI * 2F;
-			velX = (float) Math.cos(direction) - (float) Math.sin(direction);
-			velY = (float) Math.sin(direction) + (float) Math.cos(direction);
-		}
-		
-		private void cycleParticle(int timeDiff) {
-			//Adding to the cycle time
-			int newTime = cycleTime + timeDiff;
-			if(newTime >= particleLifetime) {
-				//Cycling the time
-				cycleTime = newTime % particleLifetime;
-				
-				//Regenerating the state
-				generateState();
-				
-				
-			} else cycleTime = newTime;
-		}
-		
-		/**
-		 * Calculates the values required for the frame, recycling the particle if it has exceeded its timeLived
-		 * @param locOut The X and the Y location of the particle
-		 * @return The progress of the particle (timeLived)
-		 */
-		float calculateFrame(int timeDiff, float[] locOut) {
-			//Cycling the particle (making a new particle with the current instance) if needed
-			cycleParticle(timeDiff);
-			
-			//Calculating the progress (from life to death - 0.0 to 1.0)
-			float progress = (float) cycleTime / (float) particleLifetime;
-			
-			//Calculating the position
-			locOut[0] = x + velX * particleVelocityPx * progress;
-			locOut[1] = y + velY * particleVelocityPx * progress;
-			
-			//Returning the progress
-			return progress;
-		}
-	}
-	
-	private static long getTime() {
-		return SystemClock.uptimeMillis();
+	private void updateClipPath() {
+		clipPath.reset();
+		clipRect.set(0, 0, getWidth(), getHeight());
+		clipPath.addRoundRect(clipRect, viewRadii, Path.Direction.CW);
+		invalidate();
 	}
 	
 	private static float dpToPx(float dp) {
 		return dp * Resources.getSystem().getDisplayMetrics().density;
 	}
 	
-	private static float pxToDp(float px) {
-		return px / Resources.getSystem().getDisplayMetrics().density;
-	}
-	
 	private static int lerpInt(int start, int end, float progress) {
 		return start + (int) ((end - start) * progress);
 	}
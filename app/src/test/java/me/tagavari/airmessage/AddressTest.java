@@ -33,10 +33,31 @@ public class AddressTest {
 		assertThat(AddressHelper.validatePhoneNumber("(123a 456-7890")).isFalse();
 	}
 	
+	@Test
+	public void testPhoneValidationEdgeCases() {
+		assertThat(AddressHelper.validatePhoneNumber("+12")).isTrue();
+		assertThat(AddressHelper.validatePhoneNumber("+1 (555) 123-4567")).isTrue();
+		assertThat(AddressHelper.validatePhoneNumber("555.123.4567")).isTrue();
+		assertThat(AddressHelper.validatePhoneNumber("1 2 3")).isTrue();
+		
+		assertThat(AddressHelper.validatePhoneNumber("")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("+")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("+1")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("---")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("++123")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("123+456")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("1234567890\n")).isFalse();
+		assertThat(AddressHelper.validatePhoneNumber("email@example.com")).isFalse();
+	}
+	
 	@Test
 	public void testStripPhoneNumber() {
 		assertThat(AddressHelper.stripPhoneNumber("1234567890")).isEqualTo("1234567890");
 		assertThat(AddressHelper.stripPhoneNumber("(123) 456-7890")).isEqualTo("1234567890");
 		assertThat(AddressHelper.stripPhoneNumber("(123) 456-CLOUD7890")).isEqualTo("1234567890");
+		assertThat(AddressHelper.stripPhoneNumber("+1 (555) 123-4567")).isEqualTo("15551234567");
+		assertThat(AddressHelper.stripPhoneNumber("12345-")).isEqualTo("12345");
+		assertThat(AddressHelper.stripPhoneNumber("")).isEqualTo("");
+		assertThat(AddressHelper.stripPhoneNumber("CLOUD")).isEqualTo("");
 	}
 }
\ No newline at end of file
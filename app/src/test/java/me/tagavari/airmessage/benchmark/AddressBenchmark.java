@@ -0,0 +1,83 @@
+package me.tagavari.airmessage.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.regex.Pattern;
+
+import me.tagavari.airmessage.helper.AddressHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Benchmarks for address validation and normalization, compared against the previous regex-based implementation
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = android.app.Application.class)
+public class AddressBenchmark {
+	private static final String[] addresses = {
+			"+1 (555) 123-4567",
+			"5551234567",
+			"555.123.4567",
+			"+15551234567",
+			"hello@airmessage.org",
+			"(123a 456-7890"
+	};
+	
+	private static final Pattern regexPhoneNumber = Pattern.compile("^\\+?[ \\d().-]+$");
+	
+	@Test
+	public void benchmarkValidatePhoneNumber() throws Exception {
+		for(String address : addresses) {
+			assertThat(AddressHelper.validatePhoneNumber(address)).isEqualTo(validatePhoneNumberRegex(address));
+		}
+		
+		MicroBenchmark.run("validatePhoneNumber (regex)", () -> {
+			int count = 0;
+			for(String address : addresses) if(validatePhoneNumberRegex(address)) count++;
+			return count;
+		});
+		MicroBenchmark.run("AddressHelper.validatePhoneNumber", () -> {
+			int count = 0;
+			for(String address : addresses) if(AddressHelper.validatePhoneNumber(address)) count++;
+			return count;
+		});
+	}
+	
+	@Test
+	public void benchmarkStripPhoneNumber() throws Exception {
+		for(String address : addresses) {
+			assertThat(AddressHelper.stripPhoneNumber(address)).isEqualTo(stripPhoneNumberRegex(address));
+		}
+		
+		MicroBenchmark.run("stripPhoneNumber (regex)", () -> {
+			int length = 0;
+			for(String address : addresses) length += stripPhoneNumberRegex(address).length();
+			return length;
+		});
+		MicroBenchmark.run("AddressHelper.stripPhoneNumber", () -> {
+			int length = 0;
+			for(String address : addresses) length += AddressHelper.stripPhoneNumber(address).length();
+			return length;
+		});
+	}
+	
+	@Test
+	public void benchmarkNormalizeAddress() throws Exception {
+		MicroBenchmark.run("AddressHelper.normalizeAddress", () -> {
+			int length = 0;
+			for(String address : addresses) length += AddressHelper.normalizeAddress(address).length();
+			return length;
+		});
+	}
+	
+	private static boolean validatePhoneNumberRegex(String address) {
+		return address.replaceAll("[^\\d+]", "").length() >= 3 && regexPhoneNumber.matcher(address).matches();
+	}
+	
+	private static String stripPhoneNumberRegex(String address) {
+		return address.replaceAll("[^\\d]", "");
+	}
+}
\ No newline at end of file
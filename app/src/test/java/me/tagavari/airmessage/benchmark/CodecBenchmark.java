@@ -0,0 +1,83 @@
+package me.tagavari.airmessage.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import me.tagavari.airmessage.connection.encryption.EncryptionAES;
+import me.tagavari.airmessage.helper.LookAheadStreamIterator;
+import me.tagavari.airmessage.helper.StandardCompressionHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Benchmarks for encryption, compression and stream chunking
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = android.app.Application.class)
+public class CodecBenchmark {
+	private static final int[] payloadSizes = {1024, 64 * 1024, 1024 * 1024}; //1 kB, 64 kB, 1 MB
+	
+	@Test
+	public void benchmarkEncryption() throws Exception {
+		EncryptionAES encryption = new EncryptionAES("benchmark-password");
+		for(int size : payloadSizes) {
+			byte[] data = createPayload(size, false);
+			byte[] encrypted = encryption.encrypt(data);
+			assertThat(encryption.decrypt(encrypted)).isEqualTo(data);
+			
+			MicroBenchmark.run("EncryptionAES.encrypt " + describeSize(size), () -> encryption.encrypt(data));
+			MicroBenchmark.run("EncryptionAES.decrypt " + describeSize(size), () -> encryption.decrypt(encrypted));
+		}
+	}
+	
+	@Test
+	public void benchmarkCompression() throws Exception {
+		for(int size : payloadSizes) {
+			byte[] data = createPayload(size, true);
+			byte[] compressed = StandardCompressionHelper.compressDeflate(data);
+			assertThat(StandardCompressionHelper.decompressDeflate(compressed)).isEqualTo(data);
+			
+			MicroBenchmark.run("StandardCompressionHelper.deflate " + describeSize(size), () -> StandardCompressionHelper.compressDeflate(data));
+			MicroBenchmark.run("StandardCompressionHelper.inflate " + describeSize(size), () -> StandardCompressionHelper.decompressDeflate(compressed));
+		}
+	}
+	
+	@Test
+	public void benchmarkStreamChunking() throws Exception {
+		byte[] data = createPayload(4 * 1024 * 1024, false); //4 MB
+		int chunkSize = 1024 * 1024; //1 MB
+		
+		MicroBenchmark.run("LookAheadStreamIterator 4 MB / 1 MB chunks", () -> {
+			LookAheadStreamIterator iterator = new LookAheadStreamIterator(chunkSize, new ByteArrayInputStream(data));
+			long total = 0;
+			while(iterator.hasNext()) total += iterator.next().getLength();
+			return total;
+		});
+	}
+	
+	/**
+	 * Creates a deterministic payload
+	 * @param size The size of the payload
+	 * @param compressible Whether the payload should resemble text, rather than random data
+	 */
+	private static byte[] createPayload(int size, boolean compressible) {
+		Random random = new Random(size);
+		byte[] data = new byte[size];
+		if(compressible) {
+			for(int i = 0; i < size; i++) data[i] = (byte) ('a' + random.nextInt(8));
+		} else {
+			random.nextBytes(data);
+		}
+		return data;
+	}
+	
+	private static String describeSize(int size) {
+		if(size >= 1024 * 1024) return (size / (1024 * 1024)) + " MB";
+		else return (size / 1024) + " kB";
+	}
+}
\ No newline at end of file
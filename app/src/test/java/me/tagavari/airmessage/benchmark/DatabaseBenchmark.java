@@ -0,0 +1,84 @@
+package me.tagavari.airmessage.benchmark;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import me.tagavari.airmessage.common.Blocks;
+import me.tagavari.airmessage.connection.comm5.AirUnpacker;
+import me.tagavari.airmessage.connection.comm5.ClientProtocol5;
+import me.tagavari.airmessage.data.DatabaseManager;
+import me.tagavari.airmessage.enums.ConversationState;
+import me.tagavari.airmessage.enums.ServiceHandler;
+import me.tagavari.airmessage.enums.ServiceType;
+import me.tagavari.airmessage.messaging.ConversationInfo;
+import me.tagavari.airmessage.messaging.MemberInfo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Benchmarks for inserting and loading conversation items from the database
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = android.app.Application.class)
+public class DatabaseBenchmark {
+	private static final int messageCount = 500;
+	
+	private Context context;
+	private List<Blocks.ConversationItem> conversationItems;
+	
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		DatabaseManager.createInstance(context);
+		
+		//Text-only items, since attachments are resolved against the application's storage
+		List<Blocks.ConversationItem> items = ClientProtocol5.unpackConversationItems(new AirUnpacker(ProtocolBenchmark.createConversationItemsPayload(messageCount)));
+		conversationItems = new ArrayList<>(items.size());
+		for(Blocks.ConversationItem item : items) {
+			if(item instanceof Blocks.MessageInfo && !((Blocks.MessageInfo) item).attachments.isEmpty()) continue;
+			conversationItems.add(item);
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		DatabaseManager.disposeInstance();
+	}
+	
+	@Test
+	public void benchmarkInsertAndLoad() throws Exception {
+		DatabaseManager databaseManager = DatabaseManager.getInstance();
+		
+		//Inserting a conversation to benchmark against
+		ConversationInfo conversationInfo = new ConversationInfo(-1, "chat-guid-0", -1, ConversationState.ready, ServiceHandler.appleBridge, ServiceType.appleMessage, 0xFF000000, new ArrayList<>(Collections.singletonList(new MemberInfo("+15550104477", 0xFF000000))), null);
+		assertThat(databaseManager.addConversationInfo(conversationInfo)).isTrue();
+		long conversationID = conversationInfo.getLocalID();
+		
+		//Inserting the items
+		long insertStart = System.nanoTime();
+		for(Blocks.ConversationItem item : conversationItems) {
+			databaseManager.addConversationStruct(context, conversationID, item, true);
+		}
+		long insertNanos = System.nanoTime() - insertStart;
+		System.out.println(String.format(Locale.ROOT, "%-48s %14.1f ns/op  (%d items)", "DatabaseManager.addConversationStruct", (double) insertNanos / conversationItems.size(), conversationItems.size()));
+		
+		assertThat(databaseManager.loadConversationItems(context, conversationID)).hasSize(conversationItems.size());
+		
+		//Loading the items
+		MicroBenchmark.run("DatabaseManager.loadConversationItems x" + conversationItems.size(), 2, 5, 500_000_000L, () -> databaseManager.loadConversationItems(context, conversationID));
+		MicroBenchmark.run("DatabaseManager.fetchConversationsWithState", 2, 5, 500_000_000L, () -> databaseManager.fetchConversationsWithState(context, ConversationState.ready));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package me.tagavari.airmessage.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A minimal JMH-style harness for timing hot paths inside unit tests
+ *
+ * Each benchmark is run for a number of warmup iterations, then measured over several iterations,
+ * with the median time per operation reported to standard output
+ */
+public class MicroBenchmark {
+	//Creating the default values
+	private static final int defaultWarmupIterations = 5;
+	private static final int defaultMeasureIterations = 10;
+	private static final long defaultIterationNanos = 100_000_000L; //100 ms
+	
+	//Results are written here to keep the JIT from discarding the benchmarked work
+	private static volatile Object sink;
+	
+	public interface Operation {
+		Object run() throws Exception;
+	}
+	
+	/**
+	 * Runs and reports a benchmark with the default iteration settings
+	 * @param name The name of the benchmark
+	 * @param operation The operation to measure
+	 * @return The median time per operation in nanoseconds
+	 */
+	public static double run(String name, Operation operation) throws Exception {
+		return run(name, defaultWarmupIterations, defaultMeasureIterations, defaultIterationNanos, operation);
+	}
+	
+	/**
+	 * Runs and reports a benchmark
+	 * @param name The name of the benchmark
+	 * @param warmupIterations The number of unmeasured iterations to run first
+	 * @param measureIterations The number of measured iterations
+	 * @param iterationNanos The target length of each iteration
+	 * @param operation The operation to measure
+	 * @return The median time per operation in nanoseconds
+	 */
+	public static double run(String name, int warmupIterations, int measureIterations, long iterationNanos, Operation operation) throws Exception {
+		//Calibrating the number of operations per iteration
+		long calibrationStart = System.nanoTime();
+		sink = operation.run();
+		long singleNanos = Math.max(1, System.nanoTime() - calibrationStart);
+		int batchSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, iterationNanos / singleNanos));
+		
+		//Warming up
+		for(int i = 0; i < warmupIterations; i++) runBatch(operation, batchSize);
+		
+		//Measuring
+		double[] results = new double[measureIterations];
+		for(int i = 0; i < measureIterations; i++) {
+			results[i] = (double) runBatch(operation, batchSize) / batchSize;
+		}
+		Arrays.sort(results);
+		double median = results[results.length / 2];
+		
+		System.out.println(String.format(Locale.ROOT, "%-48s %14.1f ns/op  (min %.1f, max %.1f, %d ops/iteration)", name, median, results[0], results[results.length - 1], batchSize));
+		return median;
+	}
+	
+	private static long runBatch(Operation operation, int batchSize) throws Exception {
+		long start = System.nanoTime();
+		for(int i = 0; i < batchSize; i++) sink = operation.run();
+		return System.nanoTime() - start;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,165 @@
+package me.tagavari.airmessage.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.Random;
+
+import me.tagavari.airmessage.common.Blocks;
+import me.tagavari.airmessage.connection.comm5.AirPacker;
+import me.tagavari.airmessage.connection.comm5.AirUnpacker;
+import me.tagavari.airmessage.connection.comm5.ClientProtocol5;
+import me.tagavari.airmessage.helper.AddressHelper;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Benchmarks for packing and unpacking protocol data
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = android.app.Application.class)
+public class ProtocolBenchmark {
+	//Protocol values, mirroring ClientProtocol5
+	private static final int nstItemMessage = 0;
+	private static final int nstItemGroupAction = 1;
+	private static final int nstModifierTapback = 2;
+	private static final int nstMessageStateRead = 3;
+	
+	private static final int messageCount = 1000;
+	private static final int packerCapacity = 4 * 1024 * 1024; //4 MiB
+	
+	@Test
+	public void benchmarkPackerRoundTrip() throws Exception {
+		AirPacker packer = new AirPacker(packerCapacity);
+		String text = "Are we still on for dinner tonight? I was thinking around 7 🍕";
+		byte[] payload = new byte[16 * 1024];
+		new Random(0).nextBytes(payload);
+		
+		MicroBenchmark.run("AirPacker/AirUnpacker round trip", () -> {
+			packer.reset();
+			packer.packInt(nstItemMessage);
+			packer.packLong(System.currentTimeMillis());
+			packer.packString(text);
+			packer.packNullableString(null);
+			packer.packPayload(payload);
+			
+			AirUnpacker unpacker = new AirUnpacker(packer.toByteArray());
+			unpacker.unpackInt();
+			unpacker.unpackLong();
+			unpacker.unpackString();
+			unpacker.unpackNullableString();
+			return unpacker.unpackPayload();
+		});
+	}
+	
+	@Test
+	public void benchmarkUnpackConversationItems() throws Exception {
+		byte[] data = createConversationItemsPayload(messageCount);
+		assertThat(ClientProtocol5.unpackConversationItems(new AirUnpacker(data))).hasSize(messageCount);
+		
+		MicroBenchmark.run("ClientProtocol5.unpackConversationItems x" + messageCount, () -> {
+			List<Blocks.ConversationItem> items = ClientProtocol5.unpackConversationItems(new AirUnpacker(data));
+			return items.size();
+		});
+	}
+	
+	@Test
+	public void benchmarkNormalizeAddress() throws Exception {
+		String[] addresses = {
+				"(555) 010-4477",
+				"+1 555 010 4477",
+				"555.010.4477",
+				"someone@example.com",
+				"+44 20 7946 0018"
+		};
+		
+		MicroBenchmark.run("AddressHelper.normalizeAddress", () -> {
+			int length = 0;
+			for(String address : addresses) length += AddressHelper.normalizeAddress(address).length();
+			return length;
+		});
+	}
+	
+	/**
+	 * Packs a list of conversation items resembling a typical history download,
+	 * with a mix of messages, attachments, tapbacks and group actions
+	 * @param count The number of items to pack
+	 * @return The packed data
+	 */
+	static byte[] createConversationItemsPayload(int count) {
+		Random random = new Random(count);
+		AirPacker packer = new AirPacker(packerCapacity);
+		
+		packer.packArrayHeader(count);
+		for(int i = 0; i < count; i++) {
+			boolean isAction = i % 50 == 49;
+			packer.packInt(isAction ? nstItemGroupAction : nstItemMessage);
+			packer.packLong(i);
+			packer.packString("message-guid-" + i);
+			packer.packString("chat-guid-" + (i % 8));
+			packer.packLong(1_600_000_000_000L + i * 60_000L);
+			
+			if(isAction) {
+				packer.packNullableString("+15550104477");
+				packer.packNullableString("someone@example.com");
+				packer.packInt(1);
+				continue;
+			}
+			
+			//Text, subject and sender
+			packer.packNullableString(createText(random, 10 + random.nextInt(150)));
+			packer.packNullableString(null);
+			packer.packNullableString(i % 2 == 0 ? null : "+15550104477");
+			
+			//Attachments
+			if(i % 10 == 0) {
+				packer.packArrayHeader(1);
+				packer.packString("attachment-guid-" + i);
+				packer.packString("IMG_" + i + ".jpeg");
+				packer.packNullableString("image/jpeg");
+				packer.packLong(1024 * 1024);
+				byte[] checksum = new byte[16];
+				random.nextBytes(checksum);
+				packer.packNullablePayload(checksum);
+				packer.packLong(i);
+			} else {
+				packer.packArrayHeader(0);
+			}
+			
+			//Stickers
+			packer.packArrayHeader(0);
+			
+			//Tapbacks
+			if(i % 5 == 0) {
+				packer.packArrayHeader(1);
+				packer.packInt(nstModifierTapback);
+				packer.packString("message-guid-" + i);
+				packer.packInt(0);
+				packer.packNullableString("+15550104477");
+				packer.packBoolean(true);
+				packer.packInt(0);
+			} else {
+				packer.packArrayHeader(0);
+			}
+			
+			//Send effect, state, error and read date
+			packer.packNullableString(null);
+			packer.packInt(nstMessageStateRead);
+			packer.packInt(0);
+			packer.packLong(1_600_000_000_000L + i * 60_000L);
+		}
+		
+		return packer.toByteArray();
+	}
+	
+	private static String createText(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for(int i = 0; i < length; i++) {
+			builder.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+		}
+		return builder.toString();
+	}
+}
\ No newline at end of file
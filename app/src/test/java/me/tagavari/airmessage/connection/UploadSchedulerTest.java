@@ -0,0 +1,182 @@
+package me.tagavari.airmessage.connection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import me.tagavari.airmessage.redux.ReduxEventAttachmentUpload;
+import me.tagavari.airmessage.util.ConversationTarget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class UploadSchedulerTest {
+	private static final long smallFileSize = 1024; //1 kB
+	private static final long largeFileSize = 100 * 1024 * 1024; //100 MB
+	
+	private static final ConversationTarget conversationA = new ConversationTarget.AppleLinked("a");
+	private static final ConversationTarget conversationB = new ConversationTarget.AppleLinked("b");
+	private static final ConversationTarget conversationC = new ConversationTarget.AppleLinked("c");
+	private static final ConversationTarget conversationD = new ConversationTarget.AppleLinked("d");
+	
+	private UploadScheduler uploadScheduler;
+	
+	private final List<Throwable> undeliverableErrors = new CopyOnWriteArrayList<>();
+	
+	@Before
+	public void setUp() {
+		//Running uploads on the calling thread, so tests can check which uploads have started
+		uploadScheduler = new UploadScheduler(Schedulers.trampoline());
+		
+		//Capturing errors that would otherwise crash the app
+		RxJavaPlugins.setErrorHandler(undeliverableErrors::add);
+	}
+	
+	@After
+	public void tearDown() {
+		RxJavaPlugins.reset();
+	}
+	
+	@Test
+	public void testSameConversationRunsInOrder() {
+		PublishSubject<ReduxEventAttachmentUpload> upload1 = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> upload2 = PublishSubject.create();
+		TestObserver<ReduxEventAttachmentUpload> observer1 = uploadScheduler.schedule(conversationA, largeFileSize, false, upload1).test();
+		TestObserver<ReduxEventAttachmentUpload> observer2 = uploadScheduler.schedule(conversationA, smallFileSize, false, upload2).test();
+		
+		//The second upload should wait for the first
+		assertThat(upload1.hasObservers()).isTrue();
+		assertThat(upload2.hasObservers()).isFalse();
+		assertThat(observer2.values()).containsExactly(new ReduxEventAttachmentUpload.Queued(0));
+		
+		//The second upload should start once the first finishes
+		upload1.onComplete();
+		observer1.assertComplete();
+		assertThat(upload2.hasObservers()).isTrue();
+		assertThat(observer2.values()).containsExactly(new ReduxEventAttachmentUpload.Queued(0), new ReduxEventAttachmentUpload.Progress(0, smallFileSize)).inOrder();
+	}
+	
+	@Test
+	public void testDifferentConversationsRunConcurrently() {
+		PublishSubject<ReduxEventAttachmentUpload> upload1 = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> upload2 = PublishSubject.create();
+		uploadScheduler.schedule(conversationA, largeFileSize, false, upload1).test();
+		uploadScheduler.schedule(conversationB, largeFileSize, false, upload2).test();
+		
+		assertThat(upload1.hasObservers()).isTrue();
+		assertThat(upload2.hasObservers()).isTrue();
+	}
+	
+	@Test
+	public void testLargeUploadsLeaveRoomForSmallUploads() {
+		PublishSubject<ReduxEventAttachmentUpload> uploadA = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> uploadB = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> uploadC = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> uploadD = PublishSubject.create();
+		uploadScheduler.schedule(conversationA, largeFileSize, false, uploadA).test();
+		uploadScheduler.schedule(conversationB, largeFileSize, false, uploadB).test();
+		TestObserver<ReduxEventAttachmentUpload> observerC = uploadScheduler.schedule(conversationC, largeFileSize, false, uploadC).test();
+		uploadScheduler.schedule(conversationD, smallFileSize, false, uploadD).test();
+		
+		//The third large upload should wait, but the small upload shouldn't
+		assertThat(uploadC.hasObservers()).isFalse();
+		assertThat(observerC.values()).containsExactly(new ReduxEventAttachmentUpload.Queued(0));
+		assertThat(uploadD.hasObservers()).isTrue();
+		
+		//The third large upload should start once there is room
+		uploadA.onComplete();
+		assertThat(uploadC.hasObservers()).isTrue();
+	}
+	
+	@Test
+	public void testSmallFileOvertakesWhenAllowed() {
+		PublishSubject<ReduxEventAttachmentUpload> uploadLarge = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> uploadSmall = PublishSubject.create();
+		uploadScheduler.schedule(conversationA, largeFileSize, true, uploadLarge).test();
+		uploadScheduler.schedule(conversationA, smallFileSize, true, uploadSmall).test();
+		
+		assertThat(uploadLarge.hasObservers()).isTrue();
+		assertThat(uploadSmall.hasObservers()).isTrue();
+	}
+	
+	@Test
+	public void testSmallFileWaitsWhenNotAllowed() {
+		PublishSubject<ReduxEventAttachmentUpload> uploadLarge = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> uploadSmall1 = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> uploadSmall2 = PublishSubject.create();
+		uploadScheduler.schedule(conversationA, largeFileSize, false, uploadLarge).test();
+		uploadScheduler.schedule(conversationA, smallFileSize, false, uploadSmall1).test();
+		uploadScheduler.schedule(conversationA, smallFileSize, true, uploadSmall2).test();
+		
+		//A small file may overtake large files, but not a small file that isn't allowed to
+		assertThat(uploadSmall1.hasObservers()).isFalse();
+		assertThat(uploadSmall2.hasObservers()).isFalse();
+	}
+	
+	@Test
+	public void testCancelledUploadLeavesQueue() {
+		PublishSubject<ReduxEventAttachmentUpload> upload1 = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> upload2 = PublishSubject.create();
+		PublishSubject<ReduxEventAttachmentUpload> upload3 = PublishSubject.create();
+		uploadScheduler.schedule(conversationA, largeFileSize, false, upload1).test();
+		TestObserver<ReduxEventAttachmentUpload> observer2 = uploadScheduler.schedule(conversationA, largeFileSize, false, upload2).test();
+		TestObserver<ReduxEventAttachmentUpload> observer3 = uploadScheduler.schedule(conversationA, largeFileSize, false, upload3).test();
+		assertThat(observer3.values()).containsExactly(new ReduxEventAttachmentUpload.Queued(1));
+		
+		//Cancelling the second upload should move the third one up
+		observer2.dispose();
+		assertThat(observer3.values()).containsExactly(new ReduxEventAttachmentUpload.Queued(1), new ReduxEventAttachmentUpload.Queued(0)).inOrder();
+		
+		//The second upload should never start
+		upload1.onComplete();
+		assertThat(upload2.hasObservers()).isFalse();
+		assertThat(upload3.hasObservers()).isTrue();
+	}
+	
+	@Test
+	public void testCancelledRunningUploadReportsNoError() throws InterruptedException {
+		//Running uploads on an interrupting scheduler, like the app does
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			UploadScheduler interruptingScheduler = new UploadScheduler(Schedulers.from(executor, true));
+			
+			CountDownLatch startedLatch = new CountDownLatch(1);
+			CountDownLatch stoppedLatch = new CountDownLatch(1);
+			Observable<ReduxEventAttachmentUpload> upload = Observable.create(emitter -> {
+				startedLatch.countDown();
+				try {
+					//Blocking until the upload is cancelled
+					Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+				} catch(InterruptedException exception) {
+					//Failing the way an upload does when its thread is interrupted
+					emitter.tryOnError(new IOException(exception));
+				} finally {
+					stoppedLatch.countDown();
+				}
+			});
+			
+			TestObserver<ReduxEventAttachmentUpload> observer = interruptingScheduler.schedule(conversationA, smallFileSize, false, upload).test();
+			assertThat(startedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+			
+			//Cancelling the upload should interrupt it, without its failure escaping as an undeliverable error
+			observer.dispose();
+			assertThat(stoppedLatch.await(5, TimeUnit.SECONDS)).isTrue();
+			observer.assertNoErrors();
+			assertThat(undeliverableErrors).isEmpty();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
\ No newline at end of file
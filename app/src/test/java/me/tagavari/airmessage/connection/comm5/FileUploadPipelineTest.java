@@ -0,0 +1,176 @@
+package me.tagavari.airmessage.connection.comm5;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.InflaterOutputStream;
+
+import me.tagavari.airmessage.connection.DataProxy;
+import me.tagavari.airmessage.util.ConnectionParams;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class FileUploadPipelineTest {
+	private static final int chunkSize = 64 * 1024; //64 kB
+	
+	private File file;
+	private ExecutorService networkExecutor;
+	
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("upload", ".bin");
+		networkExecutor = Executors.newSingleThreadExecutor();
+	}
+	
+	@After
+	public void tearDown() {
+		file.delete();
+		networkExecutor.shutdownNow();
+	}
+	
+	@Test
+	public void testEmptyFile() throws Exception {
+		testUpload(0);
+	}
+	
+	@Test
+	public void testSingleChunk() throws Exception {
+		testUpload(1000);
+	}
+	
+	@Test
+	public void testMultipleChunks() throws Exception {
+		testUpload(2 * 1024 * 1024 + 7);
+	}
+	
+	@Test
+	public void testFailedSend() throws Exception {
+		Files.write(file.toPath(), createData(1000));
+		
+		FileUploadPipeline pipeline = createPipeline(new TestProxy(null));
+		assertThrows(IOException.class, () -> pipeline.upload(file, () -> false, bytes -> {}));
+	}
+	
+	@Test
+	public void testDroppedPacket() throws Exception {
+		Files.write(file.toPath(), createData(1000));
+		
+		//The upload should fail as soon as the connection drops a packet, rather than waiting for it to time out
+		FileUploadPipeline pipeline = createPipeline(new TestProxy(EncryptedPacket::notifyFailed));
+		long startTime = System.nanoTime();
+		assertThrows(IOException.class, () -> pipeline.upload(file, () -> false, bytes -> {}));
+		assertThat(System.nanoTime() - startTime).isLessThan(TimeUnit.SECONDS.toNanos(10));
+	}
+	
+	@Test
+	public void testCancelledWhileWaitingForSend() throws Exception {
+		Files.write(file.toPath(), createData(1000));
+		
+		//The upload should stop once cancelled, even if the connection never sends its packets
+		FileUploadPipeline pipeline = createPipeline(new TestProxy(packet -> {}));
+		long cancelTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+		long startTime = System.nanoTime();
+		assertThat(pipeline.upload(file, () -> System.nanoTime() > cancelTime, bytes -> {})).isNull();
+		assertThat(System.nanoTime() - startTime).isLessThan(TimeUnit.SECONDS.toNanos(10));
+	}
+	
+	private void testUpload(int size) throws Exception {
+		byte[] data = createData(size);
+		Files.write(file.toPath(), data);
+		
+		List<byte[]> sentPackets = Collections.synchronizedList(new ArrayList<>());
+		List<Long> progress = new ArrayList<>();
+		byte[] checksum = createPipeline(new TestProxy(packet -> {
+			sentPackets.add(packet.getData());
+			packet.notifySent();
+		})).upload(file, () -> false, progress::add);
+		
+		//Checking the packets
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try(InflaterOutputStream inflaterStream = new InflaterOutputStream(outputStream)) {
+			for(int i = 0; i < sentPackets.size(); i++) {
+				ByteBuffer packet = ByteBuffer.wrap(sentPackets.get(i));
+				assertThat(packet.getInt()).isEqualTo(i);
+				assertThat(packet.get() == 1).isEqualTo(i == sentPackets.size() - 1);
+				
+				int length = packet.getInt();
+				inflaterStream.write(packet.array(), packet.position(), length);
+			}
+		}
+		assertThat(outputStream.toByteArray()).isEqualTo(data);
+		assertThat(checksum).isEqualTo(MessageDigest.getInstance("MD5").digest(data));
+		
+		//Checking the progress
+		assertThat(progress).hasSize(sentPackets.size());
+		assertThat(progress).isInOrder();
+		assertThat(progress.get(progress.size() - 1)).isEqualTo(size);
+	}
+	
+	private static FileUploadPipeline createPipeline(DataProxy<EncryptedPacket> dataProxy) {
+		return new FileUploadPipeline(dataProxy, "MD5", chunkSize, (packer, requestIndex, isLast, data, length) -> {
+			packer.packInt(requestIndex);
+			packer.packBoolean(isLast);
+			packer.packPayload(data, length);
+		});
+	}
+	
+	private static byte[] createData(int size) {
+		//Creating somewhat compressible data
+		Random random = new Random(size);
+		byte[] data = new byte[size];
+		for(int i = 0; i < size; i++) data[i] = random.nextInt(4) == 0 ? (byte) random.nextInt() : (byte) (i / 100);
+		return data;
+	}
+	
+	/**
+	 * A data proxy that handles sent packets on a separate thread, or fails to send if no handler is provided
+	 */
+	private class TestProxy extends DataProxy<EncryptedPacket> {
+		@Nullable private final Consumer<EncryptedPacket> networkHandler;
+		
+		TestProxy(@Nullable Consumer<EncryptedPacket> networkHandler) {
+			this.networkHandler = networkHandler;
+		}
+		
+		@Override
+		public void start(Context context, @Nullable ConnectionParams override) {
+		}
+		
+		@Override
+		public void stop(int code) {
+		}
+		
+		@Override
+		public boolean send(EncryptedPacket packet) {
+			if(networkHandler == null) return false;
+			
+			networkExecutor.execute(() -> networkHandler.accept(packet));
+			return true;
+		}
+		
+		@Override
+		public boolean isUsingFallback() {
+			return false;
+		}
+	}
+}
\ No newline at end of file
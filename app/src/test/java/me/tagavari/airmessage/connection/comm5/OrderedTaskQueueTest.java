@@ -0,0 +1,63 @@
+package me.tagavari.airmessage.connection.comm5;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class OrderedTaskQueueTest {
+	//Holding tasks until the test runs them, so tests can control the order that they finish in
+	private final List<Runnable> pendingTasks = new ArrayList<>();
+	private final List<Integer> results = new ArrayList<>();
+	
+	private OrderedTaskQueue<Integer> queue;
+	
+	@Before
+	public void setUp() {
+		queue = new OrderedTaskQueue<>(pendingTasks::add, results::add);
+	}
+	
+	@Test
+	public void testResultsDeliveredInOrder() {
+		for(int i = 0; i < 3; i++) {
+			int value = i;
+			queue.submit(() -> value);
+		}
+		
+		//Later tasks should be held until earlier tasks finish
+		pendingTasks.get(2).run();
+		pendingTasks.get(1).run();
+		assertThat(results).isEmpty();
+		
+		//All tasks should be delivered once the first task finishes
+		pendingTasks.get(0).run();
+		assertThat(results).containsExactly(0, 1, 2).inOrder();
+	}
+	
+	@Test
+	public void testFailedTaskIsSkipped() {
+		queue.submit(() -> {
+			throw new IllegalStateException();
+		});
+		queue.submit(() -> null);
+		queue.submit(() -> 2);
+		
+		pendingTasks.get(2).run();
+		pendingTasks.get(1).run();
+		pendingTasks.get(0).run();
+		assertThat(results).containsExactly(2);
+	}
+	
+	@Test
+	public void testClosedQueueDeliversNothing() {
+		queue.submit(() -> 0);
+		queue.close();
+		queue.submit(() -> 1);
+		
+		for(Runnable task : pendingTasks) task.run();
+		assertThat(results).isEmpty();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package me.tagavari.airmessage.connection.comm5;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class RacingConnectorTest {
+	private static final String loopback = "127.0.0.1";
+	private static final int timeout = 2000;
+	
+	private ServerSocket serverPrimary, serverFallback;
+	
+	@Before
+	public void setUp() throws IOException {
+		RacingConnector.clearPreferences();
+		serverPrimary = new ServerSocket(0, 50, InetAddress.getByName(loopback));
+		serverFallback = new ServerSocket(0, 50, InetAddress.getByName(loopback));
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		serverPrimary.close();
+		serverFallback.close();
+		RacingConnector.clearPreferences();
+	}
+	
+	@Test
+	public void testPrimaryPreferred() throws Exception {
+		RacingConnector.Result result = connect("network");
+		assertThat(result.isFallback).isFalse();
+		assertThat(result.socket.getPort()).isEqualTo(serverPrimary.getLocalPort());
+		result.socket.close();
+	}
+	
+	@Test
+	public void testFallbackOnPrimaryFailure() throws Exception {
+		serverPrimary.close();
+		
+		RacingConnector.Result result = connect("network");
+		assertThat(result.isFallback).isTrue();
+		assertThat(result.socket.getPort()).isEqualTo(serverFallback.getLocalPort());
+		result.socket.close();
+	}
+	
+	@Test
+	public void testRemembersWinnerPerNetwork() throws Exception {
+		//Letting the fallback win on one network
+		int primaryPort = serverPrimary.getLocalPort();
+		serverPrimary.close();
+		connect("network-a", primaryPort).socket.close();
+		
+		//Reopening the primary server, so both are available
+		serverPrimary = new ServerSocket(primaryPort, 50, InetAddress.getByName(loopback));
+		
+		//The fallback should be preferred on the same network, but not on others
+		RacingConnector.Result resultSameNetwork = connect("network-a");
+		assertThat(resultSameNetwork.isFallback).isTrue();
+		resultSameNetwork.socket.close();
+		
+		RacingConnector.Result resultOtherNetwork = connect("network-b");
+		assertThat(resultOtherNetwork.isFallback).isFalse();
+		resultOtherNetwork.socket.close();
+	}
+	
+	@Test
+	public void testAllFailed() throws IOException {
+		serverPrimary.close();
+		serverFallback.close();
+		
+		assertThrows(IOException.class, () -> connect("network"));
+	}
+	
+	private RacingConnector.Result connect(String networkKey) throws IOException, InterruptedException {
+		return connect(networkKey, serverPrimary.getLocalPort());
+	}
+	
+	private RacingConnector.Result connect(String networkKey, int primaryPort) throws IOException, InterruptedException {
+		return RacingConnector.connect(networkKey, loopback, primaryPort, loopback, serverFallback.getLocalPort(), timeout, RacingConnector.defaultStaggerMillis);
+	}
+}
\ No newline at end of file
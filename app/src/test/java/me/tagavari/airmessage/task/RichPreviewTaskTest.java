@@ -0,0 +1,131 @@
+package me.tagavari.airmessage.task;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(application = android.app.Application.class)
+public class RichPreviewTaskTest {
+	private static final String pageHead = "<!DOCTYPE html><html><HEAD>" +
+			"<title>Fallback title</title>" +
+			"<meta property=\"og:title\" content=\"Page title\">" +
+			"<meta property=\"og:description\" content=\"Page description\">" +
+			"<meta property=\"og:site_name\" content=\"Example\">" +
+			"<meta property=\"og:image\" content=\"/image.png\">" +
+			"</HEAD>";
+	
+	private HttpServer server;
+	private final AtomicReference<String> pageUserAgent = new AtomicReference<>();
+	
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		
+		//A page with a large body after its head
+		server.createContext("/page", exchange -> {
+			pageUserAgent.set(exchange.getRequestHeaders().getFirst("User-Agent"));
+			exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			try(OutputStream outputStream = exchange.getResponseBody()) {
+				outputStream.write(pageHead.getBytes(StandardCharsets.UTF_8));
+				outputStream.flush();
+				
+				byte[] chunk = new byte[64 * 1024];
+				Arrays.fill(chunk, (byte) 'x');
+				for(int i = 0; i < 64; i++) outputStream.write(chunk);
+			} catch(IOException exception) {
+				//The client stopped reading
+			}
+		});
+		
+		//A redirect to the page
+		server.createContext("/redirect", exchange -> {
+			exchange.getResponseHeaders().add("Location", getURL("/page"));
+			exchange.sendResponseHeaders(301, -1);
+			exchange.close();
+		});
+		
+		//A file that isn't a web page
+		server.createContext("/file.zip", exchange -> {
+			exchange.getResponseHeaders().add("Content-Type", "application/zip");
+			exchange.sendResponseHeaders(200, 0);
+			exchange.getResponseBody().close();
+		});
+		
+		server.start();
+	}
+	
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+	
+	@Test
+	public void testFetchMetadataFromHead() throws IOException {
+		RichPreviewTask.Metadata metadata = RichPreviewTask.fetchMetadataSync(getURL("/page"));
+		assertThat(metadata.getTitle()).isEqualTo("Page title");
+		assertThat(metadata.getDescription()).isEqualTo("Page description");
+		assertThat(metadata.getSiteName()).isEqualTo("Example");
+		assertThat(metadata.getImageURL()).isEqualTo(getURL("/image.png"));
+	}
+	
+	@Test
+	public void testFollowsRedirect() throws IOException {
+		RichPreviewTask.Metadata metadata = RichPreviewTask.fetchMetadataSync(getURL("/redirect"));
+		assertThat(metadata.getTitle()).isEqualTo("Page title");
+		assertThat(metadata.getImageURL()).isEqualTo(getURL("/image.png"));
+	}
+	
+	@Test
+	public void testSendsUserAgent() throws IOException {
+		RichPreviewTask.fetchMetadataSync(getURL("/page"));
+		assertThat(pageUserAgent.get()).isEqualTo(RichPreviewTask.userAgent);
+	}
+	
+	@Test
+	public void testRejectsNonHTML() {
+		assertThrows(IOException.class, () -> RichPreviewTask.fetchMetadataSync(getURL("/file.zip")));
+	}
+	
+	@Test
+	public void testReadHeadStopsAtClosingTag() throws IOException {
+		String document = "<html><head><title>A</title></HeAd><body>" + repeat('x', 100_000) + "</body></html>";
+		byte[] head = RichPreviewTask.readHead(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), 1024 * 1024);
+		assertThat(new String(head, StandardCharsets.UTF_8)).isEqualTo("<html><head><title>A</title>");
+	}
+	
+	@Test
+	public void testReadHeadRespectsLimit() throws IOException {
+		String document = "<html><head><title>" + repeat('x', 100_000);
+		byte[] head = RichPreviewTask.readHead(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), 1000);
+		assertThat(head.length).isEqualTo(1000);
+	}
+	
+	private static String repeat(char character, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, character);
+		return new String(chars);
+	}
+	
+	private String getURL(String path) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+}
\ No newline at end of file
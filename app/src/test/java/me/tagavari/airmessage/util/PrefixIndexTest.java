@@ -0,0 +1,114 @@
+package me.tagavari.airmessage.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class PrefixIndexTest {
+	@Test
+	public void testFindsPrefixInEveryWord() {
+		//Indexing a name from the start of each word, as the contact index does
+		PrefixIndex index = new PrefixIndex();
+		index.add("mary jane watson", 0);
+		index.add("jane watson", 0);
+		index.add("watson", 0);
+		index.add("jane doe", 1);
+		index.add("doe", 1);
+		
+		assertThat(findWithPrefix(index, "jane")).containsExactly(0, 1);
+		assertThat(findWithPrefix(index, "wat")).containsExactly(0, 0);
+		assertThat(findWithPrefix(index, "doe")).containsExactly(1, 1);
+		assertThat(findWithPrefix(index, "smith")).isEmpty();
+	}
+	
+	@Test
+	public void testKeepsDuplicateKeys() {
+		PrefixIndex index = new PrefixIndex();
+		index.add("alex", 0);
+		index.add("alex", 1);
+		index.add("alex", 2);
+		
+		assertThat(findWithPrefix(index, "alex")).containsExactly(0, 1, 2);
+	}
+	
+	@Test
+	public void testResultsInKeyOrder() {
+		PrefixIndex index = new PrefixIndex();
+		index.add("bc", 2);
+		index.add("ba", 0);
+		index.add("c", 3);
+		index.add("bb", 1);
+		
+		assertThat(findWithPrefix(index, "b")).containsExactly(0, 1, 2).inOrder();
+	}
+	
+	@Test
+	public void testAddAfterLookup() {
+		PrefixIndex index = new PrefixIndex();
+		for(int i = 0; i < 20; i++) index.add("key" + (char) ('a' + i), i);
+		assertThat(findWithPrefix(index, "keyc")).containsExactly(2);
+		
+		//Entries added after a lookup should be merged in with the sorted entries
+		index.add("keyca", 100);
+		index.add("aaa", 101);
+		index.add("keyc", 102);
+		assertThat(findWithPrefix(index, "keyc")).containsExactly(2, 102, 100).inOrder();
+		assertThat(findWithPrefix(index, "a")).containsExactly(101);
+		assertThat(findWithPrefix(index, "key")).hasSize(22);
+	}
+	
+	@Test
+	public void testClear() {
+		PrefixIndex index = new PrefixIndex();
+		index.add("alex", 0);
+		findWithPrefix(index, "a");
+		index.clear();
+		index.add("sam", 1);
+		
+		assertThat(findWithPrefix(index, "a")).isEmpty();
+		assertThat(findWithPrefix(index, "s")).containsExactly(1);
+	}
+	
+	@Test
+	public void testContactRankingOrder() {
+		ContactSearchIndex searchIndex = new ContactSearchIndex(Arrays.asList(
+				createContact(0, "Sam Annie", "sam@example.com"),
+				createContact(1, "Annie Smith", "smith@example.com"),
+				createContact(2, "Bob Jones", "annie@example.com"),
+				createContact(3, "Joanne Lee", "lee@example.com"),
+				createContact(4, "Anne Annie", "anne@example.com"),
+				createContact(5, "Carl Davis", "carl@example.com")
+		));
+		
+		//Name starts, then word starts, then addresses, then substrings, keeping source order within each rank
+		assertThat(getIdentifiers(searchIndex.search("ann", false))).containsExactly(1L, 4L, 0L, 2L, 3L).inOrder();
+	}
+	
+	@Test
+	public void testContactAddedAfterSearch() {
+		ContactSearchIndex searchIndex = new ContactSearchIndex(Arrays.asList(createContact(0, "Sam Annie", "sam@example.com")));
+		assertThat(getIdentifiers(searchIndex.search("annie", false))).containsExactly(0L);
+		
+		searchIndex.add(createContact(1, "Annie Smith", "smith@example.com"));
+		assertThat(getIdentifiers(searchIndex.search("annie", false))).containsExactly(1L, 0L).inOrder();
+	}
+	
+	private static List<Integer> findWithPrefix(PrefixIndex index, String prefix) {
+		List<Integer> values = new ArrayList<>();
+		index.forEachWithPrefix(prefix, values::add);
+		return values;
+	}
+	
+	private static ContactInfo createContact(long identifier, String name, String address) {
+		return new ContactInfo(identifier, name, new ArrayList<>(Arrays.asList(new AddressInfo(address, null))));
+	}
+	
+	private static List<Long> getIdentifiers(List<ContactInfo> contacts) {
+		return contacts.stream().map(ContactInfo::getIdentifier).collect(Collectors.toList());
+	}
+}
\ No newline at end of file